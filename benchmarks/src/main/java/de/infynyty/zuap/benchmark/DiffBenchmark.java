@@ -0,0 +1,73 @@
+package de.infynyty.zuap.benchmark;
+
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertionHandler.InsertionDiff;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the diff every update computes between the known insertions and the insertions that are online, where a
+ * small share of the insertions went offline and was replaced by new ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+    /**
+     * The share of insertions that changed since the last update.
+     */
+    private static final double CHURN = 0.05;
+
+    @Param({"1000", "10000", "100000"})
+    public int listings;
+
+    private Set<String> currentKeys;
+    private List<MeinWGZimmerInsertion> updated;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final int changed = (int) (listings * CHURN);
+        currentKeys = new LinkedHashSet<>();
+        for (int i = 0; i < listings; i++) {
+            currentKeys.add(create(i).getKey());
+        }
+        updated = new ArrayList<>(listings);
+        for (int i = changed; i < listings + changed; i++) {
+            updated.add(create(i));
+        }
+    }
+
+    @Benchmark
+    public InsertionDiff<MeinWGZimmerInsertion> diff() {
+        return InsertionDiff.compute(currentKeys, updated);
+    }
+
+    private static MeinWGZimmerInsertion create(final int id) {
+        return new MeinWGZimmerInsertion(new JSONObject()
+                .put("RoomNr", id)
+                .put("Price", 800.0)
+                .put("ValidFrom", new JSONObject().put("iso", "2024-03-31T22:00:00.000Z"))
+                .put("createdAt", "2024-03-01T12:00:00.000Z"));
+    }
+}
@@ -0,0 +1,56 @@
+package de.infynyty.zuap.benchmark;
+
+import de.infynyty.zuap.replay.SyntheticListings;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates the data each website returns for a given number of listings, using the same {@link SyntheticListings} the
+ * stub server of offline runs answers with. Listings differ in id, rent, dates and location, so that the parsers cannot
+ * take shortcuts on repeated values.
+ * <p>
+ * A recorded page can be used instead by pointing the system property {@code zuap.fixtures} at a directory containing
+ * files named like the handler, for example {@code WOKO.txt}. Such a page is always used as a whole, independent of the
+ * requested number of listings.
+ */
+public final class Fixtures {
+
+    public static final String WOKO = "WOKO";
+    public static final String WGZIMMER = "WGZimmer";
+    public static final String FLATFOX = "Flatfox";
+    public static final String MEINWGZIMMER = "MeinWGZimmer";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param handler  The name of the handler, one of the constants of this class.
+     * @param listings The number of listings.
+     * @return The data as returned by the website of the handler.
+     */
+    @NotNull
+    public static String page(@NotNull final String handler, final int listings) {
+        final String recorded = System.getProperty("zuap.fixtures");
+        if (recorded != null) {
+            final Path file = Path.of(recorded, handler + ".txt");
+            if (Files.exists(file)) {
+                try {
+                    return Files.readString(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return switch (handler) {
+            case WOKO -> SyntheticListings.wokoPage(0, listings);
+            case WGZIMMER -> SyntheticListings.wgZimmerPage(0, listings);
+            case FLATFOX -> SyntheticListings.flatfoxPage(0, listings);
+            case MEINWGZIMMER -> SyntheticListings.meinWGZimmerPage(0, listings);
+            default -> throw new IllegalArgumentException("Unknown handler " + handler);
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package de.infynyty.zuap.benchmark;
+
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.storage.HistoryQuery;
+import de.infynyty.zuap.storage.HistoryStore;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures aggregations over the history of insertions, which is filled with insertions of two sources that each stay
+ * online for a few updates. The store is reopened before measuring, so that all rows are read from memory mapped
+ * segments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    /**
+     * The number of insertions online at once for each source.
+     */
+    private static final int ONLINE = 5_000;
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Param({"1000000", "3000000"})
+    public int rows;
+
+    private Path directory;
+    private HistoryStore store;
+    private Instant semesterStart;
+    private Instant semesterEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zuap-history");
+        final HistoryStore filling = HistoryStore.open(directory);
+        final int updates = rows / ONLINE / 2;
+        for (int update = 0; update < updates; update++) {
+            final Instant now = START.plus(Duration.ofHours(update));
+            filling.update("WOKO", create(update * ONLINE, (update + 1) * ONLINE), now);
+            filling.update("MeinWGZimmer", create(-(update + 1) * ONLINE, -update * ONLINE), now);
+        }
+        filling.close();
+        store = HistoryStore.open(directory);
+        semesterStart = START.plus(Duration.ofHours(updates / 4));
+        semesterEnd = START.plus(Duration.ofHours(updates / 2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (final Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public double medianRentOfSourceInTimeRange() {
+        return store.query()
+                .source("WOKO")
+                .seenBetween(semesterStart, semesterEnd)
+                .median(HistoryQuery.Measure.RENT);
+    }
+
+    @Benchmark
+    public double averageTimeOnlineInZip() {
+        return store.query().zip(8006).average(HistoryQuery.Measure.SECONDS_ONLINE);
+    }
+
+    @Benchmark
+    public long countAll() {
+        return store.query().count();
+    }
+
+    private static List<MeinWGZimmerInsertion> create(final int from, final int to) {
+        final List<MeinWGZimmerInsertion> insertions = new ArrayList<>(to - from);
+        for (int id = from; id < to; id++) {
+            insertions.add(new MeinWGZimmerInsertion(new JSONObject()
+                    .put("RoomNr", id)
+                    .put("Price", 500 + Math.floorMod(id * 7919, 1500))
+                    .put("Zip", String.valueOf(8000 + Math.floorMod(id, 60)))
+                    .put("ValidFrom", new JSONObject().put("iso", "2024-03-31T22:00:00.000Z"))
+                    .put("createdAt", "2024-03-01T12:00:00.000Z")));
+        }
+        return insertions;
+    }
+}
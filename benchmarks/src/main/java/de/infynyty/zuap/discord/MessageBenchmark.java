@@ -0,0 +1,81 @@
+package de.infynyty.zuap.discord;
+
+import de.infynyty.zuap.benchmark.Fixtures;
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertion.WGZimmerInsertion;
+import de.infynyty.zuap.insertion.WOKOInsertion;
+import net.dv8tion.jda.api.entities.Message;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning a batch of new insertions into the Discord messages that announce them, which packs their embeds
+ * with {@link EmbedPacker} and creates each message with {@link DiscordHandler#toMessage(List, List)}. Link previews are
+ * not fetched. This benchmark lives in the package of the Discord classes, as neither is public.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class MessageBenchmark {
+
+    @Param({Fixtures.WOKO, Fixtures.WGZIMMER, Fixtures.FLATFOX, Fixtures.MEINWGZIMMER})
+    public String handlerName;
+
+    @Param({"1", "10", "50"})
+    public int listings;
+
+    private List<Insertion> insertions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final String page = Fixtures.page(handlerName, listings);
+        insertions = new ArrayList<>();
+        switch (handlerName) {
+            case Fixtures.WOKO -> Jsoup.parse(page).getElementsByClass("inserat")
+                    .forEach(element -> insertions.add(new WOKOInsertion(element)));
+            case Fixtures.WGZIMMER -> Jsoup.parse(page).getElementsByClass("search-result-entry")
+                    .forEach(element -> insertions.add(new WGZimmerInsertion(element)));
+            case Fixtures.FLATFOX -> results(page).forEach(json -> insertions.add(new FlatfoxInsertion((JSONObject) json)));
+            case Fixtures.MEINWGZIMMER -> results(page).forEach(json -> insertions.add(new MeinWGZimmerInsertion((JSONObject) json)));
+            default -> throw new IllegalArgumentException("Unknown handler " + handlerName);
+        }
+        if (insertions.size() != listings) {
+            throw new IllegalStateException("The " + handlerName + " fixture contains " + insertions.size() + " instead of " + listings + " insertions.");
+        }
+    }
+
+    @Benchmark
+    public void announceAll(final Blackhole blackhole) {
+        EmbedPacker.pack(insertions, (embeds, included) -> {
+            final Message message = DiscordHandler.toMessage(embeds, included);
+            blackhole.consume(message);
+        });
+    }
+
+    private static JSONArray results(final String page) {
+        return new JSONObject(page).getJSONArray("results");
+    }
+}
@@ -0,0 +1,66 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.benchmark.Fixtures;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.Insertion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link InsertionHandler#getInsertionsFromData(String)} of every handler. This benchmark lives in the package
+ * of the handlers, as the method is not public.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({Fixtures.WOKO, Fixtures.WGZIMMER, Fixtures.FLATFOX, Fixtures.MEINWGZIMMER})
+    public String handlerName;
+
+    @Param({"10", "100", "1000"})
+    public int listings;
+
+    private InsertionHandler<? extends Insertion> handler;
+    private String data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final InsertionAnnouncer announcer = insertion -> {};
+        final HttpFetcher httpFetcher = new HttpFetcher(HttpClient.newHttpClient());
+        handler = switch (handlerName) {
+            case Fixtures.WOKO -> new WOKOInsertionHandler(handlerName, announcer, httpFetcher);
+            case Fixtures.WGZIMMER -> new WGZimmerHandler(handlerName, announcer, httpFetcher);
+            case Fixtures.FLATFOX -> new FlatfoxHandler(handlerName, announcer, httpFetcher);
+            case Fixtures.MEINWGZIMMER -> new MeinWGZimmerHandler(handlerName, announcer, httpFetcher);
+            default -> throw new IllegalArgumentException("Unknown handler " + handlerName);
+        };
+        data = Fixtures.page(handlerName, listings);
+        final int parsed = handler.getInsertionsFromData(data).size();
+        if (parsed == 0) {
+            throw new IllegalStateException("The " + handlerName + " fixture does not contain any parsable insertion.");
+        }
+    }
+
+    @Benchmark
+    public ArrayList<? extends Insertion> parse() {
+        return handler.getInsertionsFromData(data);
+    }
+}
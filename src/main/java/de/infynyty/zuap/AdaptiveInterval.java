@@ -0,0 +1,160 @@
+package de.infynyty.zuap;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * Adapts the delay between two updates of a handler to the rate at which new insertions are posted on its website.
+ * The rate is estimated from the recent updates and from the updates at the same hour of previous days, so that a
+ * website is checked more often while insertions are posted frequently and less often while it is quiet. The delay
+ * always stays within the configured bounds and changes by at most a factor of two per update.
+ */
+public class AdaptiveInterval {
+
+    /**
+     * The number of new insertions expected per update, that the delay is chosen for. A lower value means that new
+     * insertions are detected sooner, at the cost of more requests.
+     */
+    private static final double TARGET_INSERTIONS_PER_UPDATE = 0.5;
+    /**
+     * The weight of the latest update in the recent rate of new insertions.
+     */
+    private static final double RECENT_WEIGHT = 0.3;
+    /**
+     * The weight of the latest update in the rate of its hour of the day, which is lower than {@link #RECENT_WEIGHT}
+     * as it should describe the usual rate at that time over several days.
+     */
+    private static final double PROFILE_WEIGHT = 0.1;
+    private static final double MAX_CHANGE_FACTOR = 2;
+    private static final ZoneId ZONE = ZoneId.of("Europe/Zurich");
+
+    @NotNull
+    private final String handlerName;
+    @NotNull
+    private final Duration minDelay;
+    @NotNull
+    private final Duration maxDelay;
+    @NotNull
+    private final Clock clock;
+    @NotNull
+    private Duration delay;
+    /**
+     * The recent rate of new insertions per hour or {@code NaN} before the first rate has been observed.
+     */
+    private double recentRate = Double.NaN;
+    /**
+     * The usual rate of new insertions per hour for each hour of the day, which is {@code NaN} for hours without any
+     * observation.
+     */
+    private final double[] hourlyRates = new double[24];
+    private Instant lastUpdate;
+
+    /**
+     * @param handlerName  The name of the handler, used for logging.
+     * @param initialDelay The delay used until a rate of new insertions has been observed.
+     * @param minDelay     The shortest possible delay.
+     * @param maxDelay     The longest possible delay.
+     */
+    public AdaptiveInterval(
+            @NotNull final String handlerName,
+            @NotNull final Duration initialDelay,
+            @NotNull final Duration minDelay,
+            @NotNull final Duration maxDelay
+    ) {
+        this(handlerName, initialDelay, minDelay, maxDelay, Clock.systemUTC());
+    }
+
+    AdaptiveInterval(
+            @NotNull final String handlerName,
+            @NotNull final Duration initialDelay,
+            @NotNull final Duration minDelay,
+            @NotNull final Duration maxDelay,
+            @NotNull final Clock clock
+    ) {
+        if (minDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalArgumentException("The minimum delay " + minDelay + " is longer than the maximum delay " + maxDelay);
+        }
+        this.handlerName = handlerName;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.clock = clock;
+        this.delay = clamp(initialDelay, minDelay, maxDelay);
+        Arrays.fill(hourlyRates, Double.NaN);
+    }
+
+    /**
+     * Records a successful update and decides on the delay until the next one. The first update only marks the start
+     * of the observation, as the insertions it found were not posted since a known point in time.
+     *
+     * @param newInsertions The number of insertions that were new in this update.
+     */
+    public synchronized void recordUpdate(final int newInsertions) {
+        final Instant now = clock.instant();
+        if (lastUpdate != null) {
+            final double hours = Duration.between(lastUpdate, now).toMillis() / 3_600_000.0;
+            if (hours > 0) {
+                final double rate = newInsertions / hours;
+                recentRate = Double.isNaN(recentRate) ? rate : RECENT_WEIGHT * rate + (1 - RECENT_WEIGHT) * recentRate;
+                final int hour = now.atZone(ZONE).getHour();
+                hourlyRates[hour] = Double.isNaN(hourlyRates[hour])
+                        ? rate
+                        : PROFILE_WEIGHT * rate + (1 - PROFILE_WEIGHT) * hourlyRates[hour];
+            }
+        }
+        lastUpdate = now;
+        decide(now);
+    }
+
+    /**
+     * @return The delay until the next update.
+     */
+    @NotNull
+    public synchronized Duration getDelay() {
+        return delay;
+    }
+
+    private void decide(@NotNull final Instant now) {
+        if (Double.isNaN(recentRate)) return;
+        // the rate matters for the time the next update will cover, which lies mostly in the hour it is due
+        final int hour = now.plus(delay).atZone(ZONE).getHour();
+        final double usualRate = hourlyRates[hour];
+        final double expectedRate = Double.isNaN(usualRate) ? recentRate : (recentRate + usualRate) / 2;
+
+        final Duration target = expectedRate <= 0
+                ? maxDelay
+                : Duration.ofMillis((long) Math.min(Long.MAX_VALUE, TARGET_INSERTIONS_PER_UPDATE / expectedRate * 3_600_000));
+        final Duration limited = clamp(
+                target,
+                Duration.ofMillis((long) (delay.toMillis() / MAX_CHANGE_FACTOR)),
+                Duration.ofMillis((long) (delay.toMillis() * MAX_CHANGE_FACTOR))
+        );
+        final Duration next = clamp(limited, minDelay, maxDelay);
+        if (!next.equals(delay)) {
+            Zuap.log(Level.INFO, handlerName, String.format(
+                    Locale.ROOT,
+                    "Changed the update delay from %ds to %ds, expecting %.2f new insertions per hour (recent: %.2f, usual at %02d:00: %s).",
+                    delay.toSeconds(),
+                    next.toSeconds(),
+                    expectedRate,
+                    recentRate,
+                    hour,
+                    Double.isNaN(usualRate) ? "unknown" : String.format(Locale.ROOT, "%.2f", usualRate)
+            ));
+        }
+        delay = next;
+    }
+
+    @NotNull
+    private static Duration clamp(@NotNull final Duration value, @NotNull final Duration min, @NotNull final Duration max) {
+        if (value.compareTo(min) < 0) return min;
+        if (value.compareTo(max) > 0) return max;
+        return value;
+    }
+}
@@ -0,0 +1,143 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.insertionHandler.AnnouncementQueue;
+import de.infynyty.zuap.insertionHandler.DuplicateIndex;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import de.infynyty.zuap.storage.HistoryStore;
+import de.infynyty.zuap.storage.InsertionKeyStore;
+import de.infynyty.zuap.subscription.ChannelAnnouncer;
+import de.infynyty.zuap.subscription.SubscriptionIndex;
+import de.infynyty.zuap.subscription.SubscriptionRouter;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * Connects the handlers of all websites to the platform their insertions are announced on. New insertions pass the
+ * {@link AnnouncementQueue} and the {@link SubscriptionRouter} on their way to the channels, while the handlers share
+ * a {@link DuplicateIndex}, a {@link GeoIndex} and a {@link HistoryStore} and save their keys in an
+ * {@link InsertionKeyStore} each. The bot and offline runs both use this class, so that they run the same pipeline.
+ */
+@Getter
+public class Pipeline implements AutoCloseable {
+
+    private final static int ANNOUNCEMENT_QUEUE_CAPACITY = 1000;
+    private final static int ANNOUNCEMENT_BATCH_SIZE = 10;
+    /**
+     * The time a handler waits for space in the full announcement queue, which is also the time queued insertions
+     * have to be announced when shutting down.
+     */
+    private final static Duration ANNOUNCEMENT_TIMEOUT = Duration.ofSeconds(30);
+
+    @NotNull
+    private final List<InsertionHandler<?>> handlers;
+    @NotNull
+    private final SubscriptionRouter router;
+    @NotNull
+    private final AnnouncementQueue announcementQueue;
+    @NotNull
+    private final DuplicateIndex duplicateIndex = new DuplicateIndex();
+    /**
+     * The location of all current insertions of all handlers.
+     */
+    @NotNull
+    private final GeoIndex geoIndex = new GeoIndex();
+    /**
+     * The history of all insertions ever seen by any handler, if it could be opened.
+     */
+    @Nullable
+    private final HistoryStore historyStore;
+    @NotNull
+    private final PollScheduler scheduler;
+
+    /**
+     * Assembles the pipeline, without updating any handler yet.
+     *
+     * @param channelAnnouncer The platform insertions are announced on.
+     * @param subscriptions    The subscriptions deciding which channels an insertion is announced in.
+     * @param dataDirectory    The directory the keys and the history of insertions are saved in.
+     * @param startJitter      The maximum random delay before the first update of each handler.
+     * @param createHandlers   Creates the handlers of all websites, which announce their insertions using the given
+     *                         announcer.
+     */
+    public Pipeline(
+            @NotNull final ChannelAnnouncer channelAnnouncer,
+            @NotNull final SubscriptionIndex subscriptions,
+            @NotNull final Path dataDirectory,
+            @NotNull final Duration startJitter,
+            @NotNull final Function<InsertionAnnouncer, List<InsertionHandler<?>>> createHandlers
+    ) {
+        router = new SubscriptionRouter(channelAnnouncer, subscriptions);
+        announcementQueue = new AnnouncementQueue(
+                router,
+                ANNOUNCEMENT_QUEUE_CAPACITY,
+                ANNOUNCEMENT_BATCH_SIZE,
+                AnnouncementQueue.OverflowPolicy.BLOCK,
+                ANNOUNCEMENT_TIMEOUT
+        );
+        handlers = List.copyOf(createHandlers.apply(announcementQueue));
+        for (final InsertionHandler<?> handler : handlers) {
+            final Path keyFile = dataDirectory.resolve(handler.getHandlerName().toLowerCase(Locale.ROOT) + ".keys");
+            try {
+                handler.setKeyStore(InsertionKeyStore.open(keyFile));
+            } catch (IOException e) {
+                Zuap.log(Level.SEVERE, handler.getHandlerName(), "Could not open saved insertions, starting without them. " + e.getMessage());
+            }
+        }
+        historyStore = openHistoryStore(dataDirectory.resolve("history"));
+        scheduler = new PollScheduler(startJitter);
+    }
+
+    /**
+     * Starts updating all handlers.
+     *
+     * @param createInterval Creates the interval between two updates of the handler with the given name.
+     */
+    public void start(@NotNull final Function<String, AdaptiveInterval> createInterval) {
+        for (final InsertionHandler<?> handler : handlers) {
+            handler.setDuplicateIndex(duplicateIndex);
+            handler.setGeoIndex(geoIndex);
+            if (historyStore != null) {
+                handler.setHistoryStore(historyStore);
+            }
+            handler.setUpdateInterval(createInterval.apply(handler.getHandlerName()));
+            scheduler.schedule(handler);
+        }
+    }
+
+    /**
+     * Stops updating the handlers, announces the insertions that are still queued and saves the history.
+     */
+    @Override
+    public void close() {
+        scheduler.close();
+        announcementQueue.close(ANNOUNCEMENT_TIMEOUT);
+        handlers.forEach(InsertionHandler::close);
+        if (historyStore == null) return;
+        try {
+            historyStore.close();
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, "Could not save the history of insertions. " + e.getMessage());
+        }
+    }
+
+    @Nullable
+    private static HistoryStore openHistoryStore(@NotNull final Path directory) {
+        try {
+            return HistoryStore.open(directory);
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, "Could not open the history of insertions, starting without it. " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Periodically updates the insertions of all scheduled handlers. A single platform thread keeps track of when each
+ * handler is due, while every update runs on its own virtual thread, so that a large number of handlers costs next to
+ * nothing while they are waiting for the next update or for a response. Updates that take longer than the deadline of
+ * their handler are cancelled by a watchdog, so that a stalled connection cannot stop a handler from being updated.
+ */
+public class PollScheduler {
+
+    /**
+     * Time to wait for running updates to finish when the scheduler is closed.
+     */
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("poll-scheduler").factory()
+    );
+    private final ExecutorService pollExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("poll-", 0).factory()
+    );
+    /**
+     * The maximum delay before the first update of a handler. The actual delay is chosen at random, so that handlers
+     * scheduled at the same time do not all send their requests at once.
+     */
+    @NotNull
+    private final Duration startJitter;
+
+    public PollScheduler(@NotNull final Duration startJitter) {
+        this.startJitter = startJitter;
+    }
+
+    /**
+     * Schedules a handler to update its insertions. The next update is scheduled once the previous one has finished,
+     * so updates of the same handler never overlap. The delay between two updates is decided by the handler after
+     * each update, see {@link InsertionHandler#getNextUpdateDelay()}.
+     *
+     * @param handler The handler to update.
+     */
+    public void schedule(@NotNull final InsertionHandler<?> handler) {
+        final long jitter = startJitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(startJitter.toMillis() + 1);
+        Zuap.log(Level.CONFIG, handler.getHandlerName(), "Scheduled updates every " + handler.getNextUpdateDelay() + ", starting in " + jitter + "ms.");
+        scheduleNext(handler, jitter);
+    }
+
+    private void scheduleNext(@NotNull final InsertionHandler<?> handler, final long delayMillis) {
+        try {
+            timer.schedule(() -> poll(handler), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler was closed in the meantime
+        }
+    }
+
+    private void poll(@NotNull final InsertionHandler<?> handler) {
+        try {
+            pollExecutor.execute(() -> {
+                Thread.currentThread().setName(handler.getHandlerName());
+                final ScheduledFuture<?> watchdog = watch(handler, Thread.currentThread());
+                try {
+                    handler.updateCurrentInsertions();
+                } finally {
+                    if (watchdog != null) {
+                        watchdog.cancel(false);
+                    }
+                    scheduleNext(handler, handler.getNextUpdateDelay().toMillis());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the scheduler was closed in the meantime
+        }
+    }
+
+    /**
+     * Cancels an update that is still running after the deadline of its handler, by interrupting its thread and
+     * telling the handler to abort whatever it is waiting for.
+     *
+     * @param handler The handler that is being updated.
+     * @param thread  The thread running the update.
+     * @return The scheduled watchdog, which must be cancelled once the update has finished, or {@code null} if the
+     * scheduler has been closed.
+     */
+    @Nullable
+    private ScheduledFuture<?> watch(@NotNull final InsertionHandler<?> handler, @NotNull final Thread thread) {
+        final Duration deadline = handler.getUpdateDeadline();
+        try {
+            return timer.schedule(() -> {
+                Zuap.log(Level.WARNING, handler.getHandlerName(), "Update did not finish within " + deadline.toSeconds() + "s, cancelling it.");
+                thread.interrupt();
+                handler.onUpdateTimeout();
+            }, deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler was closed in the meantime, which cancels the update anyway
+            return null;
+        }
+    }
+
+    /**
+     * Stops scheduling new updates, cancels all running updates and waits for them to finish.
+     */
+    public void close() {
+        timer.shutdownNow();
+        pollExecutor.shutdownNow();
+        try {
+            if (!pollExecutor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                Zuap.log(Level.WARNING, "Some updates did not finish within " + SHUTDOWN_TIMEOUT + " after being cancelled.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,17 +2,34 @@ package de.infynyty.zuap;
 
 import de.infynyty.zuap.discord.DiscordHandler;
 import de.infynyty.zuap.discord.DiscordLoggingHandler;
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.Insertion;
 import de.infynyty.zuap.insertionHandler.*;
+import de.infynyty.zuap.metrics.MetricsServer;
+import de.infynyty.zuap.replay.FixtureStore;
+import de.infynyty.zuap.query.QueryServer;
+import de.infynyty.zuap.subscription.Subscription;
+import de.infynyty.zuap.subscription.SubscriptionIndex;
+import de.infynyty.zuap.subscription.SubscriptionRouter;
 import io.github.cdimascio.dotenv.Dotenv;
 import lombok.extern.java.Log;
 import net.dv8tion.jda.api.JDA;
 
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
-import java.net.http.HttpClient;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 
@@ -20,57 +37,233 @@ import java.util.logging.Level;
 public class Zuap {
 
     public final static int UPDATE_DELAY_IN_MINS = 5;
+    private final static int MIN_UPDATE_DELAY_IN_MINS = 1;
+    private final static int MAX_UPDATE_DELAY_IN_MINS = 30;
+    /**
+     * The maximum random delay before the first update of each handler.
+     */
+    private final static Duration START_JITTER = Duration.ofSeconds(30);
+    /**
+     * The time between two checks whether the subscription file has been modified.
+     */
+    private final static Duration SUBSCRIPTIONS_CHECK_INTERVAL = Duration.ofMinutes(1);
 
-    private final static Dotenv dotenv = Dotenv.load();
-
-    private final static ArrayList<InsertionHandler<? extends Insertion>> handlers = new ArrayList<>();
+    private final static Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
 
     public static void main(String[] args) throws InterruptedException, LoginException, IOException {
         final DiscordHandler discordHandler = new DiscordHandler(getMainChannelId());
         final JDA jda = discordHandler.prepareDiscordBot();
 
         log.addHandler(new FileHandler("Zuap.log", 1000000, 1, true));
-        log.addHandler(new DiscordLoggingHandler(getLogChannelId(), jda));
-        parseWebsiteData(discordHandler);
+        final DiscordLoggingHandler discordLog = new DiscordLoggingHandler(getLogChannelId(), jda, getDiscordLogLevel());
+        log.addHandler(discordLog);
+        final HttpFetcher httpFetcher = HttpFetcher.create();
+        startRecording(httpFetcher);
+        Insertion.setHttpFetcher(httpFetcher);
+        final Pipeline pipeline = new Pipeline(
+                discordHandler,
+                loadSubscriptions(),
+                getDataDirectory(),
+                START_JITTER,
+                announcer -> createHandlers(announcer, httpFetcher)
+        );
+        pipeline.start(name -> new AdaptiveInterval(name, getUpdateDelay(name), getMinUpdateDelay(name), getMaxUpdateDelay(name)));
+        final ScheduledExecutorService subscriptionWatcher = watchSubscriptions(pipeline.getRouter());
+        final MetricsServer metricsServer = startMetricsServer();
+        final QueryServer queryServer = startQueryServer(pipeline);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            subscriptionWatcher.shutdownNow();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            if (queryServer != null) {
+                queryServer.close();
+            }
+            pipeline.close();
+            discordLog.close();
+        }));
     }
 
-    private static void parseWebsiteData(final InsertionAnnouncer announcer){
-        final HttpClient httpClient = HttpClient.newHttpClient();
-        handlers.add(new WOKOInsertionHandler("WOKO", announcer, httpClient));
-        handlers.add(new MeinWGZimmerHandler("MeinWGZimmer", announcer, httpClient));
-        handlers.add(new FlatfoxHandler("Flatfox", announcer, httpClient));
+    private static List<InsertionHandler<?>> createHandlers(final InsertionAnnouncer announcer, final HttpFetcher httpFetcher) {
+        final List<InsertionHandler<?>> handlers = new ArrayList<>();
+        handlers.add(new WOKOInsertionHandler("WOKO", announcer, httpFetcher));
+        handlers.add(new MeinWGZimmerHandler("MeinWGZimmer", announcer, httpFetcher));
+        handlers.add(new FlatfoxHandler("Flatfox", announcer, httpFetcher));
         if (isWGZimmerEnabled()) {
-            handlers.add(new WGZimmerHandler("WGZimmer", announcer, httpClient));
+            handlers.add(new WGZimmerHandler("WGZimmer", announcer, httpFetcher));
+        }
+        return handlers;
+    }
+
+    /**
+     * Saves all responses to the directory configured using {@code RECORD_FIXTURES}, so that they can be replayed by
+     * the {@link de.infynyty.zuap.replay.StubServer} later.
+     */
+    private static void startRecording(final HttpFetcher httpFetcher) {
+        final String directory = dotenv.get("RECORD_FIXTURES");
+        if (directory == null) return;
+        try {
+            httpFetcher.setRecorder(FixtureStore.open(Path.of(directory)));
+            Zuap.log(Level.INFO, "Recording all responses to " + directory);
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, "Could not record responses to " + directory + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts serving metrics at {@code /metrics}, if a port is configured using {@code METRICS_PORT}. The server only
+     * listens on the loopback interface, unless another address is configured using {@code METRICS_ADDRESS}.
+     */
+    private static MetricsServer startMetricsServer() throws IOException {
+        final String port = dotenv.get("METRICS_PORT");
+        if (port == null) return null;
+        final InetSocketAddress address = new InetSocketAddress(dotenv.get("METRICS_ADDRESS", "127.0.0.1"), Integer.parseInt(port));
+        final MetricsServer server = new MetricsServer(address);
+        Zuap.log(Level.INFO, "Serving metrics at http://" + address.getHostString() + ":" + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+
+    /**
+     * Starts serving queries of the current insertions at {@code /insertions} and {@code /sources} and of their history
+     * at {@code /history}, if a port is configured using {@code QUERY_PORT}. The server only listens on the loopback
+     * interface, unless another address is configured using {@code QUERY_ADDRESS}.
+     */
+    private static QueryServer startQueryServer(final Pipeline pipeline) throws IOException {
+        final String port = dotenv.get("QUERY_PORT");
+        if (port == null) return null;
+        final InetSocketAddress address = new InetSocketAddress(dotenv.get("QUERY_ADDRESS", "127.0.0.1"), Integer.parseInt(port));
+        final QueryServer server = new QueryServer(address, pipeline.getHandlers(), pipeline.getGeoIndex(), pipeline.getHistoryStore());
+        Zuap.log(Level.INFO, "Serving queries at http://" + address.getHostString() + ":" + server.getAddress().getPort() + "/insertions");
+        return server;
+    }
+
+    /**
+     * Loads the subscriptions from the file configured using {@code SUBSCRIPTIONS_FILE}. Without subscriptions, all
+     * insertions are announced in the main channel.
+     */
+    private static SubscriptionIndex loadSubscriptions() throws IOException {
+        final List<Subscription> subscriptions = SubscriptionRouter.load(getSubscriptionsFile());
+        if (subscriptions.isEmpty()) {
+            Zuap.log(Level.INFO, "No subscriptions configured, announcing all insertions in the main channel.");
+            return new SubscriptionIndex(List.of(Subscription.everything("main", getMainChannelId())));
         }
+        Zuap.log(Level.INFO, "Loaded " + subscriptions.size() + " subscriptions.");
+        return new SubscriptionIndex(subscriptions);
+    }
 
+    /**
+     * Reloads the subscriptions every time the subscription file has been modified, so that subscriptions can be changed
+     * without restarting the bot. If the modified file cannot be loaded, the previous subscriptions are kept.
+     *
+     * @param router The router the reloaded subscriptions are passed to.
+     * @return The executor checking the file, which has to be shut down.
+     */
+    private static ScheduledExecutorService watchSubscriptions(final SubscriptionRouter router) {
+        final Path file = getSubscriptionsFile();
+        final AtomicReference<FileTime> lastModified = new AtomicReference<>(getLastModifiedTime(file));
+        final ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("subscription-watcher").daemon().factory()
+        );
+        watcher.scheduleWithFixedDelay(() -> {
+            final FileTime modified = getLastModifiedTime(file);
+            if (Objects.equals(modified, lastModified.getAndSet(modified))) return;
+            try {
+                router.setIndex(loadSubscriptions());
+            } catch (IOException e) {
+                Zuap.log(Level.SEVERE, "Could not reload the subscriptions, keeping the previous ones. " + e.getMessage());
+            }
+        }, SUBSCRIPTIONS_CHECK_INTERVAL.toMillis(), SUBSCRIPTIONS_CHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        return watcher;
+    }
+
+    /**
+     * @return The time the file was last modified or {@code null}, if it does not exist.
+     */
+    private static FileTime getLastModifiedTime(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-        handlers.forEach(handler -> {
-            final Thread t = new Thread(() -> {
-                Zuap.log(Level.CONFIG, "Started new thread for " + handler.getClass());
-                while (true) {
-                    try {
-                        handler.updateCurrentInsertions();
-                        TimeUnit.MINUTES.sleep(UPDATE_DELAY_IN_MINS);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            });
-            t.setName(handler.getHandlerName());
-            t.start();
-        });
+    /**
+     * Returns the delay between two updates of a handler until the rate of new insertions is known, which can be
+     * configured for each handler using an entry named {@code UPDATE_DELAY_<HANDLER NAME>} in minutes.
+     *
+     * @param handlerName The name of the handler.
+     * @return The configured delay or {@value UPDATE_DELAY_IN_MINS} minutes by default.
+     */
+    public static Duration getUpdateDelay(final String handlerName) {
+        return getDelay("UPDATE_DELAY_", handlerName, UPDATE_DELAY_IN_MINS);
+    }
+
+    /**
+     * Returns the shortest delay between two updates of a handler, configured using {@code UPDATE_DELAY_MIN_<HANDLER
+     * NAME>} in minutes.
+     *
+     * @param handlerName The name of the handler.
+     * @return The configured delay or {@value MIN_UPDATE_DELAY_IN_MINS} minute by default.
+     */
+    public static Duration getMinUpdateDelay(final String handlerName) {
+        return getDelay("UPDATE_DELAY_MIN_", handlerName, MIN_UPDATE_DELAY_IN_MINS);
+    }
+
+    /**
+     * Returns the longest delay between two updates of a handler, configured using {@code UPDATE_DELAY_MAX_<HANDLER
+     * NAME>} in minutes.
+     *
+     * @param handlerName The name of the handler.
+     * @return The configured delay or {@value MAX_UPDATE_DELAY_IN_MINS} minutes by default.
+     */
+    public static Duration getMaxUpdateDelay(final String handlerName) {
+        return getDelay("UPDATE_DELAY_MAX_", handlerName, MAX_UPDATE_DELAY_IN_MINS);
+    }
+
+    private static Duration getDelay(final String prefix, final String handlerName, final int defaultMinutes) {
+        final String key = prefix + handlerName.toUpperCase(Locale.ROOT);
+        return Duration.ofMinutes(Long.parseLong(dotenv.get(key, String.valueOf(defaultMinutes))));
     }
 
     public static boolean isWGZimmerEnabled() {
         return Boolean.parseBoolean(dotenv.get("ENABLE_WGZIMMER", "false"));
     }
 
+    public static Path getDataDirectory() {
+        return Path.of(dotenv.get("DATA_DIR", "data"));
+    }
+
+    public static Path getSubscriptionsFile() {
+        final String file = dotenv.get("SUBSCRIPTIONS_FILE");
+        return file == null ? getDataDirectory().resolve("subscriptions.json") : Path.of(file);
+    }
+
+    /**
+     * @return The lowest level of log records sent to the log channel, configured using {@code DISCORD_LOG_LEVEL}.
+     */
+    public static Level getDiscordLogLevel() {
+        return Level.parse(dotenv.get("DISCORD_LOG_LEVEL", "INFO").toUpperCase(Locale.ROOT));
+    }
+
     public static long getLogChannelId() {
-        return Long.parseLong(dotenv.get("LOG_CHANNEL_ID"));
+        return Long.parseLong(getRequired("LOG_CHANNEL_ID"));
     }
 
     public static long getMainChannelId() {
-        return Long.parseLong(dotenv.get("MAIN_CHANNEL_ID"));
+        return Long.parseLong(getRequired("MAIN_CHANNEL_ID"));
+    }
+
+    /**
+     * @return The value of an entry that has to be configured, either in the {@code .env} file or as an environment
+     * variable.
+     * @throws IllegalStateException If the entry is not configured.
+     */
+    private static String getRequired(final String key) {
+        final String value = dotenv.get(key);
+        if (value == null) {
+            throw new IllegalStateException(key + " has to be set in the .env file or as an environment variable.");
+        }
+        return value;
     }
 
     public static void log(final Level level, final String message) {
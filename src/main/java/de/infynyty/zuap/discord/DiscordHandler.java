@@ -2,28 +2,48 @@ package de.infynyty.zuap.discord;
 
 import de.infynyty.zuap.Zuap;
 import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
 import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.metrics.Counter;
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import de.infynyty.zuap.subscription.ChannelAnnouncer;
 import io.github.cdimascio.dotenv.Dotenv;
 import lombok.RequiredArgsConstructor;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.security.auth.login.LoginException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
  * This class handles all logic regarding the Discord bot.
  */
 @RequiredArgsConstructor
-public class DiscordHandler implements InsertionAnnouncer {
+public class DiscordHandler implements InsertionAnnouncer, ChannelAnnouncer {
 
 
-    private final static Dotenv dotenv = Dotenv.load();
+    /** The maximum number of buttons Discord allows in a single row. **/
+    private final static int MAX_BUTTONS_PER_ROW = 5;
+    private final static Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+    private final static Histogram sendDuration = Metrics.histogram(
+            "zuap_discord_send_duration_seconds", "Time to send a message to Discord, including waiting for rate limits."
+    );
+    private final static Counter failedSends = Metrics.counter(
+            "zuap_discord_failed_sends_total", "Messages that could not be sent to Discord."
+    );
 
-    /** The id of the channel that new insertions should be posted to. **/
+    /** The id of the channel that new insertions should be posted to, if no other channel is given. **/
     private final long mainChannelID;
 
     @Nullable
@@ -56,19 +76,106 @@ public class DiscordHandler implements InsertionAnnouncer {
      */
     @Override
     public void announce(@NotNull final Insertion insertion) {
+        announceAll(List.of(insertion));
+    }
+
+    /**
+     * Announces insertions in the main channel.
+     * @param insertions The insertions to announce, which must not be null.
+     * @see #announceAll(long, List)
+     */
+    @Override
+    public void announceAll(@NotNull final List<Insertion> insertions) {
+        announceAll(mainChannelID, insertions);
+    }
+
+    /**
+     * Announces insertions on the Discord server, combining as many insertions into a single message as Discord allows
+     * (see {@link EmbedPacker}). Messages are sent one after another and this method only returns once all of them have been
+     * sent, so that JDA can delay them according to the rate limits reported by Discord.
+     * @param channelId The id of the channel to post the insertions to.
+     * @param insertions The insertions to announce, which must not be null.
+     */
+    @Override
+    public void announceAll(final long channelId, @NotNull final List<Insertion> insertions) {
         if (jda == null) {
             Zuap.log(Level.SEVERE, "Cannot display new insertion on Discord, because the JDA has not been initialized.");
             return;
         }
-        final TextChannel channel = jda.getChannelById(TextChannel.class, mainChannelID);
+        final TextChannel channel = jda.getChannelById(TextChannel.class, channelId);
+        if (channel == null) {
+            Zuap.log(Level.SEVERE,"Cannot announce insertions in the Discord channel using the unknown channel id: " + channelId);
+            return;
+        }
+        insertions.forEach(Insertion::prefetchLinkPreview);
+        EmbedPacker.pack(insertions, (embeds, included) -> send(channel, toMessage(embeds, included), included));
+    }
+
+    /**
+     * Announces a change of an insertion in the main channel.
+     * @param change The changed properties of the insertion, which must not be null.
+     * @see #announceChange(long, InsertionChange)
+     */
+    @Override
+    public void announceChange(@NotNull final InsertionChange change) {
+        announceChange(mainChannelID, change);
+    }
+
+    /**
+     * Announces a change of an insertion, showing only the properties that have changed.
+     * @param channelId The id of the channel to post the change to.
+     * @param change The changed properties of the insertion, which must not be null.
+     */
+    @Override
+    public void announceChange(final long channelId, @NotNull final InsertionChange change) {
+        if (jda == null) {
+            Zuap.log(Level.SEVERE, "Cannot display changed insertion on Discord, because the JDA has not been initialized.");
+            return;
+        }
+        final TextChannel channel = jda.getChannelById(TextChannel.class, channelId);
         if (channel == null) {
-            Zuap.log(Level.SEVERE,"Cannot log to the Discord logging channel using the unknown channel id: " + mainChannelID);
+            Zuap.log(Level.SEVERE,"Cannot announce changed insertion in the Discord channel using the unknown channel id: " + channelId);
             return;
         }
+        final long start = System.nanoTime();
+        try {
+            channel.sendMessageEmbeds(change.toEmbed()).complete();
+            sendDuration.recordSince(start);
+        } catch (Exception ex) {
+            failedSends.increment();
+            Zuap.log(Level.SEVERE, "Cannot display changed insertion on Discord, because an error occurred while sending the message.");
+            Zuap.log(Level.SEVERE, ex.getMessage());
+        }
+    }
+
+    /**
+     * Creates a message of packed embeds with a button linking to each insertion, in the order of the embeds, followed
+     * by the button to report issues.
+     */
+    static Message toMessage(@NotNull final List<MessageEmbed> embeds, @NotNull final List<Insertion> insertions) {
+        final List<Button> buttons = new ArrayList<>(insertions.size() + 1);
+        for (int i = 0; i < insertions.size(); i++) {
+            buttons.add(insertions.get(i).getLinkButton(insertions.size() == 1 ? "Insertion Link" : "Insertion " + (i + 1)));
+        }
+        buttons.add(Insertion.getReportButton());
+        final List<ActionRow> rows = new ArrayList<>();
+        for (int i = 0; i < buttons.size(); i += MAX_BUTTONS_PER_ROW) {
+            rows.add(ActionRow.of(buttons.subList(i, Math.min(i + MAX_BUTTONS_PER_ROW, buttons.size()))));
+        }
+        return new MessageBuilder()
+                .setEmbeds(embeds)
+                .setActionRows(rows)
+                .build();
+    }
+
+    private static void send(@NotNull final TextChannel channel, @NotNull final Message message, @NotNull final List<Insertion> insertions) {
+        final long start = System.nanoTime();
         try {
-            channel.sendMessage(insertion.toMessage()).queue();
-            Zuap.log(Level.INFO, "Found new insertion: " + insertion);
+            channel.sendMessage(message).complete();
+            sendDuration.recordSince(start);
+            insertions.forEach(insertion -> Zuap.log(Level.INFO, "Found new insertion: " + insertion));
         } catch (Exception ex) {
+            failedSends.increment();
             Zuap.log(Level.SEVERE, "Cannot display new insertion on Discord, because an error occurred while sending the message.");
             Zuap.log(Level.SEVERE, ex.getMessage());
         }
@@ -1,31 +1,243 @@
 package de.infynyty.zuap.discord;
 
-import lombok.RequiredArgsConstructor;
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.exceptions.InsufficientPermissionException;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 /**
- * A custom handler to log to a Discord server.
+ * A custom handler to log to a Discord server. Records are only put into a bounded, lock-free queue when they are
+ * published, so logging never waits for Discord. A background thread collects them on a fixed interval and packs them
+ * into as few messages as possible, each up to the maximum length Discord allows. Records with the same level and
+ * message within an interval are sent once, together with the number of times they were logged.
  */
-@RequiredArgsConstructor
 public class DiscordLoggingHandler extends Handler {
-    private final long logChannelID;
+
+    /**
+     * Decides what happens to a record that is published while the queue is full.
+     */
+    public enum DropPolicy {
+        /**
+         * Drop the record that was just published.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the record that has been waiting the longest, to make space for the new one.
+         */
+        DROP_OLDEST
+    }
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(5);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
     @NotNull
-    private final JDA jda;
+    private final Consumer<String> sender;
+    private final int capacity;
+    @NotNull
+    private final DropPolicy dropPolicy;
+    private final Queue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of records in the queue, which is kept separately, as {@link ConcurrentLinkedQueue#size()} has to
+     * count all elements.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("discord-log").daemon().factory()
+    );
+
+    /**
+     * Creates a handler logging to a Discord channel, using the default capacity, drop policy and flush interval.
+     *
+     * @param logChannelID The id of the channel to send the log messages to.
+     * @param jda          The connection to Discord.
+     * @param level        The lowest level of records that are sent.
+     */
+    public DiscordLoggingHandler(final long logChannelID, @NotNull final JDA jda, @NotNull final Level level) {
+        this(
+                content -> sendToChannel(logChannelID, jda, content),
+                level,
+                DEFAULT_CAPACITY,
+                DropPolicy.DROP_OLDEST,
+                DEFAULT_FLUSH_INTERVAL
+        );
+    }
+
+    /**
+     * Creates a handler passing its messages to a sender, which is only ever called from a single background thread.
+     *
+     * @param sender        Sends a message of at most {@link Message#MAX_CONTENT_LENGTH} characters.
+     * @param level         The lowest level of records that are sent.
+     * @param capacity      The maximum number of records waiting to be sent.
+     * @param dropPolicy    What to do with records that are published while the queue is full.
+     * @param flushInterval The time between two flushes of the queued records.
+     */
+    public DiscordLoggingHandler(
+            @NotNull final Consumer<String> sender,
+            @NotNull final Level level,
+            final int capacity,
+            @NotNull final DropPolicy dropPolicy,
+            @NotNull final Duration flushInterval
+    ) {
+        this.sender = sender;
+        this.capacity = capacity;
+        this.dropPolicy = dropPolicy;
+        setLevel(level);
+        flusher.scheduleWithFixedDelay(this::send, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a record to be sent with the next flush. Never blocks, if the queue is full a record is dropped according
+     * to the {@link DropPolicy}.
+     */
     @Override
-    public void publish(LogRecord record) {
+    public void publish(final LogRecord record) {
+        if (record == null || !isLoggable(record)) return;
+        while (true) {
+            final int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    queue.offer(record);
+                    return;
+                }
+            } else if (dropPolicy == DropPolicy.DROP_NEWEST || queue.poll() == null) {
+                dropped.increment();
+                return;
+            } else {
+                // the oldest record made space for this one, so the size stays the same
+                dropped.increment();
+                queue.offer(record);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends all queued records in the background, without waiting for them to be sent.
+     */
+    @Override
+    public void flush() {
+        try {
+            flusher.execute(this::send);
+        } catch (RejectedExecutionException e) {
+            // the handler has been closed
+        }
+    }
+
+    /**
+     * Sends all queued records and stops the background thread.
+     */
+    @Override
+    public void close() throws SecurityException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(DEFAULT_FLUSH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        send();
+    }
+
+    /**
+     * Takes all queued records, merges records with the same level and message and sends them in as few messages as
+     * possible. Merged records are shown with the time of the first one.
+     */
+    private synchronized void send() {
+        // the time of the first record and the number of records for each level and message
+        final Map<String, String> firstTimes = new LinkedHashMap<>();
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        LogRecord record;
+        while ((record = queue.poll()) != null) {
+            size.decrementAndGet();
+            final String text = "`" + record.getLevel().getName() + "` " + getText(record);
+            firstTimes.putIfAbsent(text, LocalTime.ofInstant(record.getInstant(), ZoneId.systemDefault()).format(TIME_FORMAT));
+            counts.merge(text, 1, Integer::sum);
+        }
+        final long droppedRecords = dropped.sumThenReset();
+        if (counts.isEmpty() && droppedRecords == 0) return;
+
+        final List<String> lines = new ArrayList<>(counts.size() + 1);
+        counts.forEach((text, count) -> {
+            final String line = "`" + firstTimes.get(text) + "` " + text;
+            lines.add(count == 1 ? line : line + " (" + count + "×)");
+        });
+        if (droppedRecords > 0) {
+            lines.add(droppedRecords + " log records were dropped, because too many were logged at once.");
+        }
+        for (final String message : pack(lines, Message.MAX_CONTENT_LENGTH)) {
+            try {
+                sender.accept(message);
+            } catch (RuntimeException e) {
+                System.err.println("Cannot send log message to Discord. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Joins lines into as few messages as possible, each at most the given length. Lines that are too long on their own
+     * are shortened.
+     *
+     * @param lines     The lines to send.
+     * @param maxLength The maximum length of a message.
+     * @return The messages.
+     */
+    @NotNull
+    private static List<String> pack(@NotNull final List<String> lines, final int maxLength) {
+        final List<String> messages = new ArrayList<>();
+        final StringBuilder message = new StringBuilder();
+        for (final String line : lines) {
+            final String shortened = line.length() > maxLength ? line.substring(0, maxLength - 1) + "…" : line;
+            if (!message.isEmpty() && message.length() + 1 + shortened.length() > maxLength) {
+                messages.add(message.toString());
+                message.setLength(0);
+            }
+            if (!message.isEmpty()) message.append('\n');
+            message.append(shortened);
+        }
+        if (!message.isEmpty()) {
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    @NotNull
+    private static String getText(@NotNull final LogRecord record) {
+        return record.getThrown() == null
+                ? String.valueOf(record.getMessage())
+                : record.getMessage() + " " + record.getThrown();
+    }
+
+    private static void sendToChannel(final long logChannelID, @NotNull final JDA jda, @NotNull final String content) {
         final TextChannel channel = jda.getChannelById(TextChannel.class, logChannelID);
         if (channel == null) {
             System.err.println("Cannot log to the Discord logging channel using the unknown channel id: " + logChannelID);
             return;
         }
         try {
-            channel.sendMessage(record.getMessage()).queue();
+            channel.sendMessage(content).queue();
         } catch (InsufficientPermissionException ex) {
             System.err.println("Cannot log to the Discord channel with the id: " + logChannelID + " because of insufficient permissions");
         } catch (IllegalArgumentException ex) {
@@ -34,14 +246,4 @@ public class DiscordLoggingHandler extends Handler {
             System.err.println("Cannot log to the Discord channel with the id: " + logChannelID + " because of an unsupported action");
         }
     }
-
-    @Override
-    public void flush() {
-
-    }
-
-    @Override
-    public void close() throws SecurityException {
-
-    }
 }
@@ -0,0 +1,71 @@
+package de.infynyty.zuap.discord;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.insertion.Insertion;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Packs the embeds of insertions into as few Discord messages as possible. A message contains at most
+ * {@value #MAX_EMBEDS_PER_MESSAGE} embeds whose combined length does not exceed
+ * {@link MessageEmbed#EMBED_MAX_LENGTH_BOT}, which are the limits Discord enforces for bots and webhooks alike.
+ */
+final class EmbedPacker {
+
+    /** The maximum number of embeds Discord allows in a single message. **/
+    static final int MAX_EMBEDS_PER_MESSAGE = 10;
+
+    /**
+     * Sends a single message.
+     */
+    @FunctionalInterface
+    interface MessageSender {
+        /**
+         * @param embeds     The embeds of the message.
+         * @param insertions The insertions the embeds were created from, in the same order.
+         */
+        void send(@NotNull List<MessageEmbed> embeds, @NotNull List<Insertion> insertions);
+    }
+
+    private EmbedPacker() {
+    }
+
+    /**
+     * Creates the embed of every insertion and sends them in messages, one after another. Insertions whose embed cannot
+     * be created are logged and left out.
+     *
+     * @param insertions The insertions to send.
+     * @param sender     Sends each message, which must not keep the lists it is given, as they are reused.
+     */
+    static void pack(@NotNull final List<Insertion> insertions, @NotNull final MessageSender sender) {
+        final List<MessageEmbed> embeds = new ArrayList<>(MAX_EMBEDS_PER_MESSAGE);
+        final List<Insertion> included = new ArrayList<>(MAX_EMBEDS_PER_MESSAGE);
+        int length = 0;
+        for (final Insertion insertion : insertions) {
+            final MessageEmbed embed;
+            try {
+                embed = insertion.toEmbed();
+            } catch (Exception ex) {
+                Zuap.log(Level.SEVERE, "Cannot announce insertion, because its message could not be created: " + insertion);
+                Zuap.log(Level.SEVERE, ex.getMessage());
+                continue;
+            }
+            if (embeds.size() == MAX_EMBEDS_PER_MESSAGE || length + embed.getLength() > MessageEmbed.EMBED_MAX_LENGTH_BOT) {
+                sender.send(embeds, included);
+                embeds.clear();
+                included.clear();
+                length = 0;
+            }
+            embeds.add(embed);
+            included.add(insertion);
+            length += embed.getLength();
+        }
+        if (!embeds.isEmpty()) {
+            sender.send(embeds, included);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.infynyty.zuap.discord;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.subscription.ChannelAnnouncer;
+import lombok.RequiredArgsConstructor;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Announces insertions by posting their embeds to a Discord webhook, which does not need a bot or a gateway
+ * connection. As webhooks are plain HTTP requests, this announcer can also be pointed at a stub server to measure the
+ * whole application without Discord. A webhook always posts to the channel it was created for, so the channel ids of
+ * subscriptions are ignored.
+ */
+@RequiredArgsConstructor
+public class WebhookAnnouncer implements InsertionAnnouncer, ChannelAnnouncer {
+
+    private static final String SOURCE = "Discord";
+
+    @NotNull
+    private final URI webhook;
+    @NotNull
+    private final HttpFetcher httpFetcher;
+
+    @Override
+    public void announce(@NotNull final Insertion insertion) {
+        announceAll(List.of(insertion));
+    }
+
+    /**
+     * Posts the insertions in as few messages as Discord allows (see {@link EmbedPacker}), one message after another.
+     * @param insertions The insertions to announce, which must not be null.
+     */
+    @Override
+    public void announceAll(@NotNull final List<Insertion> insertions) {
+        EmbedPacker.pack(insertions, (embeds, included) -> send(embeds));
+    }
+
+    @Override
+    public void announceAll(final long channelId, @NotNull final List<Insertion> insertions) {
+        announceAll(insertions);
+    }
+
+    @Override
+    public void announceChange(@NotNull final InsertionChange change) {
+        send(List.of(change.toEmbed()));
+    }
+
+    @Override
+    public void announceChange(final long channelId, @NotNull final InsertionChange change) {
+        announceChange(change);
+    }
+
+    private void send(@NotNull final List<MessageEmbed> embeds) {
+        final StringBuilder body = new StringBuilder("{\"embeds\":[");
+        for (int i = 0; i < embeds.size(); i++) {
+            if (i > 0) body.append(',');
+            body.append(new String(embeds.get(i).toData().toJson(), StandardCharsets.UTF_8));
+        }
+        body.append("]}");
+        try {
+            final HttpResponse<String> response = httpFetcher.send(SOURCE, HttpRequest.newBuilder()
+                    .uri(webhook)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())));
+            if (response.statusCode() > 299) {
+                Zuap.log(Level.SEVERE, SOURCE, "Could not post " + embeds.size() + " insertions to the webhook, got status " + response.statusCode() + ": " + response.body());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Zuap.log(Level.SEVERE, SOURCE, "Could not post " + embeds.size() + " insertions to the webhook. " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.infynyty.zuap.geo;
+
+/**
+ * Maps coordinates onto a grid of roughly square cells, so that nearby insertions can be found by looking up a few
+ * cells instead of comparing all coordinates. The grid is only accurate for a small region like Switzerland, as the
+ * width of a cell is computed at a fixed latitude.
+ */
+public final class GeoCell {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    private static final double METERS_PER_DEGREE_LATITUDE = Math.PI * EARTH_RADIUS_METERS / 180;
+    /**
+     * The latitude the width of cells is computed at, which is the latitude of Zurich.
+     */
+    private static final double REFERENCE_LATITUDE = 47.37;
+    private static final double METERS_PER_DEGREE_LONGITUDE =
+            METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(REFERENCE_LATITUDE));
+
+    private GeoCell() {
+    }
+
+    /**
+     * @return {@code True}, if both coordinates are known.
+     */
+    public static boolean isValid(final double latitude, final double longitude) {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Returns the row of the cell containing the given latitude.
+     */
+    public static int row(final double latitude, final double cellSizeMeters) {
+        return (int) Math.floor(latitude * METERS_PER_DEGREE_LATITUDE / cellSizeMeters);
+    }
+
+    /**
+     * Returns the column of the cell containing the given longitude.
+     */
+    public static int column(final double longitude, final double cellSizeMeters) {
+        return (int) Math.floor(longitude * METERS_PER_DEGREE_LONGITUDE / cellSizeMeters);
+    }
+
+    /**
+     * Returns the actual east-west width of a cell at the given latitude, which differs slightly from its height away
+     * from the reference latitude.
+     */
+    public static double cellWidthMeters(final double latitude, final double cellSizeMeters) {
+        return cellSizeMeters * Math.cos(Math.toRadians(latitude)) / Math.cos(Math.toRadians(REFERENCE_LATITUDE));
+    }
+
+    /**
+     * Packs the row and column of a cell into a single key.
+     */
+    public static long key(final int row, final int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the key of the cell containing the given coordinates.
+     */
+    public static long of(final double latitude, final double longitude, final double cellSizeMeters) {
+        return key(row(latitude, cellSizeMeters), column(longitude, cellSizeMeters));
+    }
+
+    /**
+     * Computes the distance between two points on the surface of the earth using the haversine formula.
+     *
+     * @return The distance in meters.
+     */
+    public static double distanceMeters(
+            final double latitude1,
+            final double longitude1,
+            final double latitude2,
+            final double longitude2
+    ) {
+        final double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        final double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.pow(Math.sin(deltaLatitude / 2), 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.pow(Math.sin(deltaLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,213 @@
+package de.infynyty.zuap.geo;
+
+import de.infynyty.zuap.insertion.Insertion;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes the location of all current insertions of all handlers on a {@link GeoCell} grid, so that the insertions
+ * near a point are found by looking at a few cells instead of every insertion. Handlers keep the index up to date
+ * with the insertions they add and remove in each update. Insertions without coordinates are not indexed.
+ * <p>
+ * Updates change only the cells they touch: each changed cell is copied, the changes are applied to the copy and the
+ * copy replaces the cell. Published cells are never changed again, so queries read them without locking and never
+ * wait for an update, while updates only wait for each other. As the changes of an update become visible cell by
+ * cell, a query running at the same time as an update may see only part of its changes.
+ */
+public class GeoIndex {
+
+    private static final double CELL_SIZE_METERS = 250;
+    /**
+     * Nearest neighbour searches that have not found enough insertions within this many rings of cells around the
+     * point compare all insertions instead, as the remaining insertions are spread over too many cells.
+     */
+    private static final int MAX_SEARCH_RINGS = 100;
+
+    private static class Entry {
+        @NotNull
+        private final Insertion insertion;
+        private final long cell;
+
+        private Entry(@NotNull final Insertion insertion) {
+            this.insertion = insertion;
+            this.cell = GeoCell.of(insertion.getLatitude(), insertion.getLongitude(), CELL_SIZE_METERS);
+        }
+
+        private double distanceTo(final double latitude, final double longitude) {
+            return GeoCell.distanceMeters(latitude, longitude, insertion.getLatitude(), insertion.getLongitude());
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * The published cells, whose lists are never changed.
+     */
+    private final Map<Long, List<Entry>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Applies the changes of an update.
+     *
+     * @param removed The keys of insertions that are no longer online.
+     * @param added   The insertions that are new, changed or not indexed yet. They replace indexed insertions with the
+     *                same key.
+     */
+    public synchronized void update(@NotNull final Collection<String> removed, @NotNull final Collection<? extends Insertion> added) {
+        if (removed.isEmpty() && added.isEmpty()) return;
+        // the cells are copied before their first change and published once all changes have been applied
+        final Map<Long, List<Entry>> changedCells = new HashMap<>();
+        for (final String key : removed) {
+            remove(changedCells, key);
+        }
+        for (final Insertion insertion : added) {
+            remove(changedCells, insertion.getKey());
+            if (!GeoCell.isValid(insertion.getLatitude(), insertion.getLongitude())) continue;
+            final Entry entry = new Entry(insertion);
+            entries.put(insertion.getKey(), entry);
+            getChangedCell(changedCells, entry.cell).add(entry);
+        }
+        for (final Map.Entry<Long, List<Entry>> cell : changedCells.entrySet()) {
+            if (cell.getValue().isEmpty()) {
+                cells.remove(cell.getKey());
+            } else {
+                cells.put(cell.getKey(), cell.getValue());
+            }
+        }
+    }
+
+    /**
+     * Indexes an insertion, replacing an insertion with the same key.
+     *
+     * @param insertion The insertion.
+     */
+    public void add(@NotNull final Insertion insertion) {
+        update(List.of(), List.of(insertion));
+    }
+
+    /**
+     * @param key The key of the insertion to remove from the index.
+     */
+    public void remove(@NotNull final String key) {
+        update(List.of(key), List.of());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void remove(@NotNull final Map<Long, List<Entry>> changedCells, @NotNull final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry == null) return;
+        getChangedCell(changedCells, entry.cell).remove(entry);
+    }
+
+    @NotNull
+    private List<Entry> getChangedCell(@NotNull final Map<Long, List<Entry>> changedCells, final long cell) {
+        return changedCells.computeIfAbsent(cell, key -> {
+            final List<Entry> published = cells.get(key);
+            return published == null ? new ArrayList<>(2) : new ArrayList<>(published);
+        });
+    }
+
+    /**
+     * Finds all insertions within a distance of a point.
+     *
+     * @param latitude     The latitude of the point.
+     * @param longitude    The longitude of the point.
+     * @param radiusMeters The maximum distance.
+     * @return The insertions ordered by their distance to the point, closest first.
+     */
+    @NotNull
+    public List<Insertion> within(final double latitude, final double longitude, final double radiusMeters) {
+        final int row = GeoCell.row(latitude, CELL_SIZE_METERS);
+        final int column = GeoCell.column(longitude, CELL_SIZE_METERS);
+        // one more cell in each direction makes up for the approximate width of cells
+        final int rowReach = (int) Math.ceil(radiusMeters / CELL_SIZE_METERS) + 1;
+        final int columnReach = (int) Math.ceil(radiusMeters / GeoCell.cellWidthMeters(latitude, CELL_SIZE_METERS)) + 1;
+
+        final List<Entry> matches = new ArrayList<>();
+        if ((long) (2 * rowReach + 1) * (2 * columnReach + 1) > entries.size()) {
+            // the area covers more cells than there are insertions
+            for (final Entry entry : entries.values()) {
+                if (entry.distanceTo(latitude, longitude) <= radiusMeters) {
+                    matches.add(entry);
+                }
+            }
+        } else {
+            for (int r = row - rowReach; r <= row + rowReach; r++) {
+                for (int c = column - columnReach; c <= column + columnReach; c++) {
+                    final List<Entry> cell = cells.get(GeoCell.key(r, c));
+                    if (cell == null) continue;
+                    for (final Entry entry : cell) {
+                        if (entry.distanceTo(latitude, longitude) <= radiusMeters) {
+                            matches.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+        return sortByDistance(matches, latitude, longitude);
+    }
+
+    /**
+     * Finds the insertions closest to a point. The cells around the point are searched ring by ring until the
+     * closest insertions found so far are closer than any insertion in the remaining cells could be.
+     *
+     * @param latitude  The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param count     The maximum number of insertions to find.
+     * @return The insertions ordered by their distance to the point, closest first.
+     */
+    @NotNull
+    public List<Insertion> nearest(final double latitude, final double longitude, final int count) {
+        if (count <= 0) return List.of();
+        if (count >= entries.size()) {
+            return sortByDistance(new ArrayList<>(entries.values()), latitude, longitude);
+        }
+        final int row = GeoCell.row(latitude, CELL_SIZE_METERS);
+        final int column = GeoCell.column(longitude, CELL_SIZE_METERS);
+        // the smallest distance between a point and a cell that lies one more ring away
+        final double ringDistance = Math.min(CELL_SIZE_METERS, GeoCell.cellWidthMeters(latitude, CELL_SIZE_METERS)) * 0.99;
+        final Comparator<Entry> byDistance = Comparator.comparingDouble(entry -> entry.distanceTo(latitude, longitude));
+        // keeps the closest entries found so far, the furthest of them first
+        final PriorityQueue<Entry> closest = new PriorityQueue<>(count + 1, byDistance.reversed());
+
+        for (int ring = 0; ring <= MAX_SEARCH_RINGS; ring++) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                final boolean isEdgeRow = Math.abs(r - row) == ring;
+                for (int c = column - ring; c <= column + ring; c += isEdgeRow ? 1 : 2 * ring) {
+                    final List<Entry> cell = cells.get(GeoCell.key(r, c));
+                    if (cell != null) {
+                        for (final Entry entry : cell) {
+                            closest.add(entry);
+                            if (closest.size() > count) {
+                                closest.poll();
+                            }
+                        }
+                    }
+                    if (ring == 0) break;
+                }
+            }
+            if (closest.size() == count && closest.peek().distanceTo(latitude, longitude) <= ring * ringDistance) {
+                return sortByDistance(new ArrayList<>(closest), latitude, longitude);
+            }
+        }
+        // the remaining insertions are far away, so comparing all of them is cheaper than searching more rings
+        final List<Entry> all = new ArrayList<>(entries.values());
+        all.sort(byDistance);
+        return all.subList(0, count).stream().map(entry -> entry.insertion).toList();
+    }
+
+    @NotNull
+    private static List<Insertion> sortByDistance(@NotNull final List<Entry> entries, final double latitude, final double longitude) {
+        entries.sort(Comparator.comparingDouble(entry -> entry.distanceTo(latitude, longitude)));
+        return entries.stream().map(entry -> entry.insertion).toList();
+    }
+}
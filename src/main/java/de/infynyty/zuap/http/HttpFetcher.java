@@ -0,0 +1,433 @@
+package de.infynyty.zuap.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sends all requests of this application through a single {@link HttpClient}, so that connections are reused across
+ * handlers. Every request gets a timeout and asks for a compressed response, which is decoded transparently. The number
+ * of concurrent requests to the same host is limited and the transferred bytes are recorded for each source.
+ * <p>
+ * For testing without the real websites, all requests can be {@link #redirectTo(URI) redirected} to a stub server and
+ * all responses can be {@link #setRecorder(ResponseRecorder) recorded}.
+ */
+public class HttpFetcher {
+
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final int MAX_REQUESTS_PER_HOST = 4;
+    /**
+     * The header containing the host a request was meant for, if it has been redirected.
+     */
+    public static final String ORIGINAL_HOST_HEADER = "X-Zuap-Original-Host";
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * Runs asynchronous requests, which wait for a free slot of their host without blocking a platform thread.
+     */
+    private static final ExecutorService ASYNC_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    @NotNull
+    private final HttpClient httpClient;
+    @NotNull
+    private final Duration requestTimeout;
+    private final int maxRequestsPerHost;
+    private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+    private final Map<String, TransferStats> stats = new ConcurrentHashMap<>();
+    @Nullable
+    private volatile URI redirectTarget;
+    @Nullable
+    private volatile ResponseRecorder recorder;
+
+    /**
+     * Creates a fetcher that uses the given client and the default limits.
+     *
+     * @param httpClient The client used to send all requests.
+     */
+    public HttpFetcher(@NotNull final HttpClient httpClient) {
+        this(httpClient, REQUEST_TIMEOUT, MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * @param httpClient         The client used to send all requests.
+     * @param requestTimeout     The maximum time to wait for the headers of a response.
+     * @param maxRequestsPerHost The maximum number of requests that are sent to the same host at the same time.
+     */
+    public HttpFetcher(@NotNull final HttpClient httpClient, @NotNull final Duration requestTimeout, final int maxRequestsPerHost) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Creates a fetcher with a client that prefers HTTP/2, so that several requests to the same host share a single
+     * connection.
+     *
+     * @return The new fetcher.
+     */
+    @NotNull
+    public static HttpFetcher create() {
+        return new HttpFetcher(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    /**
+     * Sends a request and returns the decoded body as a string.
+     *
+     * @param source         The name the transferred bytes are recorded under, usually the name of a handler.
+     * @param requestBuilder The request to send.
+     * @return The response.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NotNull
+    public HttpResponse<String> send(@NotNull final String source, @NotNull final HttpRequest.Builder requestBuilder)
+            throws IOException, InterruptedException {
+        final HttpRequest request = prepare(requestBuilder);
+        final TransferStats transferStats = getStats(source);
+        final Semaphore hostLimit = getHostLimit(request);
+        hostLimit.acquire();
+        final long start = System.nanoTime();
+        try {
+            transferStats.requests.increment();
+            final HttpResponse<String> response = httpClient.send(request, info -> HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofByteArray(),
+                    bytes -> decodeToString(bytes, info, transferStats)
+            ));
+            final ResponseRecorder recorder = this.recorder;
+            if (recorder != null) {
+                recorder.record(source, request, response.statusCode(), response.headers().firstValue("Content-Type").orElse(null), response.body());
+            }
+            return response;
+        } finally {
+            transferStats.requestDuration.recordSince(start);
+            hostLimit.release();
+        }
+    }
+
+    /**
+     * Sends a request and returns the decoded body as a stream, so that it can be processed while it is still being
+     * received. The request counts towards the limit of its host until the stream is closed, so the stream must always
+     * be closed.
+     *
+     * @param source         The name the transferred bytes are recorded under, usually the name of a handler.
+     * @param requestBuilder The request to send.
+     * @return The response.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NotNull
+    public HttpResponse<InputStream> sendStreaming(@NotNull final String source, @NotNull final HttpRequest.Builder requestBuilder)
+            throws IOException, InterruptedException {
+        final HttpRequest request = prepare(requestBuilder);
+        final TransferStats transferStats = getStats(source);
+        final Semaphore hostLimit = getHostLimit(request);
+        hostLimit.acquire();
+        final long start = System.nanoTime();
+        try {
+            transferStats.requests.increment();
+            // creating the decoding stream does not read anything, as the body subscriber must not block
+            final ResponseRecorder recorder = this.recorder;
+            final HttpResponse<InputStream> response = httpClient.send(request, info -> HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> new DecodingInputStream(
+                            body,
+                            getContentEncoding(info),
+                            transferStats,
+                            hostLimit::release,
+                            recorder == null ? null : bytes -> recorder.record(
+                                    source,
+                                    request,
+                                    info.statusCode(),
+                                    info.headers().firstValue("Content-Type").orElse(null),
+                                    new String(bytes, getCharset(info))
+                            )
+                    )
+            ));
+            transferStats.requestDuration.recordSince(start);
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            transferStats.requestDuration.recordSince(start);
+            hostLimit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request in the background, see {@link #send(String, HttpRequest.Builder)}. Cancelling the returned future
+     * aborts the request, which also frees its slot of the host.
+     *
+     * @return A future that completes with the response.
+     */
+    @NotNull
+    public CompletableFuture<HttpResponse<String>> sendAsync(
+            @NotNull final String source,
+            @NotNull final HttpRequest.Builder requestBuilder
+    ) {
+        final CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        final Future<?> task = ASYNC_EXECUTOR.submit(() -> {
+            try {
+                response.complete(send(source, requestBuilder));
+            } catch (IOException | RuntimeException e) {
+                response.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                response.completeExceptionally(e);
+                Thread.currentThread().interrupt();
+            }
+        });
+        response.whenComplete((result, exception) -> {
+            if (response.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Sends all following requests to another server instead, keeping their path and query. The host a request was
+     * meant for is sent in the {@value ORIGINAL_HOST_HEADER} header and requests are still limited per original host.
+     *
+     * @param target The server to send requests to or {@code null}, to send requests to their original host again.
+     */
+    public void redirectTo(@Nullable final URI target) {
+        this.redirectTarget = target;
+    }
+
+    /**
+     * Passes the decoded body of every following response to a recorder. The body of a streamed response is passed on
+     * once its stream is closed.
+     *
+     * @param recorder The recorder or {@code null}, to stop recording.
+     */
+    public void setRecorder(@Nullable final ResponseRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the transfer statistics of a source, which are created if the source has not sent a request yet.
+     *
+     * @param source The name of the source.
+     * @return The statistics.
+     */
+    @NotNull
+    public TransferStats getStats(@NotNull final String source) {
+        return stats.computeIfAbsent(source, TransferStats::new);
+    }
+
+    /**
+     * @return The transfer statistics of all sources that have sent a request.
+     */
+    @NotNull
+    public Map<String, TransferStats> getAllStats() {
+        return Map.copyOf(stats);
+    }
+
+    @NotNull
+    private HttpRequest prepare(@NotNull final HttpRequest.Builder requestBuilder) {
+        final HttpRequest request = requestBuilder
+                .timeout(requestTimeout)
+                .setHeader("Accept-Encoding", ACCEPTED_ENCODINGS)
+                .build();
+        final URI target = redirectTarget;
+        if (target == null) return request;
+        final URI original = request.uri();
+        return requestBuilder
+                .uri(target.resolve(original.getRawPath() + (original.getRawQuery() == null ? "" : "?" + original.getRawQuery())))
+                .setHeader(ORIGINAL_HOST_HEADER, getHost(original))
+                .build();
+    }
+
+    @NotNull
+    private Semaphore getHostLimit(@NotNull final HttpRequest request) {
+        final String host = request.headers().firstValue(ORIGINAL_HOST_HEADER).orElse(getHost(request.uri()));
+        return hostLimits.computeIfAbsent(host, name -> new Semaphore(maxRequestsPerHost, true));
+    }
+
+    @NotNull
+    private static String getHost(@NotNull final URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    @NotNull
+    private static String decodeToString(
+            final byte[] bytes,
+            @NotNull final HttpResponse.ResponseInfo info,
+            @NotNull final TransferStats transferStats
+    ) {
+        transferStats.wireBytes.add(bytes.length);
+        try (final InputStream decoded = decode(new ByteArrayInputStream(bytes), getContentEncoding(info))) {
+            final byte[] body = decoded.readAllBytes();
+            transferStats.decodedBytes.add(body.length);
+            return new String(body, getCharset(info));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @NotNull
+    private static InputStream decode(@NotNull final InputStream body, @Nullable final String encoding) throws IOException {
+        if (encoding == null) return body;
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    @Nullable
+    private static String getContentEncoding(@NotNull final HttpResponse.ResponseInfo info) {
+        return info.headers()
+                .firstValue("Content-Encoding")
+                .map(encoding -> encoding.trim().toLowerCase(Locale.ROOT))
+                .orElse(null);
+    }
+
+    @NotNull
+    private static Charset getCharset(@NotNull final HttpResponse.ResponseInfo info) {
+        return getCharset(info.headers());
+    }
+
+    /**
+     * Returns the charset named in the {@code Content-Type} header of a response, so that a streamed body can be read.
+     *
+     * @param headers The headers of the response.
+     * @return The charset or UTF-8, if none or an unknown one is named.
+     */
+    @NotNull
+    public static Charset getCharset(@NotNull final HttpHeaders headers) {
+        final String contentType = headers.firstValue("Content-Type").orElse("");
+        for (final String parameter : contentType.split(";")) {
+            final String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                try {
+                    return Charset.forName(trimmed.substring(8).replace("\"", ""));
+                } catch (IllegalArgumentException e) {
+                    return StandardCharsets.UTF_8;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Decodes a streamed body once it is first read and counts the bytes before and after decoding. Releases the slot
+     * of its host once it is closed and passes on a copy of the decoded body, if requested.
+     */
+    private static class DecodingInputStream extends InputStream {
+        @NotNull
+        private final InputStream wire;
+        @Nullable
+        private final String encoding;
+        @NotNull
+        private final TransferStats transferStats;
+        @NotNull
+        private final Runnable onClose;
+        @Nullable
+        private final Consumer<byte[]> onBody;
+        @Nullable
+        private final ByteArrayOutputStream copy;
+        @Nullable
+        private InputStream decoded;
+        private boolean isClosed = false;
+
+        private DecodingInputStream(
+                @NotNull final InputStream body,
+                @Nullable final String encoding,
+                @NotNull final TransferStats transferStats,
+                @NotNull final Runnable onClose,
+                @Nullable final Consumer<byte[]> onBody
+        ) {
+            this.wire = new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b >= 0) transferStats.wireBytes.increment();
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    final int read = super.read(buffer, offset, length);
+                    if (read > 0) transferStats.wireBytes.add(read);
+                    return read;
+                }
+            };
+            this.encoding = encoding;
+            this.transferStats = transferStats;
+            this.onClose = onClose;
+            this.onBody = onBody;
+            this.copy = onBody == null ? null : new ByteArrayOutputStream();
+        }
+
+        @NotNull
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                decoded = decode(wire, encoding);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = decoded().read();
+            if (b >= 0) {
+                transferStats.decodedBytes.increment();
+                if (copy != null) copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = decoded().read(buffer, offset, length);
+            if (read > 0) {
+                transferStats.decodedBytes.add(read);
+                if (copy != null) copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (isClosed) return;
+            isClosed = true;
+            try {
+                (decoded == null ? wire : decoded).close();
+            } finally {
+                onClose.run();
+                if (onBody != null && copy != null) {
+                    onBody.accept(copy.toByteArray());
+                }
+            }
+        }
+    }
+}
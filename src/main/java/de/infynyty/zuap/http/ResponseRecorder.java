@@ -0,0 +1,30 @@
+package de.infynyty.zuap.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.http.HttpRequest;
+
+/**
+ * Receives the responses of all requests sent through an {@link HttpFetcher}, for example to save them to disk.
+ */
+public interface ResponseRecorder {
+
+    /**
+     * Records a response. Called on the thread that received the response, so implementations must be thread-safe
+     * and should not block for long.
+     *
+     * @param source      The name the request was sent for, usually the name of a handler.
+     * @param request     The request.
+     * @param statusCode  The status code of the response.
+     * @param contentType The {@code Content-Type} header of the response, if there is one.
+     * @param body        The decoded body of the response.
+     */
+    void record(
+            @NotNull final String source,
+            @NotNull final HttpRequest request,
+            final int statusCode,
+            @Nullable final String contentType,
+            @NotNull final String body
+    );
+}
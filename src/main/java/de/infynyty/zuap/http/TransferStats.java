@@ -0,0 +1,55 @@
+package de.infynyty.zuap.http;
+
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests of a single source and the bytes they transferred, both as received and after decompression,
+ * and exposes them as {@link Metrics}.
+ */
+public class TransferStats {
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder wireBytes = new LongAdder();
+    final LongAdder decodedBytes = new LongAdder();
+    /**
+     * The time from sending a request until its body has been received, or only its headers for streamed bodies.
+     */
+    final Histogram requestDuration;
+
+    TransferStats(@NotNull final String source) {
+        requestDuration = Metrics.histogram("zuap_http_request_duration_seconds", "Duration of HTTP requests.", "source", source);
+        Metrics.counter("zuap_http_requests_total", "Number of HTTP requests.", requests::sum, "source", source);
+        Metrics.counter("zuap_http_received_bytes_total", "Body bytes received, before decompression.", wireBytes::sum, "source", source);
+        Metrics.counter("zuap_http_decoded_bytes_total", "Body bytes received, after decompression.", decodedBytes::sum, "source", source);
+    }
+
+    /**
+     * @return The number of requests that were sent.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of body bytes that were received, before decompression.
+     */
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    /**
+     * @return The number of body bytes after decompression.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getRequests() + " requests, " + getWireBytes() + " bytes received, " + getDecodedBytes() + " bytes decoded";
+    }
+}
@@ -8,14 +8,11 @@ import org.json.JSONObject;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.Instant;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
-import java.util.Date;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.logging.Level;
 
 public class FlatfoxInsertion extends Insertion {
@@ -37,28 +34,16 @@ public class FlatfoxInsertion extends Insertion {
     }
 
     @Override
-    protected SortedMap<String, Optional<String>> setProperties() {
-        SortedMap<String, Optional<String>> map = new TreeMap<>();
-        map.put("Rent", setRent() == RENT_UNDEFINED ? Optional.empty() : Optional.of("CHF " + setRent()));
-        map.put("Move-in Date", setMoveInDate() == null ? Optional.empty() : Optional.of(new SimpleDateFormat("dd.MM.yyyy").format(setMoveInDate())));
-        map.put("Next Tenant Wanted", Optional.of(setIsNewTenantWanted() ? "Yes" : "No"));
-        map.put("Address", setAddress().isBlank() ? Optional.empty() : Optional.of(setAddress()));
-        map.put("Living space", setLivingSpace() == RENT_UNDEFINED ? Optional.empty() : Optional.of(setLivingSpace() + "m²"));
-        return map;
-    }
-
-    @Override
-    protected @Nullable Date setMoveInDate() {
+    protected @Nullable LocalDate setMoveInDate() {
         if (!super.getJsonObject().has("moving_date") || super.getJsonObject().isNull("moving_date")) {
             return null;
         }
-        final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
         try {
-            return simpleDateFormat.parse(super.getJsonObject().getString("moving_date"));
-        } catch (ParseException e) {
+            return LocalDate.parse(super.getJsonObject().getString("moving_date"));
+        } catch (DateTimeParseException e) {
             Zuap.log(Level.WARNING, "Cannot parse the following moving date for Flatfox insertion: " + super.getJsonObject().getString("moving_date"));
         }
-        return new Date(0);
+        return null;
     }
 
     @Override
@@ -67,10 +52,9 @@ public class FlatfoxInsertion extends Insertion {
     }
 
     @Override
-    protected @Nullable Date setPostDate() {
+    protected @Nullable LocalDate setPostDate() {
         final OffsetDateTime offsetDateTime = OffsetDateTime.parse(super.getJsonObject().getString("created"));
-        final Instant instant = offsetDateTime.toInstant();
-        return Date.from(instant);
+        return offsetDateTime.atZoneSameInstant(ZONE).toLocalDate();
     }
 
     @Override
@@ -81,11 +65,45 @@ public class FlatfoxInsertion extends Insertion {
         return super.getJsonObject().getInt("price_display");
     }
 
-    private String setAddress() {
-        return super.getJsonObject().getString("public_address");
+    /**
+     * Shows the rent with its currency, the address and the living space, which only Flatfox states.
+     */
+    @Override
+    public @NotNull SortedMap<String, Optional<String>> getProperties() {
+        final SortedMap<String, Optional<String>> map = super.getProperties();
+        map.put("Rent", getRent() == RENT_UNDEFINED ? Optional.empty() : Optional.of("CHF " + getRent()));
+        map.put("Address", getAddress() == null || getAddress().isBlank() ? Optional.empty() : Optional.of(getAddress()));
+        map.put("Living space", getLivingSpace() == RENT_UNDEFINED ? Optional.empty() : Optional.of(getLivingSpace() + "m²"));
+        return map;
+    }
+
+    @Override
+    protected @Nullable String setAddress() {
+        return super.getJsonObject().optString("public_address", null);
+    }
+
+    @Override
+    protected @Nullable String setCity() {
+        return super.getJsonObject().optString("city", null);
+    }
+
+    @Override
+    protected @Nullable String setZip() {
+        return super.getJsonObject().optString("zipcode", null);
     }
 
-    private int setLivingSpace() {
+    @Override
+    protected double setLatitude() {
+        return super.getJsonObject().optDouble("latitude", Double.NaN);
+    }
+
+    @Override
+    protected double setLongitude() {
+        return super.getJsonObject().optDouble("longitude", Double.NaN);
+    }
+
+    @Override
+    protected @Range(from = RENT_UNDEFINED, to = Integer.MAX_VALUE) int setLivingSpace() {
         if (!super.getJsonObject().has("surface_living") || super.getJsonObject().isNull("surface_living")) {
             return RENT_UNDEFINED;
         }
@@ -1,26 +1,24 @@
 package de.infynyty.zuap.insertion;
 
+import de.infynyty.zuap.http.HttpFetcher;
 import io.github.cdimascio.dotenv.Dotenv;
 import lombok.Getter;
 import lombok.extern.java.Log;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.MessageBuilder;
-import net.dv8tion.jda.api.entities.Message;
-import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.jsoup.nodes.Element;
 
 import java.awt.*;
-import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.logging.Level;
 
@@ -29,32 +27,100 @@ import java.util.logging.Level;
  * All methods of this class will only work for this exact website and will break, if there are any significant changes
  * to the html file.
  */
-@Getter
 @Log
 public abstract class Insertion {
 
     protected static final int RENT_UNDEFINED = -1;
-    private static final int MAX_DESCRIPTION_LENGTH = 200;
-    private static final String JSONLINK_KEY = Dotenv.load().get("JSONLINK_KEY");
+    /**
+     * Marks a missing date, which is stored in days since the epoch.
+     */
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    /**
+     * The format used to display dates in announcements.
+     */
+    protected static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    /**
+     * The time zone of all websites, used to turn points in time into dates.
+     */
+    protected static final ZoneId ZONE = ZoneId.of("Europe/Zurich");
+    private static final String JSONLINK_KEY = Dotenv.configure().ignoreIfMissing().load().get("JSONLINK_KEY");
+    /**
+     * The maximum time to wait for a link preview when creating a message.
+     */
+    private static final Duration LINK_PREVIEW_DEADLINE = Duration.ofSeconds(2);
+    /**
+     * Fetches the link previews of announced insertions, which is only possible once an {@link HttpFetcher} has been
+     * set using {@link #setHttpFetcher(HttpFetcher)}.
+     */
+    @Nullable
+    private static volatile LinkPreviewCache linkPreviews;
 
+    /**
+     * The source of this insertion, which is only available while the constructor runs. It is released afterwards, so
+     * that a stored insertion does not keep a part of the parsed html document or JSON response alive.
+     */
     @Nullable
     private Element element;
 
     @Nullable
     private JSONObject jsonObject;
 
-    @NotNull
-    protected final URI insertionURI;
+    /**
+     * The html of {@link #element}, which is serialized at most once.
+     */
     @Nullable
-    private final Date moveInDate;
+    private String elementHtml;
+
+    /**
+     * The link to this insertion. Stored as a string instead of a {@link URI}, which would keep several parsed
+     * components of the link alive. If the link already is normalized, this is the same instance as {@link #key}.
+     */
+    @NotNull
+    private final String link;
+    /**
+     * The normalized form of {@link #link}, used to identify an insertion across updates.
+     */
+    @Getter
+    @NotNull
+    private final String key;
+    /**
+     * The move-in date in days since the epoch or {@link #NO_DATE}.
+     */
+    private final int moveInDay;
+    @Getter
     @Range(from = RENT_UNDEFINED, to = Integer.MAX_VALUE)
     private final int rent;
+    @Getter
     private final boolean isNextTenantWanted;
+    /**
+     * The post date in days since the epoch or {@link #NO_DATE}.
+     */
+    private final int postDay;
+    @Getter
     @Nullable
-    private final Date postDate;
-
-    @NotNull
-    private final SortedMap<String, Optional<String>> properties;
+    private final String city;
+    @Getter
+    @Nullable
+    private final String zip;
+    @Getter
+    @Nullable
+    private final String address;
+    @Getter
+    @Range(from = RENT_UNDEFINED, to = Integer.MAX_VALUE)
+    private final int livingSpace;
+    /**
+     * The coordinates of this insertion or {@link Double#NaN}, if they are unknown.
+     */
+    @Getter
+    private final double latitude;
+    @Getter
+    private final double longitude;
+    /**
+     * A hash of the rent, dates and location shown in announcements, so that a changed insertion can be found with a
+     * single comparison instead of comparing every property.
+     */
+    @Getter
+    private final long contentHash;
 
     /**
      * Constructs a new insertion object from a given html string. This constructor should be used when there is no
@@ -66,14 +132,21 @@ public abstract class Insertion {
      */
     public Insertion(@NotNull final Element element) throws IllegalStateException {
         this.element = element;
-        this.properties = setProperties();
-        this.insertionURI = setInsertionURI();
-        this.moveInDate = setMoveInDate();
-
-        this.isNextTenantWanted = setIsNewTenantWanted();
+        final String link = setInsertionURI().toString();
+        this.key = toKey(URI.create(link));
+        this.link = link.equals(key) ? key : link;
         this.rent = setRent();
-
-        this.postDate = setPostDate();
+        this.moveInDay = toEpochDay(setMoveInDate());
+        this.isNextTenantWanted = setIsNewTenantWanted();
+        this.postDay = toEpochDay(setPostDate());
+        this.city = intern(setCity());
+        this.zip = intern(setZip());
+        this.address = setAddress();
+        this.livingSpace = setLivingSpace();
+        this.latitude = setLatitude();
+        this.longitude = setLongitude();
+        this.contentHash = hashContent();
+        releaseSource();
     }
 
     /**
@@ -86,20 +159,233 @@ public abstract class Insertion {
      */
     public Insertion(@NotNull final JSONObject jsonObject) throws IllegalStateException {
         this.jsonObject = jsonObject;
-        this.properties = setProperties();
-        this.insertionURI = setInsertionURI();
-        this.moveInDate = setMoveInDate();
-
-        this.isNextTenantWanted = setIsNewTenantWanted();
+        final String link = setInsertionURI().toString();
+        this.key = toKey(URI.create(link));
+        this.link = link.equals(key) ? key : link;
         this.rent = setRent();
-
-        this.postDate = setPostDate();
+        this.moveInDay = toEpochDay(setMoveInDate());
+        this.isNextTenantWanted = setIsNewTenantWanted();
+        this.postDay = toEpochDay(setPostDate());
+        this.city = intern(setCity());
+        this.zip = intern(setZip());
+        this.address = setAddress();
+        this.livingSpace = setLivingSpace();
+        this.latitude = setLatitude();
+        this.longitude = setLongitude();
+        this.contentHash = hashContent();
+        releaseSource();
     }
 
+    /*
+     * Each of the following methods is called exactly once by the constructor, in the order in which the fields are
+     * declared. The source of the insertion is only available to these methods, as it is released once all of them
+     * have been called.
+     */
+
     @NotNull
     protected abstract URI setInsertionURI() throws IllegalStateException;
 
-    protected abstract SortedMap<String, Optional<String>> setProperties();
+    /**
+     * Sets the fetcher used to request link previews of insertions, which are only fetched if a JsonLink API key is
+     * configured.
+     *
+     * @param httpFetcher The fetcher shared by the whole application.
+     */
+    public static void setHttpFetcher(@NotNull final HttpFetcher httpFetcher) {
+        if (JSONLINK_KEY == null || JSONLINK_KEY.isEmpty()) {
+            log.log(Level.WARNING, "Missing JsonLink API key, insertions are announced without link previews.");
+            linkPreviews = null;
+            return;
+        }
+        linkPreviews = new LinkPreviewCache(JSONLINK_KEY, httpFetcher);
+    }
+
+    /**
+     * Normalizes an insertion URI, so that links that only differ in letter case of the host, a trailing slash or a
+     * fragment map to the same key.
+     *
+     * @param uri The URI of an insertion.
+     * @return The key identifying the insertion.
+     */
+    @NotNull
+    public static String toKey(@NotNull final URI uri) {
+        final URI normalized = uri.normalize();
+        final StringBuilder builder = new StringBuilder();
+        if (normalized.getScheme() != null) {
+            builder.append(normalized.getScheme().toLowerCase(Locale.ROOT)).append("://");
+        }
+        if (normalized.getRawAuthority() != null) {
+            builder.append(normalized.getRawAuthority().toLowerCase(Locale.ROOT));
+        }
+        String path = normalized.getRawPath() == null ? "" : normalized.getRawPath();
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        builder.append(path);
+        if (normalized.getRawQuery() != null) {
+            builder.append('?').append(normalized.getRawQuery());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the city or region of this insertion. Cities repeat across many insertions, so the returned string is
+     * interned.
+     *
+     * @return The city or {@code null}, if it is unknown.
+     */
+    @Nullable
+    protected String setCity() {
+        return null;
+    }
+
+    /**
+     * Returns the postal code of this insertion, which is interned just like the city.
+     *
+     * @return The postal code or {@code null}, if it is unknown.
+     */
+    @Nullable
+    protected String setZip() {
+        return null;
+    }
+
+    /**
+     * @return The address of this insertion or {@code null}, if it is unknown.
+     */
+    @Nullable
+    protected String setAddress() {
+        return null;
+    }
+
+    /**
+     * @return The living space in square meters or {@value RENT_UNDEFINED}, if it is unknown.
+     */
+    @Range(from = RENT_UNDEFINED, to = Integer.MAX_VALUE)
+    protected int setLivingSpace() {
+        return RENT_UNDEFINED;
+    }
+
+    /**
+     * @return The latitude of this insertion or {@link Double#NaN}, if it is unknown.
+     */
+    protected double setLatitude() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return The longitude of this insertion or {@link Double#NaN}, if it is unknown.
+     */
+    protected double setLongitude() {
+        return Double.NaN;
+    }
+
+    /**
+     * @return The element this insertion is parsed from. Only available while the insertion is being constructed.
+     */
+    @NotNull
+    protected Element getElement() {
+        return Objects.requireNonNull(element, "The html of this insertion has already been released.");
+    }
+
+    /**
+     * @return The JSON data this insertion is parsed from. Only available while the insertion is being constructed.
+     */
+    @NotNull
+    protected JSONObject getJsonObject() {
+        return Objects.requireNonNull(jsonObject, "The JSON data of this insertion has already been released.");
+    }
+
+    /**
+     * Returns the html of the element this insertion was parsed from. The html is only serialized once, no matter how
+     * often this method is called.
+     *
+     * @return The html of the element.
+     */
+    @NotNull
+    protected String getElementHtml() {
+        if (elementHtml == null) {
+            elementHtml = getElement().html();
+        }
+        return elementHtml;
+    }
+
+    private long hashContent() {
+        long hash = 17;
+        hash = hash * 31 + rent;
+        hash = hash * 31 + moveInDay;
+        hash = hash * 31 + (isNextTenantWanted ? 1 : 0);
+        hash = hash * 31 + Objects.hashCode(city);
+        hash = hash * 31 + Objects.hashCode(zip);
+        hash = hash * 31 + Objects.hashCode(address);
+        hash = hash * 31 + livingSpace;
+        hash = hash * 31 + Double.doubleToLongBits(latitude);
+        hash = hash * 31 + Double.doubleToLongBits(longitude);
+        // spread the bits, as the fields mostly differ in their lowest bits
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private void releaseSource() {
+        element = null;
+        jsonObject = null;
+        elementHtml = null;
+    }
+
+    @NotNull
+    public URI getInsertionURI() {
+        return URI.create(link);
+    }
+
+    @Nullable
+    public LocalDate getMoveInDate() {
+        return fromEpochDay(moveInDay);
+    }
+
+    @Nullable
+    public LocalDate getPostDate() {
+        return fromEpochDay(postDay);
+    }
+
+    /**
+     * Returns the properties shown in announcements. They are created whenever this method is called instead of being
+     * stored with the insertion, as only few insertions are ever announced.
+     *
+     * @return The properties by their name, where an empty value is not shown.
+     */
+    @NotNull
+    public SortedMap<String, Optional<String>> getProperties() {
+        final SortedMap<String, Optional<String>> map = new TreeMap<>();
+        map.put("Rent", rent == RENT_UNDEFINED ? Optional.empty() : Optional.of(String.valueOf(rent)));
+        map.put("Move-in Date", formatDate(getMoveInDate()));
+        map.put("Next Tenant Wanted", Optional.of(isNextTenantWanted ? "Yes" : "No"));
+        return map;
+    }
+
+    private static int toEpochDay(@Nullable final LocalDate date) {
+        return date == null ? NO_DATE : Math.toIntExact(date.toEpochDay());
+    }
+
+    @Nullable
+    private static LocalDate fromEpochDay(final int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    @Nullable
+    private static String intern(@Nullable final String value) {
+        return value == null || value.isBlank() ? null : value.strip().intern();
+    }
+
+    /**
+     * Formats a date to be displayed in an announcement.
+     *
+     * @param date The date, which may be null.
+     * @return The formatted date or an empty optional, if there is no date.
+     */
+    @NotNull
+    protected static Optional<String> formatDate(@Nullable final LocalDate date) {
+        return date == null ? Optional.empty() : Optional.of(DISPLAY_DATE_FORMAT.format(date));
+    }
 
     /**
      * Parses the rent from a given html string.
@@ -126,7 +412,7 @@ public abstract class Insertion {
      * @return A date.
      */
     @Nullable
-    protected abstract Date setMoveInDate();
+    protected abstract LocalDate setMoveInDate();
 
     /**
      * Returns the date that this insertion was posted online. Should be overridden by subclasses.
@@ -134,43 +420,55 @@ public abstract class Insertion {
      * @return A date or {@code null}, if the date cannot be parsed for a certain website.
      */
     @Nullable
-    protected Date setPostDate() {
+    protected LocalDate setPostDate() {
         return null;
     }
 
-    public Message toMessage() {
-        final MessageBuilder messageBuilder = new MessageBuilder();
-        final Button linkButton = Button.link(String.valueOf(insertionURI), "Insertion Link");
-        final Button reportButton = Button.link("https://github.com/Infynyty/Zuap/issues", "Report Issues");
-        final ActionRow actionRow = ActionRow.of(linkButton, reportButton);
-
-        messageBuilder.setActionRows(actionRow);
-
+    /**
+     * Creates an embed containing all properties of this insertion, which links to the insertion in its title.
+     *
+     * @return The embed.
+     */
+    public MessageEmbed toEmbed() {
         final EmbedBuilder builder = new EmbedBuilder();
 
+        final SortedMap<String, Optional<String>> properties = getProperties();
         for (final String keys : properties.keySet()) {
             if (properties.get(keys).isEmpty()) continue;
             builder.addField(keys, properties.get(keys).get(), false);
         }
 
 
-        builder.setTitle("New Insertion On " + insertionURI.getHost(), insertionURI.toString()).setColor(Color.getHSBColor(0.35f, 0.76f, 0.78f));
-        messageBuilder.setEmbeds(builder.build());
+        builder.setTitle("New Insertion On " + getInsertionURI().getHost(), link).setColor(Color.getHSBColor(0.35f, 0.76f, 0.78f));
 
-        if (JSONLINK_KEY != null && !JSONLINK_KEY.isEmpty()) {
+        if (linkPreviews != null) {
             addLinkPreview(builder);
-        } else {
-            log.log(Level.WARNING, "Missing JsonLink API key.");
         }
-        return messageBuilder.build();
+        return builder.build();
+    }
+
+    /**
+     * @return A button linking to the issue tracker of this project.
+     */
+    /**
+     * @param label The label of the button.
+     * @return A button opening this insertion on its website.
+     */
+    public Button getLinkButton(@NotNull final String label) {
+        return Button.link(link, label);
+    }
+
+    public static Button getReportButton() {
+        return Button.link("https://github.com/Infynyty/Zuap/issues", "Report Issues");
     }
 
     @Override
     public String toString() {
         final StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("Insertion: {Link: ")
-                .append(insertionURI)
+                .append(link)
                 .append(" ; ");
+        final SortedMap<String, Optional<String>> properties = getProperties();
         for (final String keys : properties.keySet()) {
             if (properties.get(keys).isEmpty()) continue;
             stringBuilder.append("; ").append(keys).append(": ").append(properties.get(keys));
@@ -179,44 +477,21 @@ public abstract class Insertion {
         return stringBuilder.toString();
     }
 
-    private void addLinkPreview(final EmbedBuilder builder) {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://jsonlink.io/api/extract?url=" + insertionURI + "&api_key=" + JSONLINK_KEY))
-                .build();
-
-        HttpResponse<String> response;
-        try {
-            response = client.send(
-                    request,
-                    HttpResponse.BodyHandlers.ofString()
-            );
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        if (response.statusCode() != 200) {
-            log.log(Level.SEVERE, "Error response from JsonLink, is your API key correct?");
-            throw new RuntimeException("Error response from JsonLink, might be caused by an incorrect API key.");
-        }
-
-        final JSONObject jsonObject = new JSONObject(response.body());
-        String insertionDescription = null;
-        if (jsonObject.has("description")) {
-            insertionDescription = jsonObject.getString("description");
-            if (insertionDescription.length() > MAX_DESCRIPTION_LENGTH) {
-                insertionDescription = insertionDescription.substring(0, MAX_DESCRIPTION_LENGTH);
-                insertionDescription = insertionDescription + "...";
-            }
+    /**
+     * Starts fetching the link preview of this insertion in the background, so that it is likely to be ready once
+     * the insertion is turned into a message.
+     */
+    public void prefetchLinkPreview() {
+        if (linkPreviews != null) {
+            linkPreviews.prefetch(key, getInsertionURI());
         }
+    }
 
-        String imageLink = null;
-        if (jsonObject.has("images")) {
-            final JSONArray images = jsonObject.getJSONArray("images");
-            if (!images.isEmpty()) {
-                imageLink = images.getString(0);
-            }
-        }
+    private void addLinkPreview(final EmbedBuilder builder) {
+        final Optional<LinkPreviewCache.LinkPreview> preview = linkPreviews.get(key, getInsertionURI(), LINK_PREVIEW_DEADLINE);
+        if (preview.isEmpty()) return;
+        final String imageLink = preview.get().getImageLink();
+        final String insertionDescription = preview.get().getDescription();
         if (imageLink != null && !imageLink.isBlank()) {
             builder.setImage(imageLink);
         }
@@ -229,6 +504,11 @@ public abstract class Insertion {
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Insertion)) return false;
-        return this.insertionURI.equals(((Insertion) o).getInsertionURI());
+        return this.key.equals(((Insertion) o).getKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
     }
 }
@@ -0,0 +1,107 @@
+package de.infynyty.zuap.insertion;
+
+import lombok.Getter;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Describes how an insertion that is still online has changed since the last update, for example because its rent was
+ * lowered. Only the properties that changed are included.
+ */
+@Getter
+public class InsertionChange {
+
+    /**
+     * The insertion as it is online now.
+     */
+    @NotNull
+    private final Insertion insertion;
+    /**
+     * The values of all changed properties before the change, by the name of the property.
+     */
+    @NotNull
+    private final SortedMap<String, Optional<String>> previousValues;
+    /**
+     * The values of all changed properties after the change, by the name of the property.
+     */
+    @NotNull
+    private final SortedMap<String, Optional<String>> currentValues;
+
+    private InsertionChange(
+            @NotNull final Insertion insertion,
+            @NotNull final SortedMap<String, Optional<String>> previousValues,
+            @NotNull final SortedMap<String, Optional<String>> currentValues
+    ) {
+        this.insertion = insertion;
+        this.previousValues = previousValues;
+        this.currentValues = currentValues;
+    }
+
+    /**
+     * Compares the properties of two versions of the same insertion.
+     *
+     * @param previous The insertion as it was known before.
+     * @param current  The insertion as it is online now.
+     * @return The change, which is {@link #isEmpty() empty} if no shown property has changed.
+     */
+    @NotNull
+    public static InsertionChange between(@NotNull final Insertion previous, @NotNull final Insertion current) {
+        final SortedMap<String, Optional<String>> before = previous.getProperties();
+        final SortedMap<String, Optional<String>> after = current.getProperties();
+        final SortedMap<String, Optional<String>> previousValues = new TreeMap<>();
+        final SortedMap<String, Optional<String>> currentValues = new TreeMap<>();
+        for (final Map.Entry<String, Optional<String>> property : after.entrySet()) {
+            final Optional<String> old = before.getOrDefault(property.getKey(), Optional.empty());
+            if (!Objects.equals(old, property.getValue())) {
+                previousValues.put(property.getKey(), old);
+                currentValues.put(property.getKey(), property.getValue());
+            }
+        }
+        for (final Map.Entry<String, Optional<String>> property : before.entrySet()) {
+            if (!after.containsKey(property.getKey()) && property.getValue().isPresent()) {
+                previousValues.put(property.getKey(), property.getValue());
+                currentValues.put(property.getKey(), Optional.empty());
+            }
+        }
+        return new InsertionChange(current, previousValues, currentValues);
+    }
+
+    /**
+     * @return {@code True}, if no property shown in announcements has changed.
+     */
+    public boolean isEmpty() {
+        return currentValues.isEmpty();
+    }
+
+    /**
+     * Creates an embed listing each changed property with its old and new value, which links to the insertion in its
+     * title.
+     *
+     * @return The embed.
+     */
+    @NotNull
+    public MessageEmbed toEmbed() {
+        final EmbedBuilder builder = new EmbedBuilder();
+        currentValues.forEach((name, value) -> builder.addField(
+                name,
+                previousValues.get(name).orElse("-") + " → " + value.orElse("-"),
+                false
+        ));
+        builder.setTitle("Insertion Changed On " + insertion.getInsertionURI().getHost(), insertion.getInsertionURI().toString())
+                .setColor(Color.getHSBColor(0.12f, 0.76f, 0.88f));
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "Change of " + insertion.getKey() + ": " + previousValues + " -> " + currentValues;
+    }
+}
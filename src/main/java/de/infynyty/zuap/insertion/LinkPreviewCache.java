@@ -0,0 +1,215 @@
+package de.infynyty.zuap.insertion;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.metrics.Counter;
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * Fetches link previews from <a href="https://jsonlink.io">JsonLink</a> in the background and caches them by insertion
+ * URI. Fetching a preview never blocks an announcement for longer than a fixed deadline, if the preview is not ready in
+ * time, the announcement is sent without it.
+ */
+public class LinkPreviewCache {
+
+    public static final int MAX_ENTRIES = 1000;
+    public static final Duration TIME_TO_LIVE = Duration.ofHours(6);
+    private static final int MAX_DESCRIPTION_LENGTH = 200;
+    private static final String SOURCE = "JsonLink";
+    private static final Histogram waitDuration = Metrics.histogram(
+            "zuap_link_preview_wait_seconds", "Time announcements wait for a link preview."
+    );
+    private static final Counter missedPreviews = Metrics.counter(
+            "zuap_link_preview_missed_total", "Announcements sent without a link preview, because it was not ready or failed."
+    );
+
+    /**
+     * The preview information of a single link.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class LinkPreview {
+        @Nullable
+        private final String description;
+        @Nullable
+        private final String imageLink;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        @NotNull
+        private final CompletableFuture<Optional<LinkPreview>> preview;
+        @NotNull
+        private final Instant createdAt;
+    }
+
+    @NotNull
+    private final String apiKey;
+    @NotNull
+    private final HttpFetcher httpFetcher;
+    @NotNull
+    private final Clock clock;
+    /**
+     * All cached previews in access order, so that the least recently used preview is evicted first.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    public LinkPreviewCache(@NotNull final String apiKey, @NotNull final HttpFetcher httpFetcher) {
+        this(apiKey, httpFetcher, Clock.systemUTC(), MAX_ENTRIES);
+    }
+
+    /**
+     * @param apiKey      The JsonLink API key.
+     * @param httpFetcher The fetcher used to request the previews.
+     * @param clock       The clock deciding when a preview has expired.
+     * @param maxEntries  The maximum number of cached previews.
+     */
+    public LinkPreviewCache(
+            @NotNull final String apiKey,
+            @NotNull final HttpFetcher httpFetcher,
+            @NotNull final Clock clock,
+            final int maxEntries
+    ) {
+        this.apiKey = apiKey;
+        this.httpFetcher = httpFetcher;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Starts fetching the preview of a link in the background, unless it is cached already.
+     *
+     * @param key The key of the insertion the link belongs to.
+     * @param uri The link.
+     */
+    public void prefetch(@NotNull final String key, @NotNull final URI uri) {
+        getOrFetch(key, uri);
+    }
+
+    /**
+     * Returns the preview of a link, waiting for it to be fetched for at most the given deadline.
+     *
+     * @param key      The key of the insertion the link belongs to.
+     * @param uri      The link.
+     * @param deadline The maximum time to wait for the preview.
+     * @return The preview or an empty optional, if it could not be fetched in time.
+     */
+    @NotNull
+    public Optional<LinkPreview> get(@NotNull final String key, @NotNull final URI uri, @NotNull final Duration deadline) {
+        final long start = System.nanoTime();
+        try {
+            final Optional<LinkPreview> preview = getOrFetch(key, uri).get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+            if (preview.isEmpty()) {
+                missedPreviews.increment();
+            }
+            return preview;
+        } catch (TimeoutException e) {
+            Zuap.log(Level.INFO, "Link preview for " + uri + " was not ready in time, sending the insertion without it.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Zuap.log(Level.WARNING, "Could not fetch link preview for " + uri + ". " + e.getMessage());
+        } finally {
+            waitDuration.recordSince(start);
+        }
+        missedPreviews.increment();
+        return Optional.empty();
+    }
+
+    @NotNull
+    private synchronized CompletableFuture<Optional<LinkPreview>> getOrFetch(@NotNull final String key, @NotNull final URI uri) {
+        final Entry cached = entries.get(key);
+        if (cached != null && clock.instant().isBefore(cached.createdAt.plus(TIME_TO_LIVE))) {
+            return cached.preview;
+        }
+        final HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("https://jsonlink.io/api/extract?url="
+                        + URLEncoder.encode(uri.toString(), StandardCharsets.UTF_8)
+                        + "&api_key=" + apiKey));
+        final CompletableFuture<Optional<LinkPreview>> preview = new CompletableFuture<>();
+        final Entry entry = new Entry(preview, clock.instant());
+        entries.put(key, entry);
+        httpFetcher
+                .sendAsync(SOURCE, request)
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        Zuap.log(Level.SEVERE, "Error response from JsonLink, is your API key correct?");
+                        return Optional.<LinkPreview>empty();
+                    }
+                    return parse(response.body());
+                })
+                .whenComplete((result, exception) -> {
+                    // failed previews are evicted before anyone sees them fail, so that they are fetched again next time
+                    if (exception != null || result.isEmpty()) {
+                        evict(key, entry);
+                    }
+                    if (exception != null) {
+                        preview.completeExceptionally(exception);
+                    } else {
+                        preview.complete(result);
+                    }
+                });
+        return preview;
+    }
+
+    private synchronized void evict(@NotNull final String key, @NotNull final Entry entry) {
+        entries.remove(key, entry);
+    }
+
+    @NotNull
+    private static Optional<LinkPreview> parse(@NotNull final String body) {
+        final JSONObject jsonObject;
+        try {
+            jsonObject = new JSONObject(body);
+        } catch (JSONException e) {
+            Zuap.log(Level.WARNING, "Could not parse the response from JsonLink. " + e.getMessage());
+            return Optional.empty();
+        }
+        String insertionDescription = null;
+        if (jsonObject.has("description")) {
+            insertionDescription = jsonObject.optString("description");
+            if (insertionDescription.length() > MAX_DESCRIPTION_LENGTH) {
+                insertionDescription = insertionDescription.substring(0, MAX_DESCRIPTION_LENGTH);
+                insertionDescription = insertionDescription + "...";
+            }
+        }
+
+        String imageLink = null;
+        if (jsonObject.has("images")) {
+            final JSONArray images = jsonObject.optJSONArray("images");
+            if (images != null && !images.isEmpty()) {
+                imageLink = images.optString(0);
+            }
+        }
+        return Optional.of(new LinkPreview(insertionDescription, imageLink));
+    }
+}
@@ -8,9 +8,9 @@ import org.json.JSONObject;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 
 
 @Log
@@ -34,25 +34,8 @@ public class MeinWGZimmerInsertion extends Insertion {
     }
 
     @Override
-    protected SortedMap<String, Optional<String>> setProperties() {
-        SortedMap<String, Optional<String>> map = new TreeMap<>();
-        map.put("Rent", Optional.of(String.valueOf(setRent())));
-        map.put("Move-in Date", Optional.of(new SimpleDateFormat("dd.MM.yyyy").format(setMoveInDate())));
-        map.put("Next Tenant Wanted", Optional.of(setIsNewTenantWanted() ? "Yes" : "No"));
-        return map;
-    }
-
-    @Override
-    protected @Nullable Date setMoveInDate() {
-        final String date = super.getJsonObject().getJSONObject("ValidFrom").getString("iso");
-        try {
-            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").parse(date);
-        } catch (ParseException e) {
-            log.severe("Date could not be parsed from html!");
-            log.severe("Tried parsing: " + date);
-            e.printStackTrace();
-            return new Date(0);
-        }
+    protected @Nullable LocalDate setMoveInDate() {
+        return parseDate(super.getJsonObject().getJSONObject("ValidFrom").getString("iso"));
     }
 
     @Override
@@ -66,15 +49,47 @@ public class MeinWGZimmerInsertion extends Insertion {
     }
 
     @Override
-    protected @Nullable Date setPostDate() {
-        final String date = super.getJsonObject().getString("createdAt");
+    protected @Nullable LocalDate setPostDate() {
+        return parseDate(super.getJsonObject().getString("createdAt"));
+    }
+
+    @Override
+    protected @Nullable String setCity() {
+        return super.getJsonObject().optString("City", null);
+    }
+
+    @Override
+    protected @Nullable String setZip() {
+        return super.getJsonObject().optString("Zip", null);
+    }
+
+    @Override
+    protected @Nullable String setAddress() {
+        return super.getJsonObject().optString("Street", null);
+    }
+
+    @Override
+    protected double setLatitude() {
+        final JSONObject location = super.getJsonObject().optJSONObject("Location");
+        return location == null ? Double.NaN : location.optDouble("latitude", Double.NaN);
+    }
+
+    @Override
+    protected double setLongitude() {
+        final JSONObject location = super.getJsonObject().optJSONObject("Location");
+        return location == null ? Double.NaN : location.optDouble("longitude", Double.NaN);
+    }
+
+    /**
+     * Parses an ISO-8601 timestamp as used by MeinWGZimmer and returns its date in Zurich.
+     */
+    private static @Nullable LocalDate parseDate(final String date) {
         try {
-            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").parse(date);
-        } catch (ParseException e) {
+            return OffsetDateTime.parse(date).atZoneSameInstant(ZONE).toLocalDate();
+        } catch (DateTimeParseException e) {
             log.severe("Date could not be parsed from html!");
             log.severe("Tried parsing: " + date);
-            e.printStackTrace();
-            return new Date(0);
+            return null;
         }
     }
 }
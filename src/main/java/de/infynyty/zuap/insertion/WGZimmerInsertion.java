@@ -8,18 +8,18 @@ import org.jsoup.select.Elements;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 @Log
 public class WGZimmerInsertion extends Insertion {
 
     private static final String PROTOCOL = "https://";
     private static final String DOMAIN = "www.wgzimmer.ch";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d.M.yyyy");
 
     public WGZimmerInsertion(final @NotNull Element element) throws IllegalStateException {
         super(element);
@@ -35,17 +35,21 @@ public class WGZimmerInsertion extends Insertion {
         }
     }
 
+    /**
+     * Shows the region of this insertion, which is stored as its city, under its own name.
+     */
     @Override
-    protected SortedMap<String, Optional<String>> setProperties() {
-        SortedMap<String, Optional<String>> map = new TreeMap<>();
-        map.put("Region", Optional.of(setRegion()));
-        map.put("Rent", Optional.of(String.valueOf(setRent())));
-        map.put("Move-in Date", Optional.of(new SimpleDateFormat("dd.MM.yyyy").format(setMoveInDate())));
-        map.put("Next Tenant Wanted", Optional.of(setIsNewTenantWanted() ? "Yes" : "No"));
+    public @NotNull SortedMap<String, Optional<String>> getProperties() {
+        final SortedMap<String, Optional<String>> map = super.getProperties();
+        map.put("Region", Optional.ofNullable(getCity()));
         return map;
     }
 
-    private String setRegion() {
+    /**
+     * Reads the region of this insertion, for example {@code Zürich Stadt, Kreis 4}.
+     */
+    @Override
+    protected @Nullable String setCity() {
         Element strongElement = super.getElement().select("span.thumbState strong").first();
         String strongText = strongElement.text();
         String textUntilBr = strongElement.parent().ownText().trim();
@@ -67,23 +71,22 @@ public class WGZimmerInsertion extends Insertion {
 
     @Override
     protected boolean setIsNewTenantWanted() {
-        return super.getElement().html().contains("Bis: Unbefristet");
+        return getElementHtml().contains("Bis: Unbefristet");
     }
 
     @Override
-    protected @Nullable Date setMoveInDate() {
+    protected @Nullable LocalDate setMoveInDate() {
         final String moveInDate = super.getElement()
             .getElementsByClass("from-date")
             .get(0)
             .getElementsByTag("strong")
             .text();
         try {
-            return new SimpleDateFormat("dd.MM.yyyy").parse(moveInDate);
-        } catch (ParseException e) {
+            return LocalDate.parse(moveInDate, DATE_FORMAT);
+        } catch (DateTimeParseException e) {
             log.severe("Date could not be parsed from html!");
             log.severe("Tried parsing: " + moveInDate);
-            e.printStackTrace();
-            return new Date(0);
+            return null;
         }
     }
 }
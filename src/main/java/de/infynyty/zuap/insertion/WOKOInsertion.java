@@ -8,12 +8,9 @@ import org.jsoup.select.Elements;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Optional;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,6 +24,12 @@ public class WOKOInsertion extends Insertion {
 
     private static final String PROTOCOL = "https://";
     private static final String DOMAIN = "www.woko.ch";
+    /**
+     * Matches dates in the format {@code dd.MM.yyyy}. The first date of an insertion is its post date, the second one
+     * its move-in date.
+     */
+    private static final Pattern DATE_PATTERN = Pattern.compile("(3[01]|[12][0-9]|0?[1-9])\\.(1[012]|0?[1-9])\\.((?:19|20)\\d{2})");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d.M.yyyy");
 
     /**
      * Constructs a new insertion object from a given html string.
@@ -48,15 +51,6 @@ public class WOKOInsertion extends Insertion {
         }
     }
 
-    @Override
-    protected SortedMap<String, Optional<String>> setProperties() {
-        SortedMap<String, Optional<String>> map = new TreeMap<>();
-        map.put("Rent", Optional.of(String.valueOf(setRent())));
-        map.put("Move-in Date", Optional.of(new SimpleDateFormat("dd.MM.yyyy").format(setMoveInDate())));
-        map.put("Next Tenant Wanted", Optional.of(setIsNewTenantWanted() ? "Yes" : "No"));
-        return map;
-    }
-
     //TODO: Use html parser instead of regex
 
     @Override
@@ -82,37 +76,41 @@ public class WOKOInsertion extends Insertion {
 
     @Override
     protected boolean setIsNewTenantWanted() {
-        return super.getElement().html().contains("Nachmieter gesucht");
+        return getElementHtml().contains("Nachmieter gesucht");
     }
 
 
     @Override
-    protected @Nullable Date setMoveInDate() {
-        final Pattern pattern = Pattern.compile("(3[01]|[12][0-9]|0?[1-9])\\.(1[012]|0?[1-9])\\.((?:19|20)\\d{2})");
-        final Matcher matcher = pattern.matcher(super.getElement().html());
-        final String stringDate = matcher.results().toList().get(1).group();
-        try {
-            return new SimpleDateFormat("dd.MM.yyyy").parse(stringDate);
-        } catch (ParseException e) {
-            log.severe("Date could not be parsed from html!");
-            log.severe("Tried parsing: " + stringDate);
-            e.printStackTrace();
-            return new Date(0);
-        }
+    protected @Nullable LocalDate setMoveInDate() {
+        return findDate(1);
     }
 
     @Override
-    protected @Nullable Date setPostDate() {
-        final Pattern pattern = Pattern.compile("(3[01]|[12][0-9]|0?[1-9])\\.(1[012]|0?[1-9])\\.((?:19|20)\\d{2})");
-        final Matcher matcher = pattern.matcher(super.getElement().html());
-        final String stringDate = matcher.results().toList().get(0).group();
+    protected @Nullable LocalDate setPostDate() {
+        return findDate(0);
+    }
+
+    /**
+     * Finds the date at the given position in the html of this insertion, scanning the html only up to that date.
+     *
+     * @param index The position of the date, starting at zero.
+     * @return The date or {@code null}, if there is no such date.
+     */
+    private @Nullable LocalDate findDate(final int index) {
+        final Matcher matcher = DATE_PATTERN.matcher(getElementHtml());
+        for (int i = 0; i <= index; i++) {
+            if (!matcher.find()) {
+                log.severe("Date could not be parsed from html!");
+                return null;
+            }
+        }
+        final String stringDate = matcher.group();
         try {
-            return new SimpleDateFormat("dd.MM.yyyy").parse(stringDate);
-        } catch (ParseException e) {
+            return LocalDate.parse(stringDate, DATE_FORMAT);
+        } catch (DateTimeParseException e) {
             log.severe("Date could not be parsed from html!");
             log.severe("Tried parsing: " + stringDate);
-            e.printStackTrace();
-            return new Date(0);
+            return null;
         }
     }
 }
@@ -0,0 +1,238 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
+import de.infynyty.zuap.metrics.Counter;
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Decouples handlers from a slow {@link InsertionAnnouncer}. Insertions are put into a bounded queue and announced in
+ * batches by a single background thread, so a handler never waits for an announcement to be sent. Changes of insertions
+ * share the same queue and are passed on one by one.
+ */
+public class AnnouncementQueue implements InsertionAnnouncer {
+
+    /**
+     * Decides what happens to an insertion that is announced while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for up to the configured timeout for space in the queue and drop the insertion afterwards.
+         */
+        BLOCK,
+        /**
+         * Drop the insertion that was just announced.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the insertion that has been waiting the longest, to make space for the new one.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * The time to wait for more insertions after the first one of a batch has been taken from the queue.
+     */
+    private static final Duration BATCH_LINGER = Duration.ofSeconds(1);
+
+    /**
+     * An insertion or a change of an insertion in the queue and the time it was queued at.
+     */
+    private static class Queued {
+        @NotNull
+        private final Insertion insertion;
+        @Nullable
+        private final InsertionChange change;
+        private final long queuedAtNanos = System.nanoTime();
+
+        private Queued(@NotNull final Insertion insertion) {
+            this.insertion = insertion;
+            this.change = null;
+        }
+
+        private Queued(@NotNull final InsertionChange change) {
+            this.insertion = change.getInsertion();
+            this.change = change;
+        }
+    }
+
+    @NotNull
+    private final InsertionAnnouncer announcer;
+    @NotNull
+    private final BlockingQueue<Queued> queue;
+    private final int batchSize;
+    @NotNull
+    private final OverflowPolicy overflowPolicy;
+    @NotNull
+    private final Duration blockTimeout;
+    @NotNull
+    private final Thread worker;
+    private volatile boolean isClosed = false;
+    private final Histogram queueWait = Metrics.histogram(
+            "zuap_announcement_queue_wait_seconds", "Time insertions wait in the queue before they are announced."
+    );
+    private final Histogram announceDuration = Metrics.histogram(
+            "zuap_announcement_duration_seconds", "Time to announce a batch of insertions."
+    );
+    private final Counter dropped = Metrics.counter(
+            "zuap_announcement_dropped_total", "Insertions dropped, because the queue was full or shut down."
+    );
+
+    /**
+     * Creates a queue and starts announcing queued insertions in the background.
+     *
+     * @param announcer      The announcer all insertions are passed on to.
+     * @param capacity       The maximum number of insertions waiting to be announced.
+     * @param batchSize      The maximum number of insertions passed to {@link InsertionAnnouncer#announceAll(List)} at
+     *                       once.
+     * @param overflowPolicy What to do with insertions that are announced while the queue is full.
+     * @param blockTimeout   The time to wait for space in the queue when using {@link OverflowPolicy#BLOCK}.
+     */
+    public AnnouncementQueue(
+            @NotNull final InsertionAnnouncer announcer,
+            final int capacity,
+            final int batchSize,
+            @NotNull final OverflowPolicy overflowPolicy,
+            @NotNull final Duration blockTimeout
+    ) {
+        this.announcer = announcer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.worker = Thread.ofPlatform().name("announcement-queue").daemon().start(this::announceQueued);
+        Metrics.gauge("zuap_announcement_queue_size", "Insertions waiting to be announced.", queue::size);
+    }
+
+    /**
+     * Queues an insertion to be announced. Depending on the {@link OverflowPolicy}, this method might wait for space in
+     * the queue, but never for the insertion to be announced.
+     *
+     * @param insertion The insertion to announce, which must not be null.
+     */
+    @Override
+    public void announce(@NotNull final Insertion insertion) {
+        enqueue(new Queued(insertion));
+    }
+
+    /**
+     * Queues a change of an insertion to be announced, just like {@link #announce(Insertion)}.
+     *
+     * @param change The changed properties of the insertion, which must not be null.
+     */
+    @Override
+    public void announceChange(@NotNull final InsertionChange change) {
+        enqueue(new Queued(change));
+    }
+
+    private void enqueue(@NotNull final Queued queued) {
+        final Insertion insertion = queued.insertion;
+        if (isClosed) {
+            dropped.increment();
+            Zuap.log(Level.WARNING, "Dropped insertion, because announcements have been shut down: " + insertion);
+            return;
+        }
+        final boolean isQueued = switch (overflowPolicy) {
+            case BLOCK -> offerBlocking(queued);
+            case DROP_NEWEST -> queue.offer(queued);
+            case DROP_OLDEST -> offerDroppingOldest(queued);
+        };
+        if (!isQueued) {
+            dropped.increment();
+            Zuap.log(Level.SEVERE, "Dropped insertion, because too many insertions are waiting to be announced: " + insertion);
+        }
+    }
+
+    private boolean offerBlocking(@NotNull final Queued queued) {
+        try {
+            return queue.offer(queued, blockTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean offerDroppingOldest(@NotNull final Queued queued) {
+        while (!queue.offer(queued)) {
+            final Queued oldest = queue.poll();
+            if (oldest != null) {
+                dropped.increment();
+                Zuap.log(Level.SEVERE, "Dropped insertion, because too many insertions are waiting to be announced: " + oldest.insertion);
+            }
+        }
+        return true;
+    }
+
+    private void announceQueued() {
+        final List<Queued> batch = new ArrayList<>(batchSize);
+        while (!isClosed || !queue.isEmpty()) {
+            try {
+                final Queued first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                final long lingerEnd = System.nanoTime() + BATCH_LINGER.toNanos();
+                while (batch.size() < batchSize && !isClosed) {
+                    final Queued next = queue.poll(lingerEnd - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                return;
+            }
+            final long start = System.nanoTime();
+            batch.forEach(queued -> queueWait.record(start - queued.queuedAtNanos));
+            final List<Insertion> insertions = batch.stream()
+                    .filter(queued -> queued.change == null)
+                    .map(queued -> queued.insertion)
+                    .toList();
+            try {
+                if (!insertions.isEmpty()) {
+                    announcer.announceAll(insertions);
+                }
+            } catch (Exception e) {
+                Zuap.log(Level.SEVERE, "Could not announce " + insertions.size() + " insertions. " + e.getMessage());
+            }
+            for (final Queued queued : batch) {
+                if (queued.change == null) continue;
+                try {
+                    announcer.announceChange(queued.change);
+                } catch (Exception e) {
+                    Zuap.log(Level.SEVERE, "Could not announce " + queued.change + ". " + e.getMessage());
+                }
+            }
+            announceDuration.recordSince(start);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stops accepting new insertions and waits for the queued insertions to be announced.
+     *
+     * @param timeout The maximum time to wait.
+     */
+    public void close(@NotNull final Duration timeout) {
+        isClosed = true;
+        try {
+            worker.join(timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+            Zuap.log(Level.WARNING, queue.size() + " insertions could not be announced before shutting down.");
+        }
+    }
+}
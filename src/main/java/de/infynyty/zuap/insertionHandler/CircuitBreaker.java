@@ -0,0 +1,114 @@
+package de.infynyty.zuap.insertionHandler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps a handler from hammering a website that keeps failing. After a failed update, the delay until the next update
+ * grows exponentially with the number of consecutive failures and is randomized, so that handlers do not retry in
+ * lockstep. After too many consecutive failures the circuit opens and updates are paused. Once the pause is over, a
+ * single probe update decides whether the circuit closes again or stays open for another pause.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * Updates run normally.
+         */
+        CLOSED,
+        /**
+         * Updates are paused, because too many updates have failed.
+         */
+        OPEN,
+        /**
+         * The pause is over and the next update is a probe.
+         */
+        HALF_OPEN
+    }
+
+    public static final int FAILURE_THRESHOLD = 5;
+    public static final Duration MAX_BACKOFF = Duration.ofMinutes(30);
+    public static final Duration OPEN_DURATION = Duration.ofHours(1);
+
+    @NotNull
+    private final Clock clock;
+    @NotNull
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private Instant openedAt;
+
+    public CircuitBreaker() {
+        this(Clock.systemUTC());
+    }
+
+    public CircuitBreaker(@NotNull final Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Decides whether an update may run. An open circuit becomes half-open once its pause is over, which allows a
+     * single probe update.
+     *
+     * @return {@code True}, if the update may run.
+     */
+    public synchronized boolean allowUpdate() {
+        if (state != State.OPEN) return true;
+        if (clock.instant().isBefore(openedAt.plus(OPEN_DURATION))) return false;
+        state = State.HALF_OPEN;
+        return true;
+    }
+
+    /**
+     * Records a successful update, which closes the circuit.
+     */
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failed update. The circuit opens if the update was a probe or if too many updates failed in a row.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = clock.instant();
+        }
+    }
+
+    /**
+     * Returns the delay until the next update.
+     *
+     * @param normalDelay The delay that is used while no update is failing.
+     * @return The normal delay, a randomized backoff after failed updates or the rest of the pause of an open circuit.
+     */
+    @NotNull
+    public synchronized Duration getDelay(@NotNull final Duration normalDelay) {
+        if (state == State.OPEN) {
+            final Duration remaining = Duration.between(clock.instant(), openedAt.plus(OPEN_DURATION));
+            return remaining.isNegative() ? Duration.ZERO : remaining;
+        }
+        if (consecutiveFailures == 0) return normalDelay;
+        final int exponent = Math.min(consecutiveFailures, 20);
+        Duration backoff = normalDelay.multipliedBy(1L << exponent);
+        if (backoff.compareTo(MAX_BACKOFF) > 0) {
+            backoff = normalDelay.compareTo(MAX_BACKOFF) > 0 ? normalDelay : MAX_BACKOFF;
+        }
+        // use at least half of the backoff, so that the delay still grows with each failure
+        final long half = backoff.toMillis() / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    public synchronized @NotNull State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
@@ -0,0 +1,256 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.insertion.Insertion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Finds insertions that describe the same room on different websites, so that a room is only announced once. Every
+ * insertion is indexed under a few coarse fingerprints, its position on a grid combined with its rent band and its
+ * normalized street address. Similar insertions share at least one fingerprint, so finding the candidates for a
+ * duplicate only takes a fixed number of lookups, no matter how many insertions are indexed. The candidates are then
+ * compared in detail.
+ * <p>
+ * Insertions of WOKO and WGZimmer do not contain coordinates or a street address and are therefore never treated as
+ * duplicates.
+ */
+public class DuplicateIndex {
+
+    private static final double CELL_SIZE_METERS = 150;
+    private static final double MAX_DISTANCE_METERS = 150;
+    /**
+     * Insertions further apart than this are never the same room, even if their addresses look alike.
+     */
+    private static final double MAX_ADDRESS_DISTANCE_METERS = 1000;
+    private static final int RENT_BAND = 50;
+    private static final int MAX_MOVE_IN_DIFFERENCE_DAYS = 14;
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}");
+
+    private static class Entry {
+        @NotNull
+        private final String source;
+        @NotNull
+        private final Insertion insertion;
+        @Nullable
+        private final String street;
+        private final List<String> fingerprints = new ArrayList<>(2);
+        /**
+         * The key of the insertion this one is a duplicate of, if there is one.
+         */
+        @Nullable
+        private String originalKey;
+
+        private Entry(@NotNull final String source, @NotNull final Insertion insertion) {
+            this.source = source;
+            this.insertion = insertion;
+            this.street = normalizeStreet(insertion.getAddress());
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, List<Entry>> byFingerprint = new HashMap<>();
+
+    /**
+     * Indexes an insertion and returns the insertion of another website that describes the same room, if there is one.
+     * A duplicate stays linked to the first insertion of the room, even if it is found through another duplicate.
+     *
+     * @param source    The name of the website the insertion was found on.
+     * @param insertion The insertion to index.
+     * @return The first insertion of the same room or {@code null}, if the insertion is not a duplicate.
+     */
+    @Nullable
+    public synchronized Insertion add(@NotNull final String source, @NotNull final Insertion insertion) {
+        final Entry existing = entries.get(insertion.getKey());
+        if (existing != null) {
+            final Entry original = getOriginal(existing);
+            return original == existing ? null : original.insertion;
+        }
+        final Entry entry = new Entry(source, insertion);
+        final Entry match = findMatch(entry);
+        final Entry original = match == null ? null : getOriginal(match);
+        if (original != null) {
+            entry.originalKey = original.insertion.getKey();
+        }
+        entries.put(insertion.getKey(), entry);
+        index(entry);
+        return original == null ? null : original.insertion;
+    }
+
+    /**
+     * Indexes the changed version of an insertion. The insertion keeps its place among the insertions of its room, an
+     * original stays the original of its duplicates and a duplicate stays linked to its original. Otherwise, an
+     * original that is indexed again could be linked to one of its own duplicates.
+     *
+     * @param source    The name of the website the insertion was found on.
+     * @param insertion The changed insertion.
+     */
+    public synchronized void replace(@NotNull final String source, @NotNull final Insertion insertion) {
+        final Entry previous = entries.get(insertion.getKey());
+        if (previous == null) {
+            add(source, insertion);
+            return;
+        }
+        unindex(previous);
+        final Entry entry = new Entry(source, insertion);
+        entry.originalKey = previous.originalKey;
+        entries.put(insertion.getKey(), entry);
+        index(entry);
+    }
+
+    /**
+     * Removes an insertion that is no longer online.
+     *
+     * @param key The key of the insertion.
+     */
+    public synchronized void remove(@NotNull final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry == null) return;
+        unindex(entry);
+    }
+
+    private void index(@NotNull final Entry entry) {
+        forEachFingerprint(entry, true, fingerprint -> {
+            entry.fingerprints.add(fingerprint);
+            byFingerprint.computeIfAbsent(fingerprint, key -> new ArrayList<>(1)).add(entry);
+        });
+    }
+
+    private void unindex(@NotNull final Entry entry) {
+        for (final String fingerprint : entry.fingerprints) {
+            final List<Entry> bucket = byFingerprint.get(fingerprint);
+            if (bucket == null) continue;
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                byFingerprint.remove(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * @param key The key of an indexed insertion.
+     * @return The key of the first insertion of the same room or {@code null}, if the insertion is not a duplicate.
+     */
+    @Nullable
+    public synchronized String getOriginalKey(@NotNull final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) return null;
+        final Entry original = getOriginal(entry);
+        return original == entry ? null : original.insertion.getKey();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @NotNull
+    private Entry getOriginal(@NotNull final Entry entry) {
+        if (entry.originalKey == null) return entry;
+        final Entry original = entries.get(entry.originalKey);
+        return original == null ? entry : original;
+    }
+
+    @Nullable
+    private Entry findMatch(@NotNull final Entry entry) {
+        final Entry[] match = new Entry[1];
+        forEachFingerprint(entry, false, fingerprint -> {
+            if (match[0] != null) return;
+            final List<Entry> candidates = byFingerprint.get(fingerprint);
+            if (candidates == null) return;
+            for (final Entry candidate : candidates) {
+                if (isSameRoom(entry, candidate)) {
+                    match[0] = candidate;
+                    return;
+                }
+            }
+        });
+        return match[0];
+    }
+
+    /**
+     * Creates the fingerprints of an insertion. An insertion is indexed under the fingerprints of its own cell and rent
+     * band, while a lookup also includes the neighbouring cells and bands, so that similar insertions are found even
+     * if they lie on different sides of a border.
+     */
+    private static void forEachFingerprint(
+            @NotNull final Entry entry,
+            final boolean isIndexing,
+            @NotNull final Consumer<String> consumer
+    ) {
+        final Insertion insertion = entry.insertion;
+        if (GeoCell.isValid(insertion.getLatitude(), insertion.getLongitude()) && insertion.getRent() >= 0) {
+            final int row = GeoCell.row(insertion.getLatitude(), CELL_SIZE_METERS);
+            final int column = GeoCell.column(insertion.getLongitude(), CELL_SIZE_METERS);
+            final int rentBand = insertion.getRent() / RENT_BAND;
+            final int reach = isIndexing ? 0 : 1;
+            for (int r = row - reach; r <= row + reach; r++) {
+                for (int c = column - reach; c <= column + reach; c++) {
+                    for (int band = rentBand - reach; band <= rentBand + reach; band++) {
+                        consumer.accept("geo:" + GeoCell.key(r, c) + ":" + band);
+                    }
+                }
+            }
+        }
+        if (entry.street != null) {
+            consumer.accept("street:" + (insertion.getZip() == null ? "" : insertion.getZip()) + ":" + entry.street);
+        }
+    }
+
+    private static boolean isSameRoom(@NotNull final Entry entry, @NotNull final Entry candidate) {
+        if (entry.source.equals(candidate.source)) return false;
+        final Insertion a = entry.insertion;
+        final Insertion b = candidate.insertion;
+
+        if (a.getRent() < 0 || b.getRent() < 0) return false;
+        // rents that differ by at most one band always lie in neighbouring bands
+        if (Math.abs(a.getRent() - b.getRent()) > RENT_BAND) return false;
+
+        final LocalDate moveInA = a.getMoveInDate();
+        final LocalDate moveInB = b.getMoveInDate();
+        if (moveInA != null && moveInB != null && Math.abs(ChronoUnit.DAYS.between(moveInA, moveInB)) > MAX_MOVE_IN_DIFFERENCE_DAYS) {
+            return false;
+        }
+
+        final boolean hasCoordinates = GeoCell.isValid(a.getLatitude(), a.getLongitude())
+                && GeoCell.isValid(b.getLatitude(), b.getLongitude());
+        final double distance = hasCoordinates
+                ? GeoCell.distanceMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude())
+                : Double.NaN;
+        if (hasCoordinates && distance <= MAX_DISTANCE_METERS) return true;
+
+        final boolean isSameStreet = entry.street != null
+                && entry.street.equals(candidate.street)
+                && (a.getZip() == null || b.getZip() == null || a.getZip().equals(b.getZip()));
+        return isSameStreet && (!hasCoordinates || distance <= MAX_ADDRESS_DISTANCE_METERS);
+    }
+
+    /**
+     * Normalizes the street and house number of an address, so that for example {@code Langstrasse 1, 8004 Zürich} and
+     * {@code Langstr. 1} are equal.
+     *
+     * @param address The address.
+     * @return The normalized street or {@code null}, if the address does not contain a street and house number.
+     */
+    @Nullable
+    static String normalizeStreet(@Nullable final String address) {
+        if (address == null) return null;
+        String street = address.split(",", 2)[0].toLowerCase(Locale.ROOT).replace("straße", "str").replace("strasse", "str");
+        street = DIACRITICS.matcher(Normalizer.normalize(street, Normalizer.Form.NFD)).replaceAll("");
+        street = NON_ALPHANUMERIC.matcher(street).replaceAll("");
+        // a street without a house number is too long to identify a room
+        if (street.chars().noneMatch(Character::isDigit) || street.chars().noneMatch(Character::isLetter)) return null;
+        return street;
+    }
+}
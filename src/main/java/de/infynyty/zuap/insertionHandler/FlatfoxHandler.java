@@ -1,8 +1,9 @@
 package de.infynyty.zuap.insertionHandler;
 
 import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.FlatfoxInsertion;
-import net.dv8tion.jda.api.JDA;
+import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -10,22 +11,150 @@ import org.jsoup.HttpStatusException;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 public class FlatfoxHandler extends InsertionHandler<FlatfoxInsertion> {
 
-    public FlatfoxHandler(@NotNull String handlerName, @NotNull InsertionAnnouncer announcer, @NotNull HttpClient httpClient) {
-        super(handlerName, announcer, httpClient);
+    private static final String PIN_URL = "https://flatfox.ch/api/v1/pin/?";
+    private static final String LISTING_URL = "https://flatfox.ch/api/v1/public-listing/?";
+    /**
+     * The maximum number of pins Flatfox returns for a single area. An area with this many pins might contain more,
+     * so it is split into smaller tiles.
+     */
+    private static final int MAX_PINS_PER_TILE = 30;
+    /**
+     * The number of rows and columns the whole search area is split into before the first request.
+     */
+    private static final int INITIAL_TILES_PER_SIDE = 2;
+    /**
+     * The number of times a tile is split at most, after which a full tile is accepted as it is.
+     */
+    private static final int MAX_TILE_DEPTH = 5;
+    /**
+     * Listing URLs are kept below this length, which is accepted by all common servers and proxies.
+     */
+    private static final int MAX_URL_LENGTH = 2000;
+    private static final int MAX_LISTINGS_PER_REQUEST = 100;
+    /**
+     * The time after which all known listings are requested again, so that changes to insertions that are still
+     * online are noticed.
+     */
+    private static final Duration REFRESH_INTERVAL = Duration.ofHours(1);
+
+    /**
+     * The area of a search for pins.
+     */
+    @RequiredArgsConstructor
+    private static class Tile {
+        private static final Tile ZURICH = new Tile(47.434662, 47.320258, 8.701075, 8.372241, 0);
+
+        private final double north;
+        private final double south;
+        private final double east;
+        private final double west;
+        private final int depth;
+
+        /**
+         * Splits this tile into a grid of equally sized tiles.
+         *
+         * @param tilesPerSide The number of rows and columns of the grid.
+         * @return All tiles of the grid.
+         */
+        private List<Tile> split(final int tilesPerSide) {
+            final List<Tile> tiles = new ArrayList<>(tilesPerSide * tilesPerSide);
+            final double height = (north - south) / tilesPerSide;
+            final double width = (east - west) / tilesPerSide;
+            for (int row = 0; row < tilesPerSide; row++) {
+                for (int column = 0; column < tilesPerSide; column++) {
+                    tiles.add(new Tile(
+                            north - row * height,
+                            north - (row + 1) * height,
+                            west + (column + 1) * width,
+                            west + column * width,
+                            depth + 1
+                    ));
+                }
+            }
+            return tiles;
+        }
+
+        private URI toPinURI() {
+            return URI.create(PIN_URL + String.format(
+                    Locale.ROOT,
+                    "east=%.6f&max_count=%d&north=%.6f&object_category=APARTMENT&object_category=SHARED&offer_type=RENT&ordering=-insertion&south=%.6f&west=%.6f",
+                    east, MAX_PINS_PER_TILE, north, south, west
+            ));
+        }
+    }
+
+    /**
+     * All insertions of the last update by their Flatfox id, so that only listings that were not seen before have to be
+     * requested.
+     */
+    private Map<Long, FlatfoxInsertion> knownInsertions = new HashMap<>();
+    /**
+     * The time all listings were last requested.
+     */
+    private Instant lastRefresh = Instant.EPOCH;
+
+    public FlatfoxHandler(@NotNull String handlerName, @NotNull InsertionAnnouncer announcer, @NotNull HttpFetcher httpFetcher) {
+        super(handlerName, announcer, httpFetcher);
+    }
+
+    /**
+     * Collects the pins of all tiles and only requests the listings of pins that were not part of the last update,
+     * unless the last request of all listings is more than {@link #REFRESH_INTERVAL} ago.
+     */
+    @Override
+    protected ArrayList<FlatfoxInsertion> pullInsertions() throws IOException, InterruptedException {
+        final Set<Long> pins = getPins();
+        final Instant now = Instant.now();
+        final boolean isRefresh = !now.isBefore(lastRefresh.plus(REFRESH_INTERVAL));
+        // the pins do not change when a listing does, so a refresh cannot be skipped because of them
+        if (!isRefresh) {
+            checkDataHash(hash(pins.toString()));
+        }
+
+        final Map<Long, FlatfoxInsertion> updated = new HashMap<>();
+        final List<Long> requestedPins = new ArrayList<>();
+        for (final Long pin : pins) {
+            final FlatfoxInsertion known = knownInsertions.get(pin);
+            if (known != null && !isRefresh) {
+                updated.put(pin, known);
+            } else {
+                requestedPins.add(pin);
+            }
+        }
+        for (final JSONObject listing : getListings(requestedPins)) {
+            try {
+                updated.put(listing.getLong("pk"), new FlatfoxInsertion(listing));
+            } catch (IllegalStateException e) {
+                Zuap.log(Level.WARNING, getHandlerName(), "Insertion could not be included because of a missing insertion URL!");
+            }
+        }
+        knownInsertions = updated;
+        if (isRefresh) {
+            lastRefresh = now;
+        }
+        return new ArrayList<>(updated.values());
     }
 
     @Override
     protected String pullUpdatedData() throws IOException, InterruptedException {
-        final String data = getPins();
-        return getInsertionsFromPins(data);
+        return new JSONObject().put("results", getListings(new ArrayList<>(getPins()))).toString();
     }
 
     @Override
@@ -37,42 +166,113 @@ public class FlatfoxHandler extends InsertionHandler<FlatfoxInsertion> {
         return insertions;
     }
 
-    private String getPins() throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://flatfox.ch/api/v1/pin/?east=8.701075&max_count=30&north=47.434662&object_category=APARTMENT&object_category=SHARED&offer_type=RENT&ordering=-insertion&south=47.320258&west=8.372241"))
-                .build();
-        HttpResponse<String> response = getHttpClient().send(
-                request,
-                HttpResponse.BodyHandlers.ofString()
-        );
-        if (response.statusCode() > 299) {
-            Zuap.log(Level.WARNING, "Could not pull Pin data from Flatfox. Got the following response: " + response.body());
-            throw new HttpStatusException("Could not pull Pin data from Flatfox", response.statusCode(), request.uri().toString());
+    /**
+     * Requests the pins of all tiles concurrently. Tiles that contain the maximum number of pins are split and
+     * requested again, until no tile is full anymore or the tiles have been split {@value MAX_TILE_DEPTH} times. If a
+     * request fails, the others are cancelled.
+     *
+     * @return The ids of all pins, in ascending order.
+     */
+    private Set<Long> getPins() throws IOException, InterruptedException {
+        final Set<Long> pins = new TreeSet<>();
+        List<Tile> tiles = Tile.ZURICH.split(INITIAL_TILES_PER_SIDE);
+        while (!tiles.isEmpty()) {
+            final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(tiles.size());
+            for (final Tile tile : tiles) {
+                responses.add(getHttpFetcher().sendAsync(getHandlerName(), HttpRequest.newBuilder().uri(tile.toPinURI())));
+            }
+            final List<Tile> fullTiles = new ArrayList<>();
+            try {
+                for (int i = 0; i < tiles.size(); i++) {
+                    final Tile tile = tiles.get(i);
+                    final HttpResponse<String> response = await(responses.get(i));
+                    if (response.statusCode() > 299) {
+                        Zuap.log(Level.WARNING, "Could not pull Pin data from Flatfox. Got the following response: " + response.body());
+                        throw new HttpStatusException("Could not pull Pin data from Flatfox", response.statusCode(), tile.toPinURI().toString());
+                    }
+                    final JSONArray tilePins = new JSONArray(response.body());
+                    tilePins.forEach(pin -> pins.add(((JSONObject) pin).getLong("pk")));
+                    if (tilePins.length() < MAX_PINS_PER_TILE) continue;
+                    if (tile.depth < MAX_TILE_DEPTH) {
+                        fullTiles.add(tile);
+                    } else {
+                        Zuap.log(Level.WARNING, getHandlerName(), "A tile still contains " + tilePins.length() + " pins after splitting it " + MAX_TILE_DEPTH + " times, some insertions might be missing.");
+                    }
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                cancelAll(responses);
+                throw e;
+            }
+            tiles = fullTiles.stream().flatMap(tile -> tile.split(2).stream()).toList();
         }
-        return response.body();
+        return pins;
     }
 
-    private String getInsertionsFromPins(@NotNull final String data) throws IOException, InterruptedException {
-        final JSONArray pins = new JSONArray(data);
-        final HttpClient client = HttpClient.newHttpClient();
-
-        final StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("https://flatfox.ch/api/v1/public-listing/?");
-        pins.forEach(pin -> stringBuilder.append("pk=").append(((JSONObject) pin).get("pk")).append("&"));
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(stringBuilder.toString()))
-                .build();
-        HttpResponse<String> response = client.send(
-                request,
-                HttpResponse.BodyHandlers.ofString()
-        );
-        if (response.statusCode() > 299) {
-            Zuap.log(Level.WARNING, "Could not pull insertion data from Flatfox. Got the following response: ");
-            Zuap.log(Level.WARNING, response.body());
-            throw new HttpStatusException("Could not pull insertion data from Flatfox", response.statusCode(), request.uri().toString());
+    /**
+     * Requests the listings of the given pins concurrently, in chunks that keep each URL short enough. If a request
+     * fails, the others are cancelled.
+     *
+     * @param pins The ids of the pins.
+     * @return The listing of each pin that is still online.
+     */
+    private List<JSONObject> getListings(@NotNull final List<Long> pins) throws IOException, InterruptedException {
+        final List<URI> uris = new ArrayList<>();
+        StringBuilder stringBuilder = null;
+        int chunkSize = 0;
+        for (final Long pin : pins) {
+            final String parameter = "pk=" + pin + "&";
+            if (stringBuilder != null && (stringBuilder.length() + parameter.length() > MAX_URL_LENGTH || chunkSize >= MAX_LISTINGS_PER_REQUEST)) {
+                uris.add(URI.create(stringBuilder.toString()));
+                stringBuilder = null;
+            }
+            if (stringBuilder == null) {
+                stringBuilder = new StringBuilder(LISTING_URL);
+                chunkSize = 0;
+            }
+            stringBuilder.append(parameter);
+            chunkSize++;
+        }
+        if (stringBuilder != null) {
+            uris.add(URI.create(stringBuilder.toString()));
+        }
+
+        final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(uris.size());
+        for (final URI uri : uris) {
+            responses.add(getHttpFetcher().sendAsync(getHandlerName(), HttpRequest.newBuilder().uri(uri)));
+        }
+        final List<JSONObject> listings = new ArrayList<>(pins.size());
+        try {
+            for (int i = 0; i < uris.size(); i++) {
+                final HttpResponse<String> response = await(responses.get(i));
+                if (response.statusCode() > 299) {
+                    Zuap.log(Level.WARNING, "Could not pull insertion data from Flatfox. Got the following response: ");
+                    Zuap.log(Level.WARNING, response.body());
+                    throw new HttpStatusException("Could not pull insertion data from Flatfox", response.statusCode(), uris.get(i).toString());
+                }
+                new JSONObject(response.body()).getJSONArray("results").forEach(listing -> listings.add((JSONObject) listing));
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cancelAll(responses);
+            throw e;
         }
+        return listings;
+    }
 
-        return response.body();
+    /**
+     * Cancels all requests that are still running, so that a failed update does not leave them behind.
+     */
+    private static void cancelAll(@NotNull final List<? extends CompletableFuture<?>> futures) {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    private static <T> T await(@NotNull final CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            if (e.getCause() instanceof InterruptedException interruptedException) throw interruptedException;
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IOException(e.getCause());
+        }
     }
 }
@@ -0,0 +1,59 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.metrics.Counter;
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The {@link Metrics} of a single handler. The duration of each stage of an update is recorded in
+ * {@code zuap_handler_stage_duration_seconds}:
+ * <ul>
+ *     <li>{@code fetch}: downloading all insertions, including parsing them for handlers that parse while
+ *     downloading,</li>
+ *     <li>{@code parse}: parsing the downloaded data, for handlers that do not parse while downloading,</li>
+ *     <li>{@code diff}: comparing the insertions with the known ones and updating the indexes,</li>
+ *     <li>{@code announce}: checking new insertions for duplicates and passing them and changed insertions to the
+ *     announcer,</li>
+ *     <li>{@code update}: the whole update.</li>
+ * </ul>
+ */
+class HandlerMetrics {
+
+    private static final String STAGE_DURATION = "zuap_handler_stage_duration_seconds";
+    private static final String STAGE_DURATION_HELP = "Duration of the stages of an update.";
+
+    final Histogram fetch;
+    final Histogram parse;
+    final Histogram diff;
+    final Histogram announce;
+    final Histogram update;
+    final Counter addedInsertions;
+    final Counter removedInsertions;
+    final Counter changedInsertions;
+    final Counter duplicates;
+
+    HandlerMetrics(@NotNull final InsertionHandler<?> handler) {
+        final String name = handler.getHandlerName();
+        fetch = Metrics.histogram(STAGE_DURATION, STAGE_DURATION_HELP, "handler", name, "stage", "fetch");
+        parse = Metrics.histogram(STAGE_DURATION, STAGE_DURATION_HELP, "handler", name, "stage", "parse");
+        diff = Metrics.histogram(STAGE_DURATION, STAGE_DURATION_HELP, "handler", name, "stage", "diff");
+        announce = Metrics.histogram(STAGE_DURATION, STAGE_DURATION_HELP, "handler", name, "stage", "announce");
+        update = Metrics.histogram(STAGE_DURATION, STAGE_DURATION_HELP, "handler", name, "stage", "update");
+        addedInsertions = Metrics.counter("zuap_handler_added_insertions_total", "New insertions found by updates.", "handler", name);
+        removedInsertions = Metrics.counter("zuap_handler_removed_insertions_total", "Insertions that went offline.", "handler", name);
+        changedInsertions = Metrics.counter("zuap_handler_changed_insertions_total", "Insertions whose content changed while online.", "handler", name);
+        duplicates = Metrics.counter("zuap_handler_duplicates_total", "New insertions not announced, because another handler found the same room.", "handler", name);
+
+        Metrics.counter("zuap_handler_updates_total", "Updates that were started.", handler::getUpdateCount, "handler", name);
+        Metrics.counter("zuap_handler_skipped_updates_total", "Updates skipped, because the data had not changed.", handler::getSkippedUpdateCount, "handler", name);
+        Metrics.counter("zuap_handler_failed_updates_total", "Updates that failed or were cancelled.", handler::getFailedUpdateCount, "handler", name);
+        Metrics.counter("zuap_handler_timed_out_updates_total", "Updates cancelled, because they took too long.", handler::getTimedOutUpdateCount, "handler", name);
+        Metrics.gauge("zuap_handler_insertions", "Insertions currently online.", handler::getInsertionCount, "handler", name);
+        Metrics.gauge("zuap_handler_circuit_state", "State of the circuit breaker, 0 closed, 1 half open, 2 open.", () -> switch (handler.getCircuitState()) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+        }, "handler", name);
+    }
+}
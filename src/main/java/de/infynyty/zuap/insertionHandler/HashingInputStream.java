@@ -0,0 +1,63 @@
+package de.infynyty.zuap.insertionHandler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Computes a 64-bit FNV-1a hash of all bytes that are read through it, so that a handler can tell whether streamed
+ * data has changed without keeping a copy of it.
+ */
+class HashingInputStream extends FilterInputStream {
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private long hash = FNV_OFFSET_BASIS;
+
+    HashingInputStream(@NotNull final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            hash = (hash ^ b) * FNV_PRIME;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte @NotNull [] buffer, final int offset, final int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        for (int i = offset; i < offset + read; i++) {
+            hash = (hash ^ (buffer[i] & 0xFF)) * FNV_PRIME;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // skipped bytes would not be part of the hash
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return The hash of all bytes read so far.
+     */
+    long getHash() {
+        return hash;
+    }
+}
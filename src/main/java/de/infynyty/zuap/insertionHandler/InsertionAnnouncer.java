@@ -1,8 +1,11 @@
 package de.infynyty.zuap.insertionHandler;
 
 import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 /**
  * This interface is used to announce a new insertion in any desired way to an arbitrary platform.
  */
@@ -13,4 +16,21 @@ public interface InsertionAnnouncer {
      * @param insertion The insertion to announce, which must not be null.
      */
     void announce(@NotNull final Insertion insertion);
+
+    /**
+     * Announces several insertions at once. Announcers that are able to combine multiple insertions into a single
+     * announcement should override this method, by default each insertion is announced on its own.
+     * @param insertions The insertions to announce, which must not be null.
+     */
+    default void announceAll(@NotNull final List<Insertion> insertions) {
+        insertions.forEach(this::announce);
+    }
+
+    /**
+     * Announces that an insertion which was announced before has changed, for example because its rent was lowered.
+     * By default, changes are not announced.
+     * @param change The changed properties of the insertion, which must not be null.
+     */
+    default void announceChange(@NotNull final InsertionChange change) {
+    }
 }
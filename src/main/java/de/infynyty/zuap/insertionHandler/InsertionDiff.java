@@ -0,0 +1,115 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes how a freshly pulled list of insertions differs from the insertions that are known locally.
+ * Both sides are indexed by {@link Insertion#getKey()}, so that computing a diff takes linear time in the number of
+ * insertions.
+ *
+ * @param <T> The type of insertion that was compared.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class InsertionDiff<T extends Insertion> {
+
+    /**
+     * Insertions that are online, but were not known locally, in the order they were pulled.
+     */
+    @NotNull
+    private final List<T> added;
+    /**
+     * Keys of locally known insertions that are not online anymore.
+     */
+    @NotNull
+    private final List<String> removed;
+    /**
+     * All insertions that are currently online indexed by their key. Duplicate keys are collapsed to the first
+     * insertion.
+     */
+    @NotNull
+    private final LinkedHashMap<String, T> updated;
+    /**
+     * Insertions that were known locally and are still online, but whose content has changed, in the order they were
+     * pulled. Only filled if the locally known insertions were compared, not only their keys.
+     */
+    @NotNull
+    private final List<InsertionChange> changed;
+
+    /**
+     * Compares the keys of all locally known insertions with a list of updated insertions.
+     *
+     * @param currentKeys       The keys of all locally known insertions.
+     * @param updatedInsertions The insertions that are currently online.
+     * @param <T>               The type of insertion to compare.
+     * @return The change set between both sides.
+     */
+    @NotNull
+    public static <T extends Insertion> InsertionDiff<T> compute(
+            @NotNull final Set<String> currentKeys,
+            @NotNull final Collection<T> updatedInsertions
+    ) {
+        final LinkedHashMap<String, T> updated = new LinkedHashMap<>((int) (updatedInsertions.size() / 0.75f) + 1);
+        final List<T> added = new ArrayList<>();
+        for (final T insertion : updatedInsertions) {
+            if (updated.putIfAbsent(insertion.getKey(), insertion) == null && !currentKeys.contains(insertion.getKey())) {
+                added.add(insertion);
+            }
+        }
+        final List<String> removed = new ArrayList<>();
+        for (final String key : currentKeys) {
+            if (!updated.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        return new InsertionDiff<>(added, removed, updated, List.of());
+    }
+
+    /**
+     * Compares all locally known insertions with a list of updated insertions. In addition to added and removed
+     * insertions, this finds insertions whose content has changed, by comparing their
+     * {@link Insertion#getContentHash() content hashes}. The properties of both versions are only compared if the
+     * hashes differ.
+     *
+     * @param currentInsertions All locally known insertions indexed by their key.
+     * @param updatedInsertions The insertions that are currently online.
+     * @param <T>               The type of insertion to compare.
+     * @return The change set between both sides.
+     */
+    @NotNull
+    public static <T extends Insertion> InsertionDiff<T> compute(
+            @NotNull final Map<String, T> currentInsertions,
+            @NotNull final Collection<T> updatedInsertions
+    ) {
+        final InsertionDiff<T> diff = compute(currentInsertions.keySet(), updatedInsertions);
+        final List<InsertionChange> changed = new ArrayList<>();
+        for (final T insertion : diff.getUpdated().values()) {
+            final T previous = currentInsertions.get(insertion.getKey());
+            if (previous == null || previous.getContentHash() == insertion.getContentHash()) continue;
+            final InsertionChange change = InsertionChange.between(previous, insertion);
+            if (!change.isEmpty()) {
+                changed.add(change);
+            }
+        }
+        return new InsertionDiff<>(diff.getAdded(), diff.getRemoved(), diff.getUpdated(), changed);
+    }
+
+    /**
+     * @return {@code True}, if no insertion was added, removed or changed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+}
@@ -1,34 +1,118 @@
 package de.infynyty.zuap.insertionHandler;
 
+import de.infynyty.zuap.AdaptiveInterval;
 import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.storage.HistoryStore;
+import de.infynyty.zuap.storage.InsertionKeyStore;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.http.HttpClient;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.sql.Date;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 @RequiredArgsConstructor
 public abstract class InsertionHandler<Insertion extends de.infynyty.zuap.insertion.Insertion> {
 
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final Duration DEFAULT_UPDATE_DEADLINE = Duration.ofMinutes(2);
+
     /**
-     * Contains all locally saved insertions.
+     * Contains all locally saved insertions indexed by their {@link de.infynyty.zuap.insertion.Insertion#getKey() key}.
      */
-    private final ArrayList<Insertion> currentInsertions = new ArrayList<>();
+    private Map<String, Insertion> currentInsertions = new LinkedHashMap<>();
     /**
-     * Used to compare updated insertions with locally saved info. Should be empty before updating local insertions.
+     * An immutable copy of {@link #currentInsertions}, which is replaced after every update, so that other threads
+     * can read the insertions without waiting for an update and without making updates wait.
      */
-    private final ArrayList<Insertion> updatedInsertions = new ArrayList<>();
+    private final AtomicReference<InsertionSnapshot> snapshot = new AtomicReference<>(InsertionSnapshot.EMPTY);
     @NotNull
     private final String handlerName;
     @NotNull
     private final InsertionAnnouncer announcer;
     @NotNull
-    private final HttpClient httpClient;
+    private final HttpFetcher httpFetcher;
     private boolean isInitialized = false;
+    /**
+     * Persists the keys of {@link InsertionHandler#currentInsertions} across restarts, if set.
+     */
+    @Nullable
+    private InsertionKeyStore keyStore;
+    /**
+     * Shared by all handlers to keep the history of all insertions that were ever seen, if set.
+     */
+    @Nullable
+    private HistoryStore historyStore;
+    /**
+     * Decides on the delay between updates, if set. Otherwise, updates happen every
+     * {@value Zuap#UPDATE_DELAY_IN_MINS} minutes.
+     */
+    @Nullable
+    private AdaptiveInterval updateInterval;
+    /**
+     * Shared by all handlers to recognize rooms that were already announced by another handler, if set.
+     */
+    @Nullable
+    private DuplicateIndex duplicateIndex;
+    /**
+     * Shared by all handlers to find current insertions by their location, if set.
+     */
+    @Nullable
+    private GeoIndex geoIndex;
+    /**
+     * The {@code ETag} and {@code Last-Modified} headers of the last response per requested URI, which are sent back
+     * to the website to only receive data if it has changed.
+     */
+    private final Map<URI, HttpHeaders> validators = new HashMap<>();
+    /**
+     * Validators of responses that were received during the running update. They are only used for later requests
+     * once the update has been completed successfully.
+     */
+    private final Map<URI, HttpHeaders> pendingValidators = new HashMap<>();
+    /**
+     * A hash of the data the insertions were last parsed from, if there is any.
+     */
+    @Nullable
+    private Long lastDataHash;
+    @Nullable
+    private Long pendingDataHash;
+    /**
+     * The time spent parsing downloaded data during the current update, which is not part of the fetch stage.
+     */
+    private long pendingParseNanos;
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong skippedUpdateCount = new AtomicLong();
+    private final AtomicLong failedUpdateCount = new AtomicLong();
+    private final AtomicLong timedOutUpdateCount = new AtomicLong();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    /**
+     * Created on first use, as the name of the handler is not set yet when fields are initialized.
+     */
+    @Nullable
+    private HandlerMetrics metrics;
 
     /**
      * Update the html data containing all insertions.
@@ -49,73 +133,472 @@ public abstract class InsertionHandler<Insertion extends de.infynyty.zuap.insert
      */
     protected abstract ArrayList<Insertion> getInsertionsFromData(final String data) throws IllegalStateException;
 
+    /**
+     * Pulls and parses all insertions that are currently online. By default, the data is pulled as a whole using
+     * {@link #pullUpdatedData()} and only parsed if it has changed since the last update. Handlers that are able to
+     * parse insertions while the data is still being received may override this method and should call
+     * {@link #checkDataHash(long)} once all data was read.
+     *
+     * @return A list containing all parsed insertions.
+     * @throws NotModifiedException If the data has not changed since the last update.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected ArrayList<Insertion> pullInsertions() throws IOException, InterruptedException {
+        final String updatedData = pullUpdatedData();
+        if (updatedData != null) {
+            checkDataHash(hash(updatedData));
+        }
+        final long start = System.nanoTime();
+        try {
+            return getInsertionsFromData(updatedData);
+        } finally {
+            pendingParseNanos = System.nanoTime() - start;
+            getMetrics().parse.record(pendingParseNanos);
+        }
+    }
+
+    /**
+     * Compares the hash of the pulled data with the hash of the data of the last successful update.
+     *
+     * @param dataHash The hash of all pulled data.
+     * @throws NotModifiedException If the data has not changed since the last update.
+     */
+    protected void checkDataHash(final long dataHash) throws NotModifiedException {
+        if (lastDataHash != null && lastDataHash == dataHash) {
+            throw new NotModifiedException(handlerName);
+        }
+        pendingDataHash = dataHash;
+    }
+
     /**
      * Updates the currently saved insertions. Online changes to insertions will be mirrored locally in
-     * {@link InsertionHandler#currentInsertions}.
+     * {@link InsertionHandler#currentInsertions}. Failed updates are recorded by a {@link CircuitBreaker}, which
+     * lengthens the delay until the next update and skips updates entirely while its circuit is open.
      */
     public void updateCurrentInsertions() {
-        //clear local list of updated insertions every time this method is called
-        updatedInsertions.clear();
+        if (!circuitBreaker.allowUpdate()) {
+            Zuap.log(Level.FINE, handlerName, "Skipped update, because updates are paused after too many failures.");
+            return;
+        }
+        final HandlerMetrics metrics = getMetrics();
+        final long start = System.nanoTime();
         try {
-            final String updatedData = pullUpdatedData();
-            updatedInsertions.addAll(getInsertionsFromData(updatedData));
+            update(metrics);
+        } finally {
+            metrics.update.recordSince(start);
+        }
+    }
+
+    private void update(@NotNull final HandlerMetrics metrics) {
+        if (circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+            Zuap.log(Level.INFO, handlerName, "Probing whether updates work again.");
+        }
+        updateCount.incrementAndGet();
+        pendingValidators.clear();
+        pendingDataHash = null;
+        pendingParseNanos = 0;
+        final ArrayList<Insertion> updatedInsertions;
+        final long fetchStart = System.nanoTime();
+        try {
+            updatedInsertions = pullInsertions();
+        } catch (NotModifiedException e) {
+            recordSuccess();
+            skipUpdate();
+            touchHistory();
+            recordUpdate(0);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Zuap.log(Level.INFO, handlerName, "Update of the insertions was cancelled.");
+            recordFailure();
+            return;
         } catch (Exception e) {
             Zuap.log(Level.SEVERE, handlerName, "An exception occurred while trying to update the insertions. " + e.getMessage());
+            recordFailure();
             return;
         }
+        metrics.fetch.record(System.nanoTime() - fetchStart - pendingParseNanos);
+        recordSuccess();
+        final long diffStart = System.nanoTime();
+        lastDataHash = pendingDataHash;
+        validators.putAll(pendingValidators);
+        // after a restart, compare against the keys saved by the previous run so missed insertions get announced
+        final boolean isResumed = !isInitialized && keyStore != null && !keyStore.getKeys().isEmpty();
+        // only insertions known from this run can be compared by their content, the key store only saves keys
+        final InsertionDiff<Insertion> diff = isResumed
+                ? InsertionDiff.compute(keyStore.getKeys(), updatedInsertions)
+                : InsertionDiff.compute(currentInsertions, updatedInsertions);
+        currentInsertions = diff.getUpdated();
+        snapshot.set(new InsertionSnapshot(currentInsertions.values(), Instant.now()));
+        saveKeys(diff);
+        saveHistory(diff);
+        recordUpdate(diff.getAdded().size());
+        if (geoIndex != null) {
+            final List<Insertion> indexed = new ArrayList<>(isInitialized ? diff.getAdded() : diff.getUpdated().values());
+            // changed insertions replace their previous version, which may have been at another location
+            diff.getChanged().forEach(change -> indexed.add(currentInsertions.get(change.getInsertion().getKey())));
+            geoIndex.update(diff.getRemoved(), indexed);
+        }
+        if (duplicateIndex != null) {
+            diff.getRemoved().forEach(duplicateIndex::remove);
+            // changed insertions are indexed again, as the details that identify their room may have changed
+            diff.getChanged().forEach(change -> duplicateIndex.replace(handlerName, change.getInsertion()));
+        }
+        metrics.removedInsertions.add(diff.getRemoved().size());
         if (!isInitialized) {
-            addInitialInsertions();
-            return;
+            isInitialized = true;
+            if (!isResumed) {
+                indexKnown(diff.getUpdated().values());
+                metrics.diff.recordSince(diffStart);
+                Zuap.log(Level.INFO, handlerName, "Initial download of all insertions complete.");
+                return;
+            }
+            final Set<Insertion> added = new HashSet<>(diff.getAdded());
+            indexKnown(diff.getUpdated().values().stream().filter(insertion -> !added.contains(insertion)).toList());
+            Zuap.log(Level.INFO, handlerName, "Resumed from saved insertions, " + diff.getAdded().size() + " insertions were posted in the meantime.");
+        }
+        metrics.diff.recordSince(diffStart);
+        metrics.addedInsertions.add(diff.getAdded().size());
+        final long announceStart = System.nanoTime();
+        diff.getAdded().forEach(insertion -> {
+            if (isDuplicate(insertion)) {
+                metrics.duplicates.increment();
+                return;
+            }
+            insertion.prefetchLinkPreview();
+            announcer.announce(insertion);
+        });
+        diff.getChanged().forEach(change -> {
+            // a duplicate was never announced by this handler, so neither are its changes
+            if (duplicateIndex != null && duplicateIndex.getOriginalKey(change.getInsertion().getKey()) != null) return;
+            Zuap.log(Level.INFO, handlerName, change.toString());
+            announcer.announceChange(change);
+        });
+        metrics.changedInsertions.add(diff.getChanged().size());
+        metrics.announce.recordSince(announceStart);
+        if (!diff.getRemoved().isEmpty()) {
+            Zuap.log(Level.INFO, handlerName, "One or more insertions were removed.");
         }
-        addNewInsertions();
-        removeDeletedInsertions();
         Zuap.log(
                 Level.INFO,
                 handlerName,
-                "Insertions updated at " + Date.from(Instant.now()) + ", numbers of insertions: " + updatedInsertions.size()
+                "Insertions updated at " + Date.from(Instant.now()) + ", numbers of insertions: " + currentInsertions.size()
         );
     }
 
     /**
-     * Removes any local insertion that does not exist online anymore.
+     * Adds insertions that are not announced to the {@link DuplicateIndex}, so that the same rooms are not announced
+     * by other handlers either.
      */
-    private void removeDeletedInsertions() {
-        // go through all current insertions and check that they are still in the updated insertions
-        // remove them, if that isn't the case
-        final boolean wasRemoved = currentInsertions.removeIf(
-                currentInsertion -> (!(updatedInsertions.contains(currentInsertion)))
+    private void indexKnown(@NotNull final Collection<Insertion> insertions) {
+        if (duplicateIndex == null) return;
+        insertions.forEach(insertion -> duplicateIndex.add(handlerName, insertion));
+    }
+
+    /**
+     * Indexes a new insertion and checks whether another handler already found the same room.
+     *
+     * @return {@code True}, if the insertion should not be announced, because it is a duplicate.
+     */
+    private boolean isDuplicate(@NotNull final Insertion insertion) {
+        if (duplicateIndex == null) return false;
+        final de.infynyty.zuap.insertion.Insertion original = duplicateIndex.add(handlerName, insertion);
+        if (original == null) return false;
+        Zuap.log(
+                Level.INFO,
+                handlerName,
+                "Not announcing " + insertion.getKey() + ", it is the same room as " + original.getKey() + "."
+        );
+        return true;
+    }
+
+    private void skipUpdate() {
+        final long skipped = skippedUpdateCount.incrementAndGet();
+        Zuap.log(
+                Level.INFO,
+                handlerName,
+                "Data has not changed, skipped update (" + skipped + " of " + updateCount.get() + " updates skipped)."
         );
-        if (wasRemoved) {
-            Zuap.log(Level.INFO, handlerName, "One or more insertions were removed.");
-        }
     }
 
     /**
-     * Add every new insertion to {@link InsertionHandler#currentInsertions a local list}.
+     * Sends a request that is only answered with data if it has changed since the last update. The request includes
+     * the {@code If-None-Match} and {@code If-Modified-Since} headers, if the website sent validators for the same
+     * URI before.
+     *
+     * @param requestBuilder The request to send.
+     * @return The response of the website.
+     * @throws NotModifiedException If the website reports that the data has not changed.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected HttpResponse<String> sendConditionally(@NotNull final HttpRequest.Builder requestBuilder)
+            throws IOException, InterruptedException {
+        return sendConditionally(requestBuilder, httpFetcher::send);
+    }
+
+    /**
+     * Sends a request like {@link #sendConditionally(HttpRequest.Builder)}, but returns the body as a stream, which
+     * must always be closed.
+     *
+     * @param requestBuilder The request to send.
+     * @return The response of the website.
+     * @throws NotModifiedException If the website reports that the data has not changed.
+     * @throws IOException
+     * @throws InterruptedException
      */
-    private void addNewInsertions() {
-        for (final Insertion updatedInsertion : updatedInsertions) {
-            if (!(currentInsertions.contains(updatedInsertion))) {
-                currentInsertions.add(updatedInsertion);
-                announcer.announce(updatedInsertion);
+    protected HttpResponse<InputStream> sendStreamingConditionally(@NotNull final HttpRequest.Builder requestBuilder)
+            throws IOException, InterruptedException {
+        return sendConditionally(requestBuilder, httpFetcher::sendStreaming);
+    }
+
+    @FunctionalInterface
+    private interface Sender<T> {
+        HttpResponse<T> send(@NotNull String source, @NotNull HttpRequest.Builder requestBuilder)
+                throws IOException, InterruptedException;
+    }
+
+    private <T> HttpResponse<T> sendConditionally(
+            @NotNull final HttpRequest.Builder requestBuilder,
+            @NotNull final Sender<T> sender
+    ) throws IOException, InterruptedException {
+        final HttpRequest unconditional = requestBuilder.build();
+        final HttpHeaders known = validators.get(unconditional.uri());
+        if (known != null) {
+            known.firstValue(ETAG).ifPresent(etag -> requestBuilder.setHeader("If-None-Match", etag));
+            known.firstValue(LAST_MODIFIED).ifPresent(date -> requestBuilder.setHeader("If-Modified-Since", date));
+        }
+        final HttpResponse<T> response = sender.send(handlerName, requestBuilder);
+        if (response.statusCode() == HTTP_NOT_MODIFIED) {
+            if (response.body() instanceof Closeable body) {
+                body.close();
             }
+            throw new NotModifiedException(unconditional.uri());
+        }
+        final HttpHeaders headers = response.headers();
+        if (headers != null && response.statusCode() < 300) {
+            final HttpHeaders received = HttpHeaders.of(
+                    headers.map(),
+                    (name, value) -> name.equalsIgnoreCase(ETAG) || name.equalsIgnoreCase(LAST_MODIFIED)
+            );
+            if (!received.map().isEmpty()) {
+                pendingValidators.put(unconditional.uri(), received);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the given data, which is used to detect whether data has changed.
+     */
+    static long hash(@NotNull final String data) {
+        long hash = HashingInputStream.FNV_OFFSET_BASIS;
+        for (int i = 0; i < data.length(); i++) {
+            hash ^= data.charAt(i);
+            hash *= HashingInputStream.FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void recordSuccess() {
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            Zuap.log(Level.INFO, handlerName, "Updates work again, resuming the normal schedule.");
+        } else if (circuitBreaker.getConsecutiveFailures() > 0) {
+            Zuap.log(Level.INFO, handlerName, "Update succeeded after " + circuitBreaker.getConsecutiveFailures() + " failed attempts.");
+        }
+        circuitBreaker.recordSuccess();
+    }
+
+    private void recordFailure() {
+        failedUpdateCount.incrementAndGet();
+        final CircuitBreaker.State previous = circuitBreaker.getState();
+        circuitBreaker.recordFailure();
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN && previous != CircuitBreaker.State.OPEN) {
+            Zuap.log(
+                    Level.SEVERE,
+                    handlerName,
+                    (previous == CircuitBreaker.State.HALF_OPEN ? "Probe failed" : circuitBreaker.getConsecutiveFailures() + " updates failed in a row")
+                            + ", pausing updates for " + CircuitBreaker.OPEN_DURATION.toMinutes() + " minutes."
+            );
+        }
+    }
+
+    /**
+     * Called by the scheduler if an update did not finish within {@link #getUpdateDeadline()}, after the thread of the
+     * update has been interrupted. Handlers whose updates might not react to interruption, for example because they wait
+     * for a browser, should override this method to abort the update.
+     */
+    public void onUpdateTimeout() {
+        timedOutUpdateCount.incrementAndGet();
+    }
+
+    /**
+     * @return The maximum time an update may take, before it is cancelled.
+     */
+    public @NotNull Duration getUpdateDeadline() {
+        return DEFAULT_UPDATE_DEADLINE;
+    }
+
+    private void recordUpdate(final int newInsertions) {
+        if (updateInterval != null) {
+            updateInterval.recordUpdate(newInsertions);
+        }
+    }
+
+    private void saveKeys(@NotNull final InsertionDiff<Insertion> diff) {
+        if (keyStore == null) return;
+        try {
+            keyStore.update(diff);
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, handlerName, "Could not save the current insertions. " + e.getMessage());
+        }
+    }
+
+    private void saveHistory(@NotNull final InsertionDiff<Insertion> diff) {
+        if (historyStore == null) return;
+        try {
+            historyStore.update(handlerName, diff.getUpdated().values(), Instant.now());
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, handlerName, "Could not save the history of the insertions. " + e.getMessage());
+        }
+    }
+
+    private void touchHistory() {
+        if (historyStore == null) return;
+        try {
+            historyStore.touch(handlerName, Instant.now());
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, handlerName, "Could not save the history of the insertions. " + e.getMessage());
         }
     }
 
     /**
-     * Adds all insertions without checking for duplicates, if there are no insertions saved locally.
+     * Sets the store used to persist the keys of all current insertions. Must be called before the first update, so
+     * that the saved keys of a previous run are used instead of treating all insertions online as already known.
+     *
+     * @param keyStore The store to use.
+     */
+    public void setKeyStore(@NotNull final InsertionKeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    /**
+     * Sets the store used to keep the history of all insertions.
+     *
+     * @param historyStore The store shared by all handlers.
+     */
+    public void setHistoryStore(@NotNull final HistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+    /**
+     * Sets the index used to recognize rooms that were already announced by another handler. Must be called before
+     * the first update, so that all known insertions are indexed.
+     *
+     * @param duplicateIndex The index shared by all handlers.
+     */
+    public void setDuplicateIndex(@NotNull final DuplicateIndex duplicateIndex) {
+        this.duplicateIndex = duplicateIndex;
+    }
+
+    /**
+     * Sets the index used to find current insertions by their location.
+     *
+     * @param geoIndex The index shared by all handlers.
      */
-    private void addInitialInsertions() {
-        isInitialized = true;
-        currentInsertions.addAll(updatedInsertions);
-        Zuap.log(Level.INFO, handlerName, "Initial download of all insertions complete.");
+    public void setGeoIndex(@NotNull final GeoIndex geoIndex) {
+        this.geoIndex = geoIndex;
+    }
+
+    /**
+     * Sets the interval that adapts the delay between updates to the rate of new insertions.
+     *
+     * @param updateInterval The interval to use.
+     */
+    public void setUpdateInterval(@NotNull final AdaptiveInterval updateInterval) {
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * @return The delay between the end of the last update and the start of the next one.
+     */
+    public @NotNull Duration getNextUpdateDelay() {
+        final Duration normalDelay = updateInterval == null ? Duration.ofMinutes(Zuap.UPDATE_DELAY_IN_MINS) : updateInterval.getDelay();
+        return circuitBreaker.getDelay(normalDelay);
+    }
+
+    /**
+     * Flushes and closes the {@link InsertionKeyStore}, if one is set.
+     */
+    public void close() {
+        if (keyStore == null) return;
+        try {
+            keyStore.close();
+        } catch (IOException e) {
+            Zuap.log(Level.SEVERE, handlerName, "Could not flush the saved insertions. " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of updates that were started so far.
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    /**
+     * @return The number of updates that were skipped, because the data of the website had not changed.
+     */
+    public long getSkippedUpdateCount() {
+        return skippedUpdateCount.get();
+    }
+
+    /**
+     * @return The number of updates that failed, including updates that were cancelled.
+     */
+    public long getFailedUpdateCount() {
+        return failedUpdateCount.get();
+    }
+
+    /**
+     * @return The number of updates that were cancelled because they took too long.
+     */
+    public long getTimedOutUpdateCount() {
+        return timedOutUpdateCount.get();
+    }
+
+    /**
+     * @return The number of insertions that were online during the last update.
+     */
+    public int getInsertionCount() {
+        return snapshot.get().getInsertions().size();
+    }
+
+    /**
+     * @return The insertions that were online during the last update, which can be read from any thread.
+     */
+    public @NotNull InsertionSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public @NotNull CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
     }
 
     public @NotNull String getHandlerName() {
         return handlerName;
     }
 
-    protected @NotNull HttpClient getHttpClient() {
-        return httpClient;
+    @NotNull
+    private HandlerMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new HandlerMetrics(this);
+        }
+        return metrics;
+    }
+
+    protected @NotNull HttpFetcher getHttpFetcher() {
+        return httpFetcher;
     }
 }
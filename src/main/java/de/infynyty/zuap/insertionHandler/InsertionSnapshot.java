@@ -0,0 +1,59 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.insertion.Insertion;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The insertions of a handler as they were online after an update. A snapshot never changes, a handler publishes a
+ * new one after every update instead, so it can be read by any thread without locking.
+ */
+@Getter
+public class InsertionSnapshot {
+
+    /**
+     * The snapshot of a handler that has not completed an update yet.
+     */
+    public static final InsertionSnapshot EMPTY = new InsertionSnapshot(List.of(), null);
+
+    /**
+     * All insertions that were online, in the order they were pulled.
+     */
+    @NotNull
+    private final List<Insertion> insertions;
+    /**
+     * The time of the update or {@code null}, if there was none yet.
+     */
+    @Nullable
+    private final Instant updatedAt;
+    @NotNull
+    @Getter(lombok.AccessLevel.NONE)
+    private final Map<String, Insertion> byKey;
+
+    /**
+     * @param insertions All insertions that were online, which are copied.
+     * @param updatedAt  The time of the update or {@code null}, if there was none yet.
+     */
+    public InsertionSnapshot(@NotNull final Collection<? extends Insertion> insertions, @Nullable final Instant updatedAt) {
+        this.insertions = List.copyOf(insertions);
+        this.updatedAt = updatedAt;
+        this.byKey = new HashMap<>((int) (insertions.size() / 0.75f) + 1);
+        this.insertions.forEach(insertion -> byKey.put(insertion.getKey(), insertion));
+    }
+
+    /**
+     * @param key The key of an insertion.
+     * @return The insertion with the key or {@code null}, if it was not online.
+     */
+    @Nullable
+    public Insertion get(@NotNull final String key) {
+        return byKey.get(key);
+    }
+}
@@ -0,0 +1,61 @@
+package de.infynyty.zuap.insertionHandler;
+
+import org.jetbrains.annotations.NotNull;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads the listings of an html page while it is being received, without building the tree of the whole page. Every
+ * element is removed from the tree as soon as it has been parsed, unless it is part of a listing, so only the listing
+ * that is currently read and the elements enclosing it are kept in memory.
+ */
+final class ListingExtractor {
+
+    private ListingExtractor() {
+    }
+
+    /**
+     * Passes each listing of a page to a consumer as soon as it has been parsed completely. The listing is removed from
+     * the page afterwards, so the consumer must not keep a reference to the element if it is not needed anymore.
+     *
+     * @param html         The page.
+     * @param listingClass The class of the elements containing a listing, compared like
+     *                     {@link Element#hasClass(String)}.
+     * @param onListing    Called with each listing, in the order of the page.
+     * @throws IOException If the page cannot be read.
+     */
+    static void extract(
+            @NotNull final Reader html,
+            @NotNull final String listingClass,
+            @NotNull final Consumer<Element> onListing
+    ) throws IOException {
+        try (final StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, "")) {
+            final Iterator<Element> elements = parser.iterator();
+            while (elements.hasNext()) {
+                final Element element = elements.next();
+                if (element.hasClass(listingClass)) {
+                    onListing.accept(element);
+                    element.remove();
+                } else if (!isInsideListing(element, listingClass)) {
+                    element.remove();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isInsideListing(@NotNull final Element element, @NotNull final String listingClass) {
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
+            if (parent.hasClass(listingClass)) return true;
+        }
+        return false;
+    }
+}
@@ -1,78 +1,171 @@
 package de.infynyty.zuap.insertionHandler;
 
 import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
 import org.jetbrains.annotations.NotNull;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.jsoup.HttpStatusException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
+import java.util.stream.Stream;
 
 public class MeinWGZimmerHandler extends InsertionHandler<MeinWGZimmerInsertion> {
 
+    private static final URI ROOMS_URI = URI.create("https://api1.meinwgzimmer.ch/live/classes/Room");
+    /**
+     * The keys of each room that are requested from MeinWGZimmer.
+     */
+    private static final List<String> REQUESTED_KEYS = List.of(
+            "RoomNr", "Id", "CreatedAt", "Location", "CreatedAtOrg", "Price", "RoomTitle", "Street", "Zip", "ValidFrom",
+            "ValidUntil", "City"
+    );
+    /**
+     * The keys of each room that are kept while parsing, which includes the creation date that is always sent. Any
+     * other key of a room is ignored.
+     */
+    private static final String[] RETAINED_KEYS = Stream.concat(REQUESTED_KEYS.stream(), Stream.of("createdAt"))
+            .toArray(String[]::new);
 
-    public MeinWGZimmerHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpClient httpClient) {
-        super(logPrefix, announcer, httpClient);
+    public MeinWGZimmerHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpFetcher httpFetcher) {
+        super(logPrefix, announcer, httpFetcher);
     }
 
+    /**
+     * Pulls all rooms and parses them one at a time while the response is still being received, so that neither the
+     * whole response nor a JSON tree of all rooms has to be kept in memory.
+     */
     @Override
-    protected String pullUpdatedData() throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create("https://api1.meinwgzimmer.ch/live/classes/Room"))
-            .header("Accept", "*/*")
-            .header("Content-Type", "text/plain")
-            .POST(HttpRequest.BodyPublishers.ofString("{\"where\":{\"Status\":\"active\",\"Price\":{\"$lte\":2000},"
-                + "\"Location\":{\"$nearSphere\":{\"__type\":\"GeoPoint\",\"latitude\":47.37855,\"longitude\":8"
-                + ".53703},\"$maxDistance\":0.0015696123057604772}},\"keys\":\"RoomNr,Id,CreatedAt,Location,"
-                + "CreatedAtOrg,Price,RoomTitle,Street,Zip,ValidFrom,ValidUntil,City\",\"limit\":999999,"
-                + "\"_method\":\"GET\","
-                + "\"_ApplicationId\":\"94aa8f52080089940731d6952815ec7233b745cc\","
-                + "\"_JavaScriptKey\":\"pjWJhcGN4ObY0pymyCQS\",\"_ClientVersion\":\"js2.1.0\","
-                + "\"_InstallationId\":\"3be15981-8be6-7000-c772-93faf54970e4\"}\n"))
-            .build();
+    protected ArrayList<MeinWGZimmerInsertion> pullInsertions() throws IOException, InterruptedException {
+        final HttpResponse<InputStream> response = getHttpFetcher().sendStreaming(getHandlerName(), buildRequest());
 
-        HttpResponse<String> response = getHttpClient().send(
-            request,
-            HttpResponse.BodyHandlers.ofString()
-        );
+        try (final HashingInputStream body = new HashingInputStream(response.body())) {
+            if (response.statusCode() >= 299) {
+                throw new HttpStatusException(
+                        "Failed to update MeinWGZimmer"
+                        , response.statusCode()
+                        , ROOMS_URI.toString()
+                );
+            }
+            final ArrayList<MeinWGZimmerInsertion> insertions = parseInsertions(
+                    new InputStreamReader(body, StandardCharsets.UTF_8)
+            );
+            checkDataHash(body.getHash());
+            return insertions;
+        }
+    }
+
+    @Override
+    protected String pullUpdatedData() throws IOException, InterruptedException {
+        final HttpResponse<String> response = getHttpFetcher().send(getHandlerName(), buildRequest());
 
         if (response.statusCode() >= 299) {
             throw new HttpStatusException(
                     "Failed to update MeinWGZimmer"
                     , response.statusCode()
-                    , request.uri().toString()
+                    , ROOMS_URI.toString()
             );
         }
         if (response.body() == null) throw new IllegalStateException("Data received from MeinWGZimmer is null");
         return response.body();
     }
 
+    private static HttpRequest.Builder buildRequest() {
+        return HttpRequest.newBuilder()
+            .uri(ROOMS_URI)
+            .header("Accept", "*/*")
+            .header("Content-Type", "text/plain")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"where\":{\"Status\":\"active\",\"Price\":{\"$lte\":2000},"
+                + "\"Location\":{\"$nearSphere\":{\"__type\":\"GeoPoint\",\"latitude\":47.37855,\"longitude\":8"
+                + ".53703},\"$maxDistance\":0.0015696123057604772}},\"keys\":\"" + String.join(",", REQUESTED_KEYS) + "\","
+                + "\"limit\":999999,"
+                + "\"_method\":\"GET\","
+                + "\"_ApplicationId\":\"94aa8f52080089940731d6952815ec7233b745cc\","
+                + "\"_JavaScriptKey\":\"pjWJhcGN4ObY0pymyCQS\",\"_ClientVersion\":\"js2.1.0\","
+                + "\"_InstallationId\":\"3be15981-8be6-7000-c772-93faf54970e4\"}\n"));
+    }
+
     @Override
     protected ArrayList<MeinWGZimmerInsertion> getInsertionsFromData(@NotNull final String data) throws IllegalStateException {
-        final JSONObject jsonObject;
+        return parseInsertions(new StringReader(data));
+    }
+
+    /**
+     * Reads the {@code results} array of a MeinWGZimmer response one room at a time. Only the room that is currently
+     * read is held as a JSON object and only the {@link #RETAINED_KEYS requested keys} are kept for the insertion.
+     *
+     * @param reader The response data.
+     * @return A list containing all parsed insertions.
+     * @throws IllegalStateException If the data is not a JSON object containing a {@code results} array.
+     */
+    private ArrayList<MeinWGZimmerInsertion> parseInsertions(@NotNull final Reader reader) throws IllegalStateException {
+        final ArrayList<MeinWGZimmerInsertion> insertions = new ArrayList<>();
+        boolean hasResults = false;
         try {
-            jsonObject = new JSONObject(data);
+            final JSONTokener tokener = new JSONTokener(reader);
+            expect(tokener, '{');
+            char next = tokener.nextClean();
+            while (next != '}') {
+                tokener.back();
+                final String key = tokener.nextValue().toString();
+                expect(tokener, ':');
+                if (key.equals("results")) {
+                    hasResults = true;
+                    readRooms(tokener, insertions);
+                } else {
+                    tokener.nextValue();
+                }
+                next = tokener.nextClean();
+                if (next == ',') {
+                    next = tokener.nextClean();
+                } else if (next != '}') {
+                    throw tokener.syntaxError("Expected ',' or '}'");
+                }
+            }
         } catch (JSONException ex) {
             throw new IllegalStateException("Unable to parse MeinWGZimmer data as JSON: " + ex.getMessage());
         }
-        if (!jsonObject.has("results")) throw new IllegalStateException("MeinWGZimmer data does not have the required 'results' attribute.");
-        final JSONArray rooms = jsonObject.getJSONArray("results");
-        final ArrayList<MeinWGZimmerInsertion> insertions = new ArrayList<>();
-        for (int i = 0; i < rooms.length(); i++) {
+        if (!hasResults) throw new IllegalStateException("MeinWGZimmer data does not have the required 'results' attribute.");
+        return insertions;
+    }
+
+    private void readRooms(@NotNull final JSONTokener tokener, @NotNull final ArrayList<MeinWGZimmerInsertion> insertions) {
+        expect(tokener, '[');
+        char next = tokener.nextClean();
+        while (next != ']') {
+            tokener.back();
+            final Object room = tokener.nextValue();
+            if (!(room instanceof JSONObject)) throw tokener.syntaxError("Expected a room object");
             try {
-                insertions.add(new MeinWGZimmerInsertion(rooms.getJSONObject(i)));
+                insertions.add(new MeinWGZimmerInsertion(new JSONObject((JSONObject) room, RETAINED_KEYS)));
             } catch (IllegalStateException e) {
                 Zuap.log(Level.WARNING, getHandlerName(), "Insertion could not be included because of a missing insertion URL!");
             }
+            next = tokener.nextClean();
+            if (next == ',') {
+                next = tokener.nextClean();
+            } else if (next != ']') {
+                throw tokener.syntaxError("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private static void expect(@NotNull final JSONTokener tokener, final char expected) {
+        if (tokener.nextClean() != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "'");
         }
-        return insertions;
     }
 }
@@ -0,0 +1,20 @@
+package de.infynyty.zuap.insertionHandler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Thrown when a website reports that the requested data has not changed since it was last pulled.
+ */
+public class NotModifiedException extends IOException {
+
+    public NotModifiedException(@NotNull final URI uri) {
+        super("Data at " + uri + " has not been modified.");
+    }
+
+    public NotModifiedException(@NotNull final String handlerName) {
+        super("Data of " + handlerName + " has not been modified.");
+    }
+}
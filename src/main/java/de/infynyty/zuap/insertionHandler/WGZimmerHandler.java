@@ -1,20 +1,22 @@
 package de.infynyty.zuap.insertionHandler;
 
 import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.WGZimmerInsertion;
 import org.jetbrains.annotations.NotNull;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
+import org.jetbrains.annotations.Nullable;
 import org.openqa.selenium.By;
 import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.PageLoadStrategy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxOptions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
-import java.net.http.HttpClient;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -24,18 +26,73 @@ public class WGZimmerHandler extends InsertionHandler<WGZimmerInsertion> {
     private static final int MIN_PRICE = 200;
     private static final int MAX_PRICE = 1500;
     private static final String WG_STATE = "all";
+    private static final String LISTING_CLASS = "search-result-entry search-mate-entry";
+    /**
+     * The number of browser sessions kept alive between updates.
+     */
+    private static final int BROWSER_SESSIONS = 1;
+    /**
+     * The number of searches after which a browser session is replaced by a new one.
+     */
+    private static final int BROWSER_SESSION_MAX_USES = 50;
+    private static final Duration BROWSER_TIMEOUT = Duration.ofSeconds(60);
+    /**
+     * Waiting for a browser session, loading the page and waiting for the search results each may take up to
+     * {@link #BROWSER_TIMEOUT}.
+     */
+    private static final Duration UPDATE_DEADLINE = BROWSER_TIMEOUT.multipliedBy(3);
 
-    public WGZimmerHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpClient httpClient) {
-        super(logPrefix, announcer, httpClient);
+    private final WebDriverPool driverPool = new WebDriverPool(
+            BROWSER_SESSIONS,
+            BROWSER_SESSION_MAX_USES,
+            WGZimmerHandler::createDriver
+    );
+    /**
+     * The browser session used by the running update, if there is one.
+     */
+    @Nullable
+    private volatile WebDriverPool.PooledDriver activeDriver;
+
+    public WGZimmerHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpFetcher httpFetcher) {
+        super(logPrefix, announcer, httpFetcher);
     }
 
     //TODO: Make it possible to change search variables
     @Override
-    protected String pullUpdatedData() {
-        final FirefoxOptions options = new FirefoxOptions();
-        options.addArguments("--headless");
-        final FirefoxDriver driver = new FirefoxDriver(options);
+    protected String pullUpdatedData() throws InterruptedException {
+        final WebDriverPool.PooledDriver pooled = driverPool.borrow(BROWSER_TIMEOUT);
+        activeDriver = pooled;
+        boolean isHealthy = false;
+        try {
+            final String html = search(pooled.getDriver());
+            isHealthy = true;
+            return html;
+        } finally {
+            activeDriver = null;
+            driverPool.release(pooled, isHealthy);
+        }
+    }
+
+    @Override
+    public @NotNull Duration getUpdateDeadline() {
+        return UPDATE_DEADLINE;
+    }
 
+    /**
+     * Quits the browser session of the running update, as Selenium does not react to the update being interrupted.
+     * The update then fails with an exception and the session is replaced by a new one.
+     */
+    @Override
+    public void onUpdateTimeout() {
+        super.onUpdateTimeout();
+        final WebDriverPool.PooledDriver pooled = activeDriver;
+        if (pooled != null) {
+            // quitting a browser can take a while and must not block the thread of the scheduler
+            Thread.ofVirtual().start(() -> driverPool.invalidate(pooled));
+        }
+    }
+
+    private static String search(final WebDriver driver) {
         driver.get("https://www.wgzimmer.ch/wgzimmer/search/mate.html");
 
         final WebElement priceMinSelect = driver.findElement(By.name("priceMin"));
@@ -47,7 +104,6 @@ public class WGZimmerHandler extends InsertionHandler<WGZimmerInsertion> {
             priceMaxSelect.sendKeys(String.valueOf(MAX_PRICE));
             wgStateSelect.sendKeys(WG_STATE);
         } catch (IllegalArgumentException e) {
-            driver.quit();
             throw new RuntimeException("Website layout changed!");
         }
 
@@ -57,13 +113,30 @@ public class WGZimmerHandler extends InsertionHandler<WGZimmerInsertion> {
         final WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
         final WebElement element = wait.until(WGZimmerHandler::isPageLoaded);
         if (element.getTagName().equals("h1")) {
-            driver.quit();
             throw new RuntimeException("Captcha failed!");
         }
-        final String html = driver.getPageSource();
-        driver.quit();
+        return driver.getPageSource();
+    }
 
-        return html;
+    /**
+     * Starts a headless browser that does not load any images or fonts, as only the html of a page is needed.
+     */
+    private static WebDriver createDriver() {
+        final FirefoxOptions options = new FirefoxOptions();
+        options.addArguments("--headless");
+        options.setPageLoadStrategy(PageLoadStrategy.EAGER);
+        options.addPreference("permissions.default.image", 2);
+        options.addPreference("browser.display.use_document_fonts", 0);
+        options.addPreference("gfx.downloadable_fonts.enabled", false);
+        final FirefoxDriver driver = new FirefoxDriver(options);
+        driver.manage().timeouts().pageLoadTimeout(BROWSER_TIMEOUT);
+        return driver;
+    }
+
+    @Override
+    public void close() {
+        driverPool.close();
+        super.close();
     }
 
     private static WebElement isPageLoaded(WebDriver driver) {
@@ -82,18 +155,25 @@ public class WGZimmerHandler extends InsertionHandler<WGZimmerInsertion> {
         }
     }
 
+    /**
+     * Reads the listings without building the tree of the whole page. The page can only be received as a whole from
+     * the browser, but only the listings are kept while it is parsed.
+     */
     @Override
     protected ArrayList<WGZimmerInsertion> getInsertionsFromData(final String data) {
-        final Document document = Jsoup.parse(data);
-        final Elements elements = document.getElementsByClass("search-result-entry search-mate-entry");
         final ArrayList<WGZimmerInsertion> insertions = new ArrayList<>();
-        elements.forEach(element -> {
-            try {
-                insertions.add(new WGZimmerInsertion(element));
-            } catch (NumberFormatException e) {
-                Zuap.log(Level.WARNING,getHandlerName(),"Insertion could not be included because of a missing insertion number!");
-            }
-        });
+        try {
+            ListingExtractor.extract(new StringReader(data), LISTING_CLASS, element -> {
+                try {
+                    insertions.add(new WGZimmerInsertion(element));
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // a broken listing is left out instead of failing the whole update
+                    Zuap.log(Level.WARNING, getHandlerName(), "Insertion could not be included because of a missing insertion URL or number!");
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return insertions;
     }
 }
@@ -1,16 +1,18 @@
 package de.infynyty.zuap.insertionHandler;
 
 import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.WOKOInsertion;
 import org.jetbrains.annotations.NotNull;
 import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
@@ -18,25 +20,50 @@ import java.util.logging.Level;
 
 public class WOKOInsertionHandler extends InsertionHandler<WOKOInsertion> {
 
+    private static final URI LISTINGS_URI = URI.create("https://www.woko.ch/de/zimmer-in-zuerich");
+    private static final String LISTING_CLASS = "inserat";
 
-    public WOKOInsertionHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpClient httpClient) {
-        super(logPrefix, announcer, httpClient);
+    public WOKOInsertionHandler(@NotNull String logPrefix, @NotNull InsertionAnnouncer announcer, @NotNull HttpFetcher httpFetcher) {
+        super(logPrefix, announcer, httpFetcher);
     }
 
+    /**
+     * Reads the listings while the page is still being received, so that neither the whole page nor its complete
+     * tree has to be kept in memory.
+     */
     @Override
-    protected String pullUpdatedData() throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create("https://www.woko.ch/de/zimmer-in-zuerich"))
-            .GET()
-            .build();
+    protected ArrayList<WOKOInsertion> pullInsertions() throws IOException, InterruptedException {
+        final HttpResponse<InputStream> response = sendStreamingConditionally(HttpRequest.newBuilder()
+            .uri(LISTINGS_URI)
+            .GET());
 
-        HttpResponse<String> response = getHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        try (final HashingInputStream body = new HashingInputStream(response.body())) {
+            if (response.statusCode() >= 299) {
+                throw new HttpStatusException(
+                        "Failed to update WOKO"
+                        , response.statusCode()
+                        , LISTINGS_URI.toString()
+                );
+            }
+            final ArrayList<WOKOInsertion> insertions = parseInsertions(
+                    new InputStreamReader(body, HttpFetcher.getCharset(response.headers()))
+            );
+            checkDataHash(body.getHash());
+            return insertions;
+        }
+    }
+
+    @Override
+    protected String pullUpdatedData() throws IOException, InterruptedException {
+        HttpResponse<String> response = sendConditionally(HttpRequest.newBuilder()
+            .uri(LISTINGS_URI)
+            .GET());
 
         if (response.statusCode() >= 299) {
             throw new HttpStatusException(
                     "Failed to update WOKO"
                     , response.statusCode()
-                    , request.uri().toString()
+                    , response.request().uri().toString()
             );
         }
 
@@ -45,10 +72,17 @@ public class WOKOInsertionHandler extends InsertionHandler<WOKOInsertion> {
 
     @Override
     protected ArrayList<WOKOInsertion> getInsertionsFromData(final String data) {
-        final Document document = Jsoup.parse(data);
-        final Elements elements = document.getElementsByClass("inserat");
+        try {
+            return parseInsertions(new StringReader(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @NotNull
+    private ArrayList<WOKOInsertion> parseInsertions(@NotNull final Reader html) throws IOException {
         final ArrayList<WOKOInsertion> insertions = new ArrayList<>();
-        elements.forEach(element -> {
+        ListingExtractor.extract(html, LISTING_CLASS, element -> {
             try {
                 insertions.add(new WOKOInsertion(element));
             } catch (IllegalStateException e) {
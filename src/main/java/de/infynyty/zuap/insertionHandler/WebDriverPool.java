@@ -0,0 +1,190 @@
+package de.infynyty.zuap.insertionHandler;
+
+import de.infynyty.zuap.Zuap;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Keeps a small number of browser sessions alive between updates, so that a handler only has to wait for a page to
+ * load instead of for a whole browser to start. A session is replaced once it has been used a certain number of times
+ * or if it does not respond anymore.
+ */
+public class WebDriverPool {
+
+    /**
+     * A browser session that has been borrowed from the pool and has to be returned using
+     * {@link WebDriverPool#release(PooledDriver, boolean)}.
+     */
+    public static class PooledDriver {
+        @Getter
+        @NotNull
+        private final WebDriver driver;
+        private int uses = 0;
+        private volatile boolean isQuit = false;
+
+        private PooledDriver(@NotNull final WebDriver driver) {
+            this.driver = driver;
+        }
+    }
+
+    private final int size;
+    private final int maxUses;
+    @NotNull
+    private final Supplier<WebDriver> driverFactory;
+    private final Deque<PooledDriver> idle = new ArrayDeque<>();
+    private int sessions = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Creates an empty pool. Sessions are only started once they are needed.
+     *
+     * @param size          The maximum number of sessions alive at the same time.
+     * @param maxUses       The number of times a session is used before it is replaced.
+     * @param driverFactory Starts a new session.
+     */
+    public WebDriverPool(final int size, final int maxUses, @NotNull final Supplier<WebDriver> driverFactory) {
+        this.size = size;
+        this.maxUses = maxUses;
+        this.driverFactory = driverFactory;
+    }
+
+    /**
+     * Borrows a responsive session from the pool, starting a new one if there is no idle session.
+     *
+     * @param timeout The maximum time to wait for a session, if all sessions are in use.
+     * @return The borrowed session.
+     * @throws InterruptedException  If the thread was interrupted while waiting.
+     * @throws IllegalStateException If no session became available in time or the pool has been closed.
+     */
+    @NotNull
+    public PooledDriver borrow(@NotNull final Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        PooledDriver pooled;
+        // check and quit idle sessions outside the lock, as both wait for the browser
+        while ((pooled = takeIdleOrReserve(deadline)) != null) {
+            if (isResponsive(pooled.driver)) return pooled;
+            Zuap.log(Level.INFO, "Replacing a browser session that stopped responding.");
+            discard(pooled);
+        }
+        // start the browser outside the lock, as this takes a while
+        try {
+            return new PooledDriver(driverFactory.get());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                sessions--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle session out of the pool or reserves a new session, waiting until either is
+     * possible.
+     *
+     * @param deadline The {@link System#nanoTime()} at which to stop waiting.
+     * @return The idle session or {@code null}, if a new session has to be started.
+     */
+    @Nullable
+    private synchronized PooledDriver takeIdleOrReserve(final long deadline) throws InterruptedException {
+        while (true) {
+            if (isClosed) throw new IllegalStateException("The browser pool has been closed.");
+            final PooledDriver pooled = idle.pollFirst();
+            if (pooled != null) return pooled;
+            if (sessions < size) {
+                sessions++;
+                return null;
+            }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new IllegalStateException("No browser session became available in time.");
+            wait(Math.max(1, remaining / 1_000_000));
+        }
+    }
+
+    /**
+     * Returns a session to the pool.
+     *
+     * @param pooled    The session that was borrowed.
+     * @param isHealthy {@code False}, if the session should not be used again, for example because a page did not
+     *                  load correctly.
+     */
+    public void release(@NotNull final PooledDriver pooled, final boolean isHealthy) {
+        synchronized (this) {
+            pooled.uses++;
+            if (!isClosed && isHealthy && !pooled.isQuit && pooled.uses < maxUses) {
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    /**
+     * Quits a session that is still borrowed, for example because it stopped responding. Any call the borrower is
+     * waiting for then fails and the session is not used again once it is released.
+     *
+     * @param pooled The borrowed session.
+     */
+    public void invalidate(@NotNull final PooledDriver pooled) {
+        quitDriver(pooled);
+    }
+
+    /**
+     * Quits all idle sessions and prevents new sessions from being borrowed. Sessions in use are quit once they are
+     * released.
+     */
+    public void close() {
+        final List<PooledDriver> discarded;
+        synchronized (this) {
+            isClosed = true;
+            discarded = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        discarded.forEach(this::discard);
+    }
+
+    /**
+     * Frees the place of a session that was taken out of the pool and quits it.
+     */
+    private void discard(@NotNull final PooledDriver pooled) {
+        synchronized (this) {
+            sessions--;
+            notifyAll();
+        }
+        quitDriver(pooled);
+    }
+
+    private static void quitDriver(@NotNull final PooledDriver pooled) {
+        synchronized (pooled) {
+            if (pooled.isQuit) return;
+            pooled.isQuit = true;
+        }
+        try {
+            pooled.driver.quit();
+        } catch (WebDriverException e) {
+            Zuap.log(Level.WARNING, "Could not quit a browser session. " + e.getMessage());
+        }
+    }
+
+    private static boolean isResponsive(@NotNull final WebDriver driver) {
+        try {
+            driver.getWindowHandle();
+            return true;
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package de.infynyty.zuap.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A value that only ever increases, like the number of failed updates.
+ */
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(final long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
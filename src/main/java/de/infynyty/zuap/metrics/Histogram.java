@@ -0,0 +1,76 @@
+package de.infynyty.zuap.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in a fixed set of buckets, from a millisecond up to two minutes. Recording a duration only
+ * increments two counters and never allocates, so histograms can stay enabled all the time.
+ */
+public class Histogram {
+
+    /**
+     * The upper bounds of all buckets in seconds, a last bucket contains all longer durations.
+     */
+    static final double[] BOUNDS_SECONDS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_SECONDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos The duration to record in nanoseconds.
+     */
+    public void record(final long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time that has passed since a point in time.
+     *
+     * @param startNanos The start as returned by {@link System#nanoTime()}.
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The number of recorded durations per bucket, not cumulative.
+     */
+    long[] getBucketCounts() {
+        final long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (final LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
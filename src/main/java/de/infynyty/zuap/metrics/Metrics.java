@@ -0,0 +1,205 @@
+package de.infynyty.zuap.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds all metrics of this application and writes them in the
+ * <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text format</a>. Counters and
+ * histograms are looked up once and kept by the code recording them, so that recording does not need a lookup. Values
+ * that are already counted elsewhere are registered as functions that are read when the metrics are written.
+ * <p>
+ * Labels are given as alternating names and values, for example {@code "handler", "WOKO", "stage", "parse"}.
+ */
+public final class Metrics {
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private static class Family {
+        @NotNull
+        private final Type type;
+        @NotNull
+        private final String help;
+        /**
+         * The metrics of this family by their rendered labels, in a stable order.
+         */
+        private final Map<String, Object> metrics = new TreeMap<>();
+
+        private Family(@NotNull final Type type, @NotNull final String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with the given name and labels, creating it if it does not exist yet.
+     */
+    @NotNull
+    public static Counter counter(@NotNull final String name, @NotNull final String help, @NotNull final String... labels) {
+        return (Counter) getOrCreate(name, Type.COUNTER, help, labels, Counter::new);
+    }
+
+    /**
+     * Returns the histogram with the given name and labels, creating it if it does not exist yet. The name should end
+     * in {@code _seconds}, as histograms record durations.
+     */
+    @NotNull
+    public static Histogram histogram(@NotNull final String name, @NotNull final String help, @NotNull final String... labels) {
+        return (Histogram) getOrCreate(name, Type.HISTOGRAM, help, labels, Histogram::new);
+    }
+
+    /**
+     * Registers a counter whose value is read from a function, replacing an earlier registration with the same name
+     * and labels.
+     */
+    public static void counter(
+            @NotNull final String name,
+            @NotNull final String help,
+            @NotNull final DoubleSupplier value,
+            @NotNull final String... labels
+    ) {
+        register(name, Type.COUNTER, help, labels, value);
+    }
+
+    /**
+     * Registers a value that can go up and down, replacing an earlier registration with the same name and labels.
+     */
+    public static void gauge(
+            @NotNull final String name,
+            @NotNull final String help,
+            @NotNull final DoubleSupplier value,
+            @NotNull final String... labels
+    ) {
+        register(name, Type.GAUGE, help, labels, value);
+    }
+
+    /**
+     * @return All metrics in the Prometheus text format.
+     */
+    @NotNull
+    public static String scrape() {
+        final StringBuilder builder = new StringBuilder();
+        new TreeMap<>(families).forEach((name, family) -> {
+            builder.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            synchronized (family) {
+                family.metrics.forEach((labels, metric) -> write(builder, name, labels, metric));
+            }
+        });
+        return builder.toString();
+    }
+
+    private static void write(
+            @NotNull final StringBuilder builder,
+            @NotNull final String name,
+            @NotNull final String labels,
+            @NotNull final Object metric
+    ) {
+        if (metric instanceof Counter counter) {
+            appendSample(builder, name, labels, counter.get());
+        } else if (metric instanceof DoubleSupplier supplier) {
+            appendSample(builder, name, labels, supplier.getAsDouble());
+        } else if (metric instanceof Histogram histogram) {
+            final long[] counts = histogram.getBucketCounts();
+            final String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                final String bound = i < Histogram.BOUNDS_SECONDS.length ? String.valueOf(Histogram.BOUNDS_SECONDS[i]) : "+Inf";
+                appendSample(builder, name + "_bucket", labels + separator + "le=\"" + bound + "\"", cumulative);
+            }
+            appendSample(builder, name + "_sum", labels, histogram.getSumSeconds());
+            appendSample(builder, name + "_count", labels, cumulative);
+        }
+    }
+
+    private static void appendSample(
+            @NotNull final StringBuilder builder,
+            @NotNull final String name,
+            @NotNull final String labels,
+            final double value
+    ) {
+        builder.append(name);
+        if (!labels.isEmpty()) {
+            builder.append('{').append(labels).append('}');
+        }
+        builder.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+        builder.append('\n');
+    }
+
+    @NotNull
+    private static Object getOrCreate(
+            @NotNull final String name,
+            @NotNull final Type type,
+            @NotNull final String help,
+            @NotNull final String[] labels,
+            @NotNull final Supplier<Object> factory
+    ) {
+        final Family family = getFamily(name, type, help);
+        synchronized (family) {
+            return family.metrics.computeIfAbsent(renderLabels(labels), key -> factory.get());
+        }
+    }
+
+    private static void register(
+            @NotNull final String name,
+            @NotNull final Type type,
+            @NotNull final String help,
+            @NotNull final String[] labels,
+            @NotNull final DoubleSupplier value
+    ) {
+        final Family family = getFamily(name, type, help);
+        synchronized (family) {
+            family.metrics.put(renderLabels(labels), value);
+        }
+    }
+
+    @NotNull
+    private static Family getFamily(@NotNull final String name, @NotNull final Type type, @NotNull final String help) {
+        final Family family = families.computeIfAbsent(name, key -> new Family(type, help));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type + ".");
+        }
+        return family;
+    }
+
+    @NotNull
+    private static String renderLabels(@NotNull final String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as pairs of names and values.");
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) builder.append(',');
+            builder.append(labels[i]).append("=\"");
+            for (final char c : labels[i + 1].toCharArray()) {
+                switch (c) {
+                    case '\\' -> builder.append("\\\\");
+                    case '"' -> builder.append("\\\"");
+                    case '\n' -> builder.append("\\n");
+                    default -> builder.append(c);
+                }
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package de.infynyty.zuap.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link Metrics#scrape()} at {@code /metrics}, so that Prometheus can collect the metrics of this application.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @NotNull
+    private final HttpServer server;
+    @NotNull
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Starts serving the metrics.
+     *
+     * @param address The address to listen on.
+     * @throws IOException If the server cannot listen on the address.
+     */
+    public MetricsServer(@NotNull final InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return The address the server listens on, which contains the actual port if port 0 was requested.
+     */
+    @NotNull
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,136 @@
+package de.infynyty.zuap.query;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.storage.HistoryQuery;
+import de.infynyty.zuap.storage.HistoryStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * A report of a measure over the history of all insertions, parsed from the parameters of a query string such as
+ * {@code source=WOKO&seenFrom=2024-02-19&seenTo=2024-06-01&measure=rent}.
+ * <p>
+ * {@code source}, {@code zip} and the area given by {@code latitude}, {@code longitude} and {@code radius} filter the
+ * insertions like the methods of a {@link HistoryQuery}. {@code seenFrom} and {@code seenTo} only include insertions
+ * that were online at some point between the start of the first and the end of the second day. {@code measure} is one
+ * of {@code rent} (the default), {@code secondsOnline} or {@code moveInDay}.
+ */
+public class HistoryReport {
+
+    private static final double[] QUARTILES = {0.25, 0.5, 0.75};
+
+    @Nullable
+    private final String source;
+    private final int zip;
+    @NotNull
+    private final Instant seenFrom;
+    @NotNull
+    private final Instant seenTo;
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+    @NotNull
+    private final HistoryQuery.Measure measure;
+
+    private HistoryReport(
+            @Nullable final String source,
+            final int zip,
+            @NotNull final Instant seenFrom,
+            @NotNull final Instant seenTo,
+            final double latitude,
+            final double longitude,
+            final double radiusMeters,
+            @NotNull final HistoryQuery.Measure measure
+    ) {
+        this.source = source;
+        this.zip = zip;
+        this.seenFrom = seenFrom;
+        this.seenTo = seenTo;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        this.measure = measure;
+    }
+
+    /**
+     * Parses a report from the raw, still encoded query string of a request.
+     *
+     * @param rawQuery The query string or null, if the request has none.
+     * @return The report.
+     * @throws IllegalArgumentException If a parameter is unknown or has an invalid value.
+     */
+    @NotNull
+    public static HistoryReport parse(@Nullable final String rawQuery) throws IllegalArgumentException {
+        final Map<String, String> parameters = InsertionQuery.parseParameters(rawQuery);
+        try {
+            final String source = parameters.remove("source");
+            final int zip = InsertionQuery.parseInt(parameters.remove("zip"), -1);
+            final LocalDate seenFrom = InsertionQuery.parseDate(parameters.remove("seenFrom"));
+            final LocalDate seenTo = InsertionQuery.parseDate(parameters.remove("seenTo"));
+            final double latitude = InsertionQuery.parseDouble(parameters.remove("latitude"));
+            final double longitude = InsertionQuery.parseDouble(parameters.remove("longitude"));
+            final double radius = InsertionQuery.parseDouble(parameters.remove("radius"));
+            final HistoryQuery.Measure measure = parseMeasure(parameters.remove("measure"));
+            if (!parameters.isEmpty()) {
+                throw new IllegalArgumentException("Unknown parameters " + parameters.keySet());
+            }
+            if (GeoCell.isValid(latitude, longitude) == Double.isNaN(radius) || radius < 0) {
+                throw new IllegalArgumentException("A valid latitude and longitude must be given together with a positive radius");
+            }
+            return new HistoryReport(
+                    source,
+                    zip,
+                    seenFrom == null ? Instant.EPOCH : seenFrom.atStartOfDay(ZoneOffset.UTC).toInstant(),
+                    seenTo == null ? Instant.MAX : seenTo.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().minusSeconds(1),
+                    latitude,
+                    longitude,
+                    radius,
+                    measure
+            );
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must be given as yyyy-mm-dd: " + e.getParsedString());
+        }
+    }
+
+    /**
+     * Aggregates the measure over all matching insertions in the history.
+     *
+     * @param store The history of all insertions.
+     * @return The number of matching insertions and the average and quartiles of the measure, which are left out if
+     * the measure is unknown for all of them.
+     */
+    @NotNull
+    public JSONObject run(@NotNull final HistoryStore store) {
+        final HistoryQuery query = store.query().seenBetween(seenFrom, seenTo);
+        if (source != null) query.source(source);
+        if (zip >= 0) query.zip(zip);
+        if (!Double.isNaN(radiusMeters)) query.within(latitude, longitude, radiusMeters);
+
+        final double average = query.average(measure);
+        final double[] quartiles = query.quantiles(measure, QUARTILES);
+        return new JSONObject()
+                .put("count", query.count())
+                .putOpt("average", Double.isNaN(average) ? null : average)
+                .putOpt("lowerQuartile", Double.isNaN(quartiles[0]) ? null : quartiles[0])
+                .putOpt("median", Double.isNaN(quartiles[1]) ? null : quartiles[1])
+                .putOpt("upperQuartile", Double.isNaN(quartiles[2]) ? null : quartiles[2]);
+    }
+
+    @NotNull
+    private static HistoryQuery.Measure parseMeasure(@Nullable final String value) {
+        if (value == null) return HistoryQuery.Measure.RENT;
+        return switch (value) {
+            case "rent" -> HistoryQuery.Measure.RENT;
+            case "secondsOnline" -> HistoryQuery.Measure.SECONDS_ONLINE;
+            case "moveInDay" -> HistoryQuery.Measure.MOVE_IN_DAY;
+            default -> throw new IllegalArgumentException("Expected rent, secondsOnline or moveInDay, but got " + value);
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package de.infynyty.zuap.query;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertionHandler.InsertionSnapshot;
+import de.infynyty.zuap.subscription.Subscription;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A query of the insertions that are currently online, parsed from the parameters of a request like
+ * {@code ?source=WOKO,Flatfox&maxRent=900&earliestMoveIn=2024-06-01&offset=50&limit=50}.
+ * <p>
+ * The criteria {@code minRent}, {@code maxRent}, {@code earliestMoveIn}, {@code latestMoveIn} and
+ * {@code nextTenantWanted} are checked like the criteria of a {@link Subscription}, so an insertion that does not
+ * contain the information a criterion needs is not hidden by it. In addition, {@code source} only includes insertions
+ * of the given handlers and {@code postedSince} only includes insertions posted on or after a date.
+ * <p>
+ * Given a point as {@code latitude} and {@code longitude}, {@code radius} only includes insertions within that many
+ * meters and {@code nearest} only includes the given number of insertions closest to the point, which match all other
+ * criteria. Both are answered from the {@link GeoIndex} and return insertions ordered by their distance, closest first.
+ * Insertions without coordinates are never near a point.
+ */
+public class InsertionQuery {
+
+    public static final int DEFAULT_LIMIT = 50;
+    /**
+     * The maximum number of insertions returned at once, which keeps every response small enough to be written
+     * without waiting for the client.
+     */
+    public static final int MAX_LIMIT = 200;
+
+    @NotNull
+    private final Subscription criteria;
+    /**
+     * The handlers to include or {@code null}, to include all handlers.
+     */
+    @Nullable
+    private final Set<String> sources;
+    @Nullable
+    private final LocalDate postedSince;
+    /**
+     * The point insertions have to be near to or {@link Double#NaN}, if they can be anywhere.
+     */
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+    /**
+     * The number of closest insertions to include or 0, if the number is not limited.
+     */
+    private final int nearest;
+    private final int offset;
+    private final int limit;
+
+    private InsertionQuery(
+            @NotNull final Subscription criteria,
+            @Nullable final Set<String> sources,
+            @Nullable final LocalDate postedSince,
+            final double latitude,
+            final double longitude,
+            final double radiusMeters,
+            final int nearest,
+            final int offset,
+            final int limit
+    ) {
+        this.criteria = criteria;
+        this.sources = sources;
+        this.postedSince = postedSince;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        this.nearest = nearest;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Parses a query from the query string of a request.
+     *
+     * @param rawQuery The encoded query string without the leading {@code ?} or {@code null}, if there is none.
+     * @return The query.
+     * @throws IllegalArgumentException If a parameter is unknown or has an invalid value.
+     */
+    @NotNull
+    public static InsertionQuery parse(@Nullable final String rawQuery) throws IllegalArgumentException {
+        final Map<String, String> parameters = parseParameters(rawQuery);
+        try {
+            final Subscription criteria = new Subscription(
+                    "query",
+                    0,
+                    parseInt(parameters.remove("minRent"), 0),
+                    parseInt(parameters.remove("maxRent"), Integer.MAX_VALUE),
+                    parseDate(parameters.remove("earliestMoveIn")),
+                    parseDate(parameters.remove("latestMoveIn")),
+                    parameters.containsKey("nextTenantWanted") ? parseBoolean(parameters.remove("nextTenantWanted")) : null,
+                    Double.NaN,
+                    Double.NaN,
+                    Double.NaN
+            );
+            final double latitude = parseDouble(parameters.remove("latitude"));
+            final double longitude = parseDouble(parameters.remove("longitude"));
+            final double radius = parseDouble(parameters.remove("radius"));
+            final int nearest = parseInt(parameters.remove("nearest"), 0);
+            final String source = parameters.remove("source");
+            final Set<String> sources = source == null ? null : new LinkedHashSet<>(List.of(source.split(",")));
+            final LocalDate postedSince = parseDate(parameters.remove("postedSince"));
+            final int offset = parseInt(parameters.remove("offset"), 0);
+            final int limit = parseInt(parameters.remove("limit"), DEFAULT_LIMIT);
+            if (!parameters.isEmpty()) {
+                throw new IllegalArgumentException("Unknown parameters " + parameters.keySet());
+            }
+            if (offset < 0 || limit < 0 || limit > MAX_LIMIT) {
+                throw new IllegalArgumentException("The offset must not be negative and the limit must be between 0 and " + MAX_LIMIT);
+            }
+            final boolean hasPoint = GeoCell.isValid(latitude, longitude);
+            if (hasPoint != (!Double.isNaN(radius) || nearest > 0) || radius < 0 || nearest < 0) {
+                throw new IllegalArgumentException("A valid latitude and longitude must be given together with a positive radius or number of nearest insertions");
+            }
+            return new InsertionQuery(criteria, sources, postedSince, latitude, longitude, radius, nearest, offset, limit);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must be given as yyyy-mm-dd: " + e.getParsedString());
+        }
+    }
+
+    /**
+     * Runs the query against the snapshots of all handlers, in the given order of the handlers. Queries near a point
+     * look up their candidates in the index and only include the candidates that are part of a snapshot.
+     *
+     * @param snapshots The current snapshot of each handler by its name.
+     * @param geoIndex  The location of all current insertions.
+     * @return The total number of matching insertions and the requested page of them.
+     */
+    @NotNull
+    public JSONObject run(@NotNull final Map<String, InsertionSnapshot> snapshots, @NotNull final GeoIndex geoIndex) {
+        final JSONArray page = new JSONArray();
+        int total = 0;
+        if (Double.isNaN(latitude)) {
+            for (final Map.Entry<String, InsertionSnapshot> snapshot : snapshots.entrySet()) {
+                if (sources != null && !sources.contains(snapshot.getKey())) continue;
+                for (final Insertion insertion : snapshot.getValue().getInsertions()) {
+                    if (!matches(insertion)) continue;
+                    if (total >= offset && page.length() < limit) {
+                        page.put(toJson(snapshot.getKey(), insertion));
+                    }
+                    total++;
+                }
+            }
+        } else {
+            for (final JSONObject insertion : findNear(snapshots, geoIndex)) {
+                if (total >= offset && page.length() < limit) {
+                    page.put(insertion);
+                }
+                total++;
+            }
+        }
+        return new JSONObject()
+                .put("total", total)
+                .put("offset", offset)
+                .put("limit", limit)
+                .put("insertions", page);
+    }
+
+    /**
+     * Finds the matching insertions near the point, closest first. Without a radius, the index is asked for more and
+     * more of the closest insertions until enough of them match all other criteria.
+     */
+    @NotNull
+    private List<JSONObject> findNear(@NotNull final Map<String, InsertionSnapshot> snapshots, @NotNull final GeoIndex geoIndex) {
+        if (!Double.isNaN(radiusMeters)) {
+            final List<JSONObject> matching = filter(geoIndex.within(latitude, longitude, radiusMeters), snapshots);
+            return nearest > 0 && matching.size() > nearest ? matching.subList(0, nearest) : matching;
+        }
+        int count = nearest;
+        while (true) {
+            final List<Insertion> candidates = geoIndex.nearest(latitude, longitude, count);
+            final List<JSONObject> matching = filter(candidates, snapshots);
+            if (matching.size() >= nearest) return matching.subList(0, nearest);
+            if (candidates.size() < count || count > Integer.MAX_VALUE / 4) return matching;
+            count *= 4;
+        }
+    }
+
+    /**
+     * Keeps the candidates that are part of a snapshot and match all other criteria, using the version of each
+     * insertion in its snapshot.
+     */
+    @NotNull
+    private List<JSONObject> filter(@NotNull final List<Insertion> candidates, @NotNull final Map<String, InsertionSnapshot> snapshots) {
+        final List<JSONObject> matching = new ArrayList<>();
+        for (final Insertion candidate : candidates) {
+            for (final Map.Entry<String, InsertionSnapshot> snapshot : snapshots.entrySet()) {
+                final Insertion insertion = snapshot.getValue().get(candidate.getKey());
+                if (insertion == null) continue;
+                if ((sources == null || sources.contains(snapshot.getKey())) && matches(insertion)) {
+                    matching.add(toJson(snapshot.getKey(), insertion));
+                }
+                break;
+            }
+        }
+        return matching;
+    }
+
+    private boolean matches(@NotNull final Insertion insertion) {
+        if (!criteria.matches(insertion)) return false;
+        if (postedSince == null) return true;
+        final LocalDate postDate = insertion.getPostDate();
+        return postDate == null || !postDate.isBefore(postedSince);
+    }
+
+    @NotNull
+    static JSONObject toJson(@NotNull final String source, @NotNull final Insertion insertion) {
+        final JSONObject json = new JSONObject()
+                .put("source", source)
+                .put("key", insertion.getKey())
+                .put("url", insertion.getInsertionURI().toString())
+                .put("nextTenantWanted", insertion.isNextTenantWanted())
+                .putOpt("city", insertion.getCity())
+                .putOpt("zip", insertion.getZip())
+                .putOpt("address", insertion.getAddress());
+        if (insertion.getRent() >= 0) json.put("rent", insertion.getRent());
+        if (insertion.getLivingSpace() >= 0) json.put("livingSpace", insertion.getLivingSpace());
+        if (insertion.getMoveInDate() != null) json.put("moveInDate", insertion.getMoveInDate().toString());
+        if (insertion.getPostDate() != null) json.put("postDate", insertion.getPostDate().toString());
+        if (GeoCell.isValid(insertion.getLatitude(), insertion.getLongitude())) {
+            json.put("latitude", insertion.getLatitude()).put("longitude", insertion.getLongitude());
+        }
+        return json;
+    }
+
+    /**
+     * Decodes the parameters of a query string.
+     *
+     * @return The value of every parameter by its name, which can be changed.
+     */
+    @NotNull
+    static Map<String, String> parseParameters(@Nullable final String rawQuery) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return parameters;
+        for (final String parameter : rawQuery.split("&")) {
+            final int separator = parameter.indexOf('=');
+            final String name = URLDecoder.decode(separator < 0 ? parameter : parameter.substring(0, separator), StandardCharsets.UTF_8);
+            final String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            parameters.put(name, value);
+        }
+        return parameters;
+    }
+
+    static int parseInt(@Nullable final String value, final int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    static double parseDouble(@Nullable final String value) {
+        return value == null ? Double.NaN : Double.parseDouble(value);
+    }
+
+    @Nullable
+    static LocalDate parseDate(@Nullable final String value) {
+        return value == null ? null : LocalDate.parse(value);
+    }
+
+    private static boolean parseBoolean(@Nullable final String value) {
+        if ("true".equals(value)) return true;
+        if ("false".equals(value)) return false;
+        throw new IllegalArgumentException("Expected true or false, but got " + value);
+    }
+}
@@ -0,0 +1,153 @@
+package de.infynyty.zuap.query;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import de.infynyty.zuap.insertionHandler.InsertionSnapshot;
+import de.infynyty.zuap.storage.HistoryStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves read-only JSON queries of the insertions that are currently online. Requests only read the latest
+ * {@link InsertionSnapshot} of every handler and the {@link GeoIndex}, so they never wait for an update and updates
+ * never wait for them.
+ * <ul>
+ *     <li>{@code /insertions} returns a page of the insertions matching an {@link InsertionQuery},</li>
+ *     <li>{@code /sources} returns the number of insertions of every handler and the time of its last update,</li>
+ *     <li>{@code /history} returns a {@link HistoryReport} over all insertions ever seen.</li>
+ * </ul>
+ */
+public class QueryServer implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    @NotNull
+    private final HttpServer server;
+    @NotNull
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    @NotNull
+    private final List<? extends InsertionHandler<?>> handlers;
+    @NotNull
+    private final GeoIndex geoIndex;
+    @Nullable
+    private final HistoryStore historyStore;
+
+    /**
+     * Starts serving queries.
+     *
+     * @param address      The address to listen on.
+     * @param handlers     The handlers whose insertions are queried.
+     * @param geoIndex     The location of the current insertions of the handlers, used for queries near a point.
+     * @param historyStore The history of all insertions or null, if it is not available.
+     * @throws IOException If the server cannot listen on the address.
+     */
+    public QueryServer(
+            @NotNull final InetSocketAddress address,
+            @NotNull final List<? extends InsertionHandler<?>> handlers,
+            @NotNull final GeoIndex geoIndex,
+            @Nullable final HistoryStore historyStore
+    ) throws IOException {
+        this.handlers = List.copyOf(handlers);
+        this.geoIndex = geoIndex;
+        this.historyStore = historyStore;
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/insertions", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final InsertionQuery query;
+                try {
+                    query = InsertionQuery.parse(exchange.getRequestURI().getRawQuery());
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, new JSONObject().put("error", e.getMessage()));
+                    return;
+                }
+                send(exchange, 200, query.run(getSnapshots(), geoIndex));
+            }
+        });
+        server.createContext("/sources", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final JSONArray sources = new JSONArray();
+                getSnapshots().forEach((name, snapshot) -> sources.put(new JSONObject()
+                        .put("source", name)
+                        .put("insertions", snapshot.getInsertions().size())
+                        .putOpt("updatedAt", snapshot.getUpdatedAt() == null ? null : snapshot.getUpdatedAt().toString())));
+                send(exchange, 200, new JSONObject().put("sources", sources));
+            }
+        });
+        server.createContext("/history", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                if (historyStore == null) {
+                    send(exchange, 404, new JSONObject().put("error", "The history of insertions is not available"));
+                    return;
+                }
+                final HistoryReport report;
+                try {
+                    report = HistoryReport.parse(exchange.getRequestURI().getRawQuery());
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, new JSONObject().put("error", e.getMessage()));
+                    return;
+                }
+                send(exchange, 200, report.run(historyStore));
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return The address the server listens on, which contains the actual port if port 0 was requested.
+     */
+    @NotNull
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    @NotNull
+    private Map<String, InsertionSnapshot> getSnapshots() {
+        final Map<String, InsertionSnapshot> snapshots = new LinkedHashMap<>();
+        for (final InsertionHandler<?> handler : handlers) {
+            snapshots.put(handler.getHandlerName(), handler.getSnapshot());
+        }
+        return snapshots;
+    }
+
+    private static void send(@NotNull final HttpExchange exchange, final int status, @NotNull final JSONObject json) throws IOException {
+        final byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (final OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
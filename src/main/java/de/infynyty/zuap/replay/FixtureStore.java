@@ -0,0 +1,200 @@
+package de.infynyty.zuap.replay;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.http.ResponseRecorder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.logging.Level;
+
+/**
+ * Saves the responses of the websites to a directory and replays them later, so that handlers can be run against real
+ * data without sending requests to the websites.
+ * <p>
+ * Every body is saved in its own file below a directory named like the source it was requested for. The file
+ * {@code index.tsv} lists one recorded response per line, containing the file of its body, the method, host and
+ * path with query of its request and its status code and content type, separated by tabs. A request that was recorded
+ * several times is answered with its recordings in the order they were recorded, repeating the last one once all
+ * recordings have been replayed.
+ * <p>
+ * Query parameters carrying credentials, such as the {@code api_key} of JsonLink, are neither saved nor compared, so
+ * that recordings can be shared and are replayed regardless of the credentials of a request.
+ */
+public class FixtureStore implements ResponseRecorder {
+
+    private static final String INDEX_FILE = "index.tsv";
+    private static final Set<String> CREDENTIAL_PARAMETERS = Set.of("api_key", "apikey", "access_token", "token");
+
+    /**
+     * A recorded response and the file containing its body.
+     */
+    private static class Fixture {
+        @NotNull
+        private final Path file;
+        private final int statusCode;
+        @Nullable
+        private final String contentType;
+
+        private Fixture(@NotNull final Path file, final int statusCode, @Nullable final String contentType) {
+            this.file = file;
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+        }
+    }
+
+    @NotNull
+    private final Path directory;
+    /**
+     * All recordings by the method, host and path with query of their request, in the order they were recorded.
+     */
+    private final Map<String, List<Fixture>> fixtures = new HashMap<>();
+    /**
+     * The position of the next recording to replay for each request.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+    /**
+     * The number of responses in the index, used to number the files of new recordings.
+     */
+    private int recorded = 0;
+
+    private FixtureStore(@NotNull final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens a directory of recorded responses, creating it if it does not exist yet.
+     *
+     * @param directory The directory.
+     * @return A store containing all responses that have been recorded to the directory so far.
+     * @throws IOException If the directory cannot be created or its index cannot be read.
+     */
+    @NotNull
+    public static FixtureStore open(@NotNull final Path directory) throws IOException {
+        final FixtureStore store = new FixtureStore(directory);
+        Files.createDirectories(directory);
+        final Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            for (final String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                final String[] columns = line.split("\t", -1);
+                if (columns.length != 6) continue;
+                store.add(
+                        toKey(columns[1], columns[2], columns[3]),
+                        new Fixture(directory.resolve(columns[0]), Integer.parseInt(columns[4]), columns[5].isEmpty() ? null : columns[5])
+                );
+                store.recorded++;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Saves a response, so that it can be replayed later. Responses that cannot be saved are logged and skipped, so that
+     * recording never stops a handler from being updated.
+     */
+    @Override
+    public synchronized void record(
+            @NotNull final String source,
+            @NotNull final HttpRequest request,
+            final int statusCode,
+            @Nullable final String contentType,
+            @NotNull final String body
+    ) {
+        final URI uri = request.uri();
+        final String host = request.headers().firstValue(HttpFetcher.ORIGINAL_HOST_HEADER).orElse(uri.getHost());
+        final String file = source.replaceAll("[^A-Za-z0-9_-]", "_") + "/" + String.format(Locale.ROOT, "%06d.body", ++recorded);
+        final String type = contentType == null ? "" : contentType.replace('\t', ' ');
+        try {
+            final Path path = directory.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, body, StandardCharsets.UTF_8);
+            Files.writeString(
+                    directory.resolve(INDEX_FILE),
+                    String.join("\t", file, request.method(), host, toTarget(uri), String.valueOf(statusCode), type) + "\n",
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND
+            );
+            add(toKey(request.method(), host, toTarget(uri)), new Fixture(path, statusCode, contentType));
+        } catch (IOException e) {
+            Zuap.log(Level.WARNING, source, "Could not record response of " + uri + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the next recorded response to a request.
+     *
+     * @param method The method of the request.
+     * @param host   The host the request was meant for.
+     * @param target The path and query of the request.
+     * @return The response or {@code null}, if the request has not been recorded.
+     * @throws IOException If the recorded body cannot be read.
+     */
+    @Nullable
+    public StubResponse replay(@NotNull final String method, @NotNull final String host, @NotNull final String target) throws IOException {
+        final Fixture fixture;
+        synchronized (this) {
+            final String key = toKey(method, host, target);
+            final List<Fixture> recordings = fixtures.get(key);
+            if (recordings == null) return null;
+            final int position = positions.getOrDefault(key, 0);
+            fixture = recordings.get(Math.min(position, recordings.size() - 1));
+            positions.put(key, position + 1);
+        }
+        return new StubResponse(fixture.statusCode, fixture.contentType, Files.readString(fixture.file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The number of recorded responses.
+     */
+    public synchronized int size() {
+        return fixtures.values().stream().mapToInt(List::size).sum();
+    }
+
+    private void add(@NotNull final String key, @NotNull final Fixture fixture) {
+        fixtures.computeIfAbsent(key, k -> new ArrayList<>()).add(fixture);
+    }
+
+    @NotNull
+    private static String toTarget(@NotNull final URI uri) {
+        return withoutCredentials(uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+    }
+
+    @NotNull
+    private static String toKey(@NotNull final String method, @NotNull final String host, @NotNull final String target) {
+        return method.toUpperCase(Locale.ROOT) + " " + host.toLowerCase(Locale.ROOT) + withoutCredentials(target);
+    }
+
+    /**
+     * @param target The path and query of a request.
+     * @return The target without the query parameters in {@link #CREDENTIAL_PARAMETERS}.
+     */
+    @NotNull
+    private static String withoutCredentials(@NotNull final String target) {
+        final int queryStart = target.indexOf('?');
+        if (queryStart < 0) return target;
+        final StringJoiner query = new StringJoiner("&", "?", "").setEmptyValue("");
+        for (final String parameter : target.substring(queryStart + 1).split("&")) {
+            final int nameEnd = parameter.indexOf('=');
+            final String name = nameEnd < 0 ? parameter : parameter.substring(0, nameEnd);
+            if (!CREDENTIAL_PARAMETERS.contains(name.toLowerCase(Locale.ROOT))) {
+                query.add(parameter);
+            }
+        }
+        return target.substring(0, queryStart) + query;
+    }
+}
@@ -0,0 +1,130 @@
+package de.infynyty.zuap.replay;
+
+import de.infynyty.zuap.AdaptiveInterval;
+import de.infynyty.zuap.Pipeline;
+import de.infynyty.zuap.discord.WebhookAnnouncer;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.http.TransferStats;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertionHandler.FlatfoxHandler;
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import de.infynyty.zuap.insertionHandler.MeinWGZimmerHandler;
+import de.infynyty.zuap.insertionHandler.WOKOInsertionHandler;
+import de.infynyty.zuap.metrics.Metrics;
+import de.infynyty.zuap.subscription.Subscription;
+import de.infynyty.zuap.subscription.SubscriptionIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the {@link Pipeline} of the bot with all HTTP based handlers and a Discord webhook announcer against a
+ * {@link StubServer} for a fixed time and reports the throughput of the whole pipeline. No request leaves this machine,
+ * so the load can be many times what the real websites would allow.
+ * <p>
+ * Options are given as {@code --name=value}:
+ * <ul>
+ *     <li>{@code scale}: the factor the usual number of listings is multiplied with, 100 by default.</li>
+ *     <li>{@code churn}: the share of listings replaced each minute, 0.05 by default.</li>
+ *     <li>{@code latency}: the latency of the stub server in milliseconds, 50 by default.</li>
+ *     <li>{@code interval}: the delay between two updates of each handler in seconds, 10 by default.</li>
+ *     <li>{@code duration}: the time to run for in seconds, 120 by default.</li>
+ *     <li>{@code replay}: a directory of recorded responses to replay before generating any.</li>
+ *     <li>{@code data}: the directory to save the keys and the history of insertions in, a new temporary directory
+ *     by default.</li>
+ *     <li>{@code metrics}: a file to write all metrics to once the run has finished.</li>
+ * </ul>
+ */
+public class OfflineRun {
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Map<String, String> options = parseOptions(args);
+        final double scale = Double.parseDouble(options.getOrDefault("scale", "100"));
+        final double churn = Double.parseDouble(options.getOrDefault("churn", "0.05"));
+        final Duration latency = Duration.ofMillis(Long.parseLong(options.getOrDefault("latency", "50")));
+        final Duration interval = Duration.ofSeconds(Long.parseLong(options.getOrDefault("interval", "10")));
+        final Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "120")));
+        final FixtureStore fixtures = options.containsKey("replay") ? FixtureStore.open(Path.of(options.get("replay"))) : null;
+        final Path dataDirectory = options.containsKey("data") ? Path.of(options.get("data")) : Files.createTempDirectory("zuap-offline");
+
+        // every insertion would otherwise be logged on its own
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Logger.getLogger(Insertion.class.getName()).setLevel(Level.SEVERE);
+
+        final SyntheticListings listings = new SyntheticListings(scale, churn, Clock.systemUTC());
+        try (final StubServer stub = new StubServer(new InetSocketAddress("localhost", 0), fixtures, listings, latency)) {
+            final HttpFetcher httpFetcher = HttpFetcher.create();
+            httpFetcher.redirectTo(stub.getUri());
+            Insertion.setHttpFetcher(httpFetcher);
+            final Pipeline pipeline = new Pipeline(
+                    new WebhookAnnouncer(stub.getWebhookUri(), httpFetcher),
+                    new SubscriptionIndex(List.of(Subscription.everything("main", 0))),
+                    dataDirectory,
+                    Duration.ZERO,
+                    announcer -> List.of(
+                            new WOKOInsertionHandler("WOKO", announcer, httpFetcher),
+                            new MeinWGZimmerHandler("MeinWGZimmer", announcer, httpFetcher),
+                            new FlatfoxHandler("Flatfox", announcer, httpFetcher)
+                    )
+            );
+            pipeline.start(name -> new AdaptiveInterval(name, interval, interval, interval));
+
+            System.out.printf(Locale.ROOT, "Running for %ds at scale %.1f (%d WOKO, %d MeinWGZimmer, %d Flatfox listings), %dms latency.%n",
+                    duration.toSeconds(), scale,
+                    listings.getListingCount(SyntheticListings.WOKO_HOST),
+                    listings.getListingCount(SyntheticListings.MEINWGZIMMER_HOST),
+                    listings.getListingCount(SyntheticListings.FLATFOX_HOST),
+                    latency.toMillis());
+            final long start = System.nanoTime();
+            Thread.sleep(duration);
+            pipeline.close();
+            final double seconds = (System.nanoTime() - start) / 1e9;
+
+            for (final InsertionHandler<?> handler : pipeline.getHandlers()) {
+                System.out.printf(Locale.ROOT, "%-14s %8d insertions %6d updates %6d skipped %6d failed %6d timed out%n",
+                        handler.getHandlerName(),
+                        handler.getInsertionCount(),
+                        handler.getUpdateCount(),
+                        handler.getSkippedUpdateCount(),
+                        handler.getFailedUpdateCount(),
+                        handler.getTimedOutUpdateCount());
+            }
+            for (final Map.Entry<String, TransferStats> stats : httpFetcher.getAllStats().entrySet()) {
+                System.out.printf(Locale.ROOT, "%-14s %8d requests %10d bytes received%n",
+                        stats.getKey(), stats.getValue().getRequests(), stats.getValue().getDecodedBytes());
+            }
+            System.out.printf(Locale.ROOT, "Stub server:   %8d requests (%d unknown), %.1f MB sent, %.1f requests/s%n",
+                    stub.getRequestCount(), stub.getUnknownRequestCount(), stub.getBytesSent() / 1e6, stub.getRequestCount() / seconds);
+            System.out.printf(Locale.ROOT, "Announced:     %8d insertions in %d messages, %.1f insertions/s%n",
+                    stub.getWebhookEmbedCount(), stub.getWebhookMessageCount(), stub.getWebhookEmbedCount() / seconds);
+
+            if (options.containsKey("metrics")) {
+                Files.writeString(Path.of(options.get("metrics")), Metrics.scrape());
+            }
+        }
+        System.exit(0);
+    }
+
+    @NotNull
+    private static Map<String, String> parseOptions(@NotNull final String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options must be given as --name=value, but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
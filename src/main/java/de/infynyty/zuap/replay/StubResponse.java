@@ -0,0 +1,19 @@
+package de.infynyty.zuap.replay;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A response served by the {@link StubServer}, either recorded from a website or generated.
+ */
+@Getter
+@RequiredArgsConstructor
+public class StubResponse {
+    private final int statusCode;
+    @Nullable
+    private final String contentType;
+    @NotNull
+    private final String body;
+}
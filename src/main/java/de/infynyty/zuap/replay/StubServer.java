@@ -0,0 +1,218 @@
+package de.infynyty.zuap.replay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.http.HttpFetcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Stands in for all websites and for Discord, so that the whole application can be run without sending a single request
+ * to them. Requests are expected to be {@link HttpFetcher#redirectTo(URI) redirected} to this server, which tells the
+ * websites apart by the {@value HttpFetcher#ORIGINAL_HOST_HEADER} header.
+ * <p>
+ * Requests to websites are answered with a recorded response if there is one and with a generated response
+ * otherwise, after waiting for the configured latency. Successful responses to {@code GET} requests carry an
+ * {@code ETag} derived from their body and are answered with status 304 if the request names the same one in
+ * {@code If-None-Match}, like most web servers do. Requests to a Discord webhook at {@code /api/webhooks/} are only
+ * counted.
+ */
+public class StubServer implements AutoCloseable {
+
+    private static final String WEBHOOK_PATH = "/api/webhooks/";
+
+    @NotNull
+    private final HttpServer server;
+    /**
+     * The JDK server blocks while holding a monitor when writing a response, which pins virtual threads. As the handlers
+     * reading the responses run on virtual threads in the same process, the server uses platform threads instead.
+     */
+    @NotNull
+    private final ExecutorService executor = Executors.newCachedThreadPool(Thread.ofPlatform().name("stub-server-", 0).daemon().factory());
+    @Nullable
+    private final FixtureStore fixtures;
+    @Nullable
+    private final SyntheticListings listings;
+    @NotNull
+    private final Duration latency;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder unknownRequests = new LongAdder();
+    private final LongAdder notModifiedResponses = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder webhookMessages = new LongAdder();
+    private final LongAdder webhookEmbeds = new LongAdder();
+
+    /**
+     * Starts the server.
+     *
+     * @param address  The address to listen on.
+     * @param fixtures The recorded responses to replay or {@code null}, to only generate responses.
+     * @param listings The generator of responses that have not been recorded or {@code null}, to answer them with
+     *                 status 404.
+     * @param latency  The time to wait before answering a request to a website.
+     * @throws IOException If the server cannot listen on the address.
+     */
+    public StubServer(
+            @NotNull final InetSocketAddress address,
+            @Nullable final FixtureStore fixtures,
+            @Nullable final SyntheticListings listings,
+            @NotNull final Duration latency
+    ) throws IOException {
+        this.fixtures = fixtures;
+        this.listings = listings;
+        this.latency = latency;
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                requests.increment();
+                if (exchange.getRequestURI().getRawPath().startsWith(WEBHOOK_PATH)) {
+                    receiveWebhook(exchange);
+                } else {
+                    respond(exchange);
+                }
+            } catch (Exception e) {
+                Zuap.log(Level.WARNING, "Stub server could not answer " + exchange.getRequestURI() + ". " + e.getMessage());
+            }
+        });
+        server.start();
+    }
+
+    private void respond(@NotNull final HttpExchange exchange) throws IOException, InterruptedException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        final String host = exchange.getRequestHeaders().getFirst(HttpFetcher.ORIGINAL_HOST_HEADER);
+        final URI uri = exchange.getRequestURI();
+        final String target = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        final String method = exchange.getRequestMethod();
+        if (!latency.isZero()) {
+            Thread.sleep(latency);
+        }
+
+        StubResponse response = null;
+        if (host != null && fixtures != null) {
+            response = fixtures.replay(method, host, target);
+        }
+        if (host != null && response == null && listings != null) {
+            response = listings.respond(method, host, target);
+        }
+        if (response == null) {
+            unknownRequests.increment();
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        final byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        if (method.equals("GET") && response.getStatusCode() == 200) {
+            final String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.increment();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        if (response.getContentType() != null) {
+            exchange.getResponseHeaders().set("Content-Type", response.getContentType());
+        }
+        exchange.sendResponseHeaders(response.getStatusCode(), body.length == 0 ? -1 : body.length);
+        try (final OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+        bytesSent.add(body.length);
+    }
+
+    private void receiveWebhook(@NotNull final HttpExchange exchange) throws IOException {
+        final String body;
+        try (final InputStream input = exchange.getRequestBody()) {
+            body = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            final JSONObject message = new JSONObject(body);
+            webhookMessages.increment();
+            webhookEmbeds.add(message.has("embeds") ? message.getJSONArray("embeds").length() : 0);
+            exchange.sendResponseHeaders(204, -1);
+        } catch (JSONException e) {
+            exchange.sendResponseHeaders(400, -1);
+        }
+    }
+
+    /**
+     * @return The address requests have to be redirected to.
+     */
+    @NotNull
+    public URI getUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * @return A Discord webhook URL that is answered by this server.
+     */
+    @NotNull
+    public URI getWebhookUri() {
+        return getUri().resolve(WEBHOOK_PATH + "0/offline");
+    }
+
+    /**
+     * @return The number of requests received, including webhook messages.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of requests to websites that could neither be replayed nor generated.
+     */
+    public long getUnknownRequestCount() {
+        return unknownRequests.sum();
+    }
+
+    /**
+     * @return The number of requests to websites that were answered with status 304, as their data had not changed.
+     */
+    public long getNotModifiedCount() {
+        return notModifiedResponses.sum();
+    }
+
+    /**
+     * @return The number of body bytes sent in responses.
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return The number of messages sent to a webhook.
+     */
+    public long getWebhookMessageCount() {
+        return webhookMessages.sum();
+    }
+
+    /**
+     * @return The number of embeds contained in all messages sent to a webhook.
+     */
+    public long getWebhookEmbedCount() {
+        return webhookEmbeds.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
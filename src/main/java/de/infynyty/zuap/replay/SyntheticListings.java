@@ -0,0 +1,402 @@
+package de.infynyty.zuap.replay;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Generates the responses of the websites for any number of listings, so that the whole application can be run at
+ * many times the volume of the real websites. Every listing is derived from its id alone, so the same id always
+ * results in the same listing. The listings online at a time are a window of consecutive ids which moves forward
+ * while time passes: the oldest listings go offline and new ones are posted at the configured rate.
+ * <p>
+ * The number of listings of each website is its usual number multiplied by a scale factor. Only the requests sent by
+ * the handlers are answered, for WGZimmer no responses are generated, as it is read using a browser.
+ */
+public class SyntheticListings {
+
+    public static final String WOKO_HOST = "www.woko.ch";
+    public static final String MEINWGZIMMER_HOST = "api1.meinwgzimmer.ch";
+    public static final String FLATFOX_HOST = "flatfox.ch";
+
+    /**
+     * The usual number of listings online at each website.
+     */
+    private static final int WOKO_LISTINGS = 40;
+    private static final int MEINWGZIMMER_LISTINGS = 400;
+    private static final int FLATFOX_LISTINGS = 1500;
+
+    /**
+     * The area searched by the Flatfox handler, all generated listings are located inside of it.
+     */
+    private static final double NORTH = 47.434662;
+    private static final double SOUTH = 47.320258;
+    private static final double EAST = 8.701075;
+    private static final double WEST = 8.372241;
+    /**
+     * The number of rows and columns of the grid Flatfox listings are sorted into to answer pin requests, matching the
+     * smallest tiles requested by the handler.
+     */
+    private static final int GRID_CELLS_PER_SIDE = 64;
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+
+    private static final String WOKO_LISTING = """
+            <div class="inserat">
+              <table>
+                <tr><td>Ausschreibung vom</td><td>%s</td></tr>
+                <tr><td>Frei ab</td><td>%s</td></tr>
+              </table>
+              <h3>Zimmer in WG</h3>
+              <p>Nachmieter gesucht</p>
+              <div class="preis">%d.--</div>
+              <a href="/de/zimmer-in-zuerich-details/%d">Details</a>
+            </div>
+            """;
+
+    private static final String WGZIMMER_LISTING = """
+            <li class="search-result-entry search-mate-entry">
+              <a href="/wglink/de/%d/zimmer-zuerich.html">
+                <span class="create-date">Erstellt: %s</span>
+                <span class="thumbState"><strong>Zürich Stadt</strong> Kreis %d<br></span>
+                <span class="until-date">Bis: Unbefristet</span>
+                <span class="from-date">Ab dem <strong>%s</strong></span>
+                <span class="cost">%d.00</span>
+              </a>
+            </li>
+            """;
+
+    private final double scale;
+    private final double churnPerMinute;
+    @NotNull
+    private final Clock clock;
+    @NotNull
+    private final Instant start;
+
+    /**
+     * The Flatfox listings online at {@link #gridFirstId} by their cell, each sorted from the newest to the oldest.
+     */
+    private List<List<Long>> grid;
+    private long gridFirstId = -1;
+
+    /**
+     * @param scale          The factor the usual number of listings of each website is multiplied with.
+     * @param churnPerMinute The share of listings replaced by new ones each minute, for example {@code 0.01} for 1%.
+     * @param clock          The clock deciding which listings are online.
+     */
+    public SyntheticListings(final double scale, final double churnPerMinute, @NotNull final Clock clock) {
+        this.scale = scale;
+        this.churnPerMinute = churnPerMinute;
+        this.clock = clock;
+        this.start = clock.instant();
+    }
+
+    /**
+     * Generates the response to a request.
+     *
+     * @param method The method of the request.
+     * @param host   The host the request was meant for.
+     * @param target The path and query of the request.
+     * @return The response or {@code null}, if the request is not one sent by a handler.
+     */
+    @Nullable
+    public StubResponse respond(@NotNull final String method, @NotNull final String host, @NotNull final String target) {
+        final int separator = target.indexOf('?');
+        final String path = separator < 0 ? target : target.substring(0, separator);
+        final Map<String, List<String>> query = parseQuery(separator < 0 ? "" : target.substring(separator + 1));
+        return switch (host.toLowerCase(Locale.ROOT) + path) {
+            case WOKO_HOST + "/de/zimmer-in-zuerich" -> new StubResponse(200, "text/html; charset=utf-8", wokoPage(getFirstId(WOKO_HOST), getListingCount(WOKO_HOST)));
+            case MEINWGZIMMER_HOST + "/live/classes/Room" -> method.equals("POST") ? json(meinWGZimmerPage(getFirstId(MEINWGZIMMER_HOST), getListingCount(MEINWGZIMMER_HOST))) : null;
+            case FLATFOX_HOST + "/api/v1/pin/" -> json(flatfoxPins(query));
+            case FLATFOX_HOST + "/api/v1/public-listing/" -> json(flatfoxListings(query));
+            default -> null;
+        };
+    }
+
+    /**
+     * @return The number of listings a website has at this scale.
+     */
+    public int getListingCount(@NotNull final String host) {
+        return switch (host) {
+            case WOKO_HOST -> scaled(WOKO_LISTINGS);
+            case MEINWGZIMMER_HOST -> scaled(MEINWGZIMMER_LISTINGS);
+            case FLATFOX_HOST -> scaled(FLATFOX_LISTINGS);
+            default -> 0;
+        };
+    }
+
+    /**
+     * Generates the WOKO page listing the given range of ids.
+     *
+     * @param first The id of the first listing.
+     * @param count The number of listings.
+     * @return The HTML page.
+     */
+    @NotNull
+    public static String wokoPage(final long first, final int count) {
+        final StringBuilder page = new StringBuilder("<!DOCTYPE html><html><head><title>WOKO</title></head><body><main>\n");
+        for (long id = first; id < first + count; id++) {
+            page.append(WOKO_LISTING.formatted(swissDate(postDay(id)), swissDate(postDay(id) + random(id, 1, 90)), 350 + random(id, 2, 700), id));
+        }
+        return page.append("</main></body></html>").toString();
+    }
+
+    /**
+     * Generates the MeinWGZimmer API response listing the given range of ids.
+     *
+     * @param first The id of the first listing.
+     * @param count The number of listings.
+     * @return The JSON response.
+     */
+    @NotNull
+    public static String meinWGZimmerPage(final long first, final int count) {
+        final JSONArray results = new JSONArray();
+        for (long id = first; id < first + count; id++) {
+            final String created = START.plusDays(postDay(id)) + "T12:00:00.000Z";
+            results.put(new JSONObject()
+                    .put("objectId", "room" + id)
+                    .put("RoomNr", id)
+                    .put("Id", id)
+                    .put("Price", 400.0 + random(id, 3, 1200))
+                    .put("RoomTitle", "Zimmer in WG")
+                    .put("Street", "Seestrasse " + (1 + random(id, 4, 300)))
+                    .put("Zip", String.valueOf(8001 + random(id, 5, 60)))
+                    .put("City", "Zürich")
+                    .put("ValidFrom", new JSONObject()
+                            .put("__type", "Date")
+                            .put("iso", START.plusDays(postDay(id) + random(id, 6, 90)) + "T22:00:00.000Z"))
+                    .put("createdAt", created)
+                    .put("updatedAt", created)
+                    .put("Location", new JSONObject()
+                            .put("__type", "GeoPoint")
+                            .put("latitude", latitude(id, 7))
+                            .put("longitude", longitude(id, 8)))
+                    .put("Description", "Wir suchen eine nette Mitbewohnerin. ".repeat(4)));
+        }
+        return new JSONObject().put("results", results).toString();
+    }
+
+    /**
+     * Returns the newest pins inside the requested area, like Flatfox.
+     */
+    @NotNull
+    private String flatfoxPins(@NotNull final Map<String, List<String>> query) {
+        final double north = parseDouble(query, "north", NORTH);
+        final double south = parseDouble(query, "south", SOUTH);
+        final double east = parseDouble(query, "east", EAST);
+        final double west = parseDouble(query, "west", WEST);
+        final int maxCount = (int) parseDouble(query, "max_count", Integer.MAX_VALUE);
+
+        final List<Long> pins = new ArrayList<>();
+        final List<List<Long>> grid = getFlatfoxGrid();
+        for (int row = Math.max(0, row(north)); row <= Math.min(GRID_CELLS_PER_SIDE - 1, row(south)); row++) {
+            for (int column = Math.max(0, column(west)); column <= Math.min(GRID_CELLS_PER_SIDE - 1, column(east)); column++) {
+                for (final long pk : grid.get(row * GRID_CELLS_PER_SIDE + column)) {
+                    final double latitude = latitude(pk, 9);
+                    final double longitude = longitude(pk, 10);
+                    if (latitude <= north && latitude >= south && longitude <= east && longitude >= west) {
+                        pins.add(pk);
+                    }
+                }
+            }
+        }
+        pins.sort((a, b) -> Long.compare(b, a));
+        final JSONArray result = new JSONArray();
+        for (final long pk : pins.subList(0, Math.min(maxCount, pins.size()))) {
+            result.put(new JSONObject().put("pk", pk).put("latitude", latitude(pk, 9)).put("longitude", longitude(pk, 10)));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the listings of all requested pins that are still online.
+     */
+    @NotNull
+    private String flatfoxListings(@NotNull final Map<String, List<String>> query) {
+        final int count = getListingCount(FLATFOX_HOST);
+        final long first = getFirstId(count);
+        final JSONArray results = new JSONArray();
+        for (final String value : query.getOrDefault("pk", List.of())) {
+            final long pk;
+            try {
+                pk = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (pk < first || pk >= first + count) continue;
+            results.put(flatfoxListing(pk));
+        }
+        return new JSONObject().put("count", results.length()).put("results", results).toString();
+    }
+
+    /**
+     * Generates the Flatfox API response containing the given range of listings.
+     *
+     * @param first The id of the first listing.
+     * @param count The number of listings.
+     * @return The JSON response.
+     */
+    @NotNull
+    public static String flatfoxPage(final long first, final int count) {
+        final JSONArray results = new JSONArray();
+        for (long pk = first; pk < first + count; pk++) {
+            results.put(flatfoxListing(pk));
+        }
+        return new JSONObject().put("count", count).put("results", results).toString();
+    }
+
+    /**
+     * Generates a WGZimmer search result page listing the given range of ids. Such pages are never served, as WGZimmer
+     * is read using a browser, but they can still be parsed.
+     *
+     * @param first The id of the first listing.
+     * @param count The number of listings.
+     * @return The HTML page.
+     */
+    @NotNull
+    public static String wgZimmerPage(final long first, final int count) {
+        final StringBuilder page = new StringBuilder("<!DOCTYPE html><html><head><title>WGZimmer</title></head><body><ul>\n");
+        for (long id = first; id < first + count; id++) {
+            page.append(WGZIMMER_LISTING.formatted(id, swissDate(postDay(id)), 1 + random(id, 17, 12), swissDate(postDay(id) + random(id, 18, 90)), 400 + random(id, 19, 1000)));
+        }
+        return page.append("</ul></body></html>").toString();
+    }
+
+    @NotNull
+    private static JSONObject flatfoxListing(final long pk) {
+        return new JSONObject()
+                .put("pk", pk)
+                .put("url", "/de/flat/zuerich/" + pk + "/")
+                .put("price_display", 700 + random(pk, 11, 2500))
+                .put("moving_date", START.plusDays(postDay(pk) + random(pk, 12, 90)).toString())
+                .put("is_temporary", random(pk, 13, 3) == 0)
+                .put("created", START.plusDays(postDay(pk)) + "T10:15:00Z")
+                .put("public_address", "Langstrasse " + (1 + random(pk, 14, 300)) + ", 8004 Zürich")
+                .put("city", "Zürich")
+                .put("zipcode", 8001 + random(pk, 15, 60))
+                .put("surface_living", 12 + random(pk, 16, 80))
+                .put("latitude", latitude(pk, 9))
+                .put("longitude", longitude(pk, 10))
+                .put("description", "Helles Zimmer in einer freundlichen WG, nahe ÖV. ".repeat(3));
+    }
+
+    /**
+     * Returns the Flatfox listings that are currently online sorted into a grid, which is only rebuilt once the window
+     * of online listings has moved.
+     */
+    @NotNull
+    private synchronized List<List<Long>> getFlatfoxGrid() {
+        final int count = getListingCount(FLATFOX_HOST);
+        final long first = getFirstId(count);
+        if (grid != null && first == gridFirstId) return grid;
+        final List<List<Long>> cells = new ArrayList<>(GRID_CELLS_PER_SIDE * GRID_CELLS_PER_SIDE);
+        for (int i = 0; i < GRID_CELLS_PER_SIDE * GRID_CELLS_PER_SIDE; i++) {
+            cells.add(new ArrayList<>());
+        }
+        for (long pk = first + count - 1; pk >= first; pk--) {
+            final int row = Math.min(GRID_CELLS_PER_SIDE - 1, row(latitude(pk, 9)));
+            final int column = Math.min(GRID_CELLS_PER_SIDE - 1, column(longitude(pk, 10)));
+            cells.get(row * GRID_CELLS_PER_SIDE + column).add(pk);
+        }
+        grid = cells;
+        gridFirstId = first;
+        return cells;
+    }
+
+    /**
+     * Returns the id of the oldest listing that is online, which increases by the number of listings replaced since
+     * the start.
+     */
+    private long getFirstId(@NotNull final String host) {
+        return getFirstId(getListingCount(host));
+    }
+
+    private long getFirstId(final int count) {
+        final double minutes = Duration.between(start, clock.instant()).toMillis() / 60_000.0;
+        return (long) (minutes * churnPerMinute * count);
+    }
+
+    private int scaled(final int listings) {
+        return (int) Math.max(1, Math.round(listings * scale));
+    }
+
+    private static int row(final double latitude) {
+        return (int) Math.floor((NORTH - latitude) / (NORTH - SOUTH) * GRID_CELLS_PER_SIDE);
+    }
+
+    private static int column(final double longitude) {
+        return (int) Math.floor((longitude - WEST) / (EAST - WEST) * GRID_CELLS_PER_SIDE);
+    }
+
+    /**
+     * Listings are posted in the order of their ids, a few hundred each day.
+     */
+    private static int postDay(final long id) {
+        return (int) (id / 500);
+    }
+
+    private static double latitude(final long id, final int salt) {
+        return SOUTH + random(id, salt, 1_000_000) / 1_000_000.0 * (NORTH - SOUTH);
+    }
+
+    private static double longitude(final long id, final int salt) {
+        return WEST + random(id, salt, 1_000_000) / 1_000_000.0 * (EAST - WEST);
+    }
+
+    /**
+     * Derives a value that looks random, but is always the same for the same id and salt.
+     *
+     * @return A value between 0 inclusive and the bound exclusive.
+     */
+    private static int random(final long id, final int salt, final int bound) {
+        long value = id * 0x9E3779B97F4A7C15L + salt;
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        value = value ^ (value >>> 31);
+        return (int) Math.floorMod(value, (long) bound);
+    }
+
+    @NotNull
+    private static String swissDate(final int daysAfterStart) {
+        final LocalDate date = START.plusDays(daysAfterStart);
+        return "%02d.%02d.%d".formatted(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
+    }
+
+    @NotNull
+    private static StubResponse json(@NotNull final String body) {
+        return new StubResponse(200, "application/json; charset=utf-8", body);
+    }
+
+    private static double parseDouble(@NotNull final Map<String, List<String>> query, @NotNull final String name, final double fallback) {
+        final List<String> values = query.get(name);
+        if (values == null || values.isEmpty()) return fallback;
+        try {
+            return Double.parseDouble(values.get(0));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    @NotNull
+    private static Map<String, List<String>> parseQuery(@NotNull final String query) {
+        final Map<String, List<String>> parameters = new HashMap<>();
+        for (final String parameter : query.split("&")) {
+            if (parameter.isEmpty()) continue;
+            final int separator = parameter.indexOf('=');
+            final String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            final String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            parameters.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+}
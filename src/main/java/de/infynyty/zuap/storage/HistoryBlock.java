@@ -0,0 +1,47 @@
+package de.infynyty.zuap.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A block of rows of the {@link HistoryStore}, which is read one column at a time. All values are stored as longs,
+ * the source of a row is stored as an index into {@link #getSources()}.
+ */
+interface HistoryBlock {
+
+    int FIRST_SEEN = 0;
+    int LAST_SEEN = 1;
+    int SOURCE = 2;
+    int RENT = 3;
+    int MOVE_IN_DAY = 4;
+    int ZIP = 5;
+    int LATITUDE = 6;
+    int LONGITUDE = 7;
+    int COLUMN_COUNT = 8;
+
+    int getRowCount();
+
+    /**
+     * @return The names of the sources used by the rows of this block.
+     */
+    @NotNull
+    List<String> getSources();
+
+    /**
+     * @return The smallest value of a column, which may be {@link HistoryStore#MISSING}.
+     */
+    long getMin(int column);
+
+    /**
+     * @return The largest value of a column.
+     */
+    long getMax(int column);
+
+    /**
+     * @param column The column to read.
+     * @return The values of the column, with one value per row, which must not be modified.
+     */
+    @NotNull
+    long[] read(int column);
+}
@@ -0,0 +1,103 @@
+package de.infynyty.zuap.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rows of the {@link HistoryStore} that are kept in memory, stored as one growing array per column.
+ */
+final class HistoryColumns implements HistoryBlock {
+
+    private final List<String> sources = new ArrayList<>();
+    private final long[][] columns = new long[COLUMN_COUNT][];
+    private int rowCount = 0;
+
+    HistoryColumns(final int capacity) {
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column] = new long[Math.max(capacity, 16)];
+        }
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param source The name of the source of the row.
+     * @param values The values of all columns, where the value of the {@link #SOURCE} column is ignored.
+     */
+    void add(@NotNull final String source, @NotNull final long[] values) {
+        if (rowCount == columns[0].length) {
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                columns[column] = Arrays.copyOf(columns[column], rowCount * 2);
+            }
+        }
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column][rowCount] = values[column];
+        }
+        int sourceId = sources.indexOf(source);
+        if (sourceId < 0) {
+            sourceId = sources.size();
+            sources.add(source);
+        }
+        columns[SOURCE][rowCount] = sourceId;
+        rowCount++;
+    }
+
+    /**
+     * @return An independent copy of all rows, which is not changed by rows added later.
+     */
+    @NotNull
+    HistoryColumns copy() {
+        return copy(0);
+    }
+
+    /**
+     * @param firstRow The index of the first row to copy.
+     * @return An independent copy of the rows from the given one on, which is not changed by rows added later.
+     */
+    @NotNull
+    HistoryColumns copy(final int firstRow) {
+        final HistoryColumns copy = new HistoryColumns(rowCount - firstRow);
+        copy.sources.addAll(sources);
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            System.arraycopy(columns[column], firstRow, copy.columns[column], 0, rowCount - firstRow);
+        }
+        copy.rowCount = rowCount - firstRow;
+        return copy;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public @NotNull List<String> getSources() {
+        return sources;
+    }
+
+    @Override
+    public long getMin(final int column) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < rowCount; row++) {
+            min = Math.min(min, columns[column][row]);
+        }
+        return min;
+    }
+
+    @Override
+    public long getMax(final int column) {
+        long max = Long.MIN_VALUE;
+        for (int row = 0; row < rowCount; row++) {
+            max = Math.max(max, columns[column][row]);
+        }
+        return max;
+    }
+
+    @Override
+    public @NotNull long[] read(final int column) {
+        return columns[column].length == rowCount ? columns[column] : Arrays.copyOf(columns[column], rowCount);
+    }
+}
@@ -0,0 +1,308 @@
+package de.infynyty.zuap.storage;
+
+import de.infynyty.zuap.geo.GeoCell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * Aggregates the rows of a {@link HistoryStore} that match all given filters, for example the median rent of all WOKO
+ * insertions seen in a semester. A query works on the rows that were stored when it was created by
+ * {@link HistoryStore#query()}, including insertions that are still online.
+ * <p>
+ * Rows are filtered one column at a time, so only the columns used by the filters and the aggregated measure are read.
+ * Segments whose minimum and maximum values cannot match a filter are skipped without reading them.
+ */
+public class HistoryQuery {
+
+    /**
+     * A value that can be aggregated for each row.
+     */
+    public enum Measure {
+        /**
+         * The rent in CHF.
+         */
+        RENT,
+        /**
+         * The number of seconds between the first and the last time an insertion was seen online.
+         */
+        SECONDS_ONLINE,
+        /**
+         * The move-in date in days since the epoch.
+         */
+        MOVE_IN_DAY
+    }
+
+    private static final int[] NO_ROWS = new int[0];
+
+    @NotNull
+    private final List<HistoryBlock> blocks;
+    @Nullable
+    private String source;
+    private long zip = HistoryStore.MISSING;
+    private long seenFrom = Long.MIN_VALUE;
+    private long seenTo = Long.MAX_VALUE;
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
+    private double radiusMeters = Double.NaN;
+
+    HistoryQuery(@NotNull final List<HistoryBlock> blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Only includes insertions of a single source.
+     *
+     * @param source The name of the handler that found the insertions.
+     * @return This query.
+     */
+    @NotNull
+    public HistoryQuery source(@NotNull final String source) {
+        this.source = source;
+        return this;
+    }
+
+    /**
+     * Only includes insertions with the given zip code.
+     *
+     * @param zip The zip code.
+     * @return This query.
+     */
+    @NotNull
+    public HistoryQuery zip(final int zip) {
+        this.zip = zip;
+        return this;
+    }
+
+    /**
+     * Only includes insertions that were online at some point in the given time range.
+     *
+     * @param from The start of the time range.
+     * @param to   The end of the time range.
+     * @return This query.
+     */
+    @NotNull
+    public HistoryQuery seenBetween(@NotNull final Instant from, @NotNull final Instant to) {
+        this.seenFrom = from.getEpochSecond();
+        this.seenTo = to.getEpochSecond();
+        return this;
+    }
+
+    /**
+     * Only includes insertions within a distance of a point. Insertions without coordinates are never included.
+     *
+     * @param latitude     The latitude of the point.
+     * @param longitude    The longitude of the point.
+     * @param radiusMeters The maximum distance in meters.
+     * @return This query.
+     */
+    @NotNull
+    public HistoryQuery within(final double latitude, final double longitude, final double radiusMeters) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        return this;
+    }
+
+    /**
+     * @return The number of matching insertions.
+     */
+    public long count() {
+        long count = 0;
+        for (final HistoryBlock block : blocks) {
+            count += select(block).length;
+        }
+        return count;
+    }
+
+    /**
+     * Collects a measure of all matching insertions, leaving out insertions for which it is unknown.
+     *
+     * @param measure The measure to collect.
+     * @return The values in no particular order.
+     */
+    @NotNull
+    public long[] values(@NotNull final Measure measure) {
+        long[] values = new long[0];
+        int count = 0;
+        for (final HistoryBlock block : blocks) {
+            final int[] rows = select(block);
+            if (rows.length == 0) continue;
+            if (count + rows.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, count + rows.length));
+            }
+            if (measure == Measure.SECONDS_ONLINE) {
+                final long[] firstSeen = block.read(HistoryBlock.FIRST_SEEN);
+                final long[] lastSeen = block.read(HistoryBlock.LAST_SEEN);
+                for (final int row : rows) {
+                    values[count++] = lastSeen[row] - firstSeen[row];
+                }
+                continue;
+            }
+            final long[] column = block.read(measure == Measure.RENT ? HistoryBlock.RENT : HistoryBlock.MOVE_IN_DAY);
+            for (final int row : rows) {
+                if (column[row] != HistoryStore.MISSING) {
+                    values[count++] = column[row];
+                }
+            }
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * @param measure The measure to aggregate.
+     * @return The average of a measure of all matching insertions or {@link Double#NaN}, if there are none.
+     */
+    public double average(@NotNull final Measure measure) {
+        final long[] values = values(measure);
+        if (values.length == 0) return Double.NaN;
+        double sum = 0;
+        for (final long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * @param measure The measure to aggregate.
+     * @return The median of a measure of all matching insertions or {@link Double#NaN}, if there are none.
+     */
+    public double median(@NotNull final Measure measure) {
+        return quantile(measure, 0.5);
+    }
+
+    /**
+     * Finds the value below which the given share of all values of a measure lies, interpolating between the two
+     * closest values.
+     *
+     * @param measure  The measure to aggregate.
+     * @param quantile The share between 0 and 1.
+     * @return The quantile of a measure of all matching insertions or {@link Double#NaN}, if there are none.
+     */
+    public double quantile(@NotNull final Measure measure, final double quantile) {
+        return quantiles(measure, quantile)[0];
+    }
+
+    /**
+     * Finds several quantiles of a measure at once, collecting and sorting its values only once.
+     *
+     * @param measure   The measure to aggregate.
+     * @param quantiles The shares between 0 and 1.
+     * @return The quantiles in the given order, which are {@link Double#NaN}, if there are no matching insertions.
+     * @see #quantile(Measure, double)
+     */
+    @NotNull
+    public double[] quantiles(@NotNull final Measure measure, final double... quantiles) {
+        for (final double quantile : quantiles) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("The quantile must be between 0 and 1, but was " + quantile);
+            }
+        }
+        final double[] result = new double[quantiles.length];
+        final long[] values = values(measure);
+        if (values.length == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        Arrays.sort(values);
+        for (int i = 0; i < quantiles.length; i++) {
+            final double position = quantiles[i] * (values.length - 1);
+            final int lower = (int) Math.floor(position);
+            final int upper = (int) Math.ceil(position);
+            result[i] = values[lower] + (values[upper] - values[lower]) * (position - lower);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the rows of a block that match all filters, reading only the columns the filters need.
+     *
+     * @return The indices of the matching rows in ascending order.
+     */
+    @NotNull
+    private int[] select(@NotNull final HistoryBlock block) {
+        if (block.getRowCount() == 0
+                || block.getMin(HistoryBlock.FIRST_SEEN) > seenTo
+                || block.getMax(HistoryBlock.LAST_SEEN) < seenFrom
+                || (zip != HistoryStore.MISSING && (zip < block.getMin(HistoryBlock.ZIP) || zip > block.getMax(HistoryBlock.ZIP)))) {
+            return NO_ROWS;
+        }
+        final int sourceId = source == null ? -1 : block.getSources().indexOf(source);
+        if (source != null && sourceId < 0) return NO_ROWS;
+
+        int[] rows = null;
+        if (sourceId >= 0) {
+            rows = filter(block, rows, HistoryBlock.SOURCE, value -> value == sourceId);
+        }
+        if (zip != HistoryStore.MISSING) {
+            rows = filter(block, rows, HistoryBlock.ZIP, value -> value == zip);
+        }
+        if (seenTo < block.getMax(HistoryBlock.FIRST_SEEN)) {
+            rows = filter(block, rows, HistoryBlock.FIRST_SEEN, value -> value <= seenTo);
+        }
+        if (seenFrom > block.getMin(HistoryBlock.LAST_SEEN)) {
+            rows = filter(block, rows, HistoryBlock.LAST_SEEN, value -> value >= seenFrom);
+        }
+        if (!Double.isNaN(radiusMeters)) {
+            rows = filterByDistance(block, rows == null ? all(block) : rows);
+        }
+        return rows == null ? all(block) : rows;
+    }
+
+    /**
+     * Keeps the rows whose value in a column matches a predicate.
+     *
+     * @param rows The rows to filter or null, to filter all rows.
+     */
+    @NotNull
+    private static int[] filter(
+            @NotNull final HistoryBlock block,
+            @Nullable final int[] rows,
+            final int column,
+            @NotNull final LongPredicate predicate
+    ) {
+        final long[] values = block.read(column);
+        final int[] matching = new int[rows == null ? values.length : rows.length];
+        int count = 0;
+        if (rows == null) {
+            for (int row = 0; row < values.length; row++) {
+                if (predicate.test(values[row])) matching[count++] = row;
+            }
+        } else {
+            for (final int row : rows) {
+                if (predicate.test(values[row])) matching[count++] = row;
+            }
+        }
+        return Arrays.copyOf(matching, count);
+    }
+
+    @NotNull
+    private int[] filterByDistance(@NotNull final HistoryBlock block, @NotNull final int[] rows) {
+        final long[] latitudes = block.read(HistoryBlock.LATITUDE);
+        final long[] longitudes = block.read(HistoryBlock.LONGITUDE);
+        final int[] matching = new int[rows.length];
+        int count = 0;
+        for (final int row : rows) {
+            if (latitudes[row] == HistoryStore.MISSING || longitudes[row] == HistoryStore.MISSING) continue;
+            final double distance = GeoCell.distanceMeters(
+                    latitude, longitude,
+                    HistoryStore.fromMicrodegrees(latitudes[row]), HistoryStore.fromMicrodegrees(longitudes[row])
+            );
+            if (distance <= radiusMeters) matching[count++] = row;
+        }
+        return Arrays.copyOf(matching, count);
+    }
+
+    @NotNull
+    private static int[] all(@NotNull final HistoryBlock block) {
+        final int[] rows = new int[block.getRowCount()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,273 @@
+package de.infynyty.zuap.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable file of rows of the {@link HistoryStore}, which is read through a memory mapping. Every column is
+ * compressed on its own, so that a query only decodes the columns it needs, and the minimum and maximum of every column
+ * are stored in the header, so that a query can skip segments without decoding them at all.
+ * <p>
+ * The file starts with a magic number, the number of rows and the names of all sources. For every column, it contains
+ * the minimum, the maximum, the length of the encoded column and the encoded column. Numeric columns store the
+ * difference to the value of the previous row as a zig-zag encoded varint, which takes a single byte for most
+ * timestamps and rents. The source column stores runs of the same source as pairs of the source and the run length.
+ */
+final class HistorySegment implements HistoryBlock {
+
+    private static final int MAGIC = 0x5A485331; // "ZHS1"
+
+    @NotNull
+    private final Path file;
+    private final int rowCount;
+    @NotNull
+    private final List<String> sources;
+    private final long[] min = new long[COLUMN_COUNT];
+    private final long[] max = new long[COLUMN_COUNT];
+    /**
+     * The encoded columns, each a slice of the mapping of the whole file.
+     */
+    private final ByteBuffer[] columns = new ByteBuffer[COLUMN_COUNT];
+
+    private HistorySegment(@NotNull final Path file, @NotNull final MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("File " + file + " is not a history segment.");
+        }
+        rowCount = buffer.getInt();
+        final int sourceCount = Short.toUnsignedInt(buffer.getShort());
+        final List<String> sources = new ArrayList<>(sourceCount);
+        for (int i = 0; i < sourceCount; i++) {
+            final byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(bytes);
+            sources.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        this.sources = List.copyOf(sources);
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            min[column] = buffer.getLong();
+            max[column] = buffer.getLong();
+            final int length = buffer.getInt();
+            columns[column] = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    /**
+     * Maps an existing segment.
+     *
+     * @param file The file of the segment.
+     * @return The segment.
+     * @throws IOException If the file cannot be read or is not a complete segment.
+     */
+    @NotNull
+    static HistorySegment map(@NotNull final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new HistorySegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (RuntimeException e) {
+            throw new IOException("File " + file + " is not a complete history segment.", e);
+        }
+    }
+
+    /**
+     * Writes rows to a segment, replacing the file atomically if it already exists, and maps it.
+     *
+     * @param file The file of the segment.
+     * @param rows The rows to write.
+     * @return The written segment.
+     * @throws IOException If the file cannot be written.
+     */
+    @NotNull
+    static HistorySegment write(@NotNull final Path file, @NotNull final HistoryBlock rows) throws IOException {
+        final Encoder encoder = new Encoder(rows.getRowCount() * 12 + 256);
+        encoder.putInt(MAGIC);
+        encoder.putInt(rows.getRowCount());
+        encoder.putShort(rows.getSources().size());
+        for (final String source : rows.getSources()) {
+            final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            encoder.putShort(bytes.length);
+            encoder.put(bytes);
+        }
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            encoder.putLong(rows.getMin(column));
+            encoder.putLong(rows.getMax(column));
+            final int lengthPosition = encoder.length;
+            encoder.putInt(0);
+            final long[] values = rows.read(column);
+            if (column == SOURCE) {
+                encodeRuns(encoder, values);
+            } else {
+                encodeDeltas(encoder, values);
+            }
+            encoder.setInt(lengthPosition, encoder.length - lengthPosition - Integer.BYTES);
+        }
+
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel out = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            final ByteBuffer buffer = ByteBuffer.wrap(encoder.bytes, 0, encoder.length);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return map(file);
+    }
+
+    @NotNull
+    Path getFile() {
+        return file;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public @NotNull List<String> getSources() {
+        return sources;
+    }
+
+    @Override
+    public long getMin(final int column) {
+        return min[column];
+    }
+
+    @Override
+    public long getMax(final int column) {
+        return max[column];
+    }
+
+    @Override
+    public @NotNull long[] read(final int column) {
+        // each read uses its own position, so that segments can be read by several threads at once
+        final ByteBuffer buffer = columns[column].duplicate();
+        final long[] values = new long[rowCount];
+        if (column == SOURCE) {
+            int row = 0;
+            while (row < rowCount) {
+                final long source = readVarint(buffer);
+                final int end = row + (int) readVarint(buffer);
+                Arrays.fill(values, row, end, source);
+                row = end;
+            }
+            return values;
+        }
+        long previous = 0;
+        for (int row = 0; row < rowCount; row++) {
+            final long zigZag = readVarint(buffer);
+            previous += (zigZag >>> 1) ^ -(zigZag & 1);
+            values[row] = previous;
+        }
+        return values;
+    }
+
+    private static void encodeDeltas(@NotNull final Encoder encoder, @NotNull final long[] values) {
+        long previous = 0;
+        for (final long value : values) {
+            final long delta = value - previous;
+            encoder.putVarint((delta << 1) ^ (delta >> 63));
+            previous = value;
+        }
+    }
+
+    private static void encodeRuns(@NotNull final Encoder encoder, @NotNull final long[] values) {
+        int start = 0;
+        for (int row = 1; row <= values.length; row++) {
+            if (row == values.length || values[row] != values[start]) {
+                encoder.putVarint(values[start]);
+                encoder.putVarint(row - start);
+                start = row;
+            }
+        }
+    }
+
+    private static long readVarint(@NotNull final ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * A growing byte array, which is written to the file at once.
+     */
+    private static final class Encoder {
+        private byte[] bytes;
+        private int length = 0;
+
+        private Encoder(final int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void ensure(final int additional) {
+            if (length + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+            }
+        }
+
+        private void put(final byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, length, values.length);
+            length += values.length;
+        }
+
+        private void putShort(final int value) {
+            if (value > 0xFFFF) {
+                throw new IllegalArgumentException("Value is too large for a history segment: " + value);
+            }
+            ensure(Short.BYTES);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        private void putInt(final int value) {
+            ensure(Integer.BYTES);
+            setInt(length, value);
+            length += Integer.BYTES;
+        }
+
+        private void setInt(final int position, final int value) {
+            bytes[position] = (byte) (value >>> 24);
+            bytes[position + 1] = (byte) (value >>> 16);
+            bytes[position + 2] = (byte) (value >>> 8);
+            bytes[position + 3] = (byte) value;
+        }
+
+        private void putLong(final long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        private void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
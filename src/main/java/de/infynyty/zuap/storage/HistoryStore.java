@@ -0,0 +1,464 @@
+package de.infynyty.zuap.storage;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.insertion.Insertion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the history of every insertion that was ever seen by any handler: when it was first and last seen online, the
+ * handler that found it, its rent, its move-in date and its location. The history answers questions such as how long
+ * rooms in a district stay online or what the median rent on a website was during a semester, which the handlers
+ * cannot, as they forget insertions once they go offline.
+ * <p>
+ * An insertion is kept in memory while it is online and appended once it goes offline. Appended rows are never
+ * changed. They are collected in memory and written to column oriented {@link HistorySegment segments} of
+ * {@value #SEGMENT_ROWS} rows, which are read through memory mappings by {@link HistoryQuery queries}. Every
+ * {@link #flush()} appends the rows that went offline since the previous flush to a log, until they fill a segment,
+ * and writes the insertions that are online, so that the first time an insertion was seen survives a restart. Flushes
+ * copy the rows while holding the lock of the store and write them after releasing it, so handlers updating the store
+ * do not wait for the disk.
+ */
+public class HistoryStore {
+
+    /**
+     * The value stored for anything that is unknown, such as the rent of an insertion that does not state it.
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+    static final int SEGMENT_ROWS = 1 << 16;
+    /**
+     * The longest time between two flushes while insertions are being updated.
+     */
+    private static final Duration FLUSH_INTERVAL = Duration.ofMinutes(10);
+    private static final int ONLINE_MAGIC = 0x5A484F31; // "ZHO1"
+    private static final int LOG_MAGIC = 0x5A484C31; // "ZHL1"
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String ONLINE_FILE = "online.bin";
+
+    @NotNull
+    private final Path directory;
+    /**
+     * All full segments, which are never changed again. Segments that were filled since the last flush are kept in
+     * memory until the flush has written them.
+     */
+    private final List<HistoryBlock> segments = new ArrayList<>();
+    /**
+     * The full segments that have not been written yet by their number.
+     */
+    private final Map<Integer, HistoryColumns> unwritten = new LinkedHashMap<>();
+    /**
+     * Rows of insertions that went offline, but do not fill a segment yet. They are appended to the log of the segment
+     * with the number {@link #pendingSegment} on every flush, which is replaced by the segment once it is full.
+     */
+    @NotNull
+    private HistoryColumns pending = new HistoryColumns(1024);
+    private int pendingSegment;
+    /**
+     * The number of rows of {@link #pending} that have been appended to its log.
+     */
+    private int loggedRows;
+    /**
+     * The values of all insertions that are online by their key, for each source.
+     */
+    private final Map<String, Map<String, long[]>> online = new HashMap<>();
+    @NotNull
+    private Instant lastFlush = Instant.now();
+    /**
+     * Held while writing files, so that two flushes never write the same file at the same time and a flush never
+     * replaces the files of a later flush with older rows.
+     */
+    private final Object writeLock = new Object();
+
+    private HistoryStore(@NotNull final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the history store in the given directory, creating it if it does not exist.
+     *
+     * @param directory The directory containing all segments.
+     * @return The opened store.
+     * @throws IOException If the store cannot be read or created.
+     */
+    @NotNull
+    public static HistoryStore open(@NotNull final Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final HistoryStore store = new HistoryStore(directory);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Updates the history with all insertions of a source that are currently online. Insertions of the same source
+     * that are not online anymore are appended to the history.
+     *
+     * @param source     The name of the handler that found the insertions.
+     * @param insertions All insertions of the source that are online.
+     * @param now        The time the insertions were seen online.
+     * @throws IOException If a segment cannot be written.
+     */
+    public void update(
+            @NotNull final String source,
+            @NotNull final Collection<? extends Insertion> insertions,
+            @NotNull final Instant now
+    ) throws IOException {
+        final boolean flushNeeded;
+        synchronized (this) {
+            final long seen = now.getEpochSecond();
+            final Map<String, long[]> current = online.computeIfAbsent(source, name -> new HashMap<>());
+            final Set<String> keys = new HashSet<>((int) (insertions.size() / 0.75f) + 1);
+            for (final Insertion insertion : insertions) {
+                keys.add(insertion.getKey());
+                final long[] row = current.get(insertion.getKey());
+                if (row == null) {
+                    final long[] added = new long[HistoryBlock.COLUMN_COUNT];
+                    added[HistoryBlock.FIRST_SEEN] = seen;
+                    setValues(added, insertion, seen);
+                    current.put(insertion.getKey(), added);
+                } else {
+                    setValues(row, insertion, seen);
+                }
+            }
+            final Iterator<Map.Entry<String, long[]>> iterator = current.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, long[]> entry = iterator.next();
+                if (keys.contains(entry.getKey())) continue;
+                iterator.remove();
+                append(source, entry.getValue());
+            }
+            flushNeeded = isFlushNeeded(now);
+        }
+        if (flushNeeded) {
+            flush();
+        }
+    }
+
+    /**
+     * Records that all insertions of a source that are online have been seen again, without the source reporting any
+     * change. Otherwise, insertions would appear to go offline when the last update that found them changed.
+     *
+     * @param source The name of the handler whose insertions have not changed.
+     * @param now    The time the insertions were seen online.
+     * @throws IOException If a segment cannot be written.
+     */
+    public void touch(@NotNull final String source, @NotNull final Instant now) throws IOException {
+        final boolean flushNeeded;
+        synchronized (this) {
+            final long seen = now.getEpochSecond();
+            final Map<String, long[]> current = online.get(source);
+            if (current != null) {
+                current.values().forEach(row -> row[HistoryBlock.LAST_SEEN] = seen);
+            }
+            flushNeeded = isFlushNeeded(now);
+        }
+        if (flushNeeded) {
+            flush();
+        }
+    }
+
+    private boolean isFlushNeeded(@NotNull final Instant now) {
+        return !unwritten.isEmpty() || Duration.between(lastFlush, now).compareTo(FLUSH_INTERVAL) >= 0;
+    }
+
+    /**
+     * Creates a query of all insertions that went offline and all insertions that are online. Insertions that are
+     * online are included with the time they were last seen.
+     *
+     * @return The query, which is not affected by later updates.
+     */
+    @NotNull
+    public synchronized HistoryQuery query() {
+        final List<HistoryBlock> blocks = new ArrayList<>(segments.size() + 2);
+        blocks.addAll(segments);
+        blocks.add(pending.copy());
+        blocks.add(copyOnline(null));
+        return new HistoryQuery(blocks);
+    }
+
+    /**
+     * @return The number of insertions that went offline.
+     */
+    public synchronized long getOfflineCount() {
+        return (long) segments.size() * SEGMENT_ROWS + pending.getRowCount();
+    }
+
+    /**
+     * Writes the segments that were filled since the last flush, appends the rows that went offline since then to the
+     * log of the next segment and writes the insertions that are online to disk. Only copying the rows blocks updates,
+     * writing them does not.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            final Map<Integer, HistoryColumns> full;
+            final HistoryColumns unlogged;
+            final boolean isNewLog;
+            final int partialSegment;
+            final List<String> onlineKeys = new ArrayList<>();
+            final HistoryColumns onlineRows;
+            synchronized (this) {
+                lastFlush = Instant.now();
+                full = new LinkedHashMap<>(unwritten);
+                unlogged = pending.getRowCount() > loggedRows ? pending.copy(loggedRows) : null;
+                isNewLog = loggedRows == 0;
+                partialSegment = pendingSegment;
+                onlineRows = copyOnline(onlineKeys);
+            }
+
+            for (final Map.Entry<Integer, HistoryColumns> segment : full.entrySet()) {
+                final HistorySegment written = HistorySegment.write(segmentFile(segment.getKey()), segment.getValue());
+                Files.deleteIfExists(logFile(segment.getKey()));
+                synchronized (this) {
+                    segments.set(segments.indexOf(segment.getValue()), written);
+                    unwritten.remove(segment.getKey());
+                }
+            }
+            if (unlogged != null) {
+                writeLog(logFile(partialSegment), unlogged, isNewLog);
+                synchronized (this) {
+                    // the segment may have been filled meanwhile, its rows are then written with the next flush
+                    if (pendingSegment == partialSegment) {
+                        loggedRows += unlogged.getRowCount();
+                    }
+                }
+            }
+            writeOnline(onlineKeys, onlineRows);
+        }
+    }
+
+    /**
+     * Flushes the store. Insertions that are online stay online, they are appended once a later run finds them
+     * offline.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void append(@NotNull final String source, @NotNull final long[] row) {
+        pending.add(source, row);
+        if (pending.getRowCount() < SEGMENT_ROWS) return;
+        segments.add(pending);
+        unwritten.put(pendingSegment, pending);
+        pending = new HistoryColumns(1024);
+        pendingSegment++;
+        loggedRows = 0;
+    }
+
+    /**
+     * Copies the rows of all insertions that are online.
+     *
+     * @param keys The list to add the key of every copied row to, in the order of the rows, or null.
+     */
+    @NotNull
+    private HistoryColumns copyOnline(@Nullable final List<String> keys) {
+        final HistoryColumns rows = new HistoryColumns(online.values().stream().mapToInt(Map::size).sum());
+        online.forEach((source, insertions) -> insertions.forEach((key, row) -> {
+            rows.add(source, row);
+            if (keys != null) keys.add(key);
+        }));
+        return rows;
+    }
+
+    private void writeOnline(@NotNull final List<String> keys, @NotNull final HistoryColumns rows) throws IOException {
+        final long[][] columns = new long[HistoryBlock.COLUMN_COUNT][];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = rows.read(column);
+        }
+        final Path file = directory.resolve(ONLINE_FILE);
+        final Path temporary = directory.resolve(ONLINE_FILE + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(ONLINE_MAGIC);
+            for (int row = 0; row < keys.size(); row++) {
+                out.writeUTF(rows.getSources().get((int) columns[HistoryBlock.SOURCE][row]));
+                out.writeUTF(keys.get(row));
+                for (final long[] column : columns) {
+                    out.writeLong(column[row]);
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Appends rows to the log of a segment. A new log is written to a temporary file first and then moved into place,
+     * which also replaces a log that a previous run may have left with a partially written row at its end.
+     *
+     * @param file  The log.
+     * @param rows  The rows to append.
+     * @param isNew {@code True}, if the log does not contain any of the rows of its segment yet.
+     */
+    private static void writeLog(@NotNull final Path file, @NotNull final HistoryColumns rows, final boolean isNew) throws IOException {
+        final long[][] columns = new long[HistoryBlock.COLUMN_COUNT][];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = rows.read(column);
+        }
+        final Path target = isNew ? file.resolveSibling(file.getFileName() + ".tmp") : file;
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(isNew
+                ? Files.newOutputStream(target)
+                : Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (isNew) {
+                out.writeInt(LOG_MAGIC);
+            }
+            for (int row = 0; row < rows.getRowCount(); row++) {
+                out.writeUTF(rows.getSources().get((int) columns[HistoryBlock.SOURCE][row]));
+                for (final long[] column : columns) {
+                    out.writeLong(column[row]);
+                }
+            }
+        }
+        if (isNew) {
+            Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void load() throws IOException {
+        final List<Path> files;
+        final List<Path> logs;
+        try (final Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        try (final Stream<Path> list = Files.list(directory)) {
+            logs = list.filter(file -> file.getFileName().toString().endsWith(LOG_SUFFIX)).toList();
+        }
+        for (final Path file : files) {
+            segments.add(HistorySegment.map(file));
+        }
+        pendingSegment = files.isEmpty() ? 0 : segmentNumber(files.get(files.size() - 1), SEGMENT_SUFFIX) + 1;
+        for (final Path log : logs) {
+            if (segmentNumber(log, LOG_SUFFIX) == pendingSegment) {
+                // the log is written again with the next flush, leaving out a partially written row at its end
+                readLog(log);
+            } else {
+                // the segment of the log has been written, but the log could not be deleted
+                Files.delete(log);
+            }
+        }
+
+        final Path onlineFile = directory.resolve(ONLINE_FILE);
+        if (!Files.exists(onlineFile)) return;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(onlineFile)))) {
+            if (in.readInt() != ONLINE_MAGIC) {
+                throw new IOException("File " + onlineFile + " does not contain online insertions.");
+            }
+            while (true) {
+                final String source;
+                try {
+                    source = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                final String key = in.readUTF();
+                final long[] row = new long[HistoryBlock.COLUMN_COUNT];
+                for (int column = 0; column < row.length; column++) {
+                    row[column] = in.readLong();
+                }
+                online.computeIfAbsent(source, name -> new HashMap<>()).put(key, row);
+            }
+        } catch (EOFException e) {
+            Zuap.log(Level.WARNING, "Discarding a partially written insertion at the end of " + onlineFile);
+        }
+    }
+
+    private void readLog(@NotNull final Path log) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            if (in.readInt() != LOG_MAGIC) {
+                throw new IOException("File " + log + " does not contain history rows.");
+            }
+            final long[] row = new long[HistoryBlock.COLUMN_COUNT];
+            while (true) {
+                final String source;
+                try {
+                    source = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                for (int column = 0; column < row.length; column++) {
+                    row[column] = in.readLong();
+                }
+                pending.add(source, row);
+            }
+        } catch (EOFException e) {
+            Zuap.log(Level.WARNING, "Discarding a partially written row at the end of " + log);
+        }
+    }
+
+    @NotNull
+    private Path segmentFile(final int number) {
+        return directory.resolve(String.format("%06d%s", number, SEGMENT_SUFFIX));
+    }
+
+    @NotNull
+    private Path logFile(final int number) {
+        return directory.resolve(String.format("%06d%s", number, LOG_SUFFIX));
+    }
+
+    private static int segmentNumber(@NotNull final Path file, @NotNull final String suffix) {
+        final String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - suffix.length()));
+    }
+
+    /**
+     * Sets all values of a row except the time the insertion was first seen.
+     */
+    private static void setValues(@NotNull final long[] row, @NotNull final Insertion insertion, final long lastSeen) {
+        row[HistoryBlock.LAST_SEEN] = lastSeen;
+        row[HistoryBlock.RENT] = insertion.getRent() < 0 ? MISSING : insertion.getRent();
+        final LocalDate moveInDate = insertion.getMoveInDate();
+        row[HistoryBlock.MOVE_IN_DAY] = moveInDate == null ? MISSING : moveInDate.toEpochDay();
+        row[HistoryBlock.ZIP] = parseZip(insertion.getZip());
+        row[HistoryBlock.LATITUDE] = toMicrodegrees(insertion.getLatitude());
+        row[HistoryBlock.LONGITUDE] = toMicrodegrees(insertion.getLongitude());
+    }
+
+    private static long parseZip(@Nullable final String zip) {
+        if (zip == null || zip.isEmpty() || zip.length() > 9) return MISSING;
+        long value = 0;
+        for (int i = 0; i < zip.length(); i++) {
+            final char digit = zip.charAt(i);
+            if (digit < '0' || digit > '9') return MISSING;
+            value = value * 10 + (digit - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Stores coordinates as whole millionths of a degree, which are precise to about ten centimeters and take fewer
+     * bytes in a segment than doubles.
+     */
+    private static long toMicrodegrees(final double degrees) {
+        return Double.isNaN(degrees) ? MISSING : Math.round(degrees * 1e6);
+    }
+
+    static double fromMicrodegrees(final long microdegrees) {
+        return microdegrees / 1e6;
+    }
+}
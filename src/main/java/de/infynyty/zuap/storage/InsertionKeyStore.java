@@ -0,0 +1,203 @@
+package de.infynyty.zuap.storage;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.insertionHandler.InsertionDiff;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Persists the keys of all insertions a handler currently knows about, so that a restarted handler can announce
+ * insertions that were posted while it was offline instead of treating them as already known.
+ * <p>
+ * The keys are stored in an append-only log of add and remove records, which is read through a memory mapping on
+ * startup. Once the log contains considerably more records than live keys, it is compacted by rewriting only the
+ * live keys into a new file.
+ */
+public class InsertionKeyStore {
+
+    private static final int MAGIC = 0x5A4B5331; // "ZKS1"
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER_SIZE = Byte.BYTES + Short.BYTES;
+    /**
+     * The log is never compacted while it contains fewer records than this.
+     */
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+    @NotNull
+    private final Path file;
+    private final LinkedHashSet<String> keys = new LinkedHashSet<>();
+    @NotNull
+    private FileChannel channel;
+    private int recordCount = 0;
+
+    private InsertionKeyStore(@NotNull final Path file) throws IOException {
+        this.file = file;
+        this.channel = openForAppend(file);
+    }
+
+    /**
+     * Opens the key store at the given path and loads all live keys. A missing file is created and a record that was
+     * only partially written before a crash is discarded.
+     *
+     * @param file The path of the log file.
+     * @return The opened store.
+     * @throws IOException If the file cannot be read or created.
+     */
+    @NotNull
+    public static InsertionKeyStore open(@NotNull final Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        if (!Files.exists(file) || Files.size(file) < Integer.BYTES) {
+            writeLog(file, Collections.emptySet());
+        }
+        final InsertionKeyStore store = new InsertionKeyStore(file);
+        store.load();
+        return store;
+    }
+
+    /**
+     * @return A read-only view of all keys that are currently stored.
+     */
+    @NotNull
+    public synchronized Set<String> getKeys() {
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Appends the changes of a diff to the log and compacts it if necessary. Changes are written through to the file
+     * system, but not forced to disk until {@link #flush()} is called.
+     *
+     * @param diff The changes to persist.
+     * @throws IOException If the log cannot be written.
+     */
+    public synchronized void update(@NotNull final InsertionDiff<?> diff) throws IOException {
+        for (final String removed : diff.getRemoved()) {
+            if (keys.remove(removed)) append(REMOVE, removed);
+        }
+        for (final String added : diff.getUpdated().keySet()) {
+            if (keys.add(added)) append(ADD, added);
+        }
+        if (recordCount > MIN_RECORDS_BEFORE_COMPACTION && recordCount > 2 * keys.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Forces all appended records to disk.
+     *
+     * @throws IOException If the file cannot be synced.
+     */
+    public synchronized void flush() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying file.
+     *
+     * @throws IOException If the file cannot be synced or closed.
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        try (final FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("File " + file + " is not an insertion key store.");
+            }
+            int validLength = buffer.position();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                final byte type = buffer.get();
+                final int length = Short.toUnsignedInt(buffer.getShort());
+                if ((type != ADD && type != REMOVE) || buffer.remaining() < length) break;
+                final byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                final String key = new String(bytes, StandardCharsets.UTF_8);
+                if (type == ADD) {
+                    keys.add(key);
+                } else {
+                    keys.remove(key);
+                }
+                recordCount++;
+                validLength = buffer.position();
+            }
+            if (validLength < readChannel.size()) {
+                Zuap.log(Level.WARNING, "Discarding a partially written record at the end of " + file);
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private void append(final byte type, @NotNull final String key) throws IOException {
+        final ByteBuffer buffer = encode(type, key);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        recordCount++;
+    }
+
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        writeLog(compacted, keys);
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openForAppend(file);
+        recordCount = keys.size();
+    }
+
+    private static void writeLog(@NotNull final Path target, @NotNull final Set<String> keys) throws IOException {
+        try (final FileChannel out = FileChannel.open(
+                target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip();
+            out.write(header);
+            for (final String key : keys) {
+                final ByteBuffer buffer = encode(ADD, key);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer encode(final byte type, @NotNull final String key) throws IOException {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Insertion key is too long to be stored: " + key);
+        }
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length)
+                .put(type)
+                .putShort((short) bytes.length)
+                .put(bytes)
+                .flip();
+    }
+
+    @NotNull
+    private static FileChannel openForAppend(@NotNull final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
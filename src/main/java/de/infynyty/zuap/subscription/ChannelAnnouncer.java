@@ -0,0 +1,29 @@
+package de.infynyty.zuap.subscription;
+
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * This interface is used to announce insertions in a specific channel of a platform, so that each subscriber only
+ * sees the insertions they are interested in.
+ */
+public interface ChannelAnnouncer {
+
+    /**
+     * Announces several insertions in a channel.
+     * @param channelId The id of the channel.
+     * @param insertions The insertions to announce, which must not be null.
+     */
+    void announceAll(final long channelId, @NotNull final List<Insertion> insertions);
+
+    /**
+     * Announces that an insertion has changed in a channel. By default, changes are not announced.
+     * @param channelId The id of the channel.
+     * @param change The changed properties of the insertion, which must not be null.
+     */
+    default void announceChange(final long channelId, @NotNull final InsertionChange change) {
+    }
+}
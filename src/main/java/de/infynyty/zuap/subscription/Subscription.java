@@ -0,0 +1,149 @@
+package de.infynyty.zuap.subscription;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.insertion.Insertion;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The criteria a subscriber wants new insertions to match and the channel matching insertions are posted to. Every
+ * criterion is optional. If an insertion does not contain the information a criterion needs, for example because its
+ * website does not show coordinates, the criterion is ignored instead of hiding the insertion.
+ */
+@Getter
+public class Subscription {
+
+    @NotNull
+    private final String id;
+    private final long channelId;
+    private final int minRent;
+    private final int maxRent;
+    @Nullable
+    private final LocalDate earliestMoveIn;
+    @Nullable
+    private final LocalDate latestMoveIn;
+    /**
+     * Whether a new tenant has to be wanted or {@code null}, if both new tenants and subtenants are fine.
+     */
+    @Nullable
+    private final Boolean nextTenantWanted;
+    /**
+     * The center of the area insertions have to be located in or {@link Double#NaN}, if there is no area.
+     */
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+
+    public Subscription(
+            @NotNull final String id,
+            final long channelId,
+            final int minRent,
+            final int maxRent,
+            @Nullable final LocalDate earliestMoveIn,
+            @Nullable final LocalDate latestMoveIn,
+            @Nullable final Boolean nextTenantWanted,
+            final double latitude,
+            final double longitude,
+            final double radiusMeters
+    ) {
+        this.id = id;
+        this.channelId = channelId;
+        this.minRent = minRent;
+        this.maxRent = maxRent;
+        this.earliestMoveIn = earliestMoveIn;
+        this.latestMoveIn = latestMoveIn;
+        this.nextTenantWanted = nextTenantWanted;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+    }
+
+    /**
+     * Creates a subscription that matches every insertion.
+     *
+     * @param id        The name of the subscription.
+     * @param channelId The channel insertions are posted to.
+     * @return The subscription.
+     */
+    @NotNull
+    public static Subscription everything(@NotNull final String id, final long channelId) {
+        return new Subscription(id, channelId, 0, Integer.MAX_VALUE, null, null, null, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Reads a subscription from JSON like
+     * <pre>{@code
+     * {"id": "kreis-4", "channelId": 123, "minRent": 500, "maxRent": 900, "earliestMoveIn": "2024-04-01",
+     *  "latestMoveIn": "2024-06-30", "nextTenantWanted": true,
+     *  "area": {"latitude": 47.3779, "longitude": 8.5273, "radius": 1500}}
+     * }</pre>
+     * where everything except {@code id} and {@code channelId} is optional.
+     *
+     * @param json The JSON object.
+     * @return The subscription.
+     * @throws IllegalArgumentException If the JSON object does not describe a valid subscription.
+     */
+    @NotNull
+    public static Subscription fromJson(@NotNull final JSONObject json) throws IllegalArgumentException {
+        try {
+            final JSONObject area = json.optJSONObject("area");
+            final Subscription subscription = new Subscription(
+                    json.getString("id"),
+                    json.getLong("channelId"),
+                    json.optInt("minRent", 0),
+                    json.optInt("maxRent", Integer.MAX_VALUE),
+                    json.has("earliestMoveIn") ? LocalDate.parse(json.getString("earliestMoveIn")) : null,
+                    json.has("latestMoveIn") ? LocalDate.parse(json.getString("latestMoveIn")) : null,
+                    json.has("nextTenantWanted") ? json.getBoolean("nextTenantWanted") : null,
+                    area == null ? Double.NaN : area.getDouble("latitude"),
+                    area == null ? Double.NaN : area.getDouble("longitude"),
+                    area == null ? Double.NaN : area.getDouble("radius")
+            );
+            if (subscription.minRent > subscription.maxRent) {
+                throw new IllegalArgumentException("The minimum rent of subscription " + subscription.id + " is higher than its maximum rent.");
+            }
+            return subscription;
+        } catch (JSONException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid subscription " + json + ": " + e.getMessage());
+        }
+    }
+
+    public boolean hasArea() {
+        return GeoCell.isValid(latitude, longitude) && !Double.isNaN(radiusMeters);
+    }
+
+    /**
+     * Checks all criteria of this subscription against an insertion.
+     *
+     * @param insertion The insertion.
+     * @return {@code True}, if the insertion matches all criteria it contains the information for.
+     */
+    public boolean matches(@NotNull final Insertion insertion) {
+        final int rent = insertion.getRent();
+        if (rent >= 0 && (rent < minRent || rent > maxRent)) return false;
+
+        final LocalDate moveIn = insertion.getMoveInDate();
+        if (moveIn != null) {
+            if (earliestMoveIn != null && moveIn.isBefore(earliestMoveIn)) return false;
+            if (latestMoveIn != null && moveIn.isAfter(latestMoveIn)) return false;
+        }
+
+        if (nextTenantWanted != null && nextTenantWanted != insertion.isNextTenantWanted()) return false;
+
+        if (hasArea() && GeoCell.isValid(insertion.getLatitude(), insertion.getLongitude())) {
+            return GeoCell.distanceMeters(latitude, longitude, insertion.getLatitude(), insertion.getLongitude()) <= radiusMeters;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription " + id + " (channel " + channelId + ")";
+    }
+}
@@ -0,0 +1,192 @@
+package de.infynyty.zuap.subscription;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.insertion.Insertion;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the subscriptions a new insertion matches without checking every subscription. Each criterion has its own
+ * index: rent ranges and move-in date ranges are registered in every fixed size bucket they overlap, and areas in every
+ * grid cell their bounding box overlaps. An insertion is looked up in each index and only the subscriptions of the
+ * smallest result are checked in detail.
+ * <p>
+ * Subscriptions that do not restrict a criterion, or whose range spans too many buckets, are kept in a separate list
+ * of that index that is always part of the result. Such a criterion is not selective anyway, so one of the other
+ * indexes usually yields fewer candidates. The index is immutable and can be shared between threads.
+ */
+public class SubscriptionIndex {
+
+    private static final int RENT_BUCKET_SIZE = 100;
+    private static final int MOVE_IN_BUCKET_DAYS = 7;
+    private static final double CELL_SIZE_METERS = 1000;
+    /**
+     * Ranges spanning more buckets than this are not registered in the buckets, so that a subscription like "at least
+     * 500 CHF" does not take up memory in every bucket up to infinity.
+     */
+    private static final int MAX_BUCKETS_PER_RANGE = 64;
+
+    /**
+     * Maps buckets to the subscriptions registered in them.
+     */
+    private static final class BucketIndex {
+        private final Map<Long, List<Subscription>> buckets = new HashMap<>();
+        private final List<Subscription> unrestricted = new ArrayList<>();
+
+        private void add(@NotNull final Subscription subscription, final long... keys) {
+            for (final long key : keys) {
+                buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(subscription);
+            }
+        }
+
+        private void addRange(@NotNull final Subscription subscription, final long from, final long to) {
+            if (to - from >= MAX_BUCKETS_PER_RANGE) {
+                unrestricted.add(subscription);
+                return;
+            }
+            for (long key = from; key <= to; key++) {
+                add(subscription, key);
+            }
+        }
+
+        @NotNull
+        private List<Subscription> get(final long key) {
+            return buckets.getOrDefault(key, List.of());
+        }
+    }
+
+    private final List<Subscription> subscriptions;
+    private final BucketIndex rentIndex = new BucketIndex();
+    private final BucketIndex moveInIndex = new BucketIndex();
+    private final BucketIndex areaIndex = new BucketIndex();
+
+    public SubscriptionIndex(@NotNull final List<Subscription> subscriptions) {
+        this.subscriptions = List.copyOf(subscriptions);
+        for (final Subscription subscription : this.subscriptions) {
+            indexRent(subscription);
+            indexMoveIn(subscription);
+            indexArea(subscription);
+        }
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @param insertion The insertion.
+     * @return All subscriptions the insertion matches, in no particular order.
+     */
+    @NotNull
+    public List<Subscription> match(@NotNull final Insertion insertion) {
+        List<Subscription> bucket = null;
+        List<Subscription> unrestricted = subscriptions;
+        if (insertion.getRent() >= 0) {
+            final long key = insertion.getRent() / RENT_BUCKET_SIZE;
+            if (isSmaller(rentIndex, key, bucket, unrestricted)) {
+                bucket = rentIndex.get(key);
+                unrestricted = rentIndex.unrestricted;
+            }
+        }
+        if (insertion.getMoveInDate() != null) {
+            final long key = moveInBucket(insertion.getMoveInDate());
+            if (isSmaller(moveInIndex, key, bucket, unrestricted)) {
+                bucket = moveInIndex.get(key);
+                unrestricted = moveInIndex.unrestricted;
+            }
+        }
+        if (GeoCell.isValid(insertion.getLatitude(), insertion.getLongitude())) {
+            final long key = GeoCell.of(insertion.getLatitude(), insertion.getLongitude(), CELL_SIZE_METERS);
+            if (isSmaller(areaIndex, key, bucket, unrestricted)) {
+                bucket = areaIndex.get(key);
+                unrestricted = areaIndex.unrestricted;
+            }
+        }
+
+        final List<Subscription> matches = new ArrayList<>();
+        if (bucket != null) {
+            addMatches(bucket, insertion, matches);
+        }
+        addMatches(unrestricted, insertion, matches);
+        return matches;
+    }
+
+    private static boolean isSmaller(
+            @NotNull final BucketIndex index,
+            final long key,
+            final List<Subscription> bucket,
+            @NotNull final List<Subscription> unrestricted
+    ) {
+        final int current = (bucket == null ? 0 : bucket.size()) + unrestricted.size();
+        return index.get(key).size() + index.unrestricted.size() < current;
+    }
+
+    private static void addMatches(
+            @NotNull final List<Subscription> candidates,
+            @NotNull final Insertion insertion,
+            @NotNull final List<Subscription> matches
+    ) {
+        for (final Subscription candidate : candidates) {
+            if (candidate.matches(insertion)) {
+                matches.add(candidate);
+            }
+        }
+    }
+
+    private void indexRent(@NotNull final Subscription subscription) {
+        if (subscription.getMaxRent() == Integer.MAX_VALUE) {
+            rentIndex.unrestricted.add(subscription);
+            return;
+        }
+        rentIndex.addRange(
+                subscription,
+                Math.max(0, subscription.getMinRent()) / RENT_BUCKET_SIZE,
+                subscription.getMaxRent() / RENT_BUCKET_SIZE
+        );
+    }
+
+    private void indexMoveIn(@NotNull final Subscription subscription) {
+        if (subscription.getEarliestMoveIn() == null || subscription.getLatestMoveIn() == null) {
+            moveInIndex.unrestricted.add(subscription);
+            return;
+        }
+        moveInIndex.addRange(
+                subscription,
+                moveInBucket(subscription.getEarliestMoveIn()),
+                moveInBucket(subscription.getLatestMoveIn())
+        );
+    }
+
+    private void indexArea(@NotNull final Subscription subscription) {
+        if (!subscription.hasArea()) {
+            areaIndex.unrestricted.add(subscription);
+            return;
+        }
+        // the bounding box of the circle, widened by a cell to make up for the approximate grid
+        final int rowReach = (int) Math.ceil(subscription.getRadiusMeters() / CELL_SIZE_METERS) + 1;
+        final int row = GeoCell.row(subscription.getLatitude(), CELL_SIZE_METERS);
+        final int column = GeoCell.column(subscription.getLongitude(), CELL_SIZE_METERS);
+        if ((2 * rowReach + 1) * (2 * rowReach + 1) > MAX_BUCKETS_PER_RANGE * MAX_BUCKETS_PER_RANGE) {
+            areaIndex.unrestricted.add(subscription);
+            return;
+        }
+        for (int r = row - rowReach; r <= row + rowReach; r++) {
+            for (int c = column - rowReach; c <= column + rowReach; c++) {
+                areaIndex.add(subscription, GeoCell.key(r, c));
+            }
+        }
+    }
+
+    private static long moveInBucket(@NotNull final LocalDate date) {
+        return Math.floorDiv(date.toEpochDay(), MOVE_IN_BUCKET_DAYS);
+    }
+}
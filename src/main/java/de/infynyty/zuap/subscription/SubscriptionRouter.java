@@ -0,0 +1,107 @@
+package de.infynyty.zuap.subscription;
+
+import de.infynyty.zuap.Zuap;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.InsertionChange;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Announces each insertion in the channels of all subscriptions it matches. An insertion matched by several
+ * subscriptions of the same channel is only announced once in that channel. Changes are routed by the current version
+ * of the insertion, so a lowered rent is announced to subscribers whose maximum rent it now fits.
+ */
+public class SubscriptionRouter implements InsertionAnnouncer {
+
+    @NotNull
+    private final ChannelAnnouncer channelAnnouncer;
+    @NotNull
+    private volatile SubscriptionIndex index;
+
+    public SubscriptionRouter(@NotNull final ChannelAnnouncer channelAnnouncer, @NotNull final SubscriptionIndex index) {
+        this.channelAnnouncer = channelAnnouncer;
+        this.index = index;
+    }
+
+    /**
+     * Reads the subscriptions from a JSON file containing an array of subscriptions.
+     *
+     * @param file The file.
+     * @return The subscriptions or an empty list, if the file does not exist.
+     * @throws IOException If the file cannot be read or does not contain valid subscriptions.
+     * @see Subscription#fromJson(org.json.JSONObject)
+     */
+    @NotNull
+    public static List<Subscription> load(@NotNull final Path file) throws IOException {
+        if (!Files.exists(file)) return List.of();
+        try {
+            final JSONArray array = new JSONArray(Files.readString(file));
+            final List<Subscription> subscriptions = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                subscriptions.add(Subscription.fromJson(array.getJSONObject(i)));
+            }
+            return subscriptions;
+        } catch (JSONException | IllegalArgumentException e) {
+            throw new IOException("Invalid subscriptions in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the subscriptions, for example after the subscription file has been edited. Insertions that are
+     * currently being announced are still routed using the old subscriptions.
+     *
+     * @param index The new subscriptions.
+     */
+    public void setIndex(@NotNull final SubscriptionIndex index) {
+        this.index = index;
+    }
+
+    @NotNull
+    public SubscriptionIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void announce(@NotNull final Insertion insertion) {
+        announceAll(List.of(insertion));
+    }
+
+    @Override
+    public void announceAll(@NotNull final List<Insertion> insertions) {
+        final SubscriptionIndex index = this.index;
+        final Map<Long, Set<Insertion>> byChannel = new LinkedHashMap<>();
+        for (final Insertion insertion : insertions) {
+            final List<Subscription> matches = index.match(insertion);
+            if (matches.isEmpty()) {
+                Zuap.log(Level.FINE, "No subscription matches insertion " + insertion.getKey());
+                continue;
+            }
+            for (final Subscription subscription : matches) {
+                byChannel.computeIfAbsent(subscription.getChannelId(), channel -> new LinkedHashSet<>()).add(insertion);
+            }
+        }
+        byChannel.forEach((channelId, matched) -> channelAnnouncer.announceAll(channelId, new ArrayList<>(matched)));
+    }
+
+    @Override
+    public void announceChange(@NotNull final InsertionChange change) {
+        final Set<Long> channels = new LinkedHashSet<>();
+        for (final Subscription subscription : index.match(change.getInsertion())) {
+            channels.add(subscription.getChannelId());
+        }
+        channels.forEach(channelId -> channelAnnouncer.announceChange(channelId, change));
+    }
+}
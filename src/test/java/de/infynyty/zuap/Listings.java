@@ -0,0 +1,65 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listings of the websites shared by several tests. All rooms are free from the 1st of April 2024 and were posted in
+ * March 2024.
+ */
+public class Listings {
+
+    /**
+     * A WOKO listing with a rent of 650 CHF, to be formatted with its id.
+     */
+    public static final String WOKO_HTML = """
+            <div class="inserat">
+              <table>
+                <tr><td>Ausschreibung vom</td><td>15.03.2024</td></tr>
+                <tr><td>Frei ab</td><td>1.4.2024</td></tr>
+              </table>
+              <p>Nachmieter gesucht</p>
+              <p>Ein langer Beschreibungstext, der in jeder Ausschreibung vorkommt und nicht gespeichert werden soll.</p>
+              <div class="preis">650.--</div>
+              <a href="/de/zimmer-in-zuerich-details/%d">Details</a>
+            </div>""";
+
+    public static Element woko(final int id) {
+        return Jsoup.parse(String.format(WOKO_HTML, id)).getElementsByClass("inserat").get(0);
+    }
+
+    /**
+     * @return The room as returned by the MeinWGZimmer API, which can be extended before it is parsed.
+     */
+    public static JSONObject meinWGZimmerJson(final int roomNumber, final int rent) {
+        return new JSONObject()
+                .put("RoomNr", roomNumber)
+                .put("Price", rent)
+                .put("ValidFrom", new JSONObject().put("iso", "2024-04-01T00:00:00.000Z"))
+                .put("createdAt", "2024-03-01T12:00:00.000Z");
+    }
+
+    public static MeinWGZimmerInsertion meinWGZimmer(final int roomNumber) {
+        return meinWGZimmer(roomNumber, 800);
+    }
+
+    public static MeinWGZimmerInsertion meinWGZimmer(final int roomNumber, final int rent) {
+        return new MeinWGZimmerInsertion(meinWGZimmerJson(roomNumber, rent));
+    }
+
+    /**
+     * @return The rooms with the numbers from {@code from} to {@code to}, exclusive, and a rent of 800 CHF.
+     */
+    public static List<MeinWGZimmerInsertion> meinWGZimmerRooms(final int from, final int to) {
+        final List<MeinWGZimmerInsertion> insertions = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            insertions.add(meinWGZimmer(i));
+        }
+        return insertions;
+    }
+}
@@ -0,0 +1,72 @@
+package de.infynyty.zuap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class TestAdaptiveInterval {
+
+    private static final Duration MIN = Duration.ofMinutes(1);
+    private static final Duration MAX = Duration.ofMinutes(30);
+    private static final Duration INITIAL = Duration.ofMinutes(5);
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void testInitialDelayIsKeptUntilARateIsKnown() {
+        final AdaptiveInterval interval = new AdaptiveInterval("Test", INITIAL, MIN, MAX, clock);
+        Assertions.assertEquals(INITIAL, interval.getDelay());
+        interval.recordUpdate(100);
+        Assertions.assertEquals(INITIAL, interval.getDelay());
+    }
+
+    @Test
+    public void testBusySourceIsPolledMoreOften() {
+        final AdaptiveInterval interval = new AdaptiveInterval("Test", INITIAL, MIN, MAX, clock);
+        interval.recordUpdate(0);
+        for (int i = 0; i < 10; i++) {
+            clock.advance(interval.getDelay());
+            interval.recordUpdate(5);
+        }
+        Assertions.assertEquals(MIN, interval.getDelay());
+    }
+
+    @Test
+    public void testQuietSourceIsPolledLessOften() {
+        final AdaptiveInterval interval = new AdaptiveInterval("Test", INITIAL, MIN, MAX, clock);
+        interval.recordUpdate(0);
+        clock.advance(interval.getDelay());
+        interval.recordUpdate(0);
+        // the delay at most doubles per update
+        Assertions.assertEquals(INITIAL.multipliedBy(2), interval.getDelay());
+        for (int i = 0; i < 10; i++) {
+            clock.advance(interval.getDelay());
+            interval.recordUpdate(0);
+        }
+        Assertions.assertEquals(MAX, interval.getDelay());
+    }
+
+    @Test
+    public void testUsualRateOfTheHourIsConsidered() {
+        final AdaptiveInterval withProfile = new AdaptiveInterval("Test", INITIAL, MIN, MAX, clock);
+        withProfile.recordUpdate(0);
+        // a busy morning hour on the first day
+        for (int i = 0; i < 12; i++) {
+            clock.advance(Duration.ofMinutes(5));
+            withProfile.recordUpdate(3);
+        }
+        // a quiet rest of the day, until shortly before the same hour of the next day
+        while (clock.instant().isBefore(Instant.parse("2024-03-16T06:55:00Z"))) {
+            clock.advance(Duration.ofMinutes(5));
+            withProfile.recordUpdate(0);
+        }
+        Assertions.assertEquals(MAX, withProfile.getDelay());
+
+        clock.advance(Duration.ofHours(1));
+        withProfile.recordUpdate(0);
+        // the recent rate is zero, but insertions are usually posted at this hour
+        Assertions.assertTrue(withProfile.getDelay().compareTo(MAX) < 0, "Delay was " + withProfile.getDelay());
+    }
+}
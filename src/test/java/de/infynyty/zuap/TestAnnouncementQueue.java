@@ -0,0 +1,157 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertionHandler.AnnouncementQueue;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class TestAnnouncementQueue {
+
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<Insertion> insertions = IntStream.range(0, 10)
+            .mapToObj(id -> (Insertion) Listings.meinWGZimmer(id, 800 + id))
+            .toList();
+
+    @Test
+    public void testDropNewestWhenFull() throws InterruptedException {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        final AnnouncementQueue queue = fillQueue(announcer, AnnouncementQueue.OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+        queue.announce(insertions.get(3));
+
+        announcer.release.countDown();
+        queue.close(CLOSE_TIMEOUT);
+        Assertions.assertEquals(insertions.subList(0, 3), announcer.getAnnounced());
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws InterruptedException {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        final AnnouncementQueue queue = fillQueue(announcer, AnnouncementQueue.OverflowPolicy.DROP_OLDEST, Duration.ZERO);
+        queue.announce(insertions.get(3));
+
+        announcer.release.countDown();
+        queue.close(CLOSE_TIMEOUT);
+        Assertions.assertEquals(List.of(insertions.get(0), insertions.get(2), insertions.get(3)), announcer.getAnnounced());
+    }
+
+    @Test
+    public void testBlockWaitsForSpace() throws InterruptedException {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        final AnnouncementQueue queue = fillQueue(announcer, AnnouncementQueue.OverflowPolicy.BLOCK, CLOSE_TIMEOUT);
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            announcer.release.countDown();
+        });
+        final long start = System.nanoTime();
+        queue.announce(insertions.get(3));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100), "Did not wait for space in the queue.");
+
+        queue.close(CLOSE_TIMEOUT);
+        Assertions.assertEquals(insertions.subList(0, 4), announcer.getAnnounced());
+    }
+
+    @Test
+    public void testBlockDropsAfterTimeout() throws InterruptedException {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        final AnnouncementQueue queue = fillQueue(announcer, AnnouncementQueue.OverflowPolicy.BLOCK, Duration.ofMillis(100));
+        queue.announce(insertions.get(3));
+
+        announcer.release.countDown();
+        queue.close(CLOSE_TIMEOUT);
+        Assertions.assertEquals(insertions.subList(0, 3), announcer.getAnnounced());
+    }
+
+    @Test
+    public void testInsertionsAreAnnouncedInBatches() {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        announcer.release.countDown();
+        final AnnouncementQueue queue = new AnnouncementQueue(announcer, 100, 3, AnnouncementQueue.OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+        insertions.subList(0, 7).forEach(queue::announce);
+
+        queue.close(CLOSE_TIMEOUT);
+        Assertions.assertEquals(insertions.subList(0, 7), announcer.getAnnounced());
+        Assertions.assertEquals(List.of(3, 3, 1), announcer.getBatchSizes());
+    }
+
+    @Test
+    public void testCloseAnnouncesQueuedInsertions() throws InterruptedException {
+        final BlockedAnnouncer announcer = new BlockedAnnouncer();
+        final AnnouncementQueue queue = new AnnouncementQueue(announcer, 100, 1, AnnouncementQueue.OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+        insertions.forEach(queue::announce);
+        Assertions.assertTrue(announcer.started.await(10, TimeUnit.SECONDS));
+
+        // the announcer is still blocked while the queue is being closed
+        Thread.ofVirtual().start(announcer.release::countDown);
+        queue.close(CLOSE_TIMEOUT);
+        queue.announce(Listings.meinWGZimmer(10, 810));
+        Assertions.assertEquals(insertions, announcer.getAnnounced());
+    }
+
+    /**
+     * Creates a queue with space for two insertions, whose announcer is blocked announcing the first insertion while
+     * the next two are waiting in the queue.
+     */
+    private AnnouncementQueue fillQueue(
+            final BlockedAnnouncer announcer,
+            final AnnouncementQueue.OverflowPolicy overflowPolicy,
+            final Duration blockTimeout
+    ) throws InterruptedException {
+        final AnnouncementQueue queue = new AnnouncementQueue(announcer, 2, 1, overflowPolicy, blockTimeout);
+        queue.announce(insertions.get(0));
+        Assertions.assertTrue(announcer.started.await(10, TimeUnit.SECONDS));
+        queue.announce(insertions.get(1));
+        queue.announce(insertions.get(2));
+        return queue;
+    }
+
+    /**
+     * Records all announced insertions, but only returns from its first announcement once it is released.
+     */
+    private static class BlockedAnnouncer implements InsertionAnnouncer {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Insertion> announced = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public void announce(@NotNull final Insertion insertion) {
+            announceAll(List.of(insertion));
+        }
+
+        @Override
+        public void announceAll(@NotNull final List<Insertion> insertions) {
+            synchronized (this) {
+                announced.addAll(insertions);
+                batchSizes.add(insertions.size());
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized List<Insertion> getAnnounced() {
+            return new ArrayList<>(announced);
+        }
+
+        private synchronized List<Integer> getBatchSizes() {
+            return new ArrayList<>(batchSizes);
+        }
+    }
+}
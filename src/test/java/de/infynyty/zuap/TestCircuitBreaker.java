@@ -0,0 +1,110 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.WOKOInsertion;
+import de.infynyty.zuap.insertionHandler.CircuitBreaker;
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestCircuitBreaker {
+
+    private static final Duration NORMAL_DELAY = Duration.ofMinutes(5);
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void testBackoffGrowsWithJitter() {
+        final CircuitBreaker breaker = new CircuitBreaker(clock);
+        Assertions.assertEquals(NORMAL_DELAY, breaker.getDelay(NORMAL_DELAY));
+
+        breaker.recordFailure();
+        final Duration first = breaker.getDelay(NORMAL_DELAY);
+        Assertions.assertTrue(first.compareTo(NORMAL_DELAY) >= 0 && first.compareTo(NORMAL_DELAY.multipliedBy(2)) <= 0, "Delay was " + first);
+
+        breaker.recordFailure();
+        final Duration second = breaker.getDelay(NORMAL_DELAY);
+        Assertions.assertTrue(second.compareTo(NORMAL_DELAY.multipliedBy(2)) >= 0, "Delay was " + second);
+        Assertions.assertTrue(second.compareTo(CircuitBreaker.MAX_BACKOFF) <= 0, "Delay was " + second);
+
+        breaker.recordSuccess();
+        Assertions.assertEquals(NORMAL_DELAY, breaker.getDelay(NORMAL_DELAY));
+    }
+
+    @Test
+    public void testCircuitOpensAndProbes() {
+        final CircuitBreaker breaker = new CircuitBreaker(clock);
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            Assertions.assertTrue(breaker.allowUpdate());
+            breaker.recordFailure();
+        }
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertEquals(CircuitBreaker.OPEN_DURATION, breaker.getDelay(NORMAL_DELAY));
+        Assertions.assertFalse(breaker.allowUpdate());
+
+        // a failed probe opens the circuit again
+        clock.advance(CircuitBreaker.OPEN_DURATION);
+        Assertions.assertTrue(breaker.allowUpdate());
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordFailure();
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.allowUpdate());
+
+        // a successful probe closes it
+        clock.advance(CircuitBreaker.OPEN_DURATION);
+        Assertions.assertTrue(breaker.allowUpdate());
+        breaker.recordSuccess();
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertEquals(NORMAL_DELAY, breaker.getDelay(NORMAL_DELAY));
+    }
+
+    @Test
+    public void testWatchdogCancelsHungUpdate() throws InterruptedException {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final InsertionHandler<WOKOInsertion> handler = new InsertionHandler<>(
+                "Hung", insertion -> {}, new HttpFetcher(HttpClient.newHttpClient())
+        ) {
+            @Override
+            protected String pullUpdatedData() throws InterruptedException {
+                Thread.sleep(Duration.ofMinutes(1));
+                return "";
+            }
+
+            @Override
+            protected ArrayList<WOKOInsertion> getInsertionsFromData(final String data) {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public @NotNull Duration getUpdateDeadline() {
+                return Duration.ofMillis(200);
+            }
+
+            @Override
+            public void onUpdateTimeout() {
+                super.onUpdateTimeout();
+                timedOut.countDown();
+            }
+        };
+        final PollScheduler scheduler = new PollScheduler(Duration.ZERO);
+        try {
+            scheduler.schedule(handler);
+            Assertions.assertTrue(timedOut.await(10, TimeUnit.SECONDS), "The hung update was not cancelled");
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (handler.getFailedUpdateCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(1, handler.getTimedOutUpdateCount());
+            Assertions.assertEquals(1, handler.getFailedUpdateCount());
+        } finally {
+            scheduler.close();
+        }
+    }
+}
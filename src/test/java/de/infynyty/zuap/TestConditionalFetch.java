@@ -0,0 +1,118 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.WOKOInsertion;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.insertionHandler.InsertionSnapshot;
+import de.infynyty.zuap.insertionHandler.MeinWGZimmerHandler;
+import de.infynyty.zuap.insertionHandler.WOKOInsertionHandler;
+import de.infynyty.zuap.replay.StubServer;
+import de.infynyty.zuap.replay.SyntheticListings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+
+public class TestConditionalFetch {
+
+    private final ManualClock clock = new ManualClock();
+    private final InsertionAnnouncer announcer = Mockito.mock(InsertionAnnouncer.class);
+    private StubServer websites;
+    private HttpFetcher httpFetcher;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        websites = new StubServer(new InetSocketAddress("localhost", 0), null, new SyntheticListings(1, 0.1, clock), Duration.ZERO);
+        httpFetcher = HttpFetcher.create();
+        httpFetcher.redirectTo(websites.getUri());
+    }
+
+    @AfterEach
+    public void stopServer() {
+        websites.close();
+    }
+
+    @Test
+    public void testNotModifiedResponseSkipsUpdate() {
+        final WOKOInsertionHandler handler = new WOKOInsertionHandler("WOKO", announcer, httpFetcher);
+        handler.updateCurrentInsertions();
+        final InsertionSnapshot snapshot = handler.getSnapshot();
+        final long bytesSent = websites.getBytesSent();
+        handler.updateCurrentInsertions();
+
+        Assertions.assertEquals(1, websites.getNotModifiedCount());
+        Assertions.assertEquals(bytesSent, websites.getBytesSent());
+        Assertions.assertEquals(1, handler.getSkippedUpdateCount());
+        Assertions.assertEquals(2, handler.getUpdateCount());
+        Assertions.assertSame(snapshot, handler.getSnapshot());
+        Assertions.assertFalse(snapshot.getInsertions().isEmpty());
+
+        clock.advance(Duration.ofMinutes(1));
+        handler.updateCurrentInsertions();
+        Assertions.assertEquals(1, handler.getSkippedUpdateCount());
+        Mockito.verify(announcer, Mockito.atLeastOnce()).announce(Mockito.any());
+    }
+
+    @Test
+    public void testValidatorsOfFailedUpdateAreNotUsed() {
+        final FailingWOKOHandler handler = new FailingWOKOHandler(announcer, httpFetcher);
+        handler.isFailing = true;
+        handler.updateCurrentInsertions();
+        Assertions.assertEquals(1, handler.getFailedUpdateCount());
+
+        // the data of the failed update was never used, so it has to be downloaded again
+        handler.isFailing = false;
+        handler.updateCurrentInsertions();
+        Assertions.assertEquals(0, websites.getNotModifiedCount());
+        Assertions.assertEquals(0, handler.getSkippedUpdateCount());
+        Assertions.assertFalse(handler.getSnapshot().getInsertions().isEmpty());
+
+        handler.updateCurrentInsertions();
+        Assertions.assertEquals(1, websites.getNotModifiedCount());
+        Assertions.assertEquals(1, handler.getSkippedUpdateCount());
+    }
+
+    @Test
+    public void testUnchangedDataSkipsUpdate() {
+        // MeinWGZimmer is queried with POST requests, which are always answered with data
+        final MeinWGZimmerHandler handler = new MeinWGZimmerHandler("MeinWGZimmer", announcer, httpFetcher);
+        handler.updateCurrentInsertions();
+        final InsertionSnapshot snapshot = handler.getSnapshot();
+        handler.updateCurrentInsertions();
+
+        Assertions.assertEquals(0, websites.getNotModifiedCount());
+        Assertions.assertEquals(1, handler.getSkippedUpdateCount());
+        Assertions.assertSame(snapshot, handler.getSnapshot());
+
+        clock.advance(Duration.ofMinutes(1));
+        handler.updateCurrentInsertions();
+        Assertions.assertEquals(1, handler.getSkippedUpdateCount());
+        Assertions.assertNotSame(snapshot, handler.getSnapshot());
+    }
+
+    /**
+     * A handler whose updates fail after the data has been received, as if parsing it had failed.
+     */
+    private static class FailingWOKOHandler extends WOKOInsertionHandler {
+        private boolean isFailing;
+
+        private FailingWOKOHandler(final InsertionAnnouncer announcer, final HttpFetcher httpFetcher) {
+            super("WOKO", announcer, httpFetcher);
+        }
+
+        @Override
+        protected ArrayList<WOKOInsertion> pullInsertions() throws IOException, InterruptedException {
+            final ArrayList<WOKOInsertion> insertions = super.pullInsertions();
+            if (isFailing) {
+                throw new IOException("Connection reset");
+            }
+            return insertions;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.discord.DiscordLoggingHandler;
+import net.dv8tion.jda.api.entities.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+public class TestDiscordLoggingHandler {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    @Test
+    public void testRecordsArePackedAndMerged() {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        final DiscordLoggingHandler handler = new DiscordLoggingHandler(messages::add, Level.INFO, 10_000, DiscordLoggingHandler.DropPolicy.DROP_OLDEST, NEVER);
+        for (int i = 0; i < 500; i++) {
+            handler.publish(new LogRecord(Level.SEVERE, "Could not update WOKO."));
+        }
+        for (int i = 0; i < 300; i++) {
+            handler.publish(new LogRecord(Level.INFO, "Update " + i + " found no new insertions."));
+        }
+        handler.publish(new LogRecord(Level.WARNING, "x".repeat(3000)));
+        handler.publish(new LogRecord(Level.FINE, "Not interesting."));
+        handler.close();
+
+        final String all = String.join("\n", messages);
+        Assertions.assertTrue(all.contains("`SEVERE` Could not update WOKO. (500×)"), all);
+        Assertions.assertEquals(1, all.split("Could not update WOKO").length - 1);
+        Assertions.assertTrue(all.contains("Update 299 found no new insertions."));
+        Assertions.assertFalse(all.contains("Not interesting."));
+        messages.forEach(message -> Assertions.assertTrue(message.length() <= Message.MAX_CONTENT_LENGTH, message));
+        // about 17,000 characters of short records plus the shortened long record
+        Assertions.assertTrue(messages.size() <= 11, messages.size() + " messages were sent");
+    }
+
+    @Test
+    public void testPublishingNeverWaitsForSending() throws InterruptedException {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        final DiscordLoggingHandler handler = new DiscordLoggingHandler(message -> {
+            messages.add(message);
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Level.INFO, 10, DiscordLoggingHandler.DropPolicy.DROP_OLDEST, NEVER);
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        handler.flush();
+        sending.await();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+        Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        release.countDown();
+        handler.close();
+
+        final String all = String.join("\n", messages);
+        Assertions.assertTrue(all.contains("record 99999"), all);
+        Assertions.assertFalse(all.contains("record 99989\n"), all);
+        Assertions.assertTrue(all.contains("99990 log records were dropped"), all);
+    }
+}
@@ -0,0 +1,161 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertionHandler.DuplicateIndex;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.insertionHandler.InsertionHandler;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestDuplicateIndex {
+
+    @Test
+    public void testSameRoomOnTwoWebsitesIsLinked() {
+        final DuplicateIndex index = new DuplicateIndex();
+        final FlatfoxInsertion flatfox = flatfox(1, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich");
+        // about 40 meters away, slightly different rent
+        final MeinWGZimmerInsertion meinWGZimmer = meinWGZimmer(2, 830, 47.37890, 8.53710, "Langstr. 1");
+
+        Assertions.assertNull(index.add("Flatfox", flatfox));
+        Assertions.assertEquals(flatfox, index.add("MeinWGZimmer", meinWGZimmer));
+        Assertions.assertEquals(flatfox.getKey(), index.getOriginalKey(meinWGZimmer.getKey()));
+    }
+
+    @Test
+    public void testSameStreetWithoutCoordinatesIsLinked() {
+        final DuplicateIndex index = new DuplicateIndex();
+        final FlatfoxInsertion flatfox = flatfox(1, 800, Double.NaN, Double.NaN, "Langstrasse 1, 8004 Zürich");
+        Assertions.assertNull(index.add("Flatfox", flatfox));
+        Assertions.assertEquals(flatfox, index.add("MeinWGZimmer", meinWGZimmer(2, 800, Double.NaN, Double.NaN, "Langstrasse 1")));
+    }
+
+    @Test
+    public void testDifferentRoomsAreNotLinked() {
+        final DuplicateIndex index = new DuplicateIndex();
+        Assertions.assertNull(index.add("Flatfox", flatfox(1, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich")));
+        // same place, different rent
+        Assertions.assertNull(index.add("MeinWGZimmer", meinWGZimmer(2, 1200, 47.37855, 8.53703, "Langstrasse 1")));
+        // same rent, different part of the city
+        Assertions.assertNull(index.add("MeinWGZimmer", meinWGZimmer(3, 800, 47.39000, 8.51000, "Nordstrasse 10")));
+        // same website
+        Assertions.assertNull(index.add("Flatfox", flatfox(4, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich")));
+    }
+
+    @Test
+    public void testRemovedRoomIsNotLinked() {
+        final DuplicateIndex index = new DuplicateIndex();
+        final FlatfoxInsertion flatfox = flatfox(1, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich");
+        index.add("Flatfox", flatfox);
+        index.remove(flatfox.getKey());
+        Assertions.assertNull(index.add("MeinWGZimmer", meinWGZimmer(2, 800, 47.37855, 8.53703, "Langstrasse 1")));
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testChangesOfDuplicatesAreNotAnnounced() {
+        final DuplicateIndex index = new DuplicateIndex();
+        final PreparedHandler flatfoxHandler = new PreparedHandler("Flatfox", index);
+        final PreparedHandler meinWGZimmerHandler = new PreparedHandler("MeinWGZimmer", index);
+        flatfoxHandler.update(flatfox(1, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich"));
+        meinWGZimmerHandler.update(meinWGZimmer(2, 830, 47.37890, 8.53710, "Langstr. 1"));
+        Mockito.verify(flatfoxHandler.announcer).announce(Mockito.any());
+        Mockito.verify(meinWGZimmerHandler.announcer, Mockito.never()).announce(Mockito.any());
+
+        meinWGZimmerHandler.update(meinWGZimmer(2, 780, 47.37890, 8.53710, "Langstr. 1"));
+        flatfoxHandler.update(flatfox(1, 790, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich"));
+
+        Mockito.verify(meinWGZimmerHandler.announcer, Mockito.never()).announceChange(Mockito.any());
+        Mockito.verify(flatfoxHandler.announcer).announceChange(Mockito.any());
+    }
+
+    @Test
+    public void testChangedOriginalStaysOriginal() {
+        final DuplicateIndex index = new DuplicateIndex();
+        final PreparedHandler flatfoxHandler = new PreparedHandler("Flatfox", index);
+        final PreparedHandler meinWGZimmerHandler = new PreparedHandler("MeinWGZimmer", index);
+        final FlatfoxInsertion flatfox = flatfox(1, 800, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich");
+        final MeinWGZimmerInsertion meinWGZimmer = meinWGZimmer(2, 830, 47.37890, 8.53710, "Langstr. 1");
+        flatfoxHandler.update(flatfox);
+        meinWGZimmerHandler.update(meinWGZimmer);
+
+        // the changed original now matches its own duplicate
+        flatfoxHandler.update(flatfox(1, 810, 47.37855, 8.53703, "Langstrasse 1, 8004 Zürich"));
+
+        Assertions.assertNull(index.getOriginalKey(flatfox.getKey()));
+        Assertions.assertEquals(flatfox.getKey(), index.getOriginalKey(meinWGZimmer.getKey()));
+    }
+
+    private static FlatfoxInsertion flatfox(final int id, final int rent, final double latitude, final double longitude, final String address) {
+        final JSONObject json = new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", rent)
+                .put("moving_date", "2024-05-01")
+                .put("is_temporary", true)
+                .put("created", "2024-03-15T23:30:00Z")
+                .put("public_address", address)
+                .put("zipcode", 8004);
+        if (!Double.isNaN(latitude)) {
+            json.put("latitude", latitude).put("longitude", longitude);
+        }
+        return new FlatfoxInsertion(json);
+    }
+
+    private static MeinWGZimmerInsertion meinWGZimmer(final int id, final int rent, final double latitude, final double longitude, final String street) {
+        final JSONObject json = Listings.meinWGZimmerJson(id, rent)
+                .put("ValidFrom", new JSONObject().put("iso", "2024-04-30T22:00:00.000Z"))
+                .put("Street", street)
+                .put("Zip", "8004");
+        if (!Double.isNaN(latitude)) {
+            json.put("Location", new JSONObject().put("__type", "GeoPoint").put("latitude", latitude).put("longitude", longitude));
+        }
+        return new MeinWGZimmerInsertion(json);
+    }
+
+    /**
+     * A handler returning prepared insertions instead of pulling them from a website. It has already completed its
+     * initial download, so that the insertions of later updates are announced.
+     */
+    private static class PreparedHandler extends InsertionHandler<Insertion> {
+        private final InsertionAnnouncer announcer;
+        private List<Insertion> online = List.of();
+
+        private PreparedHandler(final String handlerName, final DuplicateIndex duplicateIndex) {
+            this(handlerName, Mockito.mock(InsertionAnnouncer.class), duplicateIndex);
+        }
+
+        private PreparedHandler(final String handlerName, final InsertionAnnouncer announcer, final DuplicateIndex duplicateIndex) {
+            super(handlerName, announcer, HttpFetcher.create());
+            this.announcer = announcer;
+            setDuplicateIndex(duplicateIndex);
+            updateCurrentInsertions();
+        }
+
+        private void update(final Insertion... insertions) {
+            online = List.of(insertions);
+            updateCurrentInsertions();
+        }
+
+        @Override
+        protected ArrayList<Insertion> pullInsertions() {
+            return new ArrayList<>(online);
+        }
+
+        @Override
+        protected String pullUpdatedData() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected ArrayList<Insertion> getInsertionsFromData(final String data) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertionHandler.FlatfoxHandler;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.replay.StubResponse;
+import de.infynyty.zuap.replay.StubServer;
+import de.infynyty.zuap.replay.SyntheticListings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+public class TestFlatfoxHandler {
+
+    /**
+     * The area searched by the handler.
+     */
+    private static final double NORTH = 47.434662;
+    private static final double SOUTH = 47.320258;
+    private static final double EAST = 8.701075;
+    private static final double WEST = 8.372241;
+    /**
+     * The maximum number of pins Flatfox returns for a single area.
+     */
+    private static final int MAX_PINS_PER_TILE = 30;
+    /**
+     * The number of tiles the area is split into at first and the number of tiles each full tile is split into.
+     */
+    private static final int TILES_PER_SPLIT = 4;
+    private static final int MAX_TILE_DEPTH = 5;
+    private static final String LISTING_URL = "https://flatfox.ch/api/v1/public-listing/?";
+
+    @Test
+    public void testFullTilesAreSplit() throws IOException {
+        // 250 listings spread evenly over the area fill the first tiles, but not the tiles they are split into
+        final FlatfoxStub flatfox = new FlatfoxStub(LongStream.range(0, 250).boxed().toList(), TestFlatfoxHandler::spread);
+        final FlatfoxHandler handler = update(flatfox);
+
+        Assertions.assertEquals(250, handler.getInsertionCount());
+        Assertions.assertEquals(TILES_PER_SPLIT + TILES_PER_SPLIT * TILES_PER_SPLIT, flatfox.getPinRequests());
+    }
+
+    @Test
+    public void testSplittingStopsAtMaximumDepth() throws IOException {
+        // 40 listings in the same house fill every tile containing it, no matter how often it is split
+        final FlatfoxStub flatfox = new FlatfoxStub(LongStream.range(0, 40).boxed().toList(), pk -> new double[]{47.3781, 8.5402});
+        final FlatfoxHandler handler = update(flatfox);
+
+        Assertions.assertEquals(MAX_PINS_PER_TILE, handler.getInsertionCount());
+        Assertions.assertEquals(TILES_PER_SPLIT * MAX_TILE_DEPTH, flatfox.getPinRequests());
+    }
+
+    @Test
+    public void testListingsAreRequestedInChunks() throws IOException {
+        final FlatfoxStub flatfox = new FlatfoxStub(LongStream.range(0, 250).boxed().toList(), TestFlatfoxHandler::spread);
+        update(flatfox);
+
+        Assertions.assertEquals(List.of(50, 100, 100), flatfox.getListingRequestSizes());
+    }
+
+    @Test
+    public void testListingUrlsAreKeptShort() throws IOException {
+        // long ids make the URL too long before a chunk reaches the maximum number of listings
+        final FlatfoxStub flatfox = new FlatfoxStub(LongStream.range(0, 250).map(i -> 1_000_000_000_000_000L + i).boxed().toList(), TestFlatfoxHandler::spread);
+        final FlatfoxHandler handler = update(flatfox);
+
+        Assertions.assertEquals(250, handler.getInsertionCount());
+        final List<Integer> sizes = flatfox.getListingRequestSizes();
+        Assertions.assertEquals(250, sizes.stream().mapToInt(Integer::intValue).sum());
+        Assertions.assertEquals(3, sizes.size());
+        Assertions.assertTrue(sizes.get(sizes.size() - 1) < 100, "Chunks were not limited by their length: " + sizes);
+        Assertions.assertTrue(flatfox.getLongestListingUrl() <= 2000, "URL was " + flatfox.getLongestListingUrl() + " characters long.");
+    }
+
+    private static FlatfoxHandler update(final FlatfoxStub flatfox) throws IOException {
+        try (final StubServer website = new StubServer(new InetSocketAddress("localhost", 0), null, flatfox, Duration.ZERO)) {
+            final HttpFetcher httpFetcher = HttpFetcher.create();
+            httpFetcher.redirectTo(website.getUri());
+            final FlatfoxHandler handler = new FlatfoxHandler("Flatfox", Mockito.mock(InsertionAnnouncer.class), httpFetcher);
+            handler.updateCurrentInsertions();
+            Assertions.assertEquals(0, handler.getFailedUpdateCount());
+            return handler;
+        }
+    }
+
+    /**
+     * Places the listings on a grid of 16 by 16 points covering the whole area.
+     */
+    private static double[] spread(final long pk) {
+        final int row = (int) (pk % 16);
+        final int column = (int) (pk / 16 % 16);
+        return new double[]{
+                SOUTH + (row + 0.5) / 16 * (NORTH - SOUTH),
+                WEST + (column + 0.5) / 16 * (EAST - WEST)
+        };
+    }
+
+    /**
+     * Answers the requests of the Flatfox handler with a fixed set of listings and records the requests.
+     */
+    private static class FlatfoxStub extends SyntheticListings {
+        private final List<Long> listings;
+        private final LongFunction<double[]> location;
+        private final List<Integer> listingRequestSizes = new ArrayList<>();
+        private int pinRequests = 0;
+        private int longestListingUrl = 0;
+
+        private FlatfoxStub(final List<Long> listings, final LongFunction<double[]> location) {
+            super(1, 0, Clock.systemUTC());
+            this.listings = listings;
+            this.location = location;
+        }
+
+        @Override
+        @Nullable
+        public synchronized StubResponse respond(@NotNull final String method, @NotNull final String host, @NotNull final String target) {
+            if (!host.equals(FLATFOX_HOST)) return null;
+            final String path = target.substring(0, target.indexOf('?'));
+            final String query = target.substring(target.indexOf('?') + 1);
+            if (path.equals("/api/v1/pin/")) {
+                pinRequests++;
+                return new StubResponse(200, "application/json", pins(query).toString());
+            }
+            if (path.equals("/api/v1/public-listing/")) {
+                final JSONArray results = new JSONArray();
+                for (final String parameter : query.split("&")) {
+                    if (!parameter.startsWith("pk=")) continue;
+                    final long pk = Long.parseLong(parameter.substring(3));
+                    results.put(new JSONObject()
+                            .put("pk", pk)
+                            .put("url", "/de/flat/zuerich/" + pk + "/")
+                            .put("price_display", 800)
+                            .put("moving_date", "2024-05-01")
+                            .put("is_temporary", false)
+                            .put("created", "2024-03-15T23:30:00Z"));
+                }
+                listingRequestSizes.add(results.length());
+                longestListingUrl = Math.max(longestListingUrl, LISTING_URL.length() + query.length());
+                return new StubResponse(200, "application/json", new JSONObject().put("results", results).toString());
+            }
+            return null;
+        }
+
+        /**
+         * Returns the newest listings inside the requested area, up to the requested number.
+         */
+        private JSONArray pins(final String query) {
+            double north = 0, south = 0, east = 0, west = 0;
+            int maxCount = 0;
+            for (final String parameter : query.split("&")) {
+                final String[] pair = parameter.split("=", 2);
+                switch (pair[0]) {
+                    case "north" -> north = Double.parseDouble(pair[1]);
+                    case "south" -> south = Double.parseDouble(pair[1]);
+                    case "east" -> east = Double.parseDouble(pair[1]);
+                    case "west" -> west = Double.parseDouble(pair[1]);
+                    case "max_count" -> maxCount = Integer.parseInt(pair[1]);
+                }
+            }
+            final List<Long> inside = new ArrayList<>();
+            for (final long pk : listings) {
+                final double[] point = location.apply(pk);
+                if (point[0] < north && point[0] >= south && point[1] < east && point[1] >= west) {
+                    inside.add(pk);
+                }
+            }
+            inside.sort(Collections.reverseOrder());
+            final JSONArray pins = new JSONArray();
+            inside.stream().limit(maxCount).forEach(pk -> pins.put(new JSONObject().put("pk", pk)));
+            return pins;
+        }
+
+        private synchronized int getPinRequests() {
+            return pinRequests;
+        }
+
+        private synchronized List<Integer> getListingRequestSizes() {
+            final List<Integer> sizes = new ArrayList<>(listingRequestSizes);
+            Collections.sort(sizes);
+            return sizes;
+        }
+
+        private synchronized int getLongestListingUrl() {
+            return longestListingUrl;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.geo.GeoCell;
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class TestGeoIndex {
+
+    private static final double ETH_LATITUDE = 47.3763;
+    private static final double ETH_LONGITUDE = 8.5476;
+
+    @Test
+    public void testQueriesAreSameAsComparingAllInsertions() {
+        final Random random = new Random(7);
+        final List<Insertion> insertions = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // mostly around Zurich, some spread over Switzerland
+            final double spread = i % 10 == 0 ? 1.5 : 0.1;
+            insertions.add(flatfox(i, 46.8 + random.nextDouble() * spread, 8.2 + random.nextDouble() * spread));
+        }
+        final GeoIndex index = new GeoIndex();
+        index.update(List.of(), insertions);
+
+        for (final double radius : new double[]{100, 2000, 50_000}) {
+            final List<Insertion> expected = insertions.stream()
+                    .filter(insertion -> distanceToEth(insertion) <= radius)
+                    .sorted(Comparator.comparingDouble(TestGeoIndex::distanceToEth))
+                    .toList();
+            Assertions.assertEquals(expected, index.within(ETH_LATITUDE, ETH_LONGITUDE, radius));
+        }
+        for (final int count : new int[]{1, 10, 500, 5000}) {
+            final List<Insertion> expected = insertions.stream()
+                    .sorted(Comparator.comparingDouble(TestGeoIndex::distanceToEth))
+                    .limit(count)
+                    .toList();
+            Assertions.assertEquals(expected, index.nearest(ETH_LATITUDE, ETH_LONGITUDE, count));
+        }
+    }
+
+    @Test
+    public void testRemovedInsertionsAreNotFound() {
+        final GeoIndex index = new GeoIndex();
+        final Insertion near = flatfox(1, 47.3765, 8.5478);
+        final Insertion far = flatfox(2, 47.4500, 8.6000);
+        index.update(List.of(), List.of(near, far, flatfox(3, Double.NaN, Double.NaN)));
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals(List.of(near), index.nearest(ETH_LATITUDE, ETH_LONGITUDE, 1));
+
+        index.update(List.of(near.getKey()), List.of());
+        Assertions.assertEquals(List.of(), index.within(ETH_LATITUDE, ETH_LONGITUDE, 2000));
+        Assertions.assertEquals(List.of(far), index.nearest(ETH_LATITUDE, ETH_LONGITUDE, 1));
+    }
+
+    private static double distanceToEth(final Insertion insertion) {
+        return GeoCell.distanceMeters(ETH_LATITUDE, ETH_LONGITUDE, insertion.getLatitude(), insertion.getLongitude());
+    }
+
+    private static FlatfoxInsertion flatfox(final int id, final double latitude, final double longitude) {
+        final JSONObject json = new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", 800)
+                .put("moving_date", "2024-05-01")
+                .put("is_temporary", false)
+                .put("created", "2024-03-15T23:30:00Z");
+        if (!Double.isNaN(latitude)) {
+            json.put("latitude", latitude).put("longitude", longitude);
+        }
+        return new FlatfoxInsertion(json);
+    }
+}
@@ -0,0 +1,127 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.storage.HistoryQuery;
+import de.infynyty.zuap.storage.HistoryStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestHistoryStore {
+
+    private static final Instant START = Instant.parse("2024-03-01T12:00:00Z");
+
+    @TempDir
+    public Path directory;
+
+    @Test
+    public void testFirstSeenSurvivesReopening() throws IOException {
+        final HistoryStore store = HistoryStore.open(directory);
+        store.update("MeinWGZimmer", createInsertions(0, 10), START);
+        store.update("MeinWGZimmer", createInsertions(5, 15), START.plus(Duration.ofHours(1)));
+        store.close();
+
+        final HistoryStore reopened = HistoryStore.open(directory);
+        Assertions.assertEquals(5, reopened.getOfflineCount());
+        Assertions.assertEquals(15, reopened.query().count());
+        Assertions.assertEquals(0, reopened.query().source("WOKO").count());
+        reopened.update("MeinWGZimmer", List.of(), START.plus(Duration.ofHours(3)));
+
+        final HistoryQuery query = reopened.query().source("MeinWGZimmer");
+        Assertions.assertEquals(15, reopened.getOfflineCount());
+        // rooms 0 to 4 were last seen right away, rooms 5 to 9 after an hour and rooms 10 to 14 were added after an hour
+        final long[] secondsOnline = query.values(HistoryQuery.Measure.SECONDS_ONLINE);
+        Arrays.sort(secondsOnline);
+        Assertions.assertArrayEquals(new long[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3600, 3600, 3600, 3600, 3600}, secondsOnline);
+        Assertions.assertEquals(807, query.median(HistoryQuery.Measure.RENT));
+        Assertions.assertEquals(10, reopened.query().seenBetween(START.plus(Duration.ofMinutes(30)), START.plus(Duration.ofHours(5))).count());
+        reopened.close();
+    }
+
+    @Test
+    public void testUnchangedInsertionsAreSeenAgain() throws IOException {
+        final HistoryStore store = HistoryStore.open(directory);
+        store.update("MeinWGZimmer", createInsertions(0, 5), START);
+        store.update("WOKO", createInsertions(5, 10), START);
+        store.touch("MeinWGZimmer", START.plus(Duration.ofHours(2)));
+        store.update("MeinWGZimmer", List.of(), START.plus(Duration.ofHours(3)));
+        store.update("WOKO", List.of(), START.plus(Duration.ofHours(3)));
+
+        final long[] meinWGZimmer = store.query().source("MeinWGZimmer").values(HistoryQuery.Measure.SECONDS_ONLINE);
+        Assertions.assertArrayEquals(new long[]{7200, 7200, 7200, 7200, 7200}, meinWGZimmer);
+        final long[] woko = store.query().source("WOKO").values(HistoryQuery.Measure.SECONDS_ONLINE);
+        Assertions.assertArrayEquals(new long[]{0, 0, 0, 0, 0}, woko);
+        store.close();
+    }
+
+    @Test
+    public void testOfflineRowsAreAppendedUntilTheyFillASegment() throws IOException {
+        final HistoryStore store = HistoryStore.open(directory);
+        store.update("MeinWGZimmer", createInsertions(0, 10), START);
+        store.update("MeinWGZimmer", createInsertions(5, 10), START.plus(Duration.ofHours(1)));
+        store.flush();
+        final Path log = directory.resolve("000000.log");
+        final long firstSize = Files.size(log);
+        store.update("MeinWGZimmer", List.of(), START.plus(Duration.ofHours(2)));
+        store.flush();
+        // the second flush only appended the five new rows
+        Assertions.assertEquals(2 * firstSize - Integer.BYTES, Files.size(log));
+        try (final Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.filter(file -> file.toString().endsWith(".seg")).count());
+        }
+        store.close();
+
+        // a row that was only partially written before the application stopped is discarded
+        Files.write(log, new byte[]{0, 12, 'M', 'e'}, StandardOpenOption.APPEND);
+        final HistoryStore reopened = HistoryStore.open(directory);
+        Assertions.assertEquals(10, reopened.getOfflineCount());
+        reopened.update("MeinWGZimmer", createInsertions(20, 21), START.plus(Duration.ofHours(3)));
+        reopened.update("MeinWGZimmer", List.of(), START.plus(Duration.ofHours(4)));
+        reopened.close();
+        Assertions.assertEquals(11, HistoryStore.open(directory).getOfflineCount());
+    }
+
+    @Test
+    public void testAggregationOverManySegments() throws IOException {
+        final HistoryStore store = HistoryStore.open(directory);
+        final int window = 2_000;
+        final int updates = 100;
+        for (int i = 0; i <= updates; i++) {
+            store.update("MeinWGZimmer", createInsertions(i * window, (i + 1) * window), START.plus(Duration.ofMinutes(i)));
+        }
+        store.close();
+        try (final Stream<Path> files = Files.list(directory)) {
+            Assertions.assertTrue(files.filter(file -> file.toString().endsWith(".seg")).count() >= 3);
+        }
+
+        final HistoryStore reopened = HistoryStore.open(directory);
+        Assertions.assertEquals((long) updates * window, reopened.getOfflineCount());
+        final HistoryQuery query = reopened.query();
+        final double median = Assertions.assertTimeout(
+                Duration.ofSeconds(1),
+                () -> query.median(HistoryQuery.Measure.RENT)
+        );
+        Assertions.assertEquals(1049.5, median);
+        Assertions.assertEquals(window, reopened.query().seenBetween(START.plus(Duration.ofMinutes(50)), START.plus(Duration.ofMinutes(50))).count());
+        reopened.close();
+    }
+
+    private static List<MeinWGZimmerInsertion> createInsertions(final int from, final int to) {
+        final List<MeinWGZimmerInsertion> insertions = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            insertions.add(Listings.meinWGZimmer(i, 800 + i % 500));
+        }
+        return insertions;
+    }
+}
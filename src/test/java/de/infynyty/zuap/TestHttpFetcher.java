@@ -0,0 +1,141 @@
+package de.infynyty.zuap;
+
+import com.sun.net.httpserver.HttpServer;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.http.TransferStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class TestHttpFetcher {
+
+    private static final String BODY = "Zimmer in Zürich ".repeat(1000);
+
+    private HttpServer server;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/gzip", exchange -> {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            respond(exchange, compress(true));
+        });
+        server.createContext("/deflate", exchange -> {
+            exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+            respond(exchange, compress(false));
+        });
+        server.createContext("/slow", exchange -> {
+            final int active = activeRequests.incrementAndGet();
+            maxActiveRequests.accumulateAndGet(active, Math::max);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            activeRequests.decrementAndGet();
+            respond(exchange, "ok".getBytes(StandardCharsets.UTF_8));
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGzipIsDecoded() throws IOException, InterruptedException {
+        final HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient());
+        final HttpResponse<String> response = fetcher.send("test", request("/gzip"));
+        Assertions.assertEquals(BODY, response.body());
+
+        final TransferStats stats = fetcher.getStats("test");
+        Assertions.assertEquals(1, stats.getRequests());
+        Assertions.assertEquals(BODY.getBytes(StandardCharsets.UTF_8).length, stats.getDecodedBytes());
+        Assertions.assertTrue(stats.getWireBytes() < stats.getDecodedBytes() / 10, "Response was not compressed: " + stats);
+    }
+
+    @Test
+    public void testStreamedDeflateIsDecoded() throws IOException, InterruptedException {
+        final HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient());
+        final HttpResponse<InputStream> response = fetcher.sendStreaming("test", request("/deflate"));
+        try (final InputStream body = response.body()) {
+            Assertions.assertEquals(BODY, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        final TransferStats stats = fetcher.getStats("test");
+        Assertions.assertEquals(BODY.getBytes(StandardCharsets.UTF_8).length, stats.getDecodedBytes());
+        Assertions.assertTrue(stats.getWireBytes() > 0 && stats.getWireBytes() < stats.getDecodedBytes());
+    }
+
+    @Test
+    public void testRequestsPerHostAreLimited() {
+        final HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient(), Duration.ofSeconds(10), 2);
+        final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(fetcher.sendAsync("test", request("/slow")));
+        }
+        responses.forEach(response -> Assertions.assertEquals("ok", response.join().body()));
+        Assertions.assertTrue(maxActiveRequests.get() <= 2, maxActiveRequests.get() + " requests were sent at the same time");
+    }
+
+    @Test
+    public void testCancelledRequestsFreeTheirHost() throws InterruptedException {
+        final HttpFetcher fetcher = new HttpFetcher(HttpClient.newHttpClient(), Duration.ofSeconds(10), 1);
+        final List<CompletableFuture<HttpResponse<String>>> cancelled = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cancelled.add(fetcher.sendAsync("test", request("/slow")));
+        }
+        final CompletableFuture<HttpResponse<String>> last = fetcher.sendAsync("test", request("/slow"));
+        // the first request is being answered and the others are waiting for their turn
+        Thread.sleep(50);
+        final long start = System.nanoTime();
+        cancelled.forEach(response -> response.cancel(true));
+
+        Assertions.assertEquals("ok", last.join().body());
+        // waiting for the cancelled requests would take at least a second
+        final Duration waited = Duration.ofNanos(System.nanoTime() - start);
+        Assertions.assertTrue(waited.compareTo(Duration.ofMillis(700)) < 0, "Waited " + waited + " for the last request.");
+    }
+
+    private HttpRequest.Builder request(final String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:" + server.getAddress().getPort() + path));
+    }
+
+    private static void respond(final com.sun.net.httpserver.HttpExchange exchange, final byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static byte[] compress(final boolean isGzip) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final OutputStream compressed = isGzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            compressed.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.InsertionChange;
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertionHandler.InsertionDiff;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class TestInsertionDiff {
+
+    private static final int SNAPSHOT_SIZE = 100_000;
+    private static final int CHANGED_INSERTIONS = 5_000;
+
+    @Test
+    public void testKeyIsNormalized() {
+        Assertions.assertEquals(
+                MeinWGZimmerInsertion.toKey(URI.create("https://www.meinwgzimmer.ch/zimmer/42")),
+                MeinWGZimmerInsertion.toKey(URI.create("https://WWW.MeinWGZimmer.ch/zimmer/42/#top"))
+        );
+        Assertions.assertEquals(Listings.meinWGZimmer(42), Listings.meinWGZimmer(42));
+        Assertions.assertEquals(Listings.meinWGZimmer(42).hashCode(), Listings.meinWGZimmer(42).hashCode());
+    }
+
+    @Test
+    public void testContentHashCoversLocation() {
+        final MeinWGZimmerInsertion insertion = new MeinWGZimmerInsertion(Listings.meinWGZimmerJson(42, 800)
+                .put("Location", new JSONObject().put("latitude", 47.3763).put("longitude", 8.5476)));
+        final MeinWGZimmerInsertion moved = new MeinWGZimmerInsertion(Listings.meinWGZimmerJson(42, 800)
+                .put("Location", new JSONObject().put("latitude", 47.3763).put("longitude", 8.5477)));
+        Assertions.assertEquals(Listings.meinWGZimmer(42).getContentHash(), Listings.meinWGZimmer(42).getContentHash());
+        Assertions.assertNotEquals(insertion.getContentHash(), moved.getContentHash());
+        Assertions.assertNotEquals(insertion.getContentHash(), Listings.meinWGZimmer(42).getContentHash());
+    }
+
+    @Test
+    public void testDiffOfLargeSnapshots() {
+        final List<MeinWGZimmerInsertion> previous = Listings.meinWGZimmerRooms(0, SNAPSHOT_SIZE);
+        // drop the oldest insertions and add the same number of new ones
+        final List<MeinWGZimmerInsertion> updated = Listings.meinWGZimmerRooms(CHANGED_INSERTIONS, SNAPSHOT_SIZE + CHANGED_INSERTIONS);
+        final Set<String> currentKeys = new LinkedHashSet<>();
+        previous.forEach(insertion -> currentKeys.add(insertion.getKey()));
+
+        final InsertionDiff<MeinWGZimmerInsertion> diff = Assertions.assertTimeout(
+                Duration.ofSeconds(2),
+                () -> InsertionDiff.compute(currentKeys, updated)
+        );
+
+        Assertions.assertEquals(CHANGED_INSERTIONS, diff.getAdded().size());
+        Assertions.assertEquals(CHANGED_INSERTIONS, diff.getRemoved().size());
+        Assertions.assertEquals(SNAPSHOT_SIZE, diff.getUpdated().size());
+        Assertions.assertEquals(updated.get(SNAPSHOT_SIZE - CHANGED_INSERTIONS), diff.getAdded().get(0));
+        Assertions.assertEquals(previous.get(0).getKey(), diff.getRemoved().get(0));
+    }
+
+    @Test
+    public void testUnchangedSnapshotIsEmpty() {
+        final List<MeinWGZimmerInsertion> insertions = Listings.meinWGZimmerRooms(0, SNAPSHOT_SIZE);
+        final Set<String> currentKeys = new LinkedHashSet<>();
+        insertions.forEach(insertion -> currentKeys.add(insertion.getKey()));
+        // duplicates within one pull must not be reported twice
+        insertions.addAll(insertions.subList(0, 10));
+
+        final InsertionDiff<MeinWGZimmerInsertion> diff = InsertionDiff.compute(currentKeys, insertions);
+
+        Assertions.assertTrue(diff.isEmpty());
+        Assertions.assertEquals(SNAPSHOT_SIZE, diff.getUpdated().size());
+    }
+
+    @Test
+    public void testChangedInsertionsAreFound() {
+        final Map<String, MeinWGZimmerInsertion> current = new LinkedHashMap<>();
+        Listings.meinWGZimmerRooms(0, SNAPSHOT_SIZE).forEach(insertion -> current.put(insertion.getKey(), insertion));
+        final List<MeinWGZimmerInsertion> updated = Listings.meinWGZimmerRooms(0, SNAPSHOT_SIZE);
+        // lower the rent of a single insertion
+        updated.set(42, Listings.meinWGZimmer(42, 650));
+
+        final InsertionDiff<MeinWGZimmerInsertion> diff = InsertionDiff.compute(current, updated);
+
+        Assertions.assertTrue(diff.getAdded().isEmpty());
+        Assertions.assertTrue(diff.getRemoved().isEmpty());
+        Assertions.assertEquals(1, diff.getChanged().size());
+        final InsertionChange change = diff.getChanged().get(0);
+        Assertions.assertSame(updated.get(42), change.getInsertion());
+        Assertions.assertEquals(Map.of("Rent", Optional.of("800")), change.getPreviousValues());
+        Assertions.assertEquals(Map.of("Rent", Optional.of("650")), change.getCurrentValues());
+        Assertions.assertEquals("800 → 650", change.toEmbed().getFields().get(0).getValue());
+        Assertions.assertTrue(InsertionDiff.compute(current, Listings.meinWGZimmerRooms(0, SNAPSHOT_SIZE)).isEmpty());
+    }
+}
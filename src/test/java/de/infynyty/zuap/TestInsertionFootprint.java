@@ -0,0 +1,96 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.insertion.WOKOInsertion;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+public class TestInsertionFootprint {
+
+    private static final int LISTINGS = 20_000;
+    /**
+     * Roughly three times the expected size of a stored insertion. Retaining the parsed html or JSON of a listing
+     * alone would take several kilobytes.
+     */
+    private static final long MAX_BYTES_PER_LISTING = 600;
+    private static final int MEASUREMENT_ATTEMPTS = 3;
+
+    @Test
+    public void testWOKOFootprint() {
+        final long bytes = retainedBytesPerListing(id -> new WOKOInsertion(Listings.woko(id)));
+        Assertions.assertTrue(bytes < MAX_BYTES_PER_LISTING, "WOKO insertions retain " + bytes + " bytes each");
+    }
+
+    @Test
+    public void testFlatfoxFootprint() {
+        final long bytes = retainedBytesPerListing(id -> new FlatfoxInsertion(new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", 1800)
+                .put("moving_date", "2024-05-01")
+                .put("is_temporary", true)
+                .put("created", "2024-03-15T23:30:00Z")
+                .put("public_address", "Langstrasse 1, 8004 Zürich")
+                .put("city", new String("Zürich".toCharArray()))
+                .put("zipcode", 8004)
+                .put("description", "Ein langer Beschreibungstext, der nicht gespeichert werden soll.")
+                .put("surface_living", 42)));
+        Assertions.assertTrue(bytes < MAX_BYTES_PER_LISTING, "Flatfox insertions retain " + bytes + " bytes each");
+    }
+
+    @Test
+    public void testCityIsInterned() {
+        final FlatfoxInsertion first = new FlatfoxInsertion(flatfoxJson(1, new String("Zürich".toCharArray())));
+        final FlatfoxInsertion second = new FlatfoxInsertion(flatfoxJson(2, new String("Zürich".toCharArray())));
+        Assertions.assertSame(first.getCity(), second.getCity());
+        Assertions.assertEquals("8004", first.getZip());
+    }
+
+    /**
+     * Measures the heap used by insertions that are still referenced after all garbage, including the sources they
+     * were parsed from, has been collected.
+     */
+    private static long retainedBytesPerListing(final IntFunction<Insertion> factory) {
+        // unrelated garbage collected in between can hide the growth of the heap, which is measured again then
+        for (int attempt = 0; attempt < MEASUREMENT_ATTEMPTS; attempt++) {
+            final long before = usedHeap();
+            final List<Insertion> insertions = new ArrayList<>(LISTINGS);
+            for (int i = 0; i < LISTINGS; i++) {
+                insertions.add(factory.apply(i));
+            }
+            final long after = usedHeap();
+            Reference.reachabilityFence(insertions);
+            if (after > before) {
+                return (after - before) / LISTINGS;
+            }
+        }
+        return Assertions.fail("The heap did not grow while creating " + LISTINGS + " insertions");
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a single request to collect garbage is only a hint, so the lowest value of a few attempts is used
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static JSONObject flatfoxJson(final int id, final String city) {
+        return new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("is_temporary", false)
+                .put("created", "2024-03-15T23:30:00Z")
+                .put("public_address", "Langstrasse 1, 8004 Zürich")
+                .put("city", city)
+                .put("zipcode", 8004);
+    }
+}
@@ -1,6 +1,7 @@
 package de.infynyty.zuap;
 
 
+import de.infynyty.zuap.http.HttpFetcher;
 import de.infynyty.zuap.insertion.Insertion;
 import de.infynyty.zuap.insertionHandler.*;
 import org.jetbrains.annotations.NotNull;
@@ -106,16 +107,17 @@ public class TestInsertionHandler {
     }
 
     public static Stream<Arguments> provideHandlers() {
+        final HttpFetcher fetcher = new HttpFetcher(httpClient);
         return Stream.of(
-                arguments(new MeinWGZimmerHandler(testingName, announcer, httpClient)),
-                arguments(new WGZimmerHandler(testingName, announcer, httpClient)),
-                arguments(new WOKOInsertionHandler(testingName, announcer, httpClient)),
-                arguments(new FlatfoxHandler(testingName, announcer, httpClient))
+                arguments(new MeinWGZimmerHandler(testingName, announcer, fetcher)),
+                arguments(new WGZimmerHandler(testingName, announcer, fetcher)),
+                arguments(new WOKOInsertionHandler(testingName, announcer, fetcher)),
+                arguments(new FlatfoxHandler(testingName, announcer, fetcher))
         );
     }
 
     public static Stream<Arguments> provideHandlersWithRealHTTPClient() {
-        final HttpClient client = HttpClient.newHttpClient();
+        final HttpFetcher client = new HttpFetcher(HttpClient.newHttpClient());
         return Stream.of(
                 arguments(new MeinWGZimmerHandler(testingName, announcer, client)),
                 arguments(new WGZimmerHandler(testingName, announcer, client)),
@@ -0,0 +1,64 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertionHandler.InsertionDiff;
+import de.infynyty.zuap.storage.InsertionKeyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+public class TestInsertionKeyStore {
+
+    @TempDir
+    public Path directory;
+
+    @Test
+    public void testKeysSurviveReopening() throws IOException {
+        final Path file = directory.resolve("test.keys");
+        final InsertionKeyStore store = InsertionKeyStore.open(file);
+        store.update(InsertionDiff.compute(store.getKeys(), Listings.meinWGZimmerRooms(0, 10)));
+        store.update(InsertionDiff.compute(Set.copyOf(store.getKeys()), Listings.meinWGZimmerRooms(5, 15)));
+        store.close();
+
+        final InsertionKeyStore reopened = InsertionKeyStore.open(file);
+        Assertions.assertEquals(10, reopened.getKeys().size());
+        Assertions.assertTrue(reopened.getKeys().contains(Listings.meinWGZimmer(14).getKey()));
+        Assertions.assertFalse(reopened.getKeys().contains(Listings.meinWGZimmer(4).getKey()));
+        reopened.close();
+    }
+
+    @Test
+    public void testLogIsCompacted() throws IOException {
+        final Path file = directory.resolve("test.keys");
+        final InsertionKeyStore store = InsertionKeyStore.open(file);
+        for (int i = 0; i < 50; i++) {
+            store.update(InsertionDiff.compute(Set.copyOf(store.getKeys()), Listings.meinWGZimmerRooms(i * 100, i * 100 + 100)));
+        }
+        store.close();
+
+        // a log of every change would contain 50 * 100 additions and 49 * 100 removals
+        Assertions.assertTrue(Files.size(file) < 50 * 100 * 40);
+        final InsertionKeyStore reopened = InsertionKeyStore.open(file);
+        Assertions.assertEquals(100, reopened.getKeys().size());
+        reopened.close();
+    }
+
+    @Test
+    public void testPartialRecordIsDiscarded() throws IOException {
+        final Path file = directory.resolve("test.keys");
+        final InsertionKeyStore store = InsertionKeyStore.open(file);
+        store.update(InsertionDiff.compute(store.getKeys(), Listings.meinWGZimmerRooms(0, 3)));
+        store.close();
+        Files.write(file, new byte[]{1, 0, 42, 'h'}, StandardOpenOption.APPEND);
+
+        final InsertionKeyStore reopened = InsertionKeyStore.open(file);
+        Assertions.assertEquals(3, reopened.getKeys().size());
+        reopened.close();
+    }
+}
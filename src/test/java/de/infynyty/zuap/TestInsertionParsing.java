@@ -0,0 +1,124 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertion.WGZimmerInsertion;
+import de.infynyty.zuap.insertion.WOKOInsertion;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.insertionHandler.WGZimmerHandler;
+import de.infynyty.zuap.insertionHandler.WOKOInsertionHandler;
+import de.infynyty.zuap.replay.StubServer;
+import de.infynyty.zuap.replay.SyntheticListings;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+public class TestInsertionParsing {
+
+    private static final String WGZIMMER_HTML = """
+            <li class="search-result-entry search-mate-entry">
+              <a href="/wglink/de/%d/zimmer-zuerich.html">
+                <span class="create-date">Erstellt: 15.3.2024</span>
+                <span class="thumbState"><strong>Zürich Stadt</strong> Kreis 4<br></span>
+                <span class="until-date">Bis: Unbefristet</span>
+                <span class="from-date">Ab dem <strong>01.04.2024</strong></span>
+                <span class="cost">750.00</span>
+              </a>
+            </li>""";
+
+    @Test
+    public void testWOKOParsing() {
+        final WOKOInsertion insertion = new WOKOInsertion(Listings.woko(1));
+        Assertions.assertEquals(650, insertion.getRent());
+        Assertions.assertEquals(LocalDate.of(2024, 4, 1), insertion.getMoveInDate());
+        Assertions.assertEquals(LocalDate.of(2024, 3, 15), insertion.getPostDate());
+        Assertions.assertTrue(insertion.isNextTenantWanted());
+        Assertions.assertEquals("https://www.woko.ch/de/zimmer-in-zuerich-details/1", insertion.getKey());
+    }
+
+    @Test
+    public void testWGZimmerParsing() {
+        final WGZimmerInsertion insertion = new WGZimmerInsertion(wgZimmerElement(1));
+        Assertions.assertEquals(750, insertion.getRent());
+        Assertions.assertEquals(LocalDate.of(2024, 4, 1), insertion.getMoveInDate());
+        Assertions.assertTrue(insertion.isNextTenantWanted());
+        Assertions.assertEquals("Zürich Stadt, Kreis 4", insertion.getProperties().get("Region").orElseThrow());
+    }
+
+    @Test
+    public void testFlatfoxParsing() {
+        final FlatfoxInsertion insertion = new FlatfoxInsertion(flatfoxJson(1));
+        Assertions.assertEquals(1800, insertion.getRent());
+        Assertions.assertEquals(LocalDate.of(2024, 5, 1), insertion.getMoveInDate());
+        // created shortly before midnight UTC, which already is the next day in Zurich
+        Assertions.assertEquals(LocalDate.of(2024, 3, 16), insertion.getPostDate());
+        Assertions.assertFalse(insertion.isNextTenantWanted());
+        Assertions.assertEquals("CHF 1800", insertion.getProperties().get("Rent").orElseThrow());
+        Assertions.assertEquals("01.05.2024", insertion.getProperties().get("Move-in Date").orElseThrow());
+        Assertions.assertEquals("42m²", insertion.getProperties().get("Living space").orElseThrow());
+    }
+
+    @Test
+    public void testMeinWGZimmerParsing() {
+        final MeinWGZimmerInsertion insertion = Listings.meinWGZimmer(1);
+        Assertions.assertEquals(800, insertion.getRent());
+        Assertions.assertEquals(LocalDate.of(2024, 4, 1), insertion.getMoveInDate());
+        Assertions.assertTrue(insertion.isNextTenantWanted());
+    }
+
+    @Test
+    public void testListingsAreReadFromPage() {
+        final String page = "<!DOCTYPE html><html><head><script>var listings = '<li class=\"search-result-entry\">';</script></head>"
+                + "<body><nav><ul><li>Home</li></ul></nav><ul>"
+                + String.format(WGZIMMER_HTML, 1) + String.format(WGZIMMER_HTML, 2) + String.format(WGZIMMER_HTML, 3)
+                + "</ul><footer>Kontakt</footer></body></html>";
+        final var handler = new WGZimmerHandler("WGZimmer", Mockito.mock(InsertionAnnouncer.class), HttpFetcher.create()) {
+            private List<WGZimmerInsertion> parse(final String data) {
+                return getInsertionsFromData(data);
+            }
+        };
+        final List<WGZimmerInsertion> insertions = handler.parse(page);
+        Assertions.assertEquals(3, insertions.size());
+        Assertions.assertEquals("https://www.wgzimmer.ch/wglink/de/3/zimmer-zuerich.html", insertions.get(2).getKey());
+        Assertions.assertEquals(750, insertions.get(2).getRent());
+    }
+
+    @Test
+    public void testWOKOPageIsStreamed() throws IOException {
+        final SyntheticListings listings = new SyntheticListings(5, 0, Clock.systemUTC());
+        try (final StubServer website = new StubServer(new InetSocketAddress("localhost", 0), null, listings, Duration.ZERO)) {
+            final HttpFetcher httpFetcher = HttpFetcher.create();
+            httpFetcher.redirectTo(website.getUri());
+            final WOKOInsertionHandler handler = new WOKOInsertionHandler("WOKO", Mockito.mock(InsertionAnnouncer.class), httpFetcher);
+            handler.updateCurrentInsertions();
+            Assertions.assertEquals(listings.getListingCount(SyntheticListings.WOKO_HOST), handler.getInsertionCount());
+            Assertions.assertEquals(0, handler.getFailedUpdateCount());
+        }
+    }
+
+    private static Element wgZimmerElement(final int id) {
+        return Jsoup.parse(String.format(WGZIMMER_HTML, id)).getElementsByClass("search-result-entry").get(0);
+    }
+
+    private static JSONObject flatfoxJson(final int id) {
+        return new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", 1800)
+                .put("moving_date", "2024-05-01")
+                .put("is_temporary", true)
+                .put("created", "2024-03-15T23:30:00Z")
+                .put("public_address", "Langstrasse 1, 8004 Zürich")
+                .put("surface_living", 42);
+    }
+}
@@ -0,0 +1,119 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.LinkPreviewCache;
+import de.infynyty.zuap.replay.FixtureStore;
+import de.infynyty.zuap.replay.StubServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+public class TestLinkPreviewCache {
+
+    private static final Duration DEADLINE = Duration.ofSeconds(5);
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void testSlowPreviewIsSkippedAndCached(@TempDir final Path directory) throws IOException {
+        final FixtureStore fixtures = previews(directory, "a");
+        try (final StubServer jsonLink = new StubServer(new InetSocketAddress("localhost", 0), fixtures, null, Duration.ofMillis(500))) {
+            final LinkPreviewCache cache = new LinkPreviewCache("secret", fetcher(jsonLink), clock, LinkPreviewCache.MAX_ENTRIES);
+
+            Assertions.assertTrue(cache.get("a", link("a"), Duration.ofMillis(10)).isEmpty());
+            final Optional<LinkPreviewCache.LinkPreview> preview = cache.get("a", link("a"), DEADLINE);
+
+            Assertions.assertTrue(preview.isPresent());
+            Assertions.assertEquals("Room a", preview.get().getDescription());
+            Assertions.assertEquals("https://images.example.com/a.jpg", preview.get().getImageLink());
+            Assertions.assertEquals(1, jsonLink.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testPreviewsExpire(@TempDir final Path directory) throws IOException {
+        final FixtureStore fixtures = previews(directory, "a");
+        try (final StubServer jsonLink = new StubServer(new InetSocketAddress("localhost", 0), fixtures, null, Duration.ZERO)) {
+            final LinkPreviewCache cache = new LinkPreviewCache("secret", fetcher(jsonLink), clock, LinkPreviewCache.MAX_ENTRIES);
+
+            Assertions.assertTrue(cache.get("a", link("a"), DEADLINE).isPresent());
+            clock.advance(LinkPreviewCache.TIME_TO_LIVE.minusMinutes(1));
+            Assertions.assertTrue(cache.get("a", link("a"), DEADLINE).isPresent());
+            Assertions.assertEquals(1, jsonLink.getRequestCount());
+
+            clock.advance(Duration.ofMinutes(1));
+            Assertions.assertTrue(cache.get("a", link("a"), DEADLINE).isPresent());
+            Assertions.assertEquals(2, jsonLink.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPreviewIsEvicted(@TempDir final Path directory) throws IOException {
+        final FixtureStore fixtures = previews(directory, "a", "b", "c");
+        try (final StubServer jsonLink = new StubServer(new InetSocketAddress("localhost", 0), fixtures, null, Duration.ZERO)) {
+            final LinkPreviewCache cache = new LinkPreviewCache("secret", fetcher(jsonLink), clock, 2);
+
+            cache.get("a", link("a"), DEADLINE);
+            cache.get("b", link("b"), DEADLINE);
+            cache.get("a", link("a"), DEADLINE);
+            cache.get("c", link("c"), DEADLINE);
+            Assertions.assertEquals(3, jsonLink.getRequestCount());
+
+            cache.get("a", link("a"), DEADLINE);
+            Assertions.assertEquals(3, jsonLink.getRequestCount());
+            cache.get("b", link("b"), DEADLINE);
+            Assertions.assertEquals(4, jsonLink.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testFailedPreviewIsNotCached(@TempDir final Path directory) throws IOException {
+        // only the preview of "a" is known, all other links are answered with status 404
+        final FixtureStore fixtures = previews(directory, "a");
+        try (final StubServer jsonLink = new StubServer(new InetSocketAddress("localhost", 0), fixtures, null, Duration.ZERO)) {
+            final LinkPreviewCache cache = new LinkPreviewCache("secret", fetcher(jsonLink), clock, LinkPreviewCache.MAX_ENTRIES);
+
+            Assertions.assertTrue(cache.get("b", link("b"), DEADLINE).isEmpty());
+            Assertions.assertTrue(cache.get("b", link("b"), DEADLINE).isEmpty());
+            Assertions.assertEquals(2, jsonLink.getRequestCount());
+        }
+    }
+
+    private static HttpFetcher fetcher(final StubServer jsonLink) {
+        final HttpFetcher httpFetcher = HttpFetcher.create();
+        httpFetcher.redirectTo(jsonLink.getUri());
+        return httpFetcher;
+    }
+
+    private static URI link(final String id) {
+        return URI.create("https://www.woko.ch/de/zimmer-in-zuerich-details/" + id);
+    }
+
+    /**
+     * Records a JsonLink response for each of the given links.
+     */
+    private static FixtureStore previews(final Path directory, final String... ids) throws IOException {
+        final FixtureStore fixtures = FixtureStore.open(directory);
+        for (final String id : ids) {
+            final HttpRequest request = HttpRequest.newBuilder(URI.create("https://jsonlink.io/api/extract?url="
+                    + URLEncoder.encode(link(id).toString(), StandardCharsets.UTF_8) + "&api_key=secret")).build();
+            final JSONObject preview = new JSONObject()
+                    .put("description", "Room " + id)
+                    .put("images", new JSONArray().put("https://images.example.com/" + id + ".jpg"));
+            fixtures.record("JsonLink", request, 200, "application/json", preview.toString());
+        }
+        return fixtures;
+    }
+}
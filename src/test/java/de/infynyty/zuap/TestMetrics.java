@@ -0,0 +1,64 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.metrics.Counter;
+import de.infynyty.zuap.metrics.Histogram;
+import de.infynyty.zuap.metrics.Metrics;
+import de.infynyty.zuap.metrics.MetricsServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+public class TestMetrics {
+
+    @Test
+    public void testHistogramIsServedInPrometheusFormat() throws IOException, InterruptedException {
+        final Histogram histogram = Metrics.histogram("test_duration_seconds", "A test.", "stage", "a \"quoted\" stage");
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(300));
+        histogram.record(TimeUnit.MINUTES.toNanos(5));
+        Metrics.counter("test_total", "Another test.").add(7);
+
+        try (final MetricsServer server = new MetricsServer(new InetSocketAddress("localhost", 0))) {
+            final HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()
+            );
+            Assertions.assertEquals(200, response.statusCode());
+            final String body = response.body();
+            Assertions.assertTrue(body.contains("# TYPE test_duration_seconds histogram\n"), body);
+            Assertions.assertTrue(body.contains("test_duration_seconds_bucket{stage=\"a \\\"quoted\\\" stage\",le=\"0.001\"} 0\n"), body);
+            Assertions.assertTrue(body.contains("test_duration_seconds_bucket{stage=\"a \\\"quoted\\\" stage\",le=\"0.005\"} 1\n"), body);
+            Assertions.assertTrue(body.contains("test_duration_seconds_bucket{stage=\"a \\\"quoted\\\" stage\",le=\"0.5\"} 2\n"), body);
+            Assertions.assertTrue(body.contains("test_duration_seconds_bucket{stage=\"a \\\"quoted\\\" stage\",le=\"+Inf\"} 3\n"), body);
+            Assertions.assertTrue(body.contains("test_duration_seconds_count{stage=\"a \\\"quoted\\\" stage\"} 3\n"), body);
+            Assertions.assertTrue(body.contains("# TYPE test_total counter\ntest_total 7\n"), body);
+        }
+    }
+
+    @Test
+    public void testRecordingDoesNotAllocate() {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final Histogram histogram = Metrics.histogram("test_allocation_seconds", "A test.");
+        final Counter counter = Metrics.counter("test_allocation_total", "A test.");
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i * 1000L);
+            counter.increment();
+        }
+        final long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+            counter.add(i);
+        }
+        final long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        Assertions.assertTrue(allocated < 10_000, allocated + " bytes were allocated");
+        Assertions.assertEquals(1_100_000, histogram.getCount());
+    }
+}
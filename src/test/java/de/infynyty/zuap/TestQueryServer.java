@@ -0,0 +1,166 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.geo.GeoIndex;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.MeinWGZimmerInsertion;
+import de.infynyty.zuap.insertionHandler.InsertionAnnouncer;
+import de.infynyty.zuap.insertionHandler.InsertionSnapshot;
+import de.infynyty.zuap.insertionHandler.MeinWGZimmerHandler;
+import de.infynyty.zuap.query.QueryServer;
+import de.infynyty.zuap.storage.HistoryStore;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestQueryServer {
+
+    @Test
+    public void testSnapshotIsReplacedByUpdates() {
+        final QueryableHandler handler = new QueryableHandler();
+        Assertions.assertSame(InsertionSnapshot.EMPTY, handler.getSnapshot());
+
+        handler.online = createInsertions(0, 10);
+        handler.updateCurrentInsertions();
+        final InsertionSnapshot first = handler.getSnapshot();
+        handler.online = createInsertions(5, 20);
+        handler.updateCurrentInsertions();
+
+        Assertions.assertEquals(10, first.getInsertions().size());
+        Assertions.assertEquals(15, handler.getSnapshot().getInsertions().size());
+        Assertions.assertEquals(15, handler.getInsertionCount());
+        Assertions.assertNotNull(handler.getSnapshot().getUpdatedAt());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> first.getInsertions().clear());
+    }
+
+    @Test
+    public void testInsertionsAreQueried() throws IOException, InterruptedException {
+        final QueryableHandler handler = new QueryableHandler();
+        handler.online = createInsertions(0, 20);
+        handler.updateCurrentInsertions();
+
+        try (final QueryServer server = new QueryServer(new InetSocketAddress("localhost", 0), List.of(handler), new GeoIndex(), null)) {
+            final URI base = URI.create("http://localhost:" + server.getAddress().getPort());
+            final HttpClient client = HttpClient.newHttpClient();
+
+            final HttpResponse<String> page = get(client, base.resolve("/insertions?source=MeinWGZimmer&maxRent=809&offset=2&limit=3"));
+            Assertions.assertEquals(200, page.statusCode());
+            final JSONObject result = new JSONObject(page.body());
+            Assertions.assertEquals(10, result.getInt("total"));
+            final JSONArray insertions = result.getJSONArray("insertions");
+            Assertions.assertEquals(3, insertions.length());
+            Assertions.assertEquals(802, insertions.getJSONObject(0).getInt("rent"));
+            Assertions.assertEquals("2024-04-01", insertions.getJSONObject(0).getString("moveInDate"));
+            Assertions.assertEquals("MeinWGZimmer", insertions.getJSONObject(0).getString("source"));
+
+            Assertions.assertEquals(0, new JSONObject(get(client, base.resolve("/insertions?source=WOKO")).body()).getInt("total"));
+            Assertions.assertEquals(400, get(client, base.resolve("/insertions?maxRent=cheap")).statusCode());
+            Assertions.assertEquals(400, get(client, base.resolve("/insertions?limit=100000")).statusCode());
+            Assertions.assertEquals(400, get(client, base.resolve("/insertions?colour=blue")).statusCode());
+            Assertions.assertEquals(404, get(client, base.resolve("/history")).statusCode());
+
+            final JSONObject source = new JSONObject(get(client, base.resolve("/sources")).body()).getJSONArray("sources").getJSONObject(0);
+            Assertions.assertEquals("MeinWGZimmer", source.getString("source"));
+            Assertions.assertEquals(20, source.getInt("insertions"));
+        }
+    }
+
+    @Test
+    public void testInsertionsNearAPointAreQueried() throws IOException, InterruptedException {
+        final QueryableHandler handler = new QueryableHandler();
+        final GeoIndex geoIndex = new GeoIndex();
+        handler.setGeoIndex(geoIndex);
+        handler.online = createInsertions(0, 20);
+        handler.updateCurrentInsertions();
+
+        try (final QueryServer server = new QueryServer(new InetSocketAddress("localhost", 0), List.of(handler), geoIndex, null)) {
+            final URI base = URI.create("http://localhost:" + server.getAddress().getPort());
+            final HttpClient client = HttpClient.newHttpClient();
+
+            final JSONObject within = new JSONObject(get(client, base.resolve("/insertions?latitude=47.37&longitude=8.54&radius=350")).body());
+            Assertions.assertEquals(4, within.getInt("total"));
+            Assertions.assertEquals(800, within.getJSONArray("insertions").getJSONObject(0).getInt("rent"));
+
+            final JSONObject nearest = new JSONObject(get(client, base.resolve("/insertions?latitude=47.3801&longitude=8.54&nearest=3&minRent=812")).body());
+            final JSONArray insertions = nearest.getJSONArray("insertions");
+            Assertions.assertEquals(3, nearest.getInt("total"));
+            Assertions.assertEquals(812, insertions.getJSONObject(0).getInt("rent"));
+            Assertions.assertEquals(813, insertions.getJSONObject(1).getInt("rent"));
+            Assertions.assertEquals(814, insertions.getJSONObject(2).getInt("rent"));
+
+            Assertions.assertEquals(400, get(client, base.resolve("/insertions?radius=350")).statusCode());
+            Assertions.assertEquals(400, get(client, base.resolve("/insertions?latitude=47.37&longitude=8.54")).statusCode());
+        }
+    }
+
+    @Test
+    public void testHistoryIsQueried(@TempDir final Path directory) throws IOException, InterruptedException {
+        final QueryableHandler handler = new QueryableHandler();
+        final HistoryStore historyStore = HistoryStore.open(directory);
+        handler.setHistoryStore(historyStore);
+        handler.online = createInsertions(0, 20);
+        handler.updateCurrentInsertions();
+        handler.online = createInsertions(10, 20);
+        handler.updateCurrentInsertions();
+
+        try (final QueryServer server = new QueryServer(new InetSocketAddress("localhost", 0), List.of(handler), new GeoIndex(), historyStore)) {
+            final URI base = URI.create("http://localhost:" + server.getAddress().getPort());
+            final HttpClient client = HttpClient.newHttpClient();
+
+            final JSONObject rent = new JSONObject(get(client, base.resolve("/history?source=MeinWGZimmer&seenFrom=2024-01-01")).body());
+            Assertions.assertEquals(20, rent.getLong("count"));
+            Assertions.assertEquals(809.5, rent.getDouble("median"));
+            Assertions.assertEquals(804.75, rent.getDouble("lowerQuartile"));
+
+            final JSONObject nearby = new JSONObject(get(client, base.resolve("/history?latitude=47.37&longitude=8.54&radius=150")).body());
+            Assertions.assertEquals(2, nearby.getLong("count"));
+            Assertions.assertEquals(0, new JSONObject(get(client, base.resolve("/history?source=WOKO")).body()).getLong("count"));
+            Assertions.assertFalse(new JSONObject(get(client, base.resolve("/history?source=WOKO")).body()).has("median"));
+            Assertions.assertEquals(400, get(client, base.resolve("/history?measure=colour")).statusCode());
+            Assertions.assertEquals(400, get(client, base.resolve("/history?radius=150")).statusCode());
+        } finally {
+            historyStore.close();
+        }
+    }
+
+    private static HttpResponse<String> get(final HttpClient client, final URI uri) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static ArrayList<MeinWGZimmerInsertion> createInsertions(final int from, final int to) {
+        final ArrayList<MeinWGZimmerInsertion> insertions = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            insertions.add(new MeinWGZimmerInsertion(Listings.meinWGZimmerJson(i, 800 + i)
+                    .put("Location", new JSONObject().put("latitude", 47.37 + i * 0.001).put("longitude", 8.54))));
+        }
+        return insertions;
+    }
+
+    /**
+     * A handler returning prepared insertions instead of pulling them from the website.
+     */
+    private static class QueryableHandler extends MeinWGZimmerHandler {
+        private ArrayList<MeinWGZimmerInsertion> online = new ArrayList<>();
+
+        private QueryableHandler() {
+            super("MeinWGZimmer", Mockito.mock(InsertionAnnouncer.class), HttpFetcher.create());
+        }
+
+        @Override
+        protected ArrayList<MeinWGZimmerInsertion> pullInsertions() {
+            return online;
+        }
+    }
+}
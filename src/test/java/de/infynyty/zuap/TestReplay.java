@@ -0,0 +1,137 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.discord.WebhookAnnouncer;
+import de.infynyty.zuap.http.HttpFetcher;
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.replay.FixtureStore;
+import de.infynyty.zuap.replay.StubResponse;
+import de.infynyty.zuap.replay.StubServer;
+import de.infynyty.zuap.replay.SyntheticListings;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class TestReplay {
+
+    private static final URI WOKO = URI.create("https://www.woko.ch/de/zimmer-in-zuerich");
+
+    @Test
+    public void testRecordedResponsesAreReplayed(@TempDir final Path directory) throws IOException, InterruptedException {
+        final SyntheticListings listings = new SyntheticListings(1, 0, Clock.systemUTC());
+        final String recorded;
+        try (final StubServer website = new StubServer(new InetSocketAddress("localhost", 0), null, listings, Duration.ZERO)) {
+            final HttpFetcher recording = HttpFetcher.create();
+            recording.redirectTo(website.getUri());
+            recording.setRecorder(FixtureStore.open(directory));
+            recorded = recording.send("WOKO", HttpRequest.newBuilder(WOKO)).body();
+            Assertions.assertEquals(1, website.getRequestCount());
+        }
+        Assertions.assertTrue(recorded.contains("class=\"inserat\""), recorded);
+
+        final FixtureStore fixtures = FixtureStore.open(directory);
+        Assertions.assertEquals(1, fixtures.size());
+        try (final StubServer replaying = new StubServer(new InetSocketAddress("localhost", 0), fixtures, null, Duration.ZERO)) {
+            final HttpFetcher httpFetcher = HttpFetcher.create();
+            httpFetcher.redirectTo(replaying.getUri());
+            final HttpResponse<String> replayed = httpFetcher.send("WOKO", HttpRequest.newBuilder(WOKO));
+            Assertions.assertEquals(200, replayed.statusCode());
+            Assertions.assertEquals(recorded, replayed.body());
+
+            final HttpResponse<String> unknown = httpFetcher.send("WOKO", HttpRequest.newBuilder(WOKO.resolve("/de/other")));
+            Assertions.assertEquals(404, unknown.statusCode());
+            Assertions.assertEquals(1, replaying.getUnknownRequestCount());
+        }
+    }
+
+    @Test
+    public void testCredentialsAreNotRecorded(@TempDir final Path directory) throws IOException, InterruptedException {
+        final URI preview = URI.create("https://jsonlink.io/api/extract?url=https%3A%2F%2Fwww.woko.ch%2F&api_key=secret");
+        try (final StubServer website = new StubServer(new InetSocketAddress("localhost", 0), null, null, Duration.ZERO)) {
+            final HttpFetcher recording = HttpFetcher.create();
+            recording.redirectTo(website.getUri());
+            recording.setRecorder(FixtureStore.open(directory));
+            recording.send("JsonLink", HttpRequest.newBuilder(preview));
+        }
+        final String index = Files.readString(directory.resolve("index.tsv"));
+        Assertions.assertFalse(index.contains("secret"), index);
+        Assertions.assertTrue(index.contains("/api/extract?url=https%3A%2F%2Fwww.woko.ch%2F\t"), index);
+
+        final FixtureStore fixtures = FixtureStore.open(directory);
+        Assertions.assertNotNull(fixtures.replay("GET", "jsonlink.io", "/api/extract?url=https%3A%2F%2Fwww.woko.ch%2F&api_key=other"));
+        Assertions.assertNull(fixtures.replay("GET", "jsonlink.io", "/api/extract?url=https%3A%2F%2Fwww.wgzimmer.ch%2F&api_key=secret"));
+    }
+
+    @Test
+    public void testFlatfoxPinsAreNewestInsideArea() {
+        final Instant now = Instant.parse("2024-03-15T12:00:00Z");
+        final SyntheticListings listings = new SyntheticListings(2, 0.01, Clock.fixed(now, ZoneOffset.UTC));
+        final List<Long> all = pins(listings, 47.5, 47.3, 8.8, 8.3, 100_000);
+        Assertions.assertEquals(listings.getListingCount(SyntheticListings.FLATFOX_HOST), all.size());
+
+        final List<Long> limited = pins(listings, 47.38, 47.36, 8.56, 8.52, 30);
+        Assertions.assertEquals(30, limited.size());
+        final List<Long> inside = pins(listings, 47.38, 47.36, 8.56, 8.52, 100_000);
+        Assertions.assertEquals(inside.subList(0, 30), limited);
+        for (int i = 1; i < inside.size(); i++) {
+            Assertions.assertTrue(inside.get(i - 1) > inside.get(i));
+        }
+
+        final StubResponse response = listings.respond("GET", SyntheticListings.FLATFOX_HOST, "/api/v1/public-listing/?pk=" + limited.get(0) + "&pk=-1&");
+        Assertions.assertNotNull(response);
+        final JSONArray results = new JSONObject(response.getBody()).getJSONArray("results");
+        Assertions.assertEquals(1, results.length());
+        final FlatfoxInsertion insertion = new FlatfoxInsertion(results.getJSONObject(0));
+        Assertions.assertTrue(insertion.getLatitude() <= 47.38 && insertion.getLatitude() >= 47.36);
+    }
+
+    @Test
+    public void testWebhookReceivesAllInsertions() throws IOException {
+        final List<Insertion> insertions = new ArrayList<>();
+        IntStream.range(0, 23).forEach(id -> insertions.add(new FlatfoxInsertion(new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", 800 + id)
+                .put("moving_date", "2024-05-01")
+                .put("is_temporary", false)
+                .put("created", "2024-03-15T23:30:00Z"))));
+
+        try (final StubServer discord = new StubServer(new InetSocketAddress("localhost", 0), null, null, Duration.ZERO)) {
+            new WebhookAnnouncer(discord.getWebhookUri(), HttpFetcher.create()).announceAll(insertions);
+            Assertions.assertEquals(3, discord.getWebhookMessageCount());
+            Assertions.assertEquals(23, discord.getWebhookEmbedCount());
+        }
+    }
+
+    private static List<Long> pins(
+            final SyntheticListings listings,
+            final double north,
+            final double south,
+            final double east,
+            final double west,
+            final int maxCount
+    ) {
+        final StubResponse response = listings.respond("GET", SyntheticListings.FLATFOX_HOST,
+                "/api/v1/pin/?east=" + east + "&max_count=" + maxCount + "&north=" + north + "&south=" + south + "&west=" + west);
+        Assertions.assertNotNull(response);
+        final List<Long> pins = new ArrayList<>();
+        new JSONArray(response.getBody()).forEach(pin -> pins.add(((JSONObject) pin).getLong("pk")));
+        return pins;
+    }
+}
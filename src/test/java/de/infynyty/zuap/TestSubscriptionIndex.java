@@ -0,0 +1,118 @@
+package de.infynyty.zuap;
+
+import de.infynyty.zuap.insertion.FlatfoxInsertion;
+import de.infynyty.zuap.insertion.Insertion;
+import de.infynyty.zuap.subscription.Subscription;
+import de.infynyty.zuap.subscription.SubscriptionIndex;
+import de.infynyty.zuap.subscription.SubscriptionRouter;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TestSubscriptionIndex {
+
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+
+    @Test
+    public void testCriteriaAreMatched() {
+        final Subscription cheap = Subscription.fromJson(new JSONObject()
+                .put("id", "cheap").put("channelId", 1).put("maxRent", 900));
+        final Subscription langstrasse = Subscription.fromJson(new JSONObject()
+                .put("id", "langstrasse").put("channelId", 2)
+                .put("area", new JSONObject().put("latitude", 47.3786).put("longitude", 8.5370).put("radius", 500)));
+        final Subscription summer = Subscription.fromJson(new JSONObject()
+                .put("id", "summer").put("channelId", 3)
+                .put("earliestMoveIn", "2024-06-01").put("latestMoveIn", "2024-08-31"));
+        final SubscriptionIndex index = new SubscriptionIndex(List.of(cheap, langstrasse, summer));
+
+        Assertions.assertEquals(List.of(cheap, langstrasse), sorted(index.match(flatfox(1, 800, "2024-05-01", 47.3790, 8.5375))));
+        Assertions.assertEquals(List.of(summer), sorted(index.match(flatfox(2, 1200, "2024-07-01", 47.4000, 8.5000))));
+        // without coordinates the area is ignored
+        Assertions.assertEquals(List.of(langstrasse), sorted(index.match(flatfox(3, 1200, "2024-05-01", Double.NaN, Double.NaN))));
+    }
+
+    @Test
+    public void testMatchesAreSameAsCheckingEverySubscription() {
+        final Random random = new Random(42);
+        final List<Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            subscriptions.add(randomSubscription(i, random));
+        }
+        final SubscriptionIndex index = new SubscriptionIndex(subscriptions);
+        for (int i = 0; i < 500; i++) {
+            final Insertion insertion = flatfox(
+                    i,
+                    300 + random.nextInt(2000),
+                    START.plusDays(random.nextInt(200)).toString(),
+                    47.30 + random.nextDouble() * 0.15,
+                    8.45 + random.nextDouble() * 0.15
+            );
+            final List<Subscription> expected = subscriptions.stream().filter(s -> s.matches(insertion)).toList();
+            Assertions.assertEquals(sorted(expected), sorted(index.match(insertion)), "Wrong matches for " + insertion);
+        }
+    }
+
+    @Test
+    public void testInsertionIsAnnouncedOncePerChannel() {
+        final Map<Long, List<Insertion>> announced = new HashMap<>();
+        final SubscriptionRouter router = new SubscriptionRouter(
+                (channelId, insertions) -> announced.computeIfAbsent(channelId, id -> new ArrayList<>()).addAll(insertions),
+                new SubscriptionIndex(List.of(
+                        Subscription.everything("a", 1),
+                        Subscription.everything("b", 1),
+                        Subscription.fromJson(new JSONObject().put("id", "c").put("channelId", 2).put("maxRent", 500))
+                ))
+        );
+        final Insertion cheap = flatfox(1, 400, "2024-05-01", Double.NaN, Double.NaN);
+        final Insertion expensive = flatfox(2, 1400, "2024-05-01", Double.NaN, Double.NaN);
+        router.announceAll(List.of(cheap, expensive));
+
+        Assertions.assertEquals(List.of(cheap, expensive), announced.get(1L));
+        Assertions.assertEquals(List.of(cheap), announced.get(2L));
+    }
+
+    private static Subscription randomSubscription(final int id, final Random random) {
+        final int minRent = random.nextBoolean() ? 0 : 300 + random.nextInt(1000);
+        final int maxRent = random.nextInt(4) == 0 ? Integer.MAX_VALUE : minRent + 100 + random.nextInt(1000);
+        final LocalDate earliest = random.nextBoolean() ? null : START.plusDays(random.nextInt(150));
+        final LocalDate latest = random.nextBoolean() ? null : (earliest == null ? START : earliest).plusDays(random.nextInt(120));
+        final boolean hasArea = random.nextBoolean();
+        return new Subscription(
+                "s" + id,
+                random.nextInt(20),
+                minRent,
+                maxRent,
+                earliest,
+                latest,
+                random.nextInt(3) == 0 ? random.nextBoolean() : null,
+                hasArea ? 47.30 + random.nextDouble() * 0.15 : Double.NaN,
+                hasArea ? 8.45 + random.nextDouble() * 0.15 : Double.NaN,
+                hasArea ? 200 + random.nextInt(5000) : Double.NaN
+        );
+    }
+
+    private static List<Subscription> sorted(final List<Subscription> subscriptions) {
+        return subscriptions.stream().sorted(Comparator.comparing(Subscription::getId)).toList();
+    }
+
+    private static FlatfoxInsertion flatfox(final int id, final int rent, final String moveIn, final double latitude, final double longitude) {
+        final JSONObject json = new JSONObject()
+                .put("url", "/de/flat/zuerich/" + id + "/")
+                .put("price_display", rent)
+                .put("moving_date", moveIn)
+                .put("is_temporary", id % 2 == 0)
+                .put("created", "2024-02-15T23:30:00Z");
+        if (!Double.isNaN(latitude)) {
+            json.put("latitude", latitude).put("longitude", longitude);
+        }
+        return new FlatfoxInsertion(json);
+    }
+}